@@ -0,0 +1,138 @@
+package me.nikonorovrs.gateway.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.security.LockingReactiveOAuth2AuthorizedClientManager;
+import me.nikonorovrs.gateway.security.RefreshLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.InMemoryReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static me.nikonorovrs.gateway.benchmark.BenchmarkSupport.PRINCIPAL;
+import static me.nikonorovrs.gateway.benchmark.BenchmarkSupport.REGISTRATION_ID;
+
+/**
+ * {@link LockingReactiveOAuth2AuthorizedClientManager#authorize} без обращения к Redis и Keycloak:
+ * актуальный токен и токен в окне обновления, который запрашивают несколько потоков одновременно.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorizeBenchmark {
+
+    private LockingReactiveOAuth2AuthorizedClientManager freshTokenManager;
+    private LockingReactiveOAuth2AuthorizedClientManager expiringTokenManager;
+    private OAuth2AuthorizeRequest request;
+
+    @Setup
+    public void setUp() {
+        ClientRegistration registration = BenchmarkSupport.clientRegistration();
+        Authentication principal = new TestingAuthenticationToken(PRINCIPAL, "n/a");
+        request = OAuth2AuthorizeRequest.withClientRegistrationId(REGISTRATION_ID).principal(principal).build();
+
+        InMemoryReactiveOAuth2AuthorizedClientService freshService = new InMemoryReactiveOAuth2AuthorizedClientService(
+                new InMemoryReactiveClientRegistrationRepository(registration));
+        freshService.saveAuthorizedClient(
+                BenchmarkSupport.authorizedClient(registration, PRINCIPAL, Duration.ofMinutes(5)), principal).block();
+        freshTokenManager = manager(freshService);
+
+        // Хранилище всегда отдает истекающий токен, поэтому каждый вызов проходит путь обновления
+        OAuth2AuthorizedClient expiringClient = BenchmarkSupport.authorizedClient(registration, PRINCIPAL, Duration.ofSeconds(10));
+        expiringTokenManager = manager(new FixedAuthorizedClientService(expiringClient));
+    }
+
+    @Benchmark
+    public OAuth2AuthorizedClient authorizeFreshToken() {
+        return freshTokenManager.authorize(request).block();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public OAuth2AuthorizedClient authorizeExpiringTokenUnderContention() {
+        return expiringTokenManager.authorize(request).block();
+    }
+
+    private static LockingReactiveOAuth2AuthorizedClientManager manager(ReactiveOAuth2AuthorizedClientService service) {
+        LockingReactiveOAuth2AuthorizedClientManager manager = new LockingReactiveOAuth2AuthorizedClientManager(
+                service,
+                grantRequest -> Mono.just(OAuth2AccessTokenResponse.withToken("b".repeat(1200))
+                        .tokenType(org.springframework.security.oauth2.core.OAuth2AccessToken.TokenType.BEARER)
+                        .expiresIn(300)
+                        .refreshToken("r".repeat(800))
+                        .build()),
+                new UncontendedRefreshLock(),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(manager, "refreshLockNamespace", "benchmark-refresh-lock");
+        ReflectionTestUtils.setField(manager, "refreshBuffer", 60L);
+        ReflectionTestUtils.setField(manager, "waitTime", 5L);
+        ReflectionTestUtils.setField(manager, "leaseTime", 10L);
+        return manager;
+    }
+
+    private record FixedAuthorizedClientService(OAuth2AuthorizedClient client) implements ReactiveOAuth2AuthorizedClientService {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId, String principalName) {
+            return Mono.just((T) client);
+        }
+
+        @Override
+        public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> removeAuthorizedClient(String clientRegistrationId, String principalName) {
+            return Mono.empty();
+        }
+    }
+
+    // Блокировка без Redis: измеряется стоимость объединения и самого пути обновления
+    private static final class UncontendedRefreshLock implements RefreshLock {
+
+        @Override
+        public Mono<Lease> tryAcquire(String lockKey, Duration waitTime, Duration leaseTime, Instant freshUntil) {
+            return Mono.just(new Lease() {
+                @Override
+                public boolean isHeld() {
+                    return true;
+                }
+
+                @Override
+                public void refreshed(Instant expiresAt) {
+                }
+
+                @Override
+                public Mono<Void> release() {
+                    return Mono.empty();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package me.nikonorovrs.gateway.benchmark;
+
+import me.nikonorovrs.gateway.security.AuthorizedClientTtlPolicy;
+import me.nikonorovrs.gateway.security.OAuth2AuthorizedClientRedisSerializer;
+import me.nikonorovrs.gateway.security.RedisReactiveOAuth2AuthorizedClientService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static me.nikonorovrs.gateway.benchmark.BenchmarkSupport.PRINCIPAL;
+import static me.nikonorovrs.gateway.benchmark.BenchmarkSupport.REGISTRATION_ID;
+
+/**
+ * Загрузка и сохранение клиента в Redis с компактным сериализатором и с Java-сериализацией.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorizedClientServiceBenchmark {
+
+    private static final String KEY_PREFIX = "benchmark-token:";
+
+    @Param({"compact", "jdk"})
+    public String serializer;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisReactiveOAuth2AuthorizedClientService service;
+    private OAuth2AuthorizedClient client;
+    private Authentication principal;
+
+    @Setup
+    public void setUp() {
+        ClientRegistration registration = BenchmarkSupport.clientRegistration();
+        RedisSerializer<Object> valueSerializer = "compact".equals(serializer)
+                ? new OAuth2AuthorizedClientRedisSerializer(new InMemoryReactiveClientRegistrationRepository(registration))
+                : new JdkSerializationRedisSerializer();
+
+        StringRedisSerializer keySerializer = new StringRedisSerializer();
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext(keySerializer)
+                .value(valueSerializer)
+                .hashKey(keySerializer)
+                .hashValue(valueSerializer)
+                .build();
+
+        connectionFactory = BenchmarkSupport.redisConnectionFactory();
+        service = new RedisReactiveOAuth2AuthorizedClientService(
+                new ReactiveRedisTemplate<>(connectionFactory, context),
+                KEY_PREFIX,
+                List.of(REGISTRATION_ID),
+                new AuthorizedClientTtlPolicy(Duration.ofMinutes(5), Duration.ofHours(10)));
+        client = BenchmarkSupport.authorizedClient(registration, PRINCIPAL, Duration.ofMinutes(5));
+        principal = new TestingAuthenticationToken(PRINCIPAL, "n/a");
+        service.saveAuthorizedClient(client, principal).block();
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.removeAuthorizedClient(REGISTRATION_ID, PRINCIPAL).block();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public OAuth2AuthorizedClient load() {
+        return service.loadAuthorizedClient(REGISTRATION_ID, PRINCIPAL).block();
+    }
+
+    @Benchmark
+    public void save() {
+        service.saveAuthorizedClient(client, principal).block();
+    }
+}
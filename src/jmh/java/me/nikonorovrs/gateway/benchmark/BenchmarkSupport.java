@@ -0,0 +1,85 @@
+package me.nikonorovrs.gateway.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.helpers.NOPAppender;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Общие данные и окружение бенчмарков.
+ * <p>
+ * Redis берется из {@code -Dbenchmark.redis.host}/{@code -Dbenchmark.redis.port} (по умолчанию localhost:6379),
+ * а с {@code -Dbenchmark.redis.testcontainers=true} поднимается в контейнере, как в интеграционных тестах.
+ */
+final class BenchmarkSupport {
+
+    static final String REGISTRATION_ID = "keycloak";
+    static final String PRINCIPAL = "benchmark-user";
+
+    private static GenericContainer<?> redisContainer;
+
+    private BenchmarkSupport() {
+    }
+
+    static ClientRegistration clientRegistration() {
+        return ClientRegistration.withRegistrationId(REGISTRATION_ID)
+                .clientId("benchmark-client")
+                .clientSecret("benchmark-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("http://localhost/login/oauth2/code/keycloak")
+                .scope("openid", "profile", "email")
+                .authorizationUri("http://localhost/auth")
+                .tokenUri("http://localhost/token")
+                .build();
+    }
+
+    static OAuth2AuthorizedClient authorizedClient(ClientRegistration registration, String principal, Duration expiresIn) {
+        Instant now = Instant.now();
+        // Размер значений близок к реальным JWT Keycloak
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                "a".repeat(1200), now, now.plus(expiresIn), Set.of("openid", "profile", "email"));
+        OAuth2RefreshToken refreshToken = new OAuth2RefreshToken("r".repeat(800), now);
+        return new OAuth2AuthorizedClient(registration, principal, accessToken, refreshToken);
+    }
+
+    static synchronized LettuceConnectionFactory redisConnectionFactory() {
+        String host = System.getProperty("benchmark.redis.host", "localhost");
+        int port = Integer.getInteger("benchmark.redis.port", 6379);
+        if (Boolean.getBoolean("benchmark.redis.testcontainers")) {
+            if (redisContainer == null) {
+                redisContainer = new GenericContainer<>(DockerImageName.parse("redis:latest")).withExposedPorts(6379);
+                redisContainer.start();
+            }
+            host = redisContainer.getHost();
+            port = redisContainer.getMappedPort(6379);
+        }
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(host, port);
+        factory.afterPropertiesSet();
+        factory.start();
+        return factory;
+    }
+
+    // Запись логов отключается, чтобы измерять работу фильтров, а не вывод в консоль
+    static void muteLogging() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.detachAndStopAllAppenders();
+        NOPAppender<ILoggingEvent> appender = new NOPAppender<>();
+        appender.setContext(context);
+        appender.start();
+        root.addAppender(appender);
+    }
+}
@@ -0,0 +1,115 @@
+package me.nikonorovrs.gateway.benchmark;
+
+import me.nikonorovrs.gateway.filter.AccessLogProperties;
+import me.nikonorovrs.gateway.filter.LoggingFilter;
+import me.nikonorovrs.gateway.security.CustomAuthRedirectFilterFactory;
+import me.nikonorovrs.gateway.security.RoutePolicyRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Накладные расходы {@link LoggingFilter} и {@link CustomAuthRedirectFilterFactory} на пустой цепочке.
+ * Создание обмена входит в измерение и одинаково для всех вариантов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final GatewayFilterChain EMPTY_CHAIN = exchange -> Mono.empty();
+
+    @Param({"classic", "access-log"})
+    public String loggingMode;
+
+    private LoggingFilter loggingFilter;
+    private GatewayFilter authRedirectFilter;
+    private Route route;
+    private Authentication authentication;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.muteLogging();
+
+        AccessLogProperties properties = new AccessLogProperties();
+        properties.setEnabled("access-log".equals(loggingMode));
+        properties.setSampleRate(0.01);
+        loggingFilter = new LoggingFilter(properties);
+
+        RoutePolicyRegistry routePolicyRegistry = new RoutePolicyRegistry(
+                new StaticListableBeanFactory().getBeanProvider(RouteLocator.class));
+        authRedirectFilter = new CustomAuthRedirectFilterFactory(routePolicyRegistry)
+                .apply(new CustomAuthRedirectFilterFactory.Config());
+        route = Route.async()
+                .id("default")
+                .uri("http://localhost:18080")
+                .predicate(exchange -> true)
+                .build();
+        authentication = new TestingAuthenticationToken(BenchmarkSupport.PRINCIPAL, "n/a", List.of());
+    }
+
+    @Benchmark
+    public ServerWebExchange baseline() {
+        ServerWebExchange exchange = exchange();
+        EMPTY_CHAIN.filter(exchange).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange loggingFilter() {
+        ServerWebExchange exchange = exchange();
+        loggingFilter.filter(exchange, EMPTY_CHAIN).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange authRedirectFilterAuthenticated() {
+        ServerWebExchange exchange = exchange();
+        authRedirectFilter.filter(exchange, EMPTY_CHAIN)
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication))
+                .block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange authRedirectFilterAnonymous() {
+        ServerWebExchange exchange = exchange();
+        authRedirectFilter.filter(exchange, EMPTY_CHAIN).block();
+        return exchange;
+    }
+
+    private ServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/orders/42")
+                .header("trace-id", "4bf92f3577b34da6a3ce929d0e0e4736"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+}
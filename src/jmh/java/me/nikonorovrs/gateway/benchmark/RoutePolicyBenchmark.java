@@ -0,0 +1,70 @@
+package me.nikonorovrs.gateway.benchmark;
+
+import me.nikonorovrs.gateway.security.RoutePolicy;
+import me.nikonorovrs.gateway.security.RoutePolicyRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * {@link RoutePolicyRegistry#policyOf} для маршрута без метаданных и с {@code redirect-code}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutePolicyBenchmark {
+
+    @Param({"none", "redirect-code"})
+    public String metadata;
+
+    private RoutePolicyRegistry registry;
+    private ServerWebExchange exchange;
+
+    @Setup
+    public void setUp() {
+        Route.AsyncBuilder builder = Route.async()
+                .id("default")
+                .uri("http://localhost:18080")
+                .predicate(exchange -> true);
+        if ("redirect-code".equals(metadata)) {
+            builder.metadata(Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 401));
+        }
+        Route route = builder.build();
+
+        RouteLocator routeLocator = () -> Flux.just(route);
+        registry = new RoutePolicyRegistry(new StaticListableBeanFactory().getBeanProvider(RouteLocator.class));
+        registry.onApplicationEvent(new RefreshRoutesResultEvent(routeLocator));
+
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/orders/42"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+    }
+
+    @Benchmark
+    public RoutePolicy policyOf() {
+        return registry.policyOf(exchange);
+    }
+}
@@ -0,0 +1,53 @@
+package me.nikonorovrs.gateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.Locale;
+
+/**
+ * Директивы Cache-Control, влияющие на кэширование в шлюзе. Отсутствующий возраст равен -1.
+ */
+record CacheControlDirectives(boolean noStore, boolean noCache, boolean isPrivate, boolean isPublic,
+                              long maxAge, long sMaxAge) {
+
+    static CacheControlDirectives of(HttpHeaders headers) {
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean isPrivate = false;
+        boolean isPublic = false;
+        long maxAge = -1;
+        long sMaxAge = -1;
+        for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+            for (String directive : value.split(",")) {
+                String name = directive.trim().toLowerCase(Locale.ROOT);
+                // Значение private="Set-Cookie" трактуется как private целиком
+                if (name.equals("no-store")) {
+                    noStore = true;
+                } else if (name.startsWith("no-cache")) {
+                    noCache = true;
+                } else if (name.startsWith("private")) {
+                    isPrivate = true;
+                } else if (name.equals("public")) {
+                    isPublic = true;
+                } else if (name.startsWith("max-age=")) {
+                    maxAge = seconds(name.substring("max-age=".length()));
+                } else if (name.startsWith("s-maxage=")) {
+                    sMaxAge = seconds(name.substring("s-maxage=".length()));
+                }
+            }
+        }
+        if (headers.getOrEmpty(HttpHeaders.PRAGMA).stream().anyMatch(value -> value.contains("no-cache"))) {
+            noCache = true;
+        }
+        return new CacheControlDirectives(noStore, noCache, isPrivate, isPublic, maxAge, sMaxAge);
+    }
+
+    private static long seconds(String value) {
+        try {
+            return Math.max(Long.parseLong(value.replace("\"", "").trim()), 0);
+        } catch (NumberFormatException e) {
+            // Некорректный возраст считается нулевым, как требует RFC 9111
+            return 0;
+        }
+    }
+}
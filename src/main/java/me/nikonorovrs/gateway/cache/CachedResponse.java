@@ -0,0 +1,112 @@
+package me.nikonorovrs.gateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Сохраненный ответ upstream.
+ *
+ * @param status     код ответа
+ * @param headers    заголовки ответа без hop-by-hop заголовков
+ * @param body       тело ответа
+ * @param storedAt   время получения или последней проверки ответа, мс
+ * @param freshFor   срок свежести от {@code storedAt}, мс
+ * @param varyValues значения заголовков запроса, перечисленных в Vary, по имени в нижнем регистре
+ */
+public record CachedResponse(
+        int status,
+        Map<String, List<String>> headers,
+        byte[] body,
+        long storedAt,
+        long freshFor,
+        Map<String, String> varyValues) {
+
+    // Заголовки, которые относятся к соединению или вычисляются заново при выдаче из кэша
+    static final Set<String> EXCLUDED_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", "te", "trailer",
+            "content-length", "age", "x-cache");
+
+    static Map<String, List<String>> storedHeaders(HttpHeaders headers) {
+        Map<String, List<String>> stored = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, values) -> {
+            if (!EXCLUDED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                stored.put(name, List.copyOf(values));
+            }
+        });
+        return stored;
+    }
+
+    static Map<String, String> varyValues(HttpHeaders responseHeaders, HttpHeaders requestHeaders) {
+        Map<String, String> values = new TreeMap<>();
+        for (String name : responseHeaders.getVary()) {
+            values.put(name.toLowerCase(Locale.ROOT), String.join(",", requestHeaders.getOrEmpty(name)));
+        }
+        return values;
+    }
+
+    public boolean isFresh(long now) {
+        return now - storedAt < freshFor;
+    }
+
+    public long ageSeconds(long now) {
+        return Math.max(now - storedAt, 0) / 1000;
+    }
+
+    public boolean hasValidators() {
+        return etag() != null || lastModified() != null;
+    }
+
+    public String etag() {
+        return first(HttpHeaders.ETAG);
+    }
+
+    public String lastModified() {
+        return first(HttpHeaders.LAST_MODIFIED);
+    }
+
+    /**
+     * Подходит ли ответ запросу с учетом Vary.
+     */
+    public boolean matches(HttpHeaders requestHeaders) {
+        for (Map.Entry<String, String> vary : varyValues.entrySet()) {
+            if (!vary.getValue().equals(String.join(",", requestHeaders.getOrEmpty(vary.getKey())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ответ после подтверждения upstream кодом 304: заголовки 304 заменяют сохраненные, тело остается прежним.
+     */
+    public CachedResponse revalidated(HttpHeaders notModifiedHeaders, long now, long freshFor) {
+        Map<String, List<String>> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(headers);
+        merged.putAll(storedHeaders(notModifiedHeaders));
+        return new CachedResponse(status, merged, body, now, freshFor, varyValues);
+    }
+
+    /**
+     * Оценка занимаемой памяти для вытеснения по размеру.
+     */
+    public int weight() {
+        int weight = body.length + 64;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            weight += header.getKey().length();
+            for (String value : header.getValue()) {
+                weight += value.length();
+            }
+        }
+        return weight;
+    }
+
+    private String first(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
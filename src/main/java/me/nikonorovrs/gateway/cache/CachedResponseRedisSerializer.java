@@ -0,0 +1,94 @@
+package me.nikonorovrs.gateway.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Компактный сериализатор {@link CachedResponse} для общего уровня кэша. Первый байт записи - версия формата.
+ */
+public class CachedResponseRedisSerializer implements RedisSerializer<CachedResponse> {
+
+    static final byte FORMAT_V1 = 1;
+
+    @Override
+    public byte[] serialize(CachedResponse response) throws SerializationException {
+        if (response == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(response.body().length + 256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_V1);
+            out.writeShort(response.status());
+            out.writeLong(response.storedAt());
+            out.writeLong(response.freshFor());
+            out.writeShort(response.headers().size());
+            for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeShort(header.getValue().size());
+                for (String value : header.getValue()) {
+                    out.writeUTF(value);
+                }
+            }
+            out.writeShort(response.varyValues().size());
+            for (Map.Entry<String, String> vary : response.varyValues().entrySet()) {
+                out.writeUTF(vary.getKey());
+                out.writeUTF(vary.getValue());
+            }
+            out.writeInt(response.body().length);
+            out.write(response.body());
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось сериализовать ответ", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public CachedResponse deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte format = in.readByte();
+            if (format != FORMAT_V1) {
+                throw new SerializationException("Неизвестная версия формата ответа: " + format);
+            }
+            int status = in.readUnsignedShort();
+            long storedAt = in.readLong();
+            long freshFor = in.readLong();
+
+            int headerCount = in.readUnsignedShort();
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < headerCount; i++) {
+                String name = in.readUTF();
+                int valueCount = in.readUnsignedShort();
+                List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(in.readUTF());
+                }
+                headers.put(name, List.copyOf(values));
+            }
+
+            int varyCount = in.readUnsignedShort();
+            Map<String, String> varyValues = new TreeMap<>();
+            for (int i = 0; i < varyCount; i++) {
+                varyValues.put(in.readUTF(), in.readUTF());
+            }
+
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new CachedResponse(status, headers, body, storedAt, freshFor, varyValues);
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось десериализовать ответ", e);
+        }
+    }
+}
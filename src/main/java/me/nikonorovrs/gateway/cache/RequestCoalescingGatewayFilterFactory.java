@@ -0,0 +1,381 @@
+package me.nikonorovrs.gateway.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Объединение одновременных одинаковых GET-запросов маршрута в одно обращение к upstream.
+ * <p>
+ * Одинаковыми считаются запросы с тем же путем, параметрами, пользователем и заголовками
+ * {@link RequestCoalescingProperties#getKeyHeaders()}; запросы без пользователя объединяются между собой.
+ * Первый запрос идет в upstream, остальные ждут заголовков его ответа и получают тело по мере поступления:
+ * каждый буфер upstream передается ожидающим как разделяемая копия со своим счетчиком ссылок, ответ не накапливается.
+ * Запросы, пришедшие после начала ответа, идут в upstream сами.
+ * <p>
+ * Условные запросы ({@code If-None-Match}, {@code If-Modified-Since} и другие) и запросы Range не объединяются:
+ * ответ на них зависит от валидаторов клиента.
+ * <p>
+ * Ответ не раздается, если у него нет Content-Length или он больше {@code max-body-size}, есть Set-Cookie,
+ * это 304, ответ потоковый или помечен private для запросов без пользователя: тогда ожидающие запросы тоже идут в upstream.
+ * Ошибка первого запроса до ответа передается ожидающим.
+ * <p>
+ * Фильтр подключается на маршрутах с частыми одинаковыми запросами к быстрому upstream, а не на общем маршруте:
+ * если заголовки ответа не пришли за {@code wait-timeout}, ожидающий запрос идет в upstream сам,
+ * и на медленных или long-poll маршрутах каждый повторный запрос теряет это время целиком.
+ * <pre>
+ * filters:
+ *   - RequestCoalescing
+ * </pre>
+ */
+@Slf4j
+@Component
+public class RequestCoalescingGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RequestCoalescingGatewayFilterFactory.Config> {
+
+    private static final String RESULT_LEADER = "leader";
+    private static final String RESULT_FOLLOWER = "follower";
+    private static final String RESULT_FALLBACK = "fallback";
+    private static final String RESULT_BYPASS = "bypass";
+
+    private static final List<String> UNCOALESCABLE_HEADERS = List.of(
+            HttpHeaders.RANGE,
+            HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.IF_MODIFIED_SINCE,
+            HttpHeaders.IF_MATCH,
+            HttpHeaders.IF_UNMODIFIED_SINCE);
+
+    private final RequestCoalescingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public RequestCoalescingGatewayFilterFactory(RequestCoalescingProperties properties, MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("gateway.request.coalescing.inflight", inFlight, Map::size)
+                .description("Запросы к upstream, к которым могут присоединиться одинаковые запросы")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        // Фильтр должен стоять до NettyWriteResponseFilter, чтобы перехватить запись тела ответа
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            String routeId = route != null ? route.getId() : "none";
+
+            if (request.getMethod() != HttpMethod.GET || !coalescable(request.getHeaders())) {
+                count(routeId, RESULT_BYPASS);
+                return chain.filter(exchange);
+            }
+            return exchange.getPrincipal()
+                    .map(Principal::getName)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(principal -> coalesce(exchange, chain, routeId,
+                            key(request, routeId, principal.orElse(null)), principal.isEmpty()));
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private Mono<Void> coalesce(ServerWebExchange exchange, GatewayFilterChain chain,
+                                String routeId, String key, boolean anonymous) {
+        InFlight created = new InFlight(key, anonymous);
+        InFlight existing = inFlight.putIfAbsent(key, created);
+        if (existing == null) {
+            count(routeId, RESULT_LEADER);
+            return chain.filter(exchange.mutate().response(new LeaderResponse(exchange.getResponse(), created)).build())
+                    .doOnError(created::fail)
+                    .doFinally(signal -> created.release());
+        }
+        Follower follower = new Follower();
+        if (!existing.join(follower)) {
+            // Первый запрос уже начал ответ
+            count(routeId, RESULT_BYPASS);
+            return chain.filter(exchange);
+        }
+        return follower.head.asMono()
+                .timeout(properties.getWaitTimeout(), Mono.defer(() -> follower.abandon()
+                        ? Mono.just(SharedHead.FALLBACK)
+                        : follower.head.asMono()))
+                .flatMap(head -> {
+                    if (head == SharedHead.FALLBACK) {
+                        count(routeId, RESULT_FALLBACK);
+                        return chain.filter(exchange);
+                    }
+                    count(routeId, RESULT_FOLLOWER);
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.setStatusCode(head.status());
+                    response.getHeaders().putAll(head.headers());
+                    return response.writeWith(follower.body());
+                })
+                .doOnCancel(follower::cancel);
+    }
+
+    private static boolean coalescable(HttpHeaders headers) {
+        for (String header : UNCOALESCABLE_HEADERS) {
+            if (headers.containsKey(header)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String key(ServerHttpRequest request, String routeId, String principal) {
+        URI uri = request.getURI();
+        StringBuilder key = new StringBuilder(routeId).append(' ').append(uri.getRawPath());
+        if (uri.getRawQuery() != null) {
+            key.append('?').append(uri.getRawQuery());
+        }
+        for (String header : properties.getKeyHeaders()) {
+            List<String> values = request.getHeaders().get(header);
+            key.append('\n').append(header).append(':');
+            if (values != null) {
+                key.append(String.join(",", values));
+            }
+        }
+        return key.append('\n').append(principal != null ? "principal:" + principal : "anonymous").toString();
+    }
+
+    private boolean shareable(HttpStatusCode status, HttpHeaders headers, boolean anonymous) {
+        if (status == null || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return false;
+        }
+        if (anonymous && CacheControlDirectives.of(headers).isPrivate()) {
+            return false;
+        }
+        // 304 отвечает на валидаторы конкретного клиента
+        if (status.value() == HttpStatus.NOT_MODIFIED.value()) {
+            return false;
+        }
+        if (status.value() == HttpStatus.NO_CONTENT.value()) {
+            return true;
+        }
+        long length = headers.getContentLength();
+        return length >= 0 && length <= properties.getMaxBodySize().toBytes();
+    }
+
+    private void count(String routeId, String result) {
+        counters.computeIfAbsent(routeId + ':' + result, name -> Counter.builder("gateway.request.coalescing")
+                        .description("GET-запросы маршрутов с объединением по результату")
+                        .tag("route", routeId)
+                        .tag("result", result)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    /**
+     * Копия буфера с общим содержимым и собственными позициями чтения; буфер Netty удерживается,
+     * пока копию не запишет ожидающий запрос.
+     */
+    private static DataBuffer share(DataBuffer buffer) {
+        if (buffer instanceof NettyDataBuffer nettyBuffer) {
+            return nettyBuffer.factory().wrap(nettyBuffer.getNativeBuffer().retainedDuplicate());
+        }
+        int length = buffer.readableByteCount();
+        byte[] bytes = new byte[length];
+        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(bytes), 0, length);
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    /**
+     * Запрос к upstream и присоединившиеся к нему запросы. Список закрывается, когда начинается ответ
+     * или запрос завершается без ответа; после этого новые запросы к нему не присоединяются.
+     */
+    private final class InFlight {
+
+        private final String key;
+        private final boolean anonymous;
+        private List<Follower> followers = new ArrayList<>();
+
+        InFlight(String key, boolean anonymous) {
+            this.key = key;
+            this.anonymous = anonymous;
+        }
+
+        synchronized boolean join(Follower follower) {
+            if (followers == null) {
+                return false;
+            }
+            followers.add(follower);
+            return true;
+        }
+
+        List<Follower> seal() {
+            List<Follower> sealed;
+            synchronized (this) {
+                sealed = followers;
+                followers = null;
+            }
+            if (sealed == null) {
+                return List.of();
+            }
+            inFlight.remove(key, this);
+            return sealed;
+        }
+
+        void fail(Throwable error) {
+            seal().forEach(follower -> follower.fail(error));
+        }
+
+        void release() {
+            seal().forEach(Follower::fallback);
+        }
+    }
+
+    /**
+     * Ответ первого запроса: при начале записи тела раздает заголовки и буферы присоединившимся запросам.
+     */
+    private class LeaderResponse extends ServerHttpResponseDecorator {
+
+        private final InFlight entry;
+
+        LeaderResponse(ServerHttpResponse delegate, InFlight entry) {
+            super(delegate);
+            this.entry = entry;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            List<Follower> followers = entry.seal();
+            if (followers.isEmpty()) {
+                return super.writeWith(body);
+            }
+            if (!shareable(getStatusCode(), getHeaders(), entry.anonymous)) {
+                followers.forEach(Follower::fallback);
+                return super.writeWith(body);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(getHeaders());
+            SharedHead head = new SharedHead(getStatusCode(), HttpHeaders.readOnlyHttpHeaders(headers));
+            List<Follower> started = followers.stream()
+                    .filter(follower -> follower.start(head))
+                    .toList();
+            return super.writeWith(Flux.from(body)
+                    .doOnNext(buffer -> started.forEach(follower -> follower.next(buffer)))
+                    .doOnComplete(() -> started.forEach(Follower::complete))
+                    .doOnError(error -> started.forEach(follower -> follower.fail(error)))
+                    .doOnCancel(() -> started.forEach(follower -> follower.fail(
+                            new IllegalStateException("Запрос, раздающий ответ, отменен до конца тела")))));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // Потоковые ответы не раздаются
+            entry.seal().forEach(Follower::fallback);
+            return super.writeAndFlushWith(body);
+        }
+    }
+
+    /**
+     * Присоединившийся запрос: ждет заголовков ответа, затем получает буферы тела.
+     */
+    private static final class Follower {
+
+        private static final int WAITING = 0;
+        private static final int STARTED = 1;
+        private static final int ABANDONED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final Sinks.One<SharedHead> head = Sinks.one();
+        private final Sinks.Many<DataBuffer> body = Sinks.many().unicast().onBackpressureBuffer();
+
+        boolean start(SharedHead sharedHead) {
+            if (!state.compareAndSet(WAITING, STARTED)) {
+                return false;
+            }
+            head.tryEmitValue(sharedHead);
+            return true;
+        }
+
+        void fallback() {
+            if (state.compareAndSet(WAITING, ABANDONED)) {
+                head.tryEmitValue(SharedHead.FALLBACK);
+            }
+        }
+
+        /**
+         * Ожидание истекло; {@code false}, если ответ уже начал раздаваться.
+         */
+        boolean abandon() {
+            return state.compareAndSet(WAITING, ABANDONED);
+        }
+
+        void next(DataBuffer buffer) {
+            DataBuffer shared = share(buffer);
+            if (body.tryEmitNext(shared).isFailure()) {
+                DataBufferUtils.release(shared);
+            }
+        }
+
+        void complete() {
+            body.tryEmitComplete();
+        }
+
+        void fail(Throwable error) {
+            if (state.compareAndSet(WAITING, ABANDONED)) {
+                head.tryEmitError(error);
+            } else if (state.get() == STARTED) {
+                body.tryEmitError(error);
+            }
+        }
+
+        Flux<DataBuffer> body() {
+            return body.asFlux().doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        }
+
+        // Клиент ушел: если тело уже раздается, а записать его некому, буферы освобождаются сразу
+        void cancel() {
+            if (!state.compareAndSet(WAITING, ABANDONED)) {
+                body.asFlux().subscribe(DataBufferUtils::release, error -> {
+                });
+            }
+        }
+    }
+
+    private record SharedHead(HttpStatusCode status, HttpHeaders headers) {
+        static final SharedHead FALLBACK = new SharedHead(null, null);
+    }
+
+    public static class Config {
+        // Параметры общие для всех маршрутов, см. RequestCoalescingProperties
+    }
+}
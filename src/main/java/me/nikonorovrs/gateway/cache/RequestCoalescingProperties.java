@@ -0,0 +1,39 @@
+package me.nikonorovrs.gateway.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Объединение одинаковых GET-запросов к upstream фильтром {@code RequestCoalescing}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.request-coalescing")
+public class RequestCoalescingProperties {
+
+    /**
+     * Ответы с большим или неизвестным Content-Length не раздаются: ожидающие запросы идут в upstream сами.
+     */
+    private DataSize maxBodySize = DataSize.ofMegabytes(1);
+
+    /**
+     * Сколько ожидающий запрос ждет заголовков ответа первого, прежде чем пойти в upstream сам;
+     * на маршруте, где upstream отвечает дольше, эта задержка добавляется к каждому повторному запросу.
+     */
+    private Duration waitTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Заголовки запроса, от которых может зависеть ответ; запросы с разными значениями не объединяются.
+     */
+    private List<String> keyHeaders = new ArrayList<>(List.of(
+            HttpHeaders.ACCEPT,
+            HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.ACCEPT_LANGUAGE));
+}
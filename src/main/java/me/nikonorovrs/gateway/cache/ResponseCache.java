@@ -0,0 +1,120 @@
+package me.nikonorovrs.gateway.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Двухуровневое хранилище ответов: локальный Caffeine с вытеснением по размеру в байтах
+ * и необязательный общий уровень в Redis.
+ * <p>
+ * Также ведет реестр выполняющихся запросов к upstream, чтобы одновременные промахи по одному ключу
+ * ждали первый запрос, а не шли в upstream каждый.
+ */
+@Slf4j
+public class ResponseCache {
+
+    private final Cache<String, CachedResponse> local;
+    private final ReactiveRedisTemplate<String, CachedResponse> redisTemplate;
+    private final String keyPrefix;
+    private final long staleRetentionMillis;
+    private final Map<String, Sinks.One<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public ResponseCache(ResponseCacheProperties properties, ReactiveRedisTemplate<String, CachedResponse> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = properties.getRedis().getKeyPrefix();
+        this.staleRetentionMillis = properties.getStaleRetention().toMillis();
+        this.local = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toBytes())
+                .weigher((String key, CachedResponse response) -> response.weight())
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse response, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(retentionMillis(response));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse response, long currentTime, long currentDuration) {
+                        return TimeUnit.MILLISECONDS.toNanos(retentionMillis(response));
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse response, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    public Cache<String, CachedResponse> local() {
+        return local;
+    }
+
+    public Mono<CachedResponse> get(String key) {
+        CachedResponse response = local.getIfPresent(key);
+        if (response != null) {
+            return Mono.just(response);
+        }
+        if (redisTemplate == null) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().get(keyPrefix + key)
+                .doOnNext(loaded -> local.put(key, loaded))
+                .onErrorResume(e -> {
+                    // Недоступность общего уровня не должна ломать проксирование
+                    log.warn("Не удалось прочитать ответ {} из Redis: {}", key, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public void put(String key, CachedResponse response) {
+        long retention = retentionMillis(response);
+        if (retention <= 0) {
+            return;
+        }
+        local.put(key, response);
+        if (redisTemplate != null) {
+            redisTemplate.opsForValue().set(keyPrefix + key, response, Duration.ofMillis(retention))
+                    .subscribe(null, e -> log.warn("Не удалось сохранить ответ {} в Redis: {}", key, e.getMessage()));
+        }
+    }
+
+    /**
+     * Регистрирует запрос к upstream по ключу.
+     *
+     * @return {@code null}, если вызывающий стал ведущим и обязан вызвать {@link #complete},
+     * иначе ответ ведущего запроса (пустой, если ответ не попал в кэш)
+     */
+    public Mono<CachedResponse> join(String key, Sinks.One<CachedResponse> leader) {
+        Sinks.One<CachedResponse> existing = inFlight.putIfAbsent(key, leader);
+        return existing == null ? null : existing.asMono();
+    }
+
+    /**
+     * Завершает запрос ведущего и передает ожидающим сохраненный ответ или пустой результат.
+     */
+    public void complete(String key, Sinks.One<CachedResponse> leader, CachedResponse response) {
+        inFlight.remove(key, leader);
+        if (response != null) {
+            leader.tryEmitValue(response);
+        } else {
+            leader.tryEmitEmpty();
+        }
+    }
+
+    // Ответ с валидаторами хранится дольше срока свежести, чтобы его можно было проверить условным запросом
+    private long retentionMillis(CachedResponse response) {
+        long remaining = response.storedAt() + response.freshFor() - System.currentTimeMillis();
+        return Math.max(remaining, 0) + (response.hasValidators() ? staleRetentionMillis : 0);
+    }
+}
@@ -0,0 +1,411 @@
+package me.nikonorovrs.gateway.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Кэширование ответов upstream на GET-запросы маршрута.
+ * <p>
+ * Учитывает Cache-Control, Expires, ETag/Last-Modified и Vary ответа. Устаревший ответ с валидаторами
+ * проверяется условным запросом к upstream, а одновременные промахи по одному ключу ждут первый запрос.
+ * С {@code partition: principal} ответы хранятся отдельно для каждого пользователя и могут быть private.
+ * Без разделения ответ на запрос пользователя сохраняется, только если upstream явно разрешил
+ * общий кэш директивой public или s-maxage.
+ * <pre>
+ * filters:
+ *   - name: ResponseCache
+ *     args:
+ *       ttl: 5m
+ *       partition: principal
+ * </pre>
+ */
+@Slf4j
+@Component
+public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    public static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private static final String RESULT_HIT = "hit";
+    private static final String RESULT_MISS = "miss";
+    private static final String RESULT_REVALIDATED = "revalidated";
+    private static final String RESULT_COLLAPSED = "collapsed";
+    private static final String RESULT_BYPASS = "bypass";
+
+    private final ResponseCache responseCache;
+    private final ResponseCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public ResponseCacheGatewayFilterFactory(ResponseCache responseCache,
+                                             ResponseCacheProperties properties,
+                                             MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.responseCache = responseCache;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("ttl", "partition");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        // Фильтр должен стоять до NettyWriteResponseFilter, чтобы перехватить запись тела ответа
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            String routeId = route != null ? route.getId() : "none";
+
+            CacheControlDirectives requestDirectives = CacheControlDirectives.of(request.getHeaders());
+            if (request.getMethod() != HttpMethod.GET || requestDirectives.noStore() || requestDirectives.noCache()) {
+                count(routeId, RESULT_BYPASS);
+                return chain.filter(exchange);
+            }
+
+            return cacheKey(exchange, routeId, config).flatMap(key -> {
+                if (key.isEmpty()) {
+                    count(routeId, RESULT_BYPASS);
+                    return chain.filter(exchange);
+                }
+                return responseCache.get(key.get().value())
+                        .filter(cached -> cached.matches(request.getHeaders()))
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(cached -> {
+                            if (cached.isPresent() && cached.get().isFresh(System.currentTimeMillis())) {
+                                count(routeId, RESULT_HIT);
+                                return serve(exchange, cached.get(), RESULT_HIT);
+                            }
+                            return fetch(exchange, chain, config, routeId, key.get(), cached.orElse(null));
+                        });
+            });
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private Mono<Optional<CacheKey>> cacheKey(ServerWebExchange exchange, String routeId, Config config) {
+        String resource = routeId + ":" + exchange.getRequest().getURI().getRawPath()
+                + (exchange.getRequest().getURI().getRawQuery() != null ? "?" + exchange.getRequest().getURI().getRawQuery() : "");
+        if (config.getPartition() == Partition.NONE) {
+            // TokenRelay добавляет Authorization позже, поэтому запрос пользователя определяется по principal
+            boolean authorization = exchange.getRequest().getHeaders().containsKey(HttpHeaders.AUTHORIZATION);
+            return exchange.getPrincipal()
+                    .hasElement()
+                    .map(principal -> Optional.of(new CacheKey(resource, principal || authorization)));
+        }
+        // Без пользователя ответ не с кем связать, поэтому запрос идет мимо кэша
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .map(principal -> Optional.of(new CacheKey(resource + "#" + principal, false)))
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, Config config,
+                             String routeId, CacheKey key, CachedResponse stale) {
+        Sinks.One<CachedResponse> leader = Sinks.one();
+        Mono<CachedResponse> inFlight = responseCache.join(key.value(), leader);
+        if (inFlight == null) {
+            return forward(exchange, chain, config, routeId, key, stale, leader);
+        }
+        return inFlight
+                .timeout(properties.getCollapseTimeout(), Mono.empty())
+                .filter(response -> response.matches(exchange.getRequest().getHeaders()))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(response -> {
+                    if (response.isPresent()) {
+                        count(routeId, RESULT_COLLAPSED);
+                        return serve(exchange, response.get(), RESULT_COLLAPSED);
+                    }
+                    return forward(exchange, chain, config, routeId, key, stale, null);
+                });
+    }
+
+    private Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, Config config,
+                               String routeId, CacheKey key, CachedResponse stale, Sinks.One<CachedResponse> leader) {
+        ServerHttpRequest request = exchange.getRequest();
+        boolean conditional = stale != null && stale.hasValidators();
+        if (conditional) {
+            request = request.mutate()
+                    .headers(headers -> {
+                        headers.remove(HttpHeaders.IF_NONE_MATCH);
+                        headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+                        if (stale.etag() != null) {
+                            headers.set(HttpHeaders.IF_NONE_MATCH, stale.etag());
+                        }
+                        if (stale.lastModified() != null) {
+                            headers.set(HttpHeaders.IF_MODIFIED_SINCE, stale.lastModified());
+                        }
+                    })
+                    .build();
+        }
+        CachingResponse response = new CachingResponse(exchange, config, routeId, key, conditional ? stale : null);
+        return chain.filter(exchange.mutate().request(request).response(response).build())
+                .doFinally(signal -> {
+                    if (leader != null) {
+                        responseCache.complete(key.value(), leader, response.stored);
+                    }
+                });
+    }
+
+    private Mono<Void> serve(ServerWebExchange exchange, CachedResponse cached, String result) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        cached.headers().forEach(headers::put);
+        headers.set(HttpHeaders.AGE, Long.toString(cached.ageSeconds(System.currentTimeMillis())));
+        headers.set(CACHE_STATUS_HEADER, result.toUpperCase());
+
+        if (notModified(exchange.getRequest().getHeaders(), cached)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatusCode.valueOf(cached.status()));
+        headers.setContentLength(cached.body().length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.body())));
+    }
+
+    private static boolean notModified(HttpHeaders requestHeaders, CachedResponse cached) {
+        String etag = cached.etag();
+        if (etag == null) {
+            return false;
+        }
+        for (String value : requestHeaders.getIfNoneMatch()) {
+            if (value.equals("*") || value.equals(etag) || weak(value).equals(weak(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Срок свежести ответа в мс или -1, если ответ нельзя сохранить.
+     */
+    private long freshness(HttpStatusCode status, HttpHeaders headers, Config config, boolean authenticated) {
+        if (status == null || status.value() != HttpStatus.OK.value() || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return -1;
+        }
+        CacheControlDirectives directives = CacheControlDirectives.of(headers);
+        if (directives.noStore()
+                || directives.isPrivate() && config.getPartition() == Partition.NONE
+                || headers.getVary().contains("*")) {
+            return -1;
+        }
+        // Общий кэш не хранит ответ на запрос пользователя без явного разрешения upstream (RFC 9111, 3.5)
+        if (authenticated && config.getPartition() == Partition.NONE && !directives.isPublic() && directives.sMaxAge() < 0) {
+            return -1;
+        }
+
+        long freshFor;
+        if (directives.noCache()) {
+            freshFor = 0;
+        } else if (directives.sMaxAge() >= 0 && config.getPartition() == Partition.NONE) {
+            freshFor = directives.sMaxAge() * 1000;
+        } else if (directives.maxAge() >= 0) {
+            freshFor = directives.maxAge() * 1000;
+        } else if (headers.getExpires() >= 0) {
+            long date = headers.getDate();
+            freshFor = headers.getExpires() - (date >= 0 ? date : System.currentTimeMillis());
+        } else if (config.getTtl() != null) {
+            freshFor = config.getTtl().toMillis();
+        } else {
+            freshFor = 0;
+        }
+        freshFor = Math.max(freshFor, 0);
+        boolean validators = headers.getETag() != null || headers.getLastModified() >= 0;
+        return freshFor > 0 || validators ? freshFor : -1;
+    }
+
+    private void count(String routeId, String result) {
+        counters.computeIfAbsent(routeId + ':' + result, name -> Counter.builder("gateway.response.cache.requests")
+                        .description("Запросы к маршрутам с кэшем ответов по результату")
+                        .tag("route", routeId)
+                        .tag("result", result)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    /**
+     * Перехватывает ответ upstream: сохраняет тело, не задерживая его передачу клиенту,
+     * и подменяет 304 на условный запрос сохраненным ответом.
+     */
+    private class CachingResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+        private final Config config;
+        private final String routeId;
+        private final CacheKey key;
+        private final CachedResponse stale;
+
+        private volatile CachedResponse stored;
+
+        CachingResponse(ServerWebExchange exchange, Config config, String routeId, CacheKey key, CachedResponse stale) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.config = config;
+            this.routeId = routeId;
+            this.key = key;
+            this.stale = stale;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            long now = System.currentTimeMillis();
+
+            if (stale != null && status != null && status.value() == HttpStatus.NOT_MODIFIED.value()) {
+                long freshFor = freshness(HttpStatus.OK, mergedHeaders(), config, key.authenticated());
+                CachedResponse revalidated = stale.revalidated(getHeaders(), now, Math.max(freshFor, 0));
+                // Если 304 запретил хранение, сохраненный ответ отдается последний раз
+                if (freshFor >= 0) {
+                    responseCache.put(key.value(), revalidated);
+                    stored = revalidated;
+                }
+                count(routeId, RESULT_REVALIDATED);
+                getHeaders().clear();
+                return Flux.from(body).doOnNext(DataBufferUtils::release)
+                        .then(serve(exchange, revalidated, RESULT_REVALIDATED));
+            }
+
+            count(routeId, RESULT_MISS);
+            getHeaders().set(CACHE_STATUS_HEADER, RESULT_MISS.toUpperCase());
+            long freshFor = freshness(status, getHeaders(), config, key.authenticated());
+            if (freshFor < 0) {
+                return super.writeWith(body);
+            }
+
+            HttpHeaders headers = HttpHeaders.readOnlyHttpHeaders(getHeaders());
+            BodyCapture capture = new BodyCapture((int) properties.getMaxEntrySize().toBytes());
+            return super.writeWith(Flux.from(body)
+                    .doOnNext(capture::append)
+                    .doOnComplete(() -> {
+                        byte[] bytes = capture.bytes();
+                        if (bytes == null) {
+                            return;
+                        }
+                        CachedResponse response = new CachedResponse(status.value(),
+                                CachedResponse.storedHeaders(headers), bytes, now, freshFor,
+                                CachedResponse.varyValues(headers, exchange.getRequest().getHeaders()));
+                        responseCache.put(key.value(), response);
+                        stored = response;
+                    }));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // Потоковые ответы не кэшируются
+            return super.writeAndFlushWith(body);
+        }
+
+        // Для расчета свежести после 304 берутся сохраненные заголовки, обновленные заголовками 304
+        private HttpHeaders mergedHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            stale.headers().forEach(headers::put);
+            CachedResponse.storedHeaders(getHeaders()).forEach(headers::put);
+            return headers;
+        }
+    }
+
+    /**
+     * Копия тела ответа, ограниченная по размеру: после превышения копирование прекращается.
+     */
+    private static class BodyCapture {
+
+        private final int limit;
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        BodyCapture(int limit) {
+            this.limit = limit;
+        }
+
+        void append(DataBuffer buffer) {
+            if (bytes == null) {
+                return;
+            }
+            int length = buffer.readableByteCount();
+            if (bytes.size() + length > limit) {
+                bytes = null;
+                return;
+            }
+            byte[] chunk = new byte[length];
+            buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(chunk), 0, length);
+            bytes.write(chunk, 0, length);
+        }
+
+        byte[] bytes() {
+            return bytes != null ? bytes.toByteArray() : null;
+        }
+    }
+
+    /**
+     * Ключ ответа в кэше.
+     *
+     * @param value         ключ ресурса с учетом разделения
+     * @param authenticated запрос пользователя к общему для всех ключу
+     */
+    private record CacheKey(String value, boolean authenticated) {
+    }
+
+    public enum Partition {
+        /**
+         * Общий для всех пользователей ответ: private-ответы не сохраняются, а ответы на запросы
+         * пользователя — только с public или s-maxage.
+         */
+        NONE,
+        /**
+         * Отдельный ответ для каждого пользователя.
+         */
+        PRINCIPAL
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        /**
+         * Срок свежести для ответов без max-age и Expires; без него такие ответы сохраняются только с валидаторами.
+         */
+        private Duration ttl;
+
+        private Partition partition = Partition.NONE;
+    }
+}
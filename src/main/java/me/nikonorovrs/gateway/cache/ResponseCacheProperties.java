@@ -0,0 +1,52 @@
+package me.nikonorovrs.gateway.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Общие настройки кэша ответов upstream, кэширование включается на маршруте фильтром
+ * {@link ResponseCacheGatewayFilterFactory}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.response-cache")
+public class ResponseCacheProperties {
+
+    /**
+     * Суммарный размер тел и заголовков в локальном кэше узла.
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Ответы больше этого размера передаются клиенту без кэширования.
+     */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+
+    /**
+     * Сколько хранится устаревший ответ с ETag или Last-Modified для условного запроса к upstream.
+     */
+    private Duration staleRetention = Duration.ofMinutes(10);
+
+    /**
+     * Сколько одинаковые запросы ждут ответа на первый из них, прежде чем пойти в upstream самостоятельно.
+     */
+    private Duration collapseTimeout = Duration.ofSeconds(5);
+
+    private final Redis redis = new Redis();
+
+    @Getter
+    @Setter
+    public static class Redis {
+
+        /**
+         * Общий для всех узлов уровень кэша в Redis.
+         */
+        private boolean enabled = false;
+
+        private String keyPrefix = "gateway-response-cache:";
+    }
+}
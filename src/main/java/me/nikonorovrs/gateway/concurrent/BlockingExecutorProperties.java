@@ -0,0 +1,31 @@
+package me.nikonorovrs.gateway.concurrent;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Исполнитель для работы, которая может блокировать поток и не должна выполняться на event loop.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.blocking-executor")
+public class BlockingExecutorProperties {
+
+    /**
+     * Сколько задач выполняется одновременно, каждая в своем виртуальном потоке.
+     */
+    private int maxConcurrency = 32;
+
+    /**
+     * Сколько задач может ждать свободного места; сверх этого задачи отклоняются.
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * Сессии и авторизованные клиенты из Redis больше этого размера десериализуются на исполнителе,
+     * меньшие - в потоке ответа.
+     */
+    private DataSize offloadThreshold = DataSize.ofKilobytes(16);
+}
@@ -0,0 +1,141 @@
+package me.nikonorovrs.gateway.concurrent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Исполнитель на виртуальных потоках с ограничением параллельности и очереди.
+ * <p>
+ * Виртуальные потоки дешевы, но ресурсы за ними (соединения, память под десериализацию) - нет, поэтому
+ * одновременно выполняется не больше {@code maxConcurrency} задач, остальные ждут в очереди. Поток,
+ * закончивший задачу, забирает следующую из очереди. При заполненной очереди задача отклоняется
+ * {@link RejectedExecutionException}, и вызывающий код сам решает, выполнить ее на месте или вернуть ошибку.
+ */
+@Slf4j
+public class BoundedVirtualThreadExecutor implements Executor {
+
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrency;
+    private final int queueCapacity;
+    private final Semaphore permits;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Counter completedCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+
+    private volatile boolean shutdown;
+
+    public BoundedVirtualThreadExecutor(String name, int maxConcurrency, int queueCapacity, MeterRegistry meterRegistry) {
+        this.threadFactory = Thread.ofVirtual().name(name + "-", 0).factory();
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.permits = new Semaphore(maxConcurrency);
+
+        this.completedCounter = taskCounter(meterRegistry, name, "completed");
+        this.failedCounter = taskCounter(meterRegistry, name, "failed");
+        this.rejectedCounter = taskCounter(meterRegistry, name, "rejected");
+        Gauge.builder("gateway.executor.queue", queued, AtomicInteger::get)
+                .description("Задачи, ожидающие свободного места в исполнителе")
+                .tag("executor", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.executor.active", this, BoundedVirtualThreadExecutor::active)
+                .description("Задачи, выполняющиеся в исполнителе")
+                .tag("executor", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown) {
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("Исполнитель остановлен");
+        }
+        if (permits.tryAcquire()) {
+            threadFactory.newThread(() -> work(task)).start();
+            return;
+        }
+        // Место в очереди резервируется без превышения емкости, иначе queued() на мгновение показывал бы больше
+        if (queued.getAndUpdate(count -> count < queueCapacity ? count + 1 : count) >= queueCapacity) {
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("Очередь исполнителя заполнена: " + queueCapacity);
+        }
+        queue.offer(task);
+        // Все потоки могли освободиться между проверкой разрешений и постановкой в очередь
+        if (permits.tryAcquire()) {
+            Runnable next = poll();
+            if (next != null) {
+                threadFactory.newThread(() -> work(next)).start();
+            } else {
+                permits.release();
+            }
+        }
+    }
+
+    private void work(Runnable first) {
+        Runnable task = first;
+        while (task != null) {
+            try {
+                task.run();
+                completedCounter.increment();
+            } catch (RuntimeException | Error e) {
+                failedCounter.increment();
+                log.warn("Ошибка задачи исполнителя: {}", e.toString(), e);
+            }
+            task = poll();
+            if (task == null) {
+                permits.release();
+                // Задача могла встать в очередь после опроса, но до освобождения разрешения
+                if (queue.isEmpty() || !permits.tryAcquire()) {
+                    return;
+                }
+                task = poll();
+                if (task == null) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    private Runnable poll() {
+        Runnable task = queue.poll();
+        if (task != null) {
+            queued.decrementAndGet();
+        }
+        return task;
+    }
+
+    /**
+     * Перестает принимать задачи; уже поставленные в очередь выполняются.
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    public int active() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    private static Counter taskCounter(MeterRegistry meterRegistry, String name, String outcome) {
+        return Counter.builder("gateway.executor.tasks")
+                .description("Задачи исполнителя по результату")
+                .tag("executor", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,29 @@
+package me.nikonorovrs.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import me.nikonorovrs.gateway.concurrent.BlockingExecutorProperties;
+import me.nikonorovrs.gateway.concurrent.BoundedVirtualThreadExecutor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Явная модель исполнения вместо общего ForkJoinPool: неблокирующие продолжения выполняются в потоке,
+ * который их завершил, а потенциально блокирующая работа - на ограниченном исполнителе виртуальных потоков.
+ */
+@Configuration
+public class BlockingExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedVirtualThreadExecutor blockingExecutor(BlockingExecutorProperties properties,
+                                                         MeterRegistry meterRegistry) {
+        return new BoundedVirtualThreadExecutor("blocking", properties.getMaxConcurrency(),
+                properties.getQueueCapacity(), meterRegistry);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler(BoundedVirtualThreadExecutor blockingExecutor) {
+        return Schedulers.fromExecutor(blockingExecutor);
+    }
+}
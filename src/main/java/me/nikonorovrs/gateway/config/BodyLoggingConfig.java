@@ -0,0 +1,30 @@
+package me.nikonorovrs.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import me.nikonorovrs.gateway.filter.BodyLoggingFilter;
+import me.nikonorovrs.gateway.filter.BodyLoggingProperties;
+import me.nikonorovrs.gateway.logging.AsyncLogbookWriter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.zalando.logbook.Logbook;
+
+/**
+ * Журналирование тел обменов через Logbook; форматирование и вывод настраиваются стандартными logbook.*,
+ * записи пишутся логгером org.zalando.logbook.Logbook на уровне TRACE.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.logging.body.enabled", havingValue = "true")
+public class BodyLoggingConfig {
+
+    @Bean
+    public AsyncLogbookWriter asyncLogbookWriter(BodyLoggingProperties properties, MeterRegistry meterRegistry) {
+        return new AsyncLogbookWriter(properties.getQueueCapacity(), meterRegistry);
+    }
+
+    @Bean
+    public BodyLoggingFilter bodyLoggingFilter(Logbook logbook, AsyncLogbookWriter asyncLogbookWriter,
+                                               BodyLoggingProperties properties) {
+        return new BodyLoggingFilter(logbook, asyncLogbookWriter, properties);
+    }
+}
@@ -0,0 +1,43 @@
+package me.nikonorovrs.gateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import me.nikonorovrs.gateway.http.Http2Properties;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.HttpProtocol;
+
+/**
+ * Настройки HTTP/2 входящего сервера и клиента маршрутов.
+ */
+@Slf4j
+@Configuration
+public class Http2Config {
+
+    @Bean
+    public NettyServerCustomizer http2ServerCustomizer(ServerProperties serverProperties, Http2Properties properties) {
+        return httpServer -> {
+            if (serverProperties.getHttp2() == null || !serverProperties.getHttp2().isEnabled()) {
+                return httpServer;
+            }
+            return httpServer.http2Settings(properties.getServer()::applyTo);
+        };
+    }
+
+    @Bean
+    public HttpClientCustomizer http2HttpClientCustomizer(ServerProperties serverProperties, Http2Properties properties) {
+        return httpClient -> {
+            Http2Properties.Upstream upstream = properties.getUpstream();
+            if (!upstream.getProtocols().isEmpty()) {
+                log.info("Протоколы клиента маршрутов: {}", upstream.getProtocols());
+                httpClient = httpClient.protocol(upstream.getProtocols().toArray(HttpProtocol[]::new));
+            }
+            if (properties.upstreamHttp2(serverProperties)) {
+                httpClient = httpClient.http2Settings(upstream::applyTo);
+            }
+            return httpClient;
+        };
+    }
+}
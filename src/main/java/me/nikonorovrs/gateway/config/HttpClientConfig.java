@@ -0,0 +1,53 @@
+package me.nikonorovrs.gateway.config;
+
+import me.nikonorovrs.gateway.http.Http2Properties;
+import me.nikonorovrs.gateway.http.HttpClientPoolProperties;
+import me.nikonorovrs.gateway.http.UpstreamConnectionPools;
+import me.nikonorovrs.gateway.http.UpstreamHttpClientFactory;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+
+/**
+ * HTTP-клиенты шлюза: клиент маршрутов с пулами отдельных upstream вместо стандартного из Spring Cloud Gateway
+ * и общий {@link WebClient} для собственных обращений шлюза к backend.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean
+    public HttpClientFactory gatewayHttpClientFactory(HttpClientProperties properties,
+                                                      ServerProperties serverProperties,
+                                                      List<HttpClientCustomizer> customizers,
+                                                      HttpClientSslConfigurer sslConfigurer,
+                                                      HttpClientPoolProperties poolProperties,
+                                                      Http2Properties http2Properties) {
+        return new UpstreamHttpClientFactory(properties, serverProperties, sslConfigurer, customizers,
+                poolProperties, http2Properties);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider webClientConnectionProvider(HttpClientProperties properties,
+                                                          HttpClientPoolProperties poolProperties) {
+        return UpstreamConnectionPools.configure(ConnectionProvider.builder("web-client"),
+                        poolProperties, properties.getPool(), false)
+                .build();
+    }
+
+    @Bean
+    public WebClient webClient(ConnectionProvider webClientConnectionProvider) {
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(webClientConnectionProvider)))
+                .build();
+    }
+}
@@ -1,15 +1,34 @@
 package me.nikonorovrs.gateway.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import me.nikonorovrs.gateway.concurrent.BlockingExecutorProperties;
+import me.nikonorovrs.gateway.concurrent.BoundedVirtualThreadExecutor;
+import me.nikonorovrs.gateway.redis.RedisReplicaReads;
+import me.nikonorovrs.gateway.redis.RedisTopologyProperties;
+import me.nikonorovrs.gateway.security.AuthorizedClientTtlPolicy;
+import me.nikonorovrs.gateway.security.BatchReactiveOAuth2AuthorizedClientService;
+import me.nikonorovrs.gateway.security.NearCacheReactiveOAuth2AuthorizedClientService;
+import me.nikonorovrs.gateway.security.OAuth2AuthorizedClientRedisSerializer;
 import me.nikonorovrs.gateway.security.RedisReactiveOAuth2AuthorizedClientService;
+import me.nikonorovrs.gateway.security.TokenKeyReclaimer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
-import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 
 @Configuration
@@ -17,29 +36,128 @@ public class OAuth2TokenRedisConfig {
 
     private final String tokenNamespace;
 
+    @Value("${spring.oauth2.redis.near-cache.enabled:true}")
+    private boolean nearCacheEnabled;
+
+    @Value("${spring.oauth2.redis.near-cache.maximum-size:10000}")
+    private long nearCacheMaximumSize;
+
+    @Value("${spring.oauth2.redis.near-cache.ttl:PT5M}")
+    private Duration nearCacheTtl;
+
+    @Value("${spring.refresh-lock.buffer:60}")
+    private long refreshBuffer;
+
+    @Value("${spring.oauth2.redis.ttl.grace:PT5M}")
+    private Duration ttlGrace;
+
+    @Value("${spring.oauth2.redis.ttl.refresh-token-lifetime:PT10H}")
+    private Duration refreshTokenLifetime;
+
     public OAuth2TokenRedisConfig(@Value("${spring.oauth2.redis.namespace}") String tokenNamespace) {
         this.tokenNamespace = tokenNamespace;
     }
 
     @Bean
-    public ReactiveRedisTemplate<String, Object> tokenRedisTemplate(ReactiveRedisConnectionFactory factory) {
-        StringRedisSerializer keySerializer = new StringRedisSerializer();
-        JdkSerializationRedisSerializer valueSerializer = new JdkSerializationRedisSerializer();
+    public OAuth2AuthorizedClientRedisSerializer authorizedClientRedisSerializer(
+            ReactiveClientRegistrationRepository clientRegistrationRepository) {
+        return new OAuth2AuthorizedClientRedisSerializer(clientRegistrationRepository);
+    }
 
-        RedisSerializationContext<String, Object> context = RedisSerializationContext
+    @Bean
+    public ReactiveRedisTemplate<String, Object> tokenRedisTemplate(
+            ReactiveRedisConnectionFactory factory,
+            OAuth2AuthorizedClientRedisSerializer valueSerializer) {
+        return new ReactiveRedisTemplate<>(factory, tokenSerializationContext(valueSerializer));
+    }
+
+    private static RedisSerializationContext<String, Object> tokenSerializationContext(
+            OAuth2AuthorizedClientRedisSerializer valueSerializer) {
+        StringRedisSerializer keySerializer = new StringRedisSerializer();
+        return RedisSerializationContext
                 .<String, Object>newSerializationContext(keySerializer)
                 .value(valueSerializer)
                 .hashKey(keySerializer)
                 .hashValue(valueSerializer)
                 .build();
+    }
 
-        return new ReactiveRedisTemplate<>(factory, context);
+    @Bean
+    public AuthorizedClientTtlPolicy authorizedClientTtlPolicy() {
+        return new AuthorizedClientTtlPolicy(ttlGrace, refreshTokenLifetime);
+    }
+
+    @Bean
+    public BatchReactiveOAuth2AuthorizedClientService authorizedClientService(
+            ReactiveRedisTemplate<String, Object> tokenRedisTemplate,
+            ReactiveStringRedisTemplate stringRedisTemplate,
+            ReactiveRedisMessageListenerContainer redisMessageListenerContainer,
+            ReactiveClientRegistrationRepository clientRegistrationRepository,
+            AuthorizedClientTtlPolicy authorizedClientTtlPolicy,
+            OAuth2AuthorizedClientRedisSerializer authorizedClientRedisSerializer,
+            RedisReplicaReads redisReplicaReads,
+            RedisTopologyProperties redisTopologyProperties,
+            BoundedVirtualThreadExecutor blockingExecutor,
+            Scheduler blockingScheduler,
+            BlockingExecutorProperties blockingExecutorProperties,
+            MeterRegistry meterRegistry) {
+        // Регистрации нужны для отзыва всех клиентов пользователя без сканирования ключей
+        List<String> clientRegistrationIds = new ArrayList<>();
+        if (clientRegistrationRepository instanceof Iterable<?> registrations) {
+            registrations.forEach(registration ->
+                    clientRegistrationIds.add(((ClientRegistration) registration).getRegistrationId()));
+        }
+        ReactiveRedisTemplate<String, Object> replicaTemplate = redisReplicaReads.isEnabled()
+                ? new ReactiveRedisTemplate<>(redisReplicaReads.connectionFactory(),
+                        tokenSerializationContext(authorizedClientRedisSerializer))
+                : null;
+        RedisReactiveOAuth2AuthorizedClientService redisService = new RedisReactiveOAuth2AuthorizedClientService(
+                tokenRedisTemplate,
+                replicaTemplate,
+                redisReplicaReads,
+                tokenNamespace + ":",
+                clientRegistrationIds,
+                authorizedClientTtlPolicy,
+                redisTopologyProperties.isHashTags(),
+                Duration.ofSeconds(refreshBuffer),
+                blockingScheduler,
+                blockingExecutorProperties.getOffloadThreshold().toBytes());
+        if (!nearCacheEnabled) {
+            return redisService;
+        }
+        return new NearCacheReactiveOAuth2AuthorizedClientService(
+                redisService,
+                stringRedisTemplate,
+                redisMessageListenerContainer,
+                tokenNamespace + ":invalidations",
+                nearCacheMaximumSize,
+                nearCacheTtl,
+                Duration.ofSeconds(refreshBuffer),
+                blockingExecutor,
+                meterRegistry);
     }
 
     @Bean
-    public ReactiveOAuth2AuthorizedClientService authorizedClientService(
-            ReactiveRedisTemplate<String, Object> tokenRedisTemplate) {
-        return new RedisReactiveOAuth2AuthorizedClientService(tokenRedisTemplate, tokenNamespace + ":");
+    @ConditionalOnProperty(name = "spring.oauth2.redis.reclaimer.enabled", havingValue = "true")
+    public TokenKeyReclaimer tokenKeyReclaimer(
+            ReactiveRedisConnectionFactory factory,
+            ReactiveStringRedisTemplate stringRedisTemplate,
+            OAuth2AuthorizedClientRedisSerializer authorizedClientRedisSerializer,
+            AuthorizedClientTtlPolicy authorizedClientTtlPolicy,
+            @Value("${spring.oauth2.redis.reclaimer.batch-size:200}") int batchSize,
+            @Value("${spring.oauth2.redis.reclaimer.pause:PT1S}") Duration pause,
+            @Value("${spring.oauth2.redis.reclaimer.pass-interval:PT1H}") Duration passInterval,
+            MeterRegistry meterRegistry) {
+        return new TokenKeyReclaimer(
+                stringRedisTemplate,
+                authorizedClientRedisSerializer,
+                authorizedClientTtlPolicy,
+                tokenNamespace + ":",
+                batchSize,
+                pause,
+                passInterval,
+                factory instanceof LettuceConnectionFactory lettuce && lettuce.isClusterAware(),
+                meterRegistry);
     }
 
 
@@ -0,0 +1,34 @@
+package me.nikonorovrs.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import me.nikonorovrs.gateway.ratelimit.BatchedRedisRateLimiter;
+import me.nikonorovrs.gateway.ratelimit.PrincipalKeyResolver;
+import me.nikonorovrs.gateway.ratelimit.RateLimitProperties;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+/**
+ * Ограничитель и резолвер ключа по умолчанию для фильтра RequestRateLimiter,
+ * вместо RedisRateLimiter и PrincipalNameKeyResolver из Spring Cloud Gateway.
+ */
+@Configuration
+public class RateLimitConfig {
+
+    @Bean
+    @Primary
+    public BatchedRedisRateLimiter batchedRedisRateLimiter(ReactiveStringRedisTemplate stringRedisTemplate,
+                                                           RateLimitProperties properties,
+                                                           ConfigurationService configurationService,
+                                                           MeterRegistry meterRegistry) {
+        return new BatchedRedisRateLimiter(stringRedisTemplate, properties, configurationService, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public PrincipalKeyResolver principalKeyResolver() {
+        return new PrincipalKeyResolver();
+    }
+}
@@ -1,28 +1,34 @@
 package me.nikonorovrs.gateway.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import me.nikonorovrs.gateway.redis.RedisReplicaReads;
+import me.nikonorovrs.gateway.redis.RedisTopologyProperties;
+import me.nikonorovrs.gateway.security.OAuth2AuthorizedClientRedisSerializer;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
+import org.redisson.config.ClusterServersConfig;
 import org.redisson.config.Config;
-import org.springframework.beans.factory.annotation.Value;
+import org.redisson.config.ReadMode;
+import org.redisson.config.SentinelServersConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
-import org.springframework.session.data.redis.config.annotation.web.server.EnableRedisWebSession;
-import org.springframework.web.reactive.function.client.WebClient;
 
 @Configuration
-@EnableRedisWebSession(redisNamespace = "${spring.session.redis.namespace}")
 public class RedisConfig {
 
     @Bean
     public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(
-            ReactiveRedisConnectionFactory factory) {
+            ReactiveRedisConnectionFactory factory,
+            OAuth2AuthorizedClientRedisSerializer valueSerializer) {
         StringRedisSerializer keySerializer = new StringRedisSerializer();
-        JdkSerializationRedisSerializer valueSerializer = new JdkSerializationRedisSerializer();
 
         RedisSerializationContext.RedisSerializationContextBuilder<String, Object> builder =
                 RedisSerializationContext.newSerializationContext(keySerializer);
@@ -37,16 +43,52 @@ public class RedisConfig {
     }
 
     @Bean
-    public WebClient webClient() {
-        return WebClient.builder().build();
+    public ReactiveRedisMessageListenerContainer redisMessageListenerContainer(
+            ReactiveRedisConnectionFactory factory) {
+        return new ReactiveRedisMessageListenerContainer(factory);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public RedisReplicaReads redisReplicaReads(RedisTopologyProperties properties,
+                                               RedisConnectionFactory redisConnectionFactory,
+                                               MeterRegistry meterRegistry) {
+        return new RedisReplicaReads(properties, redisConnectionFactory, meterRegistry);
     }
 
+    /**
+     * Топология берется из тех же {@code spring.data.redis.*}, что и у Lettuce: кластер, Sentinel или один узел.
+     * Блокировки всегда читаются и пишутся на primary.
+     */
     @Bean(destroyMethod = "shutdown")
-    public RedissonClient redissonClient(@Value("${spring.data.redis.host}") String redisHost,
-                                         @Value("${spring.data.redis.port}") int redisPort) {
+    @ConditionalOnProperty(name = "spring.refresh-lock.mode", havingValue = "redisson", matchIfMissing = true)
+    public RedissonClient redissonClient(RedisProperties redisProperties) {
+        String scheme = redisProperties.getSsl().isEnabled() ? "rediss://" : "redis://";
         Config config = new Config();
-        config.useSingleServer()
-                .setAddress("redis://" + redisHost + ":" + redisPort);
+        RedisProperties.Cluster cluster = redisProperties.getCluster();
+        RedisProperties.Sentinel sentinel = redisProperties.getSentinel();
+        if (cluster != null && cluster.getNodes() != null && !cluster.getNodes().isEmpty()) {
+            ClusterServersConfig servers = config.useClusterServers()
+                    .setReadMode(ReadMode.MASTER)
+                    .setUsername(redisProperties.getUsername())
+                    .setPassword(redisProperties.getPassword());
+            cluster.getNodes().forEach(node -> servers.addNodeAddress(scheme + node));
+        } else if (sentinel != null && sentinel.getMaster() != null) {
+            SentinelServersConfig servers = config.useSentinelServers()
+                    .setMasterName(sentinel.getMaster())
+                    .setReadMode(ReadMode.MASTER)
+                    .setDatabase(redisProperties.getDatabase())
+                    .setUsername(redisProperties.getUsername())
+                    .setPassword(redisProperties.getPassword())
+                    .setSentinelUsername(sentinel.getUsername())
+                    .setSentinelPassword(sentinel.getPassword());
+            sentinel.getNodes().forEach(node -> servers.addSentinelAddress(scheme + node));
+        } else {
+            config.useSingleServer()
+                    .setAddress(scheme + redisProperties.getHost() + ":" + redisProperties.getPort())
+                    .setDatabase(redisProperties.getDatabase())
+                    .setUsername(redisProperties.getUsername())
+                    .setPassword(redisProperties.getPassword());
+        }
         return Redisson.create(config);
     }
 }
\ No newline at end of file
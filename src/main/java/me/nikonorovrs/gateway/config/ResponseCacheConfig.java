@@ -0,0 +1,36 @@
+package me.nikonorovrs.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import me.nikonorovrs.gateway.cache.CachedResponse;
+import me.nikonorovrs.gateway.cache.CachedResponseRedisSerializer;
+import me.nikonorovrs.gateway.cache.ResponseCache;
+import me.nikonorovrs.gateway.cache.ResponseCacheProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+@Configuration
+public class ResponseCacheConfig {
+
+    @Bean
+    public ResponseCache responseCache(ResponseCacheProperties properties,
+                                       ObjectProvider<ReactiveRedisConnectionFactory> connectionFactory,
+                                       MeterRegistry meterRegistry) {
+        ReactiveRedisTemplate<String, CachedResponse> redisTemplate = null;
+        if (properties.getRedis().isEnabled()) {
+            RedisSerializationContext<String, CachedResponse> context = RedisSerializationContext
+                    .<String, CachedResponse>newSerializationContext(new StringRedisSerializer())
+                    .value(new CachedResponseRedisSerializer())
+                    .build();
+            redisTemplate = new ReactiveRedisTemplate<>(connectionFactory.getObject(), context);
+        }
+        ResponseCache responseCache = new ResponseCache(properties, redisTemplate);
+        CaffeineCacheMetrics.monitor(meterRegistry, responseCache.local(), "gateway.response.cache");
+        return responseCache;
+    }
+}
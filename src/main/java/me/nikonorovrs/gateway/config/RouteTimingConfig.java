@@ -0,0 +1,45 @@
+package me.nikonorovrs.gateway.config;
+
+import me.nikonorovrs.gateway.metrics.RequestTimings;
+import me.nikonorovrs.gateway.metrics.TimedWebSessionManager;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.session.WebSessionManager;
+
+@Configuration
+@ConditionalOnProperty(name = "app.metrics.route-timing.enabled", havingValue = "true", matchIfMissing = true)
+public class RouteTimingConfig {
+
+    @Bean
+    public static BeanPostProcessor timedWebSessionManagerPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof WebSessionManager sessionManager && !(bean instanceof TimedWebSessionManager)) {
+                    return new TimedWebSessionManager(sessionManager);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public HttpClientCustomizer upstreamTimingHttpClientCustomizer() {
+        return httpClient -> httpClient
+                .doOnRequest((request, connection) -> {
+                    RequestTimings timings = RequestTimings.from(request.currentContextView());
+                    if (timings != null) {
+                        timings.upstreamRequestSent();
+                    }
+                })
+                .doOnResponse((response, connection) -> {
+                    RequestTimings timings = RequestTimings.from(response.currentContextView());
+                    if (timings != null) {
+                        timings.upstreamResponseReceived();
+                    }
+                });
+    }
+}
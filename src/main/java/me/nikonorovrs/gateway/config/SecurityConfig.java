@@ -1,35 +1,55 @@
 package me.nikonorovrs.gateway.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import me.nikonorovrs.gateway.redis.RedisTopologyProperties;
 import me.nikonorovrs.gateway.security.CustomRedirectServerAuthenticationEntryPoint;
+import me.nikonorovrs.gateway.security.LettuceRefreshLock;
 import me.nikonorovrs.gateway.security.LockingReactiveOAuth2AuthorizedClientManager;
+import me.nikonorovrs.gateway.security.ProactiveTokenRefreshScheduler;
+import me.nikonorovrs.gateway.security.RedissonRefreshLock;
+import me.nikonorovrs.gateway.security.RefreshLock;
+import me.nikonorovrs.gateway.security.RoutePolicyRegistry;
+import me.nikonorovrs.gateway.security.StatelessSecurityContextRepository;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.endpoint.OAuth2RefreshTokenGrantRequest;
 import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
-import org.springframework.security.oauth2.client.endpoint.WebClientReactiveRefreshTokenTokenResponseClient;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.security.web.server.authentication.logout.RedirectServerLogoutSuccessHandler;
 import org.springframework.security.web.server.authentication.logout.ServerLogoutSuccessHandler;
+import org.springframework.security.web.server.context.ServerSecurityContextRepository;
+import org.springframework.security.web.server.context.WebSessionServerSecurityContextRepository;
 
 import java.net.URI;
+import java.time.Duration;
 
 @Configuration
 @EnableWebFluxSecurity
 public class SecurityConfig {
 
     @Bean
-    public ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> refreshTokenTokenResponseClient() {
-        return new WebClientReactiveRefreshTokenTokenResponseClient();
-    }
-
-    @Bean
-    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         RoutePolicyRegistry routePolicyRegistry,
+                                                         ObjectProvider<StatelessSecurityContextRepository> statelessRepository) {
+        // Хранилище контекста используется и при входе, и при выходе, поэтому токен шлюза выдается и удаляется вместе с сессией
+        ServerSecurityContextRepository securityContextRepository = statelessRepository.getIfAvailable();
+        if (securityContextRepository == null) {
+            securityContextRepository = new WebSessionServerSecurityContextRepository();
+        }
         return http
+                .securityContextRepository(securityContextRepository)
                 .authorizeExchange(exchanges -> exchanges
                         .pathMatchers("/actuator/**", "/login/**").permitAll()
                         .anyExchange().authenticated()
@@ -37,7 +57,7 @@ public class SecurityConfig {
                 .oauth2Login(oauth2 -> {})
                 .oauth2Client(oauth2 -> {})
                 .exceptionHandling(exceptions -> exceptions
-                        .authenticationEntryPoint(new CustomRedirectServerAuthenticationEntryPoint("/oauth2/authorization/keycloak"))
+                        .authenticationEntryPoint(new CustomRedirectServerAuthenticationEntryPoint(routePolicyRegistry))
                 )
                 .logout(logout -> logout
                         .logoutSuccessHandler(logoutSuccessHandler())
@@ -54,17 +74,65 @@ public class SecurityConfig {
     }
 
     @Bean
-    public ReactiveOAuth2AuthorizedClientManager reactiveOAuth2AuthorizedClientManager(
-            ReactiveOAuth2AuthorizedClientService clientService,
-            RedissonClient redissonClient) {
+    @ConditionalOnProperty(name = "spring.refresh-lock.mode", havingValue = "redisson", matchIfMissing = true)
+    public RefreshLock redissonRefreshLock(RedissonClient redissonClient) {
+        return new RedissonRefreshLock(redissonClient);
+    }
 
-        ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> refreshTokenClient =
-                new WebClientReactiveRefreshTokenTokenResponseClient();
+    /**
+     * Скрипты блокировки работают с двумя ключами, которые в кластере должны попасть в один слот,
+     * поэтому без {@code app.redis.hash-tags} приложение не стартует, а не падает с CROSSSLOT при первом обновлении.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.refresh-lock.mode", havingValue = "lettuce")
+    public RefreshLock lettuceRefreshLock(
+            ReactiveStringRedisTemplate stringRedisTemplate,
+            ReactiveRedisMessageListenerContainer redisMessageListenerContainer,
+            RedisProperties redisProperties,
+            RedisTopologyProperties redisTopologyProperties,
+            @Value("${spring.refresh-lock.retry-interval:PT0.2S}") Duration retryInterval) {
+        RedisProperties.Cluster cluster = redisProperties.getCluster();
+        if (cluster != null && cluster.getNodes() != null && !cluster.getNodes().isEmpty()
+                && !redisTopologyProperties.isHashTags()) {
+            throw new IllegalStateException(
+                    "spring.refresh-lock.mode=lettuce в кластере Redis требует app.redis.hash-tags=true");
+        }
+        return new LettuceRefreshLock(stringRedisTemplate, redisMessageListenerContainer, retryInterval);
+    }
 
+    @Bean
+    public LockingReactiveOAuth2AuthorizedClientManager reactiveOAuth2AuthorizedClientManager(
+            ReactiveOAuth2AuthorizedClientService clientService,
+            ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> refreshTokenClient,
+            RefreshLock refreshLock,
+            MeterRegistry meterRegistry) {
         return new LockingReactiveOAuth2AuthorizedClientManager(
                 clientService,
                 refreshTokenClient,
-                redissonClient
+                refreshLock,
+                meterRegistry
+        );
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "spring.refresh-lock.ahead.enabled", havingValue = "true")
+    public ReactiveOAuth2AuthorizedClientManager proactiveTokenRefreshScheduler(
+            LockingReactiveOAuth2AuthorizedClientManager reactiveOAuth2AuthorizedClientManager,
+            @Value("${spring.refresh-lock.ahead.interval:PT5S}") Duration interval,
+            @Value("${spring.refresh-lock.ahead.lookahead:PT2M}") Duration lookahead,
+            @Value("${spring.refresh-lock.ahead.max-idle:PT30M}") Duration maxIdle,
+            @Value("${spring.refresh-lock.ahead.batch-size:100}") int batchSize,
+            @Value("${spring.refresh-lock.ahead.concurrency:8}") int concurrency,
+            MeterRegistry meterRegistry) {
+        return new ProactiveTokenRefreshScheduler(
+                reactiveOAuth2AuthorizedClientManager,
+                interval,
+                lookahead,
+                maxIdle,
+                batchSize,
+                concurrency,
+                meterRegistry
         );
     }
 }
\ No newline at end of file
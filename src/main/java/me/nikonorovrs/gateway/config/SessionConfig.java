@@ -0,0 +1,84 @@
+package me.nikonorovrs.gateway.config;
+
+import me.nikonorovrs.gateway.concurrent.BlockingExecutorProperties;
+import me.nikonorovrs.gateway.redis.RedisReplicaReads;
+import me.nikonorovrs.gateway.session.LazyRedisSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.session.config.annotation.web.server.EnableSpringWebSession;
+import org.springframework.session.data.redis.config.annotation.web.server.EnableRedisWebSession;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Хранение WebSession в Redis.
+ * <p>
+ * {@code spring.session.redis.mode}: {@code eager} - стандартный репозиторий Spring Session, который загружает
+ * и сохраняет весь хеш сессии на каждый запрос; {@code lazy} - {@link LazyRedisSessionRepository} с выборочной
+ * загрузкой и отложенным продлением. Формат хранения одинаковый. Чтение с реплик используется только в режиме lazy.
+ * <p>
+ * Ключ сессии строится по ее идентификатору: пользователь до загрузки сессии неизвестен, поэтому сессия
+ * не может получить хеш-тег пользователя и лежит в своем слоте кластера.
+ */
+@Configuration
+public class SessionConfig {
+
+    @Configuration
+    @ConditionalOnProperty(name = "spring.session.redis.mode", havingValue = "eager", matchIfMissing = true)
+    @EnableRedisWebSession(redisNamespace = "${spring.session.redis.namespace}")
+    static class EagerRedisSessionConfig {
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "spring.session.redis.mode", havingValue = "lazy")
+    @EnableSpringWebSession
+    static class LazyRedisSessionConfig {
+
+        @Bean
+        public LazyRedisSessionRepository sessionRepository(
+                ReactiveRedisConnectionFactory factory,
+                @Value("${spring.session.redis.namespace}") String namespace,
+                @Value("${spring.session.redis.lazy.prefetch-attributes:SPRING_SECURITY_CONTEXT}") Set<String> prefetchAttributes,
+                @Value("${spring.session.redis.lazy.touch-flush-interval:PT10S}") Duration touchFlushInterval,
+                @Value("${spring.session.redis.lazy.touch-batch-size:500}") int touchBatchSize,
+                Scheduler blockingScheduler,
+                BlockingExecutorProperties blockingExecutorProperties,
+                RedisReplicaReads redisReplicaReads) {
+            // Сериализация как у стандартного репозитория, чтобы режимы читали сессии друг друга
+            StringRedisSerializer keySerializer = new StringRedisSerializer();
+            JdkSerializationRedisSerializer valueSerializer = new JdkSerializationRedisSerializer();
+            RedisSerializationContext<String, Object> context = RedisSerializationContext
+                    .<String, Object>newSerializationContext(valueSerializer)
+                    .key(keySerializer)
+                    .hashKey(keySerializer)
+                    .build();
+
+            // Для чтения с реплик значения хеша остаются байтами и десериализуются так же, как после скрипта загрузки
+            ReactiveRedisTemplate<String, byte[]> replicaTemplate = redisReplicaReads.isEnabled()
+                    ? new ReactiveRedisTemplate<>(redisReplicaReads.connectionFactory(), RedisSerializationContext
+                            .<String, byte[]>newSerializationContext(RedisSerializer.byteArray())
+                            .key(keySerializer)
+                            .hashKey(keySerializer)
+                            .hashValue(RedisSerializer.byteArray())
+                            .build())
+                    : null;
+            boolean clusterAware = factory instanceof LettuceConnectionFactory lettuce && lettuce.isClusterAware();
+
+            return new LazyRedisSessionRepository(new ReactiveRedisTemplate<>(factory, context),
+                    namespace, prefetchAttributes, touchFlushInterval, touchBatchSize,
+                    blockingScheduler, blockingExecutorProperties.getOffloadThreshold().toBytes(),
+                    replicaTemplate, redisReplicaReads, clusterAware);
+        }
+    }
+}
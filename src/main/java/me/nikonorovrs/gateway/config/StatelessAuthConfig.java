@@ -0,0 +1,52 @@
+package me.nikonorovrs.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import me.nikonorovrs.gateway.security.GatewayTokenKeys;
+import me.nikonorovrs.gateway.security.GatewayTokenRevocations;
+import me.nikonorovrs.gateway.security.GatewayTokenService;
+import me.nikonorovrs.gateway.security.StatelessAuthProperties;
+import me.nikonorovrs.gateway.security.StatelessSecurityContextRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.security.web.server.context.WebSessionServerSecurityContextRepository;
+
+/**
+ * Аутентификация API-маршрутов по токену шлюза: запросы с действительным токеном не загружают WebSession,
+ * а к Redis обращаются только за токеном доступа, если его нет в near-кэше или его нужно обновить,
+ * и за отметкой отзыва не чаще раза в {@code revocation.check-interval} на пользователя.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.stateless-auth.enabled", havingValue = "true")
+public class StatelessAuthConfig {
+
+    @Bean
+    public GatewayTokenKeys gatewayTokenKeys(ReactiveStringRedisTemplate stringRedisTemplate,
+                                             StatelessAuthProperties properties,
+                                             MeterRegistry meterRegistry) {
+        return new GatewayTokenKeys(stringRedisTemplate, properties, meterRegistry);
+    }
+
+    @Bean
+    public GatewayTokenRevocations gatewayTokenRevocations(ReactiveStringRedisTemplate stringRedisTemplate,
+                                                           StatelessAuthProperties properties) {
+        return new GatewayTokenRevocations(stringRedisTemplate, properties);
+    }
+
+    @Bean
+    public GatewayTokenService gatewayTokenService(GatewayTokenKeys gatewayTokenKeys,
+                                                   GatewayTokenRevocations gatewayTokenRevocations,
+                                                   StatelessAuthProperties properties,
+                                                   MeterRegistry meterRegistry) {
+        return new GatewayTokenService(gatewayTokenKeys, gatewayTokenRevocations, properties, meterRegistry);
+    }
+
+    @Bean
+    public StatelessSecurityContextRepository statelessSecurityContextRepository(GatewayTokenService gatewayTokenService,
+                                                                                 StatelessAuthProperties properties,
+                                                                                 MeterRegistry meterRegistry) {
+        return new StatelessSecurityContextRepository(new WebSessionServerSecurityContextRepository(),
+                gatewayTokenService, properties, meterRegistry);
+    }
+}
@@ -0,0 +1,55 @@
+package me.nikonorovrs.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import me.nikonorovrs.gateway.security.ResilientRefreshTokenResponseClient;
+import me.nikonorovrs.gateway.security.TokenEndpointProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.client.endpoint.OAuth2RefreshTokenGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.WebClientReactiveRefreshTokenTokenResponseClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Клиент обновления токенов с собственным пулом соединений к Keycloak, чтобы медленная точка выдачи токенов
+ * не занимала соединения остальных клиентов и не копила очередь запросов.
+ */
+@Configuration
+public class TokenEndpointConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider tokenEndpointConnectionProvider(TokenEndpointProperties properties) {
+        TokenEndpointProperties.Pool pool = properties.getPool();
+        return ConnectionProvider.builder("token-endpoint")
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .evictInBackground(pool.getMaxIdleTime())
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> refreshTokenTokenResponseClient(
+            ConnectionProvider tokenEndpointConnectionProvider,
+            TokenEndpointProperties properties,
+            MeterRegistry meterRegistry) {
+        TokenEndpointProperties.Pool pool = properties.getPool();
+        HttpClient httpClient = HttpClient.create(tokenEndpointConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+                .responseTimeout(pool.getResponseTimeout());
+
+        WebClientReactiveRefreshTokenTokenResponseClient refreshTokenClient =
+                new WebClientReactiveRefreshTokenTokenResponseClient();
+        refreshTokenClient.setWebClient(WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build());
+
+        return new ResilientRefreshTokenResponseClient(refreshTokenClient, properties, meterRegistry);
+    }
+}
@@ -0,0 +1,49 @@
+package me.nikonorovrs.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import me.nikonorovrs.gateway.redis.RedisTopologyProperties;
+import me.nikonorovrs.gateway.security.RefreshLock;
+import me.nikonorovrs.gateway.security.TokenEndpointProperties;
+import me.nikonorovrs.gateway.security.TokenExchangeProperties;
+import me.nikonorovrs.gateway.security.TokenExchangeService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.client.endpoint.WebClientReactiveTokenExchangeTokenResponseClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Обмен токенов для фильтра {@code TokenExchange}; обращения к Keycloak идут через тот же пул соединений,
+ * что и обновление токенов.
+ */
+@Configuration
+public class TokenExchangeConfig {
+
+    @Bean
+    public TokenExchangeService tokenExchangeService(ConnectionProvider tokenEndpointConnectionProvider,
+                                                     TokenEndpointProperties tokenEndpointProperties,
+                                                     ReactiveStringRedisTemplate stringRedisTemplate,
+                                                     RefreshLock refreshLock,
+                                                     TokenExchangeProperties properties,
+                                                     RedisTopologyProperties redisTopologyProperties,
+                                                     MeterRegistry meterRegistry) {
+        TokenEndpointProperties.Pool pool = tokenEndpointProperties.getPool();
+        HttpClient httpClient = HttpClient.create(tokenEndpointConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+                .responseTimeout(pool.getResponseTimeout());
+
+        WebClientReactiveTokenExchangeTokenResponseClient tokenExchangeClient =
+                new WebClientReactiveTokenExchangeTokenResponseClient();
+        tokenExchangeClient.setWebClient(WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build());
+        tokenExchangeClient.addParametersConverter(TokenExchangeService.audienceParametersConverter());
+
+        return new TokenExchangeService(tokenExchangeClient, stringRedisTemplate, refreshLock, properties,
+                redisTopologyProperties.isHashTags(), meterRegistry);
+    }
+}
@@ -1,15 +1,21 @@
 package me.nikonorovrs.gateway.controller;
 
 import lombok.RequiredArgsConstructor;
+import me.nikonorovrs.gateway.security.StatelessSecurityContextRepository;
 import me.nikonorovrs.gateway.service.SessionService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebSession;
 import reactor.core.publisher.Mono;
 
+import java.security.Principal;
+import java.util.List;
+
 
 
 @RestController
@@ -18,14 +24,22 @@ import reactor.core.publisher.Mono;
 public class LogoutController {
 
     private final SessionService sessionService;
+    private final ObjectProvider<StatelessSecurityContextRepository> statelessRepository;
 
     @GetMapping("logout")
-    public Mono<ResponseEntity<Object>> logout(ServerHttpRequest request, WebSession session) {
+    public Mono<ResponseEntity<Object>> logout(ServerWebExchange exchange, ServerHttpRequest request, WebSession session) {
         final var fflSessionId = request
                 .getCookies()
                 .get("SESSION")
                 .getFirst()
                 .getValue();
-        return sessionService.performLogout(session, fflSessionId);
+        StatelessSecurityContextRepository repository = statelessRepository.getIfAvailable();
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .map(List::of)
+                .defaultIfEmpty(List.of())
+                // Без сессии токен шлюза остался бы действительным до истечения срока
+                .flatMap(principals -> (repository != null ? repository.revokeTokens(exchange, principals) : Mono.<Void>empty())
+                        .then(sessionService.performLogout(session, fflSessionId, principals)));
     }
 }
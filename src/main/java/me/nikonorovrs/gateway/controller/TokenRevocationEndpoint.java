@@ -0,0 +1,59 @@
+package me.nikonorovrs.gateway.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import me.nikonorovrs.gateway.security.BatchReactiveOAuth2AuthorizedClientService;
+import me.nikonorovrs.gateway.security.GatewayTokenService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Отзыв сохраненных токенов пользователей через actuator.
+ * <p>
+ * {@code POST /actuator/tokens} с телом {@code {"principals": [...]}} удаляет токены всех регистраций
+ * перечисленных пользователей пакетными командами, {@code DELETE /actuator/tokens/{principal}} - одного пользователя.
+ * При включенной аутентификации по токену шлюза отзываются и выданные им токены шлюза.
+ * Путь {@code /actuator/**} открыт без аутентификации, поэтому endpoint не включен в web exposure по умолчанию
+ * и должен публиковаться только на закрытом management-порту.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "tokens")
+public class TokenRevocationEndpoint {
+
+    private final BatchReactiveOAuth2AuthorizedClientService authorizedClientService;
+    private final ObjectProvider<GatewayTokenService> gatewayTokenService;
+
+    @WriteOperation
+    public Mono<Map<String, Object>> revoke(List<String> principals) {
+        return revokeAll(principals);
+    }
+
+    @DeleteOperation
+    public Mono<Map<String, Object>> revokePrincipal(@Selector String principal) {
+        return revokeAll(List.of(principal));
+    }
+
+    private Mono<Map<String, Object>> revokeAll(List<String> principals) {
+        long start = System.nanoTime();
+        GatewayTokenService tokenService = gatewayTokenService.getIfAvailable();
+        Mono<Void> revokeGatewayTokens = tokenService != null ? tokenService.revoke(principals) : Mono.empty();
+        return authorizedClientService.removeAuthorizedClients(principals)
+                .flatMap(removed -> revokeGatewayTokens.thenReturn(removed))
+                .map(removed -> {
+                    long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                    log.info("Отозваны токены пользователей: principals={}, removed={}, elapsed_ms={}",
+                            principals.size(), removed, elapsedMs);
+                    return Map.<String, Object>of("principals", principals.size(), "removed", removed, "elapsedMs", elapsedMs);
+                });
+    }
+}
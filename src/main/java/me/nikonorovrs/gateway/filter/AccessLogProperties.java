@@ -0,0 +1,53 @@
+package me.nikonorovrs.gateway.filter;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Настройки режима access-log в {@link LoggingFilter}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.logging.access-log")
+public class AccessLogProperties {
+
+    /**
+     * Одна структурированная строка на обмен вместо двух строк запроса и ответа.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Доля записываемых обменов для маршрутов без собственной настройки, от 0 до 1.
+     */
+    private double sampleRate = 1.0;
+
+    /**
+     * Доля записываемых обменов по идентификатору маршрута.
+     */
+    private Map<String, Double> routeSampleRates = new HashMap<>();
+
+    /**
+     * Обмены не быстрее этого порога записываются всегда.
+     */
+    private Duration slowThreshold = Duration.ofSeconds(1);
+
+    /**
+     * Обмены с кодом ответа не ниже этого значения записываются всегда.
+     */
+    private int errorStatus = 500;
+
+    /**
+     * Начальный размер буфера строки на поток.
+     */
+    private int bufferSize = 256;
+
+    public double sampleRate(String routeId) {
+        Double rate = routeSampleRates.get(routeId);
+        return rate != null ? rate : sampleRate;
+    }
+}
@@ -0,0 +1,133 @@
+package me.nikonorovrs.gateway.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import me.nikonorovrs.gateway.logging.AsyncLogbookWriter;
+import me.nikonorovrs.gateway.logging.BoundedBody;
+import me.nikonorovrs.gateway.logging.CapturedHttpRequest;
+import me.nikonorovrs.gateway.logging.CapturedHttpResponse;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import org.zalando.logbook.Logbook;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Передает обмены в Logbook с ограниченным началом тел.
+ * <p>
+ * В отличие от LogbookWebFilter тела не накапливаются целиком: из потока буферов копируется только
+ * первые {@code max-body-size} байт, остальное уходит клиенту и upstream без копирования. Тела нетекстовых
+ * и сжатых сообщений не копируются вовсе. Запись выполняется {@link AsyncLogbookWriter} вне event loop.
+ */
+@Slf4j
+public class BodyLoggingFilter implements GlobalFilter, Ordered {
+
+    private final Logbook logbook;
+    private final AsyncLogbookWriter writer;
+    private final BodyLoggingProperties properties;
+    private final List<PathPattern> excludedPaths;
+    private final int maxBodySize;
+
+    public BodyLoggingFilter(Logbook logbook, AsyncLogbookWriter writer, BodyLoggingProperties properties) {
+        this.logbook = logbook;
+        this.writer = writer;
+        this.properties = properties;
+        this.excludedPaths = properties.getExcludedPaths().stream()
+                .map(PathPatternParser.defaultInstance::parse)
+                .toList();
+        this.maxBodySize = Math.toIntExact(properties.getMaxBodySize().toBytes());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (excluded(request)) {
+            return chain.filter(exchange);
+        }
+
+        BoundedBody requestBody = loggable(request.getHeaders()) ? new BoundedBody(maxBodySize) : null;
+        Logbook.RequestWritingStage stage;
+        try {
+            // Корреляция и время начала фиксируются здесь, форматирование - при записи
+            stage = logbook.process(new CapturedHttpRequest(request, requestBody));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ошибка подготовки записи Logbook: {}", e.toString());
+            return chain.filter(exchange);
+        }
+
+        ServerHttpRequest loggedRequest = requestBody == null ? request : new ServerHttpRequestDecorator(request) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return super.getBody().doOnNext(requestBody::append);
+            }
+        };
+        BodyCapturingResponse loggedResponse = new BodyCapturingResponse(exchange.getResponse());
+
+        return chain.filter(exchange.mutate().request(loggedRequest).response(loggedResponse).build())
+                .doFinally(signal -> writer.submit(stage,
+                        new CapturedHttpResponse(exchange.getResponse(), loggedResponse.body)));
+    }
+
+    private boolean excluded(ServerHttpRequest request) {
+        for (PathPattern pattern : excludedPaths) {
+            if (pattern.matches(request.getPath().pathWithinApplication())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean loggable(HttpHeaders headers) {
+        String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        return (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding))
+                && properties.isTextual(headers.getContentType());
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    private final class BodyCapturingResponse extends ServerHttpResponseDecorator {
+
+        // Заголовки ответа известны только к первой записи тела
+        private volatile BoundedBody body;
+
+        private BodyCapturingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            BoundedBody captured = startCapture();
+            return super.writeWith(captured == null ? body : Flux.from(body).doOnNext(captured::append));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            BoundedBody captured = startCapture();
+            return super.writeAndFlushWith(captured == null ? body
+                    : Flux.from(body).map(chunk -> Flux.from(chunk).doOnNext(captured::append)));
+        }
+
+        private BoundedBody startCapture() {
+            if (body == null && loggable(getHeaders())) {
+                body = new BoundedBody(maxBodySize);
+            }
+            return body;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package me.nikonorovrs.gateway.filter;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки журналирования тел запросов и ответов через Logbook в {@link BodyLoggingFilter}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.logging.body")
+public class BodyLoggingProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Сколько байт от начала тела попадает в журнал; остальное проходит без копирования.
+     */
+    private DataSize maxBodySize = DataSize.ofKilobytes(8);
+
+    /**
+     * Типы содержимого, тела которых журналируются; тела остальных типов и сжатые тела пропускаются.
+     */
+    private List<MediaType> textualTypes = new ArrayList<>(List.of(
+            MediaType.parseMediaType("text/*"),
+            MediaType.APPLICATION_JSON,
+            MediaType.parseMediaType("application/*+json"),
+            MediaType.APPLICATION_XML,
+            MediaType.parseMediaType("application/*+xml"),
+            MediaType.APPLICATION_FORM_URLENCODED));
+
+    /**
+     * Пути без журналирования, шаблоны {@link org.springframework.util.AntPathMatcher}.
+     */
+    private List<String> excludedPaths = new ArrayList<>(List.of("/actuator/**"));
+
+    /**
+     * Емкость очереди записи; при переполнении записи отбрасываются, а не блокируют event loop.
+     */
+    private int queueCapacity = 2000;
+
+    public boolean isTextual(MediaType contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        for (MediaType textualType : textualTypes) {
+            if (textualType.includes(contentType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,25 +1,48 @@
 package me.nikonorovrs.gateway.filter;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
 
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class LoggingFilter implements GlobalFilter, Ordered {
 
+    private static final String TRACE_ID_HEADER = "trace-id";
+    private static final String NO_VALUE = "-";
+
+    // Буфер строки переиспользуется потоком event loop, чтобы не создавать его на каждый обмен
+    private static final ThreadLocal<StringBuilder> LINE_BUFFER = new ThreadLocal<>();
+
+    private final AccessLogProperties accessLogProperties;
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
 
-        if (exchange.getRequest().getPath().value().startsWith("/actuator")) {
+        if (accessLogProperties.isEnabled()) {
+            return filterWithAccessLog(exchange, chain);
+        }
+
+        if (!log.isInfoEnabled() || exchange.getRequest().getPath().value().startsWith("/actuator")) {
             return chain.filter(exchange);
         }
 
-        String traceId = exchange.getRequest().getHeaders().getFirst("trace-id");
+        String traceId = exchange.getRequest().getHeaders().getFirst(TRACE_ID_HEADER);
         log.info("Request: {} {} with trace-id: {}",
                 exchange.getRequest().getMethod(),
                 exchange.getRequest().getPath().value(),
@@ -33,8 +56,66 @@ public class LoggingFilter implements GlobalFilter, Ordered {
                 }));
     }
 
+    private Mono<Void> filterWithAccessLog(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!log.isInfoEnabled()) {
+            return chain.filter(exchange);
+        }
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signal -> logExchange(exchange, System.nanoTime() - start, signal));
+    }
+
+    private void logExchange(ServerWebExchange exchange, long latencyNanos, SignalType signal) {
+        HttpStatusCode statusCode = exchange.getResponse().getStatusCode();
+        int status = statusCode != null ? statusCode.value() : 0;
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        String routeId = route != null ? route.getId() : NO_VALUE;
+
+        // Ошибки и медленные обмены записываются всегда, остальные - с вероятностью маршрута
+        boolean forced = signal == SignalType.ON_ERROR
+                || status >= accessLogProperties.getErrorStatus()
+                || latencyNanos >= accessLogProperties.getSlowThreshold().toNanos();
+        if (!forced && !sampled(routeId)) {
+            return;
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        String traceId = request.getHeaders().getFirst(TRACE_ID_HEADER);
+
+        StringBuilder line = lineBuffer();
+        line.append("method=").append(request.getMethod().name())
+                .append(" path=").append(request.getPath().value())
+                .append(" status=");
+        if (status != 0) {
+            line.append(status);
+        } else {
+            line.append(signal == SignalType.ON_ERROR ? "error" : signal == SignalType.CANCEL ? "cancel" : NO_VALUE);
+        }
+        line.append(" latency_ms=").append(TimeUnit.NANOSECONDS.toMillis(latencyNanos))
+                .append(" route=").append(routeId)
+                .append(" trace_id=").append(traceId != null ? traceId : NO_VALUE);
+        log.info(line.toString());
+    }
+
+    private boolean sampled(String routeId) {
+        double rate = accessLogProperties.sampleRate(routeId);
+        return rate >= 1.0 || rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private StringBuilder lineBuffer() {
+        int bufferSize = accessLogProperties.getBufferSize();
+        StringBuilder line = LINE_BUFFER.get();
+        // Буфер, разросшийся на аномально длинном пути, не удерживается навсегда
+        if (line == null || line.capacity() > bufferSize * 4) {
+            line = new StringBuilder(bufferSize);
+            LINE_BUFFER.set(line);
+        }
+        line.setLength(0);
+        return line;
+    }
+
     @Override
     public int getOrder() {
         return Ordered.HIGHEST_PRECEDENCE;
     }
-}
\ No newline at end of file
+}
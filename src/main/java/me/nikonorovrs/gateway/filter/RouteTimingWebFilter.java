@@ -0,0 +1,127 @@
+package me.nikonorovrs.gateway.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import me.nikonorovrs.gateway.metrics.RequestTimings;
+import me.nikonorovrs.gateway.metrics.RouteTimingProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Таймеры времени обработки запросов по маршрутам с разбивкой на этапы.
+ * <p>
+ * Фильтр стоит перед Spring Security, чтобы общее время включало загрузку сессии и авторизацию,
+ * и кладет {@link RequestTimings} в Reactor-контекст цепочки. Маршрут известен только к концу обработки,
+ * поэтому все таймеры записываются по завершении обмена.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.metrics.route-timing.enabled", havingValue = "true", matchIfMissing = true)
+public class RouteTimingWebFilter implements WebFilter, Ordered {
+
+    private static final String REQUESTS_METER = "gateway.route.requests";
+    private static final String PHASE_METER = "gateway.route.phase";
+    private static final String NO_ROUTE = "none";
+    private static final String OTHER_ROUTE = "other";
+    private static final String NO_OUTCOME = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final RouteTimingProperties properties;
+
+    private final Map<String, Boolean> knownRoutes = new ConcurrentHashMap<>();
+    private final AtomicInteger knownRouteCount = new AtomicInteger();
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        RequestTimings timings = RequestTimings.of(exchange);
+        return chain.filter(exchange)
+                .contextWrite(context -> context.put(RequestTimings.class, timings))
+                .doFinally(signal -> record(exchange, timings));
+    }
+
+    private void record(ServerWebExchange exchange, RequestTimings timings) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        String routeTag = routeTag(route);
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        String statusTag = status != null ? status.value() / 100 + "xx" : NO_OUTCOME;
+
+        timer(new MeterKey(REQUESTS_METER, routeTag, "status", statusTag))
+                .record(System.nanoTime() - timings.startNanos(), TimeUnit.NANOSECONDS);
+
+        recordPhase(routeTag, "session", NO_OUTCOME, timings.sessionNanos());
+        String outcome = timings.authorizeOutcome();
+        recordPhase(routeTag, "authorize", outcome != null ? outcome : NO_OUTCOME, timings.authorizeNanos());
+        recordPhase(routeTag, "lock-wait", NO_OUTCOME, timings.lockWaitNanos());
+        recordPhase(routeTag, "upstream-connect", NO_OUTCOME, timings.upstreamConnectNanos());
+        recordPhase(routeTag, "upstream-ttfb", NO_OUTCOME, timings.upstreamTtfbNanos());
+    }
+
+    private void recordPhase(String routeTag, String phase, String outcome, long nanos) {
+        if (nanos >= 0) {
+            timer(new MeterKey(PHASE_METER, routeTag, phase, outcome)).record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Значения тега route ограничены, чтобы динамические маршруты не раздували число временных рядов
+    private String routeTag(Route route) {
+        if (route == null) {
+            return NO_ROUTE;
+        }
+        String routeId = route.getId();
+        if (knownRoutes.containsKey(routeId)) {
+            return routeId;
+        }
+        if (knownRouteCount.get() >= properties.getMaxRoutes()) {
+            return OTHER_ROUTE;
+        }
+        // Место занимается под блокировкой ключа и атомарным счетчиком: одновременные первые запросы
+        // разных маршрутов не превышают max-routes, а одного маршрута - не занимают место дважды
+        Boolean known = knownRoutes.computeIfAbsent(routeId, id -> reserveRoute() ? Boolean.TRUE : null);
+        return known != null ? routeId : OTHER_ROUTE;
+    }
+
+    private boolean reserveRoute() {
+        int maxRoutes = properties.getMaxRoutes();
+        return knownRouteCount.getAndUpdate(count -> count < maxRoutes ? count + 1 : count) < maxRoutes;
+    }
+
+    private Timer timer(MeterKey key) {
+        return timers.computeIfAbsent(key, k -> {
+            Timer.Builder builder = Timer.builder(k.name()).tag("route", k.route());
+            if (REQUESTS_METER.equals(k.name())) {
+                builder.tag("status", k.second());
+            } else {
+                builder.tag("phase", k.first()).tag("outcome", k.second());
+            }
+            return builder
+                    .serviceLevelObjectives(properties.getSlo().toArray(Duration[]::new))
+                    .publishPercentileHistogram(properties.isPercentilesHistogram())
+                    .register(meterRegistry);
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private record MeterKey(String name, String route, String first, String second) {
+    }
+}
@@ -0,0 +1,30 @@
+package me.nikonorovrs.gateway.filter;
+
+import me.nikonorovrs.gateway.metrics.RequestTimings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Отмечает момент перед проксированием запроса в upstream, от которого считается время подключения.
+ */
+@Component
+@ConditionalOnProperty(name = "app.metrics.route-timing.enabled", havingValue = "true", matchIfMissing = true)
+public class UpstreamTimingFilter implements GlobalFilter, Ordered {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        RequestTimings.of(exchange).upstreamStarted();
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+}
@@ -0,0 +1,133 @@
+package me.nikonorovrs.gateway.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заполненность пулов соединений HTTP-клиентов по метрикам reactor.netty.connection.provider.*:
+ * {@code GET /actuator/connectionpools}.
+ * <p>
+ * Пулы появляются после первого соединения с хостом и только при включенных метриках пулов.
+ * Адреса upstream не должны попадать наружу, поэтому endpoint публикуется только на management-порту.
+ */
+@Component
+@Endpoint(id = "connectionpools")
+@RequiredArgsConstructor
+public class ConnectionPoolsEndpoint {
+
+    private static final String PREFIX = "reactor.netty.connection.provider";
+
+    private final MeterRegistry meterRegistry;
+
+    @ReadOperation
+    public List<PoolSaturation> pools() {
+        Map<String, PoolSaturation.Builder> pools = new LinkedHashMap<>();
+        gauges(pools, ".max.connections", (pool, value) -> pool.maxConnections = value);
+        gauges(pools, ".active.connections", (pool, value) -> pool.active = value);
+        gauges(pools, ".idle.connections", (pool, value) -> pool.idle = value);
+        gauges(pools, ".total.connections", (pool, value) -> pool.total = value);
+        gauges(pools, ".pending.connections", (pool, value) -> pool.pending = value);
+        gauges(pools, ".max.pending.connections", (pool, value) -> pool.maxPending = value);
+        // При HTTP/2 занятость пула определяется потоками, а не соединениями
+        gauges(pools, ".active.streams", (pool, value) -> pool.activeStreams = value);
+        gauges(pools, ".pending.streams", (pool, value) -> pool.pendingStreams = value);
+
+        for (Timer timer : meterRegistry.find(PREFIX + ".pending.connections.time").timers()) {
+            PoolSaturation.Builder pool = pools.get(key(timer));
+            if (pool == null) {
+                continue;
+            }
+            if ("ERROR".equals(timer.getId().getTag("status"))) {
+                pool.acquireErrors += timer.count();
+            } else {
+                pool.acquired += timer.count();
+                pool.acquireMeanMillis = timer.mean(TimeUnit.MILLISECONDS);
+                pool.acquireMaxMillis = timer.max(TimeUnit.MILLISECONDS);
+            }
+        }
+
+        List<PoolSaturation> result = new ArrayList<>(pools.size());
+        pools.values().forEach(pool -> result.add(pool.build()));
+        result.sort(Comparator.comparing(PoolSaturation::name).thenComparing(PoolSaturation::remoteAddress));
+        return result;
+    }
+
+    private void gauges(Map<String, PoolSaturation.Builder> pools, String suffix, GaugeSetter setter) {
+        for (Gauge gauge : meterRegistry.find(PREFIX + suffix).gauges()) {
+            PoolSaturation.Builder pool = pools.computeIfAbsent(key(gauge), key -> new PoolSaturation.Builder(
+                    gauge.getId().getTag("name"), gauge.getId().getTag("remote.address")));
+            setter.set(pool, (long) gauge.value());
+        }
+    }
+
+    private static String key(Meter meter) {
+        return meter.getId().getTag("name") + "|" + meter.getId().getTag("id") + "|" + meter.getId().getTag("remote.address");
+    }
+
+    @FunctionalInterface
+    private interface GaugeSetter {
+        void set(PoolSaturation.Builder pool, long value);
+    }
+
+    /**
+     * Состояние одного пула; {@code saturation} - доля занятых соединений от лимита.
+     */
+    public record PoolSaturation(String name,
+                                 String remoteAddress,
+                                 long maxConnections,
+                                 long active,
+                                 long idle,
+                                 long total,
+                                 long pending,
+                                 long maxPending,
+                                 long activeStreams,
+                                 long pendingStreams,
+                                 double saturation,
+                                 long acquired,
+                                 long acquireErrors,
+                                 double acquireMeanMillis,
+                                 double acquireMaxMillis) {
+
+        private static final class Builder {
+            private final String name;
+            private final String remoteAddress;
+            private long maxConnections;
+            private long active;
+            private long idle;
+            private long total;
+            private long pending;
+            private long maxPending;
+            private long activeStreams;
+            private long pendingStreams;
+            private long acquired;
+            private long acquireErrors;
+            private double acquireMeanMillis;
+            private double acquireMaxMillis;
+
+            private Builder(String name, String remoteAddress) {
+                this.name = name != null ? name : "";
+                this.remoteAddress = remoteAddress != null ? remoteAddress : "";
+            }
+
+            private PoolSaturation build() {
+                double saturation = maxConnections > 0 ? (double) active / maxConnections : 0;
+                return new PoolSaturation(name, remoteAddress, maxConnections, active, idle, total, pending, maxPending,
+                        activeStreams, pendingStreams, saturation, acquired, acquireErrors,
+                        acquireMeanMillis, acquireMaxMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package me.nikonorovrs.gateway.http;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import reactor.netty.http.Http2SettingsSpec;
+import reactor.netty.http.HttpProtocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Параметры HTTP/2 на входе шлюза и к upstream.
+ * <p>
+ * Входящий HTTP/2 включается стандартным {@code server.http2.enabled}: с TLS - h2, без TLS - h2c
+ * (за балансировщиком, завершающим TLS).
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.http2")
+public class Http2Properties {
+
+    private final Settings server = new Settings();
+
+    private final Upstream upstream = new Upstream();
+
+    /**
+     * Настройки SETTINGS-кадра; незаданные остаются значениями Netty.
+     */
+    @Getter
+    @Setter
+    public static class Settings {
+
+        /**
+         * Максимум одновременных потоков, которые может открыть другая сторона в одном соединении.
+         */
+        private Long maxConcurrentStreams;
+
+        /**
+         * Начальное окно управления потоком для каждого потока.
+         */
+        private DataSize initialWindowSize;
+
+        private DataSize maxFrameSize;
+
+        private DataSize maxHeaderListSize;
+
+        public void applyTo(Http2SettingsSpec.Builder settings) {
+            if (maxConcurrentStreams != null) {
+                settings.maxConcurrentStreams(maxConcurrentStreams);
+            }
+            if (initialWindowSize != null) {
+                settings.initialWindowSize(Math.toIntExact(initialWindowSize.toBytes()));
+            }
+            if (maxFrameSize != null) {
+                settings.maxFrameSize(Math.toIntExact(maxFrameSize.toBytes()));
+            }
+            if (maxHeaderListSize != null) {
+                settings.maxHeaderListSize(maxHeaderListSize.toBytes());
+            }
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Upstream extends Settings {
+
+        /**
+         * Протоколы клиента маршрутов. Пусто - как в Spring Cloud Gateway: HTTP11 и H2 по ALPN при
+         * {@code server.http2.enabled}, иначе HTTP11. H2C без HTTP11 - HTTP/2 без TLS по предварительному
+         * знанию, все upstream с http:// должны его поддерживать.
+         */
+        private List<HttpProtocol> protocols = new ArrayList<>();
+    }
+
+    /**
+     * Будет ли клиент маршрутов договариваться с upstream о HTTP/2.
+     */
+    public boolean upstreamHttp2(ServerProperties serverProperties) {
+        if (upstream.getProtocols().isEmpty()) {
+            return serverProperties.getHttp2() != null && serverProperties.getHttp2().isEnabled();
+        }
+        return upstream.getProtocols().contains(HttpProtocol.H2) || upstream.getProtocols().contains(HttpProtocol.H2C);
+    }
+}
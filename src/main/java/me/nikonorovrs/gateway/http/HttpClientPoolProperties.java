@@ -0,0 +1,94 @@
+package me.nikonorovrs.gateway.http;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Пулы соединений к отдельным upstream.
+ * <p>
+ * Общий пул маршрутов настраивается стандартными {@code spring.cloud.gateway.httpclient.pool.*};
+ * здесь задаются хосты, которым нужны собственные лимиты. Незаданные параметры upstream
+ * берутся из общего пула.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.http-client")
+public class HttpClientPoolProperties {
+
+    /**
+     * Публиковать метрики пулов reactor.netty.connection.provider.* в Micrometer.
+     */
+    private boolean metrics = true;
+
+    /**
+     * Пулы по имени upstream; имя попадает только в журнал и actuator.
+     */
+    private Map<String, Upstream> upstreams = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class Upstream {
+
+        /**
+         * Адрес upstream; пул выбирается по хосту и порту, путь не учитывается.
+         */
+        private URI uri;
+
+        private Integer maxConnections;
+
+        /**
+         * Сколько запросов может ждать свободного соединения.
+         */
+        private Integer pendingAcquireMaxCount;
+
+        private Duration pendingAcquireTimeout;
+
+        private Duration maxIdleTime;
+
+        private Duration maxLifeTime;
+
+        /**
+         * Период фоновой очистки простаивающих соединений.
+         */
+        private Duration evictionInterval;
+
+        private Leasing leasing;
+
+        private final Http2 http2 = new Http2();
+    }
+
+    public enum Leasing {
+        /**
+         * Сначала выдается последнее освободившееся соединение, лишние быстрее простаивают и закрываются.
+         */
+        LIFO,
+        /**
+         * Соединения выдаются по очереди, нагрузка распределяется между всеми открытыми.
+         */
+        FIFO
+    }
+
+    /**
+     * Мультиплексирование при HTTP/2 к upstream.
+     */
+    @Getter
+    @Setter
+    public static class Http2 {
+
+        /**
+         * Максимум одновременных потоков на одно соединение; не больше заявленного сервером.
+         */
+        private Long maxConcurrentStreams;
+
+        /**
+         * Сколько соединений держать открытыми, даже если потоков хватает на одном.
+         */
+        private Integer minConnections;
+    }
+}
@@ -0,0 +1,129 @@
+package me.nikonorovrs.gateway.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Переносит настройки {@link HttpClientPoolProperties} в {@link ConnectionProvider.Builder}:
+ * каждый upstream получает собственный пул внутри общего провайдера.
+ */
+@Slf4j
+public final class UpstreamConnectionPools {
+
+    private UpstreamConnectionPools() {
+    }
+
+    /**
+     * @param defaults     общий пул маршрутов, из которого берутся незаданные параметры upstream
+     * @param http2Enabled клиент договаривается с upstream о HTTP/2, пулы считают потоки, а не соединения
+     */
+    public static ConnectionProvider.Builder configure(ConnectionProvider.Builder builder,
+                                                       HttpClientPoolProperties properties,
+                                                       HttpClientProperties.Pool defaults,
+                                                       boolean http2Enabled) {
+        if (properties.isMetrics()) {
+            builder.metrics(true);
+        }
+        for (Map.Entry<String, HttpClientPoolProperties.Upstream> entry : properties.getUpstreams().entrySet()) {
+            HttpClientPoolProperties.Upstream upstream = entry.getValue();
+            if (upstream.getUri() == null) {
+                throw new IllegalArgumentException("Не задан uri пула upstream " + entry.getKey());
+            }
+            InetSocketAddress address = remoteAddress(upstream.getUri());
+            builder.forRemoteHost(address, spec -> {
+                applyDefaults(spec, defaults);
+                applyUpstream(spec, upstream, http2Enabled);
+                spec.metrics(properties.isMetrics());
+            });
+            log.info("Отдельный пул соединений upstream {}: address={}, maxConnections={}, leasing={}",
+                    entry.getKey(), address, upstream.getMaxConnections(), upstream.getLeasing());
+        }
+        return builder;
+    }
+
+    static InetSocketAddress remoteAddress(URI uri) {
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) || "wss".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        // Пул выбирается по неразрешенному адресу, с которым NettyRoutingFilter запрашивает соединение
+        return InetSocketAddress.createUnresolved(uri.getHost(), port);
+    }
+
+    private static void applyDefaults(ConnectionProvider.HostSpecificSpec spec, HttpClientProperties.Pool defaults) {
+        // Так же, как общий пул в HttpClientFactory
+        if (defaults.getType() == HttpClientProperties.Pool.PoolType.FIXED) {
+            spec.maxConnections(defaults.getMaxConnections());
+            spec.pendingAcquireTimeout(Duration.ofMillis(defaults.getAcquireTimeout()));
+        } else {
+            spec.maxConnections(Integer.MAX_VALUE);
+            spec.pendingAcquireTimeout(Duration.ZERO);
+        }
+        spec.pendingAcquireMaxCount(-1);
+        if (defaults.getMaxIdleTime() != null) {
+            spec.maxIdleTime(defaults.getMaxIdleTime());
+        }
+        if (defaults.getMaxLifeTime() != null) {
+            spec.maxLifeTime(defaults.getMaxLifeTime());
+        }
+        if (defaults.getEvictionInterval() != null) {
+            spec.evictInBackground(defaults.getEvictionInterval());
+        }
+        if (defaults.getLeasingStrategy() == HttpClientProperties.Pool.LeasingStrategy.LIFO) {
+            spec.lifo();
+        } else {
+            spec.fifo();
+        }
+    }
+
+    private static void applyUpstream(ConnectionProvider.HostSpecificSpec spec,
+                                      HttpClientPoolProperties.Upstream upstream,
+                                      boolean http2Enabled) {
+        if (upstream.getMaxConnections() != null) {
+            spec.maxConnections(upstream.getMaxConnections());
+        }
+        if (upstream.getPendingAcquireMaxCount() != null) {
+            spec.pendingAcquireMaxCount(upstream.getPendingAcquireMaxCount());
+        }
+        if (upstream.getPendingAcquireTimeout() != null) {
+            spec.pendingAcquireTimeout(upstream.getPendingAcquireTimeout());
+        }
+        if (upstream.getMaxIdleTime() != null) {
+            spec.maxIdleTime(upstream.getMaxIdleTime());
+        }
+        if (upstream.getMaxLifeTime() != null) {
+            spec.maxLifeTime(upstream.getMaxLifeTime());
+        }
+        if (upstream.getEvictionInterval() != null) {
+            spec.evictInBackground(upstream.getEvictionInterval());
+        }
+        if (upstream.getLeasing() == HttpClientPoolProperties.Leasing.LIFO) {
+            spec.lifo();
+        } else if (upstream.getLeasing() == HttpClientPoolProperties.Leasing.FIFO) {
+            spec.fifo();
+        }
+
+        HttpClientPoolProperties.Http2 http2 = upstream.getHttp2();
+        if (http2Enabled && (http2.getMaxConcurrentStreams() != null || http2.getMinConnections() != null)) {
+            // Стратегия HTTP/2 заменяет лимит соединений спецификации, поэтому он передается в нее явно
+            Http2AllocationStrategy.Builder strategy = Http2AllocationStrategy.builder();
+            if (upstream.getMaxConnections() != null) {
+                strategy.maxConnections(upstream.getMaxConnections());
+            }
+            if (http2.getMaxConcurrentStreams() != null) {
+                strategy.maxConcurrentStreams(http2.getMaxConcurrentStreams());
+            }
+            if (http2.getMinConnections() != null) {
+                strategy.minConnections(http2.getMinConnections());
+            }
+            spec.allocationStrategy(strategy.build());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package me.nikonorovrs.gateway.http;
+
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+
+/**
+ * {@link HttpClientFactory} маршрутов шлюза, в общий пул которого добавлены пулы отдельных upstream.
+ */
+public class UpstreamHttpClientFactory extends HttpClientFactory {
+
+    private final HttpClientPoolProperties poolProperties;
+    private final Http2Properties http2Properties;
+
+    public UpstreamHttpClientFactory(HttpClientProperties properties,
+                                     ServerProperties serverProperties,
+                                     HttpClientSslConfigurer sslConfigurer,
+                                     List<HttpClientCustomizer> customizers,
+                                     HttpClientPoolProperties poolProperties,
+                                     Http2Properties http2Properties) {
+        super(properties, serverProperties, sslConfigurer, customizers);
+        this.poolProperties = poolProperties;
+        this.http2Properties = http2Properties;
+    }
+
+    @Override
+    protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+        ConnectionProvider provider = super.buildConnectionProvider(properties);
+        ConnectionProvider.Builder builder = provider.mutate();
+        if (builder == null) {
+            // Пул отключен (spring.cloud.gateway.httpclient.pool.type=disabled)
+            return provider;
+        }
+        provider.dispose();
+        return UpstreamConnectionPools.configure(builder, poolProperties, properties.getPool(),
+                        http2Properties.upstreamHttp2(serverProperties))
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+package me.nikonorovrs.gateway.logging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Logbook;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись обменов Logbook в отдельном потоке.
+ * <p>
+ * Форматирование, фильтры тел и отправка в appender'ы (в том числе GELF) выполняются вне event loop.
+ * Очередь ограничена: если поток записи не успевает, новые записи отбрасываются и учитываются в метрике.
+ */
+@Slf4j
+public class AsyncLogbookWriter {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    private final BlockingQueue<Entry> queue;
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public AsyncLogbookWriter(int capacity, MeterRegistry meterRegistry) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writtenCounter = counter(meterRegistry, "written");
+        this.droppedCounter = counter(meterRegistry, "dropped");
+        this.failedCounter = counter(meterRegistry, "failed");
+        Gauge.builder("gateway.body.log.queue", queue, BlockingQueue::size)
+                .description("Обмены в очереди записи Logbook")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name("logbook-writer").daemon().start(this::drain);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * Ставит обмен в очередь, не блокируя вызывающий поток.
+     *
+     * @param stage    стадия Logbook, полученная при начале обмена
+     * @param response снимок ответа
+     */
+    public void submit(Logbook.RequestWritingStage stage, HttpResponse response) {
+        if (!queue.offer(new Entry(stage, response))) {
+            droppedCounter.increment();
+        }
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            Entry entry;
+            try {
+                entry = running ? queue.take() : queue.poll(0, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Остановка: оставшиеся записи дописываются без ожидания новых
+                running = false;
+                continue;
+            }
+            if (entry == null) {
+                break;
+            }
+            write(entry);
+        }
+    }
+
+    private void write(Entry entry) {
+        try {
+            entry.stage().write().process(entry.response()).write();
+            writtenCounter.increment();
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.warn("Ошибка записи обмена Logbook: {}", e.toString());
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gateway.body.log.entries")
+                .description("Обмены, переданные в Logbook, по результату")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Entry(Logbook.RequestWritingStage stage, HttpResponse response) {
+    }
+}
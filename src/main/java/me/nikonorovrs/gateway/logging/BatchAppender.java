@@ -0,0 +1,16 @@
+package me.nikonorovrs.gateway.logging;
+
+import ch.qos.logback.core.Appender;
+
+import java.util.List;
+
+/**
+ * Appender, которому {@link RingBufferAppender} передает события пачками, а не по одному.
+ */
+public interface BatchAppender<E> extends Appender<E> {
+
+    /**
+     * Вызывается одним потоком; список переиспользуется после возврата и не должен сохраняться.
+     */
+    void appendBatch(List<E> events);
+}
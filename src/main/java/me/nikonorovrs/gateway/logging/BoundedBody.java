@@ -0,0 +1,53 @@
+package me.nikonorovrs.gateway.logging;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Начало тела сообщения не длиннее заданного предела.
+ * <p>
+ * Буферы потока не потребляются и не удерживаются: из каждого копируется только недостающая до предела часть,
+ * после заполнения остальные буферы лишь учитываются по размеру.
+ */
+public final class BoundedBody {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int limit;
+
+    private byte[] prefix = EMPTY;
+    private int size;
+    private long totalSize;
+
+    public BoundedBody(int limit) {
+        this.limit = limit;
+    }
+
+    public synchronized void append(DataBuffer buffer) {
+        int readable = buffer.readableByteCount();
+        totalSize += readable;
+        int length = Math.min(readable, limit - size);
+        if (length <= 0) {
+            return;
+        }
+        if (prefix.length < size + length) {
+            prefix = Arrays.copyOf(prefix, Math.min(limit, Math.max(size + length, prefix.length * 2)));
+        }
+        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(prefix), size, length);
+        size += length;
+    }
+
+    public synchronized byte[] bytes() {
+        return size == prefix.length ? prefix : Arrays.copyOf(prefix, size);
+    }
+
+    public synchronized boolean truncated() {
+        return totalSize > size;
+    }
+
+    public synchronized long totalSize() {
+        return totalSize;
+    }
+}
@@ -0,0 +1,31 @@
+package me.nikonorovrs.gateway.logging;
+
+import java.nio.charset.StandardCharsets;
+
+final class CapturedBodies {
+
+    // Тот же признак обрезки, что у BodyFilters.truncate из Logbook
+    private static final byte[] TRUNCATION_MARKER = "...".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private CapturedBodies() {
+    }
+
+    /**
+     * @param body захваченное начало тела или {@code null}, если тело не журналируется
+     */
+    static byte[] bytes(BoundedBody body) {
+        if (body == null) {
+            return EMPTY;
+        }
+        byte[] bytes = body.bytes();
+        if (!body.truncated()) {
+            return bytes;
+        }
+        byte[] truncated = new byte[bytes.length + TRUNCATION_MARKER.length];
+        System.arraycopy(bytes, 0, truncated, 0, bytes.length);
+        System.arraycopy(TRUNCATION_MARKER, 0, truncated, bytes.length, TRUNCATION_MARKER.length);
+        return truncated;
+    }
+}
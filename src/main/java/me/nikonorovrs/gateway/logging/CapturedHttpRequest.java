@@ -0,0 +1,100 @@
+package me.nikonorovrs.gateway.logging;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.zalando.logbook.HttpHeaders;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.Origin;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Optional;
+
+/**
+ * Снимок входящего запроса для Logbook. Метаданные копируются при создании,
+ * тело читается из {@link BoundedBody} при записи, когда запрос уже передан upstream.
+ */
+public final class CapturedHttpRequest implements HttpRequest {
+
+    private final String remote;
+    private final String method;
+    private final URI uri;
+    private final HttpHeaders headers;
+    private final BoundedBody body;
+
+    public CapturedHttpRequest(ServerHttpRequest request, BoundedBody body) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        this.remote = remoteAddress != null ? remoteAddress.getHostString() : "";
+        this.method = request.getMethod().name();
+        this.uri = request.getURI();
+        this.headers = HttpHeaders.of(request.getHeaders());
+        this.body = body;
+    }
+
+    private CapturedHttpRequest(CapturedHttpRequest request, BoundedBody body) {
+        this.remote = request.remote;
+        this.method = request.method;
+        this.uri = request.uri;
+        this.headers = request.headers;
+        this.body = body;
+    }
+
+    @Override
+    public String getRemote() {
+        return remote;
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getScheme() {
+        return uri.getScheme();
+    }
+
+    @Override
+    public String getHost() {
+        return uri.getHost();
+    }
+
+    @Override
+    public Optional<Integer> getPort() {
+        return uri.getPort() == -1 ? Optional.empty() : Optional.of(uri.getPort());
+    }
+
+    @Override
+    public String getPath() {
+        return uri.getRawPath();
+    }
+
+    @Override
+    public String getQuery() {
+        return uri.getRawQuery() != null ? uri.getRawQuery() : "";
+    }
+
+    @Override
+    public Origin getOrigin() {
+        return Origin.REMOTE;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return CapturedBodies.bytes(body);
+    }
+
+    @Override
+    public HttpRequest withBody() {
+        return this;
+    }
+
+    @Override
+    public HttpRequest withoutBody() {
+        return body == null ? this : new CapturedHttpRequest(this, null);
+    }
+}
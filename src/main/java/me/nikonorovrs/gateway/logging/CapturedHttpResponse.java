@@ -0,0 +1,58 @@
+package me.nikonorovrs.gateway.logging;
+
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.zalando.logbook.HttpHeaders;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Origin;
+
+/**
+ * Снимок ответа для Logbook, создается после завершения обмена.
+ */
+public final class CapturedHttpResponse implements HttpResponse {
+
+    private final int status;
+    private final HttpHeaders headers;
+    private final BoundedBody body;
+
+    public CapturedHttpResponse(ServerHttpResponse response, BoundedBody body) {
+        this.status = response.getStatusCode() != null ? response.getStatusCode().value() : 200;
+        this.headers = HttpHeaders.of(response.getHeaders());
+        this.body = body;
+    }
+
+    private CapturedHttpResponse(CapturedHttpResponse response, BoundedBody body) {
+        this.status = response.status;
+        this.headers = response.headers;
+        this.body = body;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public Origin getOrigin() {
+        return Origin.LOCAL;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return CapturedBodies.bytes(body);
+    }
+
+    @Override
+    public HttpResponse withBody() {
+        return this;
+    }
+
+    @Override
+    public HttpResponse withoutBody() {
+        return body == null ? this : new CapturedHttpResponse(this, null);
+    }
+}
@@ -0,0 +1,169 @@
+package me.nikonorovrs.gateway.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import de.siegmar.logbackgelf.GelfEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Отправка пачек GELF-сообщений в HTTP-вход Graylog с включенным приемом пачек (Bulk Receiving):
+ * сообщения разделяются переводом строки, тело сжимается gzip.
+ * <p>
+ * Рассчитан на вызов из одного потока {@link RingBufferAppender}: запросы идут последовательно
+ * по одному keep-alive соединению. Ошибка отправки не повторяется, пачка учитывается как потерянная.
+ */
+public class GelfHttpBatchAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements BatchAppender<ILoggingEvent> {
+
+    private String url;
+    private boolean compressed = true;
+    private int connectTimeout = 1000;
+    private int requestTimeout = 5000;
+    private GelfEncoder encoder;
+
+    private URI uri;
+    private HttpClient client;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Override
+    public void start() {
+        if (url == null || url.isBlank()) {
+            addError("Не задан url для " + getName());
+            return;
+        }
+        if (encoder == null) {
+            addError("Не задан GelfEncoder для " + getName());
+            return;
+        }
+        uri = URI.create(url);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .build();
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        appendBatch(List.of(event));
+    }
+
+    @Override
+    public void appendBatch(List<ILoggingEvent> events) {
+        if (!isStarted() || events.isEmpty()) {
+            return;
+        }
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofMillis(requestTimeout))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(encode(events)));
+            if (compressed) {
+                request.header("Content-Encoding", "gzip");
+            }
+            HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 300) {
+                failed(events.size(), "Graylog ответил " + response.statusCode(), null);
+                return;
+            }
+            sent.add(events.size());
+        } catch (IOException e) {
+            failed(events.size(), "Ошибка отправки в Graylog", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(events.size(), "Отправка в Graylog прервана", e);
+        }
+    }
+
+    private byte[] encode(List<ILoggingEvent> events) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(events.size() * 512);
+        try (OutputStream out = compressed ? new GZIPOutputStream(body) : body) {
+            for (ILoggingEvent event : events) {
+                out.write(encoder.encode(event));
+                out.write('\n');
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private void failed(int count, String message, Exception cause) {
+        failed.add(count);
+        // Статус logback, а не логгер: сообщение не должно вернуться в этот же appender
+        addWarn(message + ", потеряно сообщений: " + count, cause);
+    }
+
+    /**
+     * @return число сообщений, принятых Graylog
+     */
+    public long sentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return число сообщений, которые не удалось отправить
+     */
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public GelfEncoder getEncoder() {
+        return encoder;
+    }
+
+    public void setEncoder(GelfEncoder encoder) {
+        this.encoder = encoder;
+    }
+}
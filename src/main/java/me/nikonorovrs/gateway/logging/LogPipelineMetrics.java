@@ -0,0 +1,82 @@
+package me.nikonorovrs.gateway.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Метрики {@link RingBufferAppender} и вложенных {@link GelfHttpBatchAppender} из конфигурации logback.
+ */
+@Component
+public class LogPipelineMetrics implements MeterBinder {
+
+    private static final List<Level> DROP_LEVELS = List.of(Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR);
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context)) {
+            return;
+        }
+        for (RingBufferAppender appender : ringBufferAppenders(context).values()) {
+            String name = appender.getName();
+            Gauge.builder("gateway.log.queue", appender, RingBufferAppender::size)
+                    .description("События журнала в кольцевом буфере")
+                    .tag("appender", name)
+                    .register(registry);
+            Gauge.builder("gateway.log.queue.capacity", appender, RingBufferAppender::getBufferSize)
+                    .description("Размер кольцевого буфера журнала")
+                    .tag("appender", name)
+                    .register(registry);
+            FunctionCounter.builder("gateway.log.events.dispatched", appender, RingBufferAppender::dispatchedCount)
+                    .description("События журнала, переданные вложенным appender'ам")
+                    .tag("appender", name)
+                    .register(registry);
+            for (Level level : DROP_LEVELS) {
+                FunctionCounter.builder("gateway.log.events.dropped", appender, ring -> ring.droppedCount(level))
+                        .description("События журнала, отброшенные при заполнении буфера")
+                        .tags("appender", name, "level", level.levelStr.toLowerCase())
+                        .register(registry);
+            }
+
+            Iterator<Appender<ILoggingEvent>> nested = appender.iteratorForAppenders();
+            while (nested.hasNext()) {
+                if (nested.next() instanceof GelfHttpBatchAppender gelf) {
+                    FunctionCounter.builder("gateway.log.gelf.messages", gelf, GelfHttpBatchAppender::sentCount)
+                            .description("Сообщения, отправленные в Graylog, по результату")
+                            .tags("appender", gelf.getName(), "outcome", "sent")
+                            .register(registry);
+                    FunctionCounter.builder("gateway.log.gelf.messages", gelf, GelfHttpBatchAppender::failedCount)
+                            .description("Сообщения, отправленные в Graylog, по результату")
+                            .tags("appender", gelf.getName(), "outcome", "failed")
+                            .register(registry);
+                }
+            }
+        }
+    }
+
+    private static Map<String, RingBufferAppender> ringBufferAppenders(LoggerContext context) {
+        Map<String, RingBufferAppender> appenders = new LinkedHashMap<>();
+        for (Logger logger : context.getLoggerList()) {
+            Iterator<Appender<ILoggingEvent>> iterator = logger.iteratorForAppenders();
+            while (iterator.hasNext()) {
+                if (iterator.next() instanceof RingBufferAppender ring) {
+                    appenders.putIfAbsent(ring.getName(), ring);
+                }
+            }
+        }
+        return appenders;
+    }
+}
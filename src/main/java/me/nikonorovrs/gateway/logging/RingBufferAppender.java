@@ -0,0 +1,321 @@
+package me.nikonorovrs.gateway.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный appender на кольцевом буфере без блокировок.
+ * <p>
+ * Потоки приложения (в том числе event loop Netty) только занимают слот буфера через CAS и никогда
+ * не ждут: если буфер заполнен, событие отбрасывается. Единственный поток-потребитель забирает события
+ * пачками до {@code batchSize} и передает их вложенным appender'ам; {@link BatchAppender} получает
+ * пачку целиком.
+ * <p>
+ * При заполнении буфера сначала отбрасываются TRACE и DEBUG (порог {@code debugDropThreshold}),
+ * затем из INFO пропускается только доля {@code infoSampleRate} (порог {@code infoSampleThreshold}).
+ * WARN и ERROR теряются, только если буфер заполнен полностью.
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    private int bufferSize = 8192;
+    private int batchSize = 512;
+    private double debugDropThreshold = 0.5;
+    private double infoSampleThreshold = 0.8;
+    private double infoSampleRate = 0.1;
+    private boolean includeCallerData;
+    private int maxFlushTime = 1000;
+
+    private AtomicReferenceArray<ILoggingEvent> slots;
+    private int mask;
+    // Следующий слот для записи и для чтения; разница - число занятых слотов
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private final LongAdder droppedDebug = new LongAdder();
+    private final LongAdder droppedInfo = new LongAdder();
+    private final LongAdder droppedWarn = new LongAdder();
+    private final LongAdder droppedError = new LongAdder();
+    private final LongAdder dispatched = new LongAdder();
+
+    private volatile boolean running;
+    private volatile boolean consumerParked;
+    private Thread consumer;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (bufferSize < 2 || Integer.bitCount(bufferSize) != 1) {
+            addError("bufferSize должен быть степенью двойки: " + bufferSize);
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("Не задан ни один appender для " + getName());
+            return;
+        }
+        slots = new AtomicReferenceArray<>(bufferSize);
+        mask = bufferSize - 1;
+        running = true;
+        consumer = Thread.ofPlatform().name("logback-ring-" + getName()).daemon().start(this::consume);
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(maxFlushTime);
+            if (consumer.isAlive()) {
+                addWarn("Не все события " + getName() + " отправлены за " + maxFlushTime + " мс");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (!admit(event.getLevel())) {
+            dropped(event.getLevel()).increment();
+            return;
+        }
+        // MDC и аргументы сообщения фиксируются в потоке, который пишет событие
+        event.prepareForDeferredProcessing();
+        if (includeCallerData) {
+            event.getCallerData();
+        }
+        if (!offer(event)) {
+            dropped(event.getLevel()).increment();
+        }
+    }
+
+    private boolean admit(Level level) {
+        double fill = (double) size() / bufferSize;
+        if (level.toInt() <= Level.DEBUG_INT) {
+            return fill < debugDropThreshold;
+        }
+        if (level.toInt() == Level.INFO_INT && fill >= infoSampleThreshold) {
+            return ThreadLocalRandom.current().nextDouble() < infoSampleRate;
+        }
+        return true;
+    }
+
+    private boolean offer(ILoggingEvent event) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= bufferSize) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.set((int) (sequence & mask), event);
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    private void consume() {
+        List<ILoggingEvent> batch = new ArrayList<>(batchSize);
+        while (true) {
+            drainTo(batch);
+            if (!batch.isEmpty()) {
+                dispatch(batch);
+                batch.clear();
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            consumerParked = true;
+            // Повторная проверка после флага: производитель либо увидит флаг, либо его событие будет найдено здесь
+            if (slots.get((int) (head.get() & mask)) == null) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            consumerParked = false;
+        }
+    }
+
+    private void drainTo(List<ILoggingEvent> batch) {
+        long sequence = head.get();
+        while (batch.size() < batchSize) {
+            int index = (int) (sequence & mask);
+            // Слот занят, но событие еще не записано - забираем его в следующий раз
+            ILoggingEvent event = slots.get(index);
+            if (event == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            batch.add(event);
+            sequence++;
+            head.lazySet(sequence);
+        }
+    }
+
+    private void dispatch(List<ILoggingEvent> batch) {
+        Iterator<Appender<ILoggingEvent>> iterator = appenders.iteratorForAppenders();
+        while (iterator.hasNext()) {
+            Appender<ILoggingEvent> appender = iterator.next();
+            try {
+                if (appender instanceof BatchAppender<ILoggingEvent> batchAppender) {
+                    batchAppender.appendBatch(batch);
+                } else {
+                    for (ILoggingEvent event : batch) {
+                        appender.doAppend(event);
+                    }
+                }
+            } catch (RuntimeException e) {
+                addError("Ошибка передачи событий в " + appender.getName(), e);
+            }
+        }
+        dispatched.add(batch.size());
+    }
+
+    private LongAdder dropped(Level level) {
+        if (level.toInt() <= Level.DEBUG_INT) {
+            return droppedDebug;
+        }
+        if (level.toInt() == Level.INFO_INT) {
+            return droppedInfo;
+        }
+        return level.toInt() == Level.WARN_INT ? droppedWarn : droppedError;
+    }
+
+    /**
+     * @return число событий в буфере, ожидающих отправки
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return число отброшенных событий уровня {@code level}; TRACE учитывается вместе с DEBUG
+     */
+    public long droppedCount(Level level) {
+        return dropped(level).sum();
+    }
+
+    /**
+     * @return число событий, переданных вложенным appender'ам
+     */
+    public long dispatchedCount() {
+        return dispatched.sum();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public double getDebugDropThreshold() {
+        return debugDropThreshold;
+    }
+
+    public void setDebugDropThreshold(double debugDropThreshold) {
+        this.debugDropThreshold = debugDropThreshold;
+    }
+
+    public double getInfoSampleThreshold() {
+        return infoSampleThreshold;
+    }
+
+    public void setInfoSampleThreshold(double infoSampleThreshold) {
+        this.infoSampleThreshold = infoSampleThreshold;
+    }
+
+    public double getInfoSampleRate() {
+        return infoSampleRate;
+    }
+
+    public void setInfoSampleRate(double infoSampleRate) {
+        this.infoSampleRate = infoSampleRate;
+    }
+
+    public boolean isIncludeCallerData() {
+        return includeCallerData;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+    public int getMaxFlushTime() {
+        return maxFlushTime;
+    }
+
+    public void setMaxFlushTime(int maxFlushTime) {
+        this.maxFlushTime = maxFlushTime;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,90 @@
+package me.nikonorovrs.gateway.metrics;
+
+import org.springframework.web.server.ServerWebExchange;
+import reactor.util.context.ContextView;
+
+/**
+ * Длительности этапов обработки одного запроса.
+ * <p>
+ * Хранится в атрибутах обмена и в Reactor-контексте цепочки, поэтому этапы, которые не видят
+ * {@link ServerWebExchange} (авторизация клиента, HTTP-клиент upstream), тоже могут отметить свое время.
+ */
+public class RequestTimings {
+
+    public static final String ATTRIBUTE = RequestTimings.class.getName();
+
+    public static final long NOT_RECORDED = -1;
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile long sessionNanos = NOT_RECORDED;
+    private volatile long authorizeNanos = NOT_RECORDED;
+    private volatile String authorizeOutcome;
+    private volatile long lockWaitNanos = NOT_RECORDED;
+    private volatile long upstreamStartNanos = NOT_RECORDED;
+    private volatile long upstreamRequestNanos = NOT_RECORDED;
+    private volatile long upstreamResponseNanos = NOT_RECORDED;
+
+    public static RequestTimings of(ServerWebExchange exchange) {
+        return (RequestTimings) exchange.getAttributes().computeIfAbsent(ATTRIBUTE, key -> new RequestTimings());
+    }
+
+    public static RequestTimings from(ContextView context) {
+        return context.getOrDefault(RequestTimings.class, null);
+    }
+
+    public void sessionLoaded(long nanos) {
+        sessionNanos = nanos;
+    }
+
+    public void authorized(long nanos, String outcome) {
+        authorizeNanos = nanos;
+        authorizeOutcome = outcome;
+    }
+
+    public void lockAcquired(long nanos) {
+        lockWaitNanos = nanos;
+    }
+
+    public void upstreamStarted() {
+        upstreamStartNanos = System.nanoTime();
+    }
+
+    public void upstreamRequestSent() {
+        upstreamRequestNanos = System.nanoTime();
+    }
+
+    public void upstreamResponseReceived() {
+        upstreamResponseNanos = System.nanoTime();
+    }
+
+    public long startNanos() {
+        return startNanos;
+    }
+
+    public long sessionNanos() {
+        return sessionNanos;
+    }
+
+    public long authorizeNanos() {
+        return authorizeNanos;
+    }
+
+    public String authorizeOutcome() {
+        return authorizeOutcome;
+    }
+
+    public long lockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    public long upstreamConnectNanos() {
+        return upstreamStartNanos != NOT_RECORDED && upstreamRequestNanos != NOT_RECORDED
+                ? upstreamRequestNanos - upstreamStartNanos : NOT_RECORDED;
+    }
+
+    public long upstreamTtfbNanos() {
+        return upstreamRequestNanos != NOT_RECORDED && upstreamResponseNanos != NOT_RECORDED
+                ? upstreamResponseNanos - upstreamRequestNanos : NOT_RECORDED;
+    }
+}
@@ -0,0 +1,37 @@
+package me.nikonorovrs.gateway.metrics;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки таймеров по маршрутам.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.metrics.route-timing")
+public class RouteTimingProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Границы SLO-бакетов гистограмм.
+     */
+    private List<Duration> slo = new ArrayList<>(List.of(
+            Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250),
+            Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofMillis(2500)));
+
+    /**
+     * Публиковать полную гистограмму для вычисления перцентилей в Prometheus.
+     */
+    private boolean percentilesHistogram = false;
+
+    /**
+     * Максимальное число различных значений тега route, остальные маршруты попадают в "other".
+     */
+    private int maxRoutes = 100;
+}
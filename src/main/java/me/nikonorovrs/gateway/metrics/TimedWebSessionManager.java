@@ -0,0 +1,26 @@
+package me.nikonorovrs.gateway.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionManager;
+import reactor.core.publisher.Mono;
+
+/**
+ * Отмечает в {@link RequestTimings} время загрузки сессии.
+ */
+@RequiredArgsConstructor
+public class TimedWebSessionManager implements WebSessionManager {
+
+    private final WebSessionManager delegate;
+
+    @Override
+    public Mono<WebSession> getSession(ServerWebExchange exchange) {
+        // Обмен собирает Mono сессии заранее, поэтому время отсчитывается от подписки
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return delegate.getSession(exchange)
+                    .doOnSuccess(session -> RequestTimings.of(exchange).sessionLoaded(System.nanoTime() - start));
+        });
+    }
+}
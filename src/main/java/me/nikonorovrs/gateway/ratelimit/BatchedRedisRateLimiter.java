@@ -0,0 +1,230 @@
+package me.nikonorovrs.gateway.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.constraints.Min;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ограничение частоты запросов по алгоритму корзины токенов.
+ * <p>
+ * Решение принимается по локальной корзине узла без обращения к Redis. Раз в
+ * {@code app.rate-limit.sync-interval} расход всех активных корзин пачками отправляется в общую корзину
+ * в Redis, и локальные корзины получают ее остаток. Поэтому лимит соблюдается для всех узлов вместе,
+ * а превышение ограничено расходом узлов за один интервал синхронизации.
+ * <pre>
+ * filters:
+ *   - name: RequestRateLimiter
+ *     args:
+ *       batched-redis-rate-limiter.replenish-rate: 10
+ *       batched-redis-rate-limiter.burst-capacity: 20
+ * </pre>
+ */
+@Slf4j
+public class BatchedRedisRateLimiter extends AbstractRateLimiter<BatchedRedisRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "batched-redis-rate-limiter";
+
+    public static final String LIMIT_HEADER = "RateLimit-Limit";
+    public static final String REMAINING_HEADER = "RateLimit-Remaining";
+    public static final String RESET_HEADER = "RateLimit-Reset";
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    // Пополняет общую корзину по времени Redis, списывает расход узла и возвращает остаток.
+    // Остаток может уйти в минус на величину не больше емкости, если узлы вместе превысили лимит.
+    private static final RedisScript<String> SYNC_SCRIPT = RedisScript.of("""
+            local capacity = tonumber(ARGV[1])
+            local rate = tonumber(ARGV[2])
+            local consumed = tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1])
+            local ts = tonumber(state[2])
+            if tokens == nil or ts == nil then
+                tokens = capacity
+                ts = now
+            end
+            if now > ts then
+                tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)
+            end
+            tokens = math.max(tokens - consumed, -capacity)
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 60000)
+            return tostring(tokens)
+            """, String.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Config defaultConfig;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private Disposable ticker;
+
+    public BatchedRedisRateLimiter(ReactiveStringRedisTemplate redisTemplate,
+                                   RateLimitProperties properties,
+                                   ConfigurationService configurationService,
+                                   MeterRegistry meterRegistry) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.defaultConfig = new Config()
+                .setReplenishRate(properties.getDefaultReplenishRate())
+                .setBurstCapacity(properties.getDefaultBurstCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Flux.interval(properties.getSyncInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> sync()
+                        .onErrorResume(error -> {
+                            log.warn("Ошибка синхронизации лимитов запросов с Redis: {}", error.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = getConfig().getOrDefault(routeId, defaultConfig);
+        int capacity = config.getBurstCapacity();
+        double rate = config.getReplenishRate();
+        String bucketKey = routeId + ':' + id;
+
+        TokenBucket bucket;
+        double remaining;
+        do {
+            // Корзину могла удалить синхронизация между поиском и списанием: тогда берется новая
+            bucket = buckets.computeIfAbsent(bucketKey, key -> new TokenBucket(routeId));
+            remaining = bucket.tryConsume(config.getRequestedTokens(), capacity, rate, System.nanoTime());
+        } while (remaining < 0 && bucket.isRetired());
+        boolean allowed = remaining >= 0;
+        double tokens = allowed ? remaining : bucket.tokens(capacity, rate, System.nanoTime());
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(LIMIT_HEADER, Integer.toString(capacity));
+        headers.put(REMAINING_HEADER, Long.toString((long) Math.max(tokens, 0)));
+        headers.put(RESET_HEADER, Long.toString(secondsUntil(capacity - tokens, rate)));
+        if (!allowed) {
+            headers.put(RETRY_AFTER_HEADER, Long.toString(Math.max(secondsUntil(config.getRequestedTokens() - tokens, rate), 1)));
+        }
+        count(routeId, allowed);
+        return Mono.just(new Response(allowed, headers));
+    }
+
+    /**
+     * Отправляет расход активных корзин в Redis и удаляет давно не использованные корзины.
+     */
+    Mono<Void> sync() {
+        long now = System.nanoTime();
+        long idleNanos = properties.getIdleTimeout().toNanos();
+        // Удаление под блокировкой ключа таблицы, а вывод корзины из оборота - под ее монитором
+        for (String bucketKey : buckets.keySet()) {
+            buckets.computeIfPresent(bucketKey, (key, bucket) -> bucket.retireIfIdle(now, idleNanos) ? null : bucket);
+        }
+
+        List<Map.Entry<String, TokenBucket>> active = buckets.entrySet().stream()
+                .filter(entry -> entry.getValue().hasPending())
+                .toList();
+        return Flux.fromIterable(active)
+                .buffer(properties.getSyncBatchSize())
+                .concatMap(batch -> Flux.fromIterable(batch)
+                        // Команды пачки уходят по общему подключению Lettuce конвейером
+                        .flatMap(entry -> syncBucket(entry.getKey(), entry.getValue()), batch.size()))
+                .then();
+    }
+
+    private Mono<Void> syncBucket(String bucketKey, TokenBucket bucket) {
+        Config config = getConfig().getOrDefault(bucket.routeId(), defaultConfig);
+        long consumed = bucket.drainPending();
+        return redisTemplate.execute(SYNC_SCRIPT, List.of(properties.getKeyPrefix() + bucketKey),
+                        List.of(Integer.toString(config.getBurstCapacity()),
+                                Integer.toString(config.getReplenishRate()),
+                                Long.toString(consumed)))
+                .next()
+                .doOnNext(tokens -> bucket.synced(Double.parseDouble(tokens), config.getBurstCapacity(), System.nanoTime()))
+                .doOnError(e -> bucket.restorePending(consumed))
+                .onErrorResume(e -> {
+                    log.debug("Не удалось синхронизировать корзину {}: {}", bucketKey, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private static long secondsUntil(double tokens, double rate) {
+        return tokens <= 0 ? 0 : (long) Math.ceil(tokens / rate);
+    }
+
+    private void count(String routeId, boolean allowed) {
+        String outcome = allowed ? "allowed" : "denied";
+        counters.computeIfAbsent(routeId + ':' + outcome, name -> Counter.builder("gateway.rate-limit.requests")
+                        .description("Решения ограничителя частоты запросов")
+                        .tag("route", routeId)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    @Getter
+    @Setter
+    @Validated
+    public static class Config {
+
+        /**
+         * Пополнение корзины в токенах в секунду.
+         */
+        @Min(1)
+        private int replenishRate;
+
+        /**
+         * Емкость корзины - допустимый всплеск запросов.
+         */
+        @Min(1)
+        private int burstCapacity = 1;
+
+        /**
+         * Стоимость одного запроса в токенах.
+         */
+        @Min(1)
+        private int requestedTokens = 1;
+
+        public Config setReplenishRate(int replenishRate) {
+            this.replenishRate = replenishRate;
+            return this;
+        }
+
+        public Config setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+            return this;
+        }
+    }
+}
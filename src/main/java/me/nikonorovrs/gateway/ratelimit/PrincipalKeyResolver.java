@@ -0,0 +1,36 @@
+package me.nikonorovrs.gateway.ratelimit;
+
+import me.nikonorovrs.gateway.security.AuthenticatedUser;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Ключ ограничения частоты: имя аутентифицированного пользователя, а для анонимных запросов - IP клиента.
+ */
+public class PrincipalKeyResolver implements KeyResolver {
+
+    static final String USER_PREFIX = "user:";
+    static final String IP_PREFIX = "ip:";
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        return AuthenticatedUser.current()
+                .map(Authentication::getName)
+                .map(name -> USER_PREFIX + name)
+                .switchIfEmpty(Mono.fromSupplier(() -> IP_PREFIX + clientAddress(exchange)));
+    }
+
+    private static String clientAddress(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        if (remoteAddress == null) {
+            return "unknown";
+        }
+        return remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress()
+                : remoteAddress.getHostString();
+    }
+}
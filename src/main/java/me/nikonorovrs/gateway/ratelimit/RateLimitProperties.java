@@ -0,0 +1,43 @@
+package me.nikonorovrs.gateway.ratelimit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Общие настройки {@link BatchedRedisRateLimiter}; лимиты маршрутов задаются в аргументах фильтра RequestRateLimiter.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * Как часто локальный расход токенов отправляется в Redis.
+     */
+    private Duration syncInterval = Duration.ofMillis(500);
+
+    /**
+     * Сколько корзин синхронизируется одной пачкой команд.
+     */
+    private int syncBatchSize = 500;
+
+    /**
+     * Корзина без запросов дольше этого времени удаляется с узла.
+     */
+    private Duration idleTimeout = Duration.ofMinutes(5);
+
+    private String keyPrefix = "gateway-rate-limit:";
+
+    /**
+     * Пополнение в токенах в секунду для маршрутов без собственной настройки.
+     */
+    private int defaultReplenishRate = 20;
+
+    /**
+     * Емкость корзины для маршрутов без собственной настройки.
+     */
+    private int defaultBurstCapacity = 40;
+}
@@ -0,0 +1,113 @@
+package me.nikonorovrs.gateway.ratelimit;
+
+/**
+ * Локальная корзина токенов одного ключа на узле.
+ * <p>
+ * Решения принимаются по локальному состоянию, а израсходованные токены копятся в {@code pending}
+ * до очередной синхронизации с общей корзиной в Redis.
+ */
+final class TokenBucket {
+
+    private final String routeId;
+
+    private boolean initialized;
+    private double tokens;
+    private long refilledAt;
+    private long lastUsedAt;
+    private long pending;
+    private boolean retired;
+
+    TokenBucket(String routeId) {
+        this.routeId = routeId;
+    }
+
+    String routeId() {
+        return routeId;
+    }
+
+    /**
+     * @return оставшиеся токены после списания или отрицательное значение, если токенов не хватило
+     * или корзина уже удалена из таблицы узла ({@link #isRetired()})
+     */
+    synchronized double tryConsume(int requested, int capacity, double replenishRate, long now) {
+        if (retired) {
+            return -1;
+        }
+        refill(capacity, replenishRate, now);
+        lastUsedAt = now;
+        if (tokens < requested) {
+            return -1;
+        }
+        tokens -= requested;
+        pending += requested;
+        return tokens;
+    }
+
+    synchronized double tokens(int capacity, double replenishRate, long now) {
+        refill(capacity, replenishRate, now);
+        return tokens;
+    }
+
+    /**
+     * Забирает накопленный расход для отправки в Redis.
+     */
+    synchronized long drainPending() {
+        long drained = pending;
+        pending = 0;
+        return drained;
+    }
+
+    /**
+     * Возвращает расход, который не удалось отправить.
+     */
+    synchronized void restorePending(long consumed) {
+        pending += consumed;
+    }
+
+    /**
+     * Принимает состояние общей корзины: в нем уже учтен отправленный расход, но еще нет расхода,
+     * накопленного на узле во время синхронизации.
+     */
+    synchronized void synced(double globalTokens, int capacity, long now) {
+        initialized = true;
+        tokens = Math.min(capacity, globalTokens - pending);
+        refilledAt = now;
+    }
+
+    synchronized boolean hasPending() {
+        return pending > 0;
+    }
+
+    synchronized boolean isIdle(long now, long idleNanos) {
+        return pending == 0 && now - lastUsedAt > idleNanos;
+    }
+
+    /**
+     * Выводит простаивающую корзину из оборота: после этого она ничего не списывает, и расход
+     * не может остаться в корзине, которую уже никто не синхронизирует.
+     */
+    synchronized boolean retireIfIdle(long now, long idleNanos) {
+        if (isIdle(now, idleNanos)) {
+            retired = true;
+        }
+        return retired;
+    }
+
+    synchronized boolean isRetired() {
+        return retired;
+    }
+
+    private void refill(int capacity, double replenishRate, long now) {
+        if (!initialized) {
+            // Новая корзина начинается полной, общее состояние придет со следующей синхронизацией
+            initialized = true;
+            tokens = capacity;
+            refilledAt = now;
+            return;
+        }
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) / 1_000_000_000.0 * replenishRate);
+            refilledAt = now;
+        }
+    }
+}
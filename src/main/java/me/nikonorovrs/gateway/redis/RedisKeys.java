@@ -0,0 +1,17 @@
+package me.nikonorovrs.gateway.redis;
+
+/**
+ * Хеш-теги ключей Redis Cluster.
+ */
+public final class RedisKeys {
+
+    private RedisKeys() {
+    }
+
+    /**
+     * @return часть ключа, по которой кластер выбирает слот: с тегом все ключи пользователя попадают в один слот
+     */
+    public static String principalPart(String principalName, boolean hashTags) {
+        return hashTags ? "{" + principalName + "}" : principalName;
+    }
+}
@@ -0,0 +1,151 @@
+package me.nikonorovrs.gateway.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.ReadFrom;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Чтение с реплик с защитой от устаревших данных.
+ * <p>
+ * Отдельная фабрика Lettuce с тем же кластером или Sentinel, что и основная, но с {@link ReadFrom} для реплик;
+ * Lettuce отправляет на реплики только команды чтения. Значение с реплики не используется, если:
+ * <ul>
+ *     <li>ключ записывался этим узлом в пределах {@code staleness-window} - чтение своих записей;</li>
+ *     <li>значения нет или вызывающий код считает его непригодным (например, токен пора обновлять) -
+ *     повторное чтение с primary, чтобы не принять решение по отставшей копии.</li>
+ * </ul>
+ */
+@Slf4j
+public class RedisReplicaReads {
+
+    private final LettuceConnectionFactory replicaFactory;
+    private final Cache<String, Boolean> recentWrites;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public RedisReplicaReads(RedisTopologyProperties properties,
+                             RedisConnectionFactory primaryFactory,
+                             MeterRegistry meterRegistry) {
+        RedisTopologyProperties.ReplicaReads replicaReads = properties.getReplicaReads();
+        this.replicaFactory = replicaReads.isEnabled() ? replicaFactory(primaryFactory, replicaReads) : null;
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(replicaReads.getStalenessWindow())
+                .maximumSize(replicaReads.getMaxTrackedKeys())
+                .build();
+        this.meterRegistry = meterRegistry;
+    }
+
+    private static LettuceConnectionFactory replicaFactory(RedisConnectionFactory primaryFactory,
+                                                           RedisTopologyProperties.ReplicaReads properties) {
+        if (!(primaryFactory instanceof LettuceConnectionFactory primary)) {
+            log.warn("Чтение с реплик поддерживается только для Lettuce, все чтения идут на primary");
+            return null;
+        }
+        if (primary.getClusterConfiguration() == null && primary.getSentinelConfiguration() == null) {
+            log.warn("Чтение с реплик требует кластера или Sentinel, все чтения идут на primary");
+            return null;
+        }
+
+        LettuceClientConfiguration primaryClient = primary.getClientConfiguration();
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder client = LettuceClientConfiguration.builder()
+                .readFrom(ReadFrom.valueOf(properties.getReadFrom()))
+                .commandTimeout(primaryClient.getCommandTimeout())
+                .shutdownTimeout(primaryClient.getShutdownTimeout());
+        // Общие event loop и настройки клиента (в том числе обновление топологии кластера)
+        primaryClient.getClientResources().ifPresent(client::clientResources);
+        primaryClient.getClientOptions().ifPresent(client::clientOptions);
+        primaryClient.getClientName().ifPresent(client::clientName);
+        if (primaryClient.isUseSsl()) {
+            client.useSsl();
+        }
+
+        LettuceConnectionFactory factory = primary.getClusterConfiguration() != null
+                ? new LettuceConnectionFactory(primary.getClusterConfiguration(), client.build())
+                : new LettuceConnectionFactory(primary.getSentinelConfiguration(), client.build());
+        log.info("Чтение с реплик включено: readFrom={}, staleness-window учитывается для записей этого узла",
+                properties.getReadFrom());
+        return factory;
+    }
+
+    public void start() {
+        if (replicaFactory != null) {
+            replicaFactory.afterPropertiesSet();
+            replicaFactory.start();
+        }
+    }
+
+    public void stop() {
+        if (replicaFactory != null) {
+            replicaFactory.destroy();
+        }
+    }
+
+    /**
+     * @return фабрика соединений для чтения с реплик или {@code null}, если чтение с реплик выключено
+     */
+    public ReactiveRedisConnectionFactory connectionFactory() {
+        return replicaFactory;
+    }
+
+    public boolean isEnabled() {
+        return replicaFactory != null;
+    }
+
+    /**
+     * Отмечает запись ключа: до конца {@code staleness-window} он читается с primary.
+     */
+    public void written(String key) {
+        if (replicaFactory != null) {
+            recentWrites.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Читает значение с реплики, если это безопасно, иначе или при непригодном значении - с primary.
+     *
+     * @param store   имя хранилища для метрик
+     * @param replica чтение с реплики
+     * @param primary чтение с primary
+     * @param usable  можно ли использовать значение, прочитанное с реплики
+     */
+    public <T> Mono<T> read(String store, String key, Mono<T> replica, Mono<T> primary, Predicate<? super T> usable) {
+        if (replicaFactory == null) {
+            return primary;
+        }
+        if (recentWrites.getIfPresent(key) != null) {
+            return primary.doOnSubscribe(subscription -> count(store, "primary"));
+        }
+        return replica
+                .filter(usable)
+                .doOnNext(value -> count(store, "replica"))
+                .onErrorResume(error -> {
+                    log.debug("Ошибка чтения с реплики, чтение с primary: store={}, error={}", store, error.toString());
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    count(store, "fallback");
+                    return primary;
+                }));
+    }
+
+    private void count(String store, String outcome) {
+        counters.computeIfAbsent(store + ":" + outcome, name -> Counter.builder("gateway.redis.replica.reads")
+                        .description("Чтения, которые могли идти с реплик, по узлу, с которого прочитано значение")
+                        .tag("store", store)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry))
+                .increment();
+    }
+}
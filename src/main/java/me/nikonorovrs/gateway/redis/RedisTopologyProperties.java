@@ -0,0 +1,53 @@
+package me.nikonorovrs.gateway.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Работа с кластером и Sentinel поверх стандартных {@code spring.data.redis.cluster.*}
+ * и {@code spring.data.redis.sentinel.*}, по которым настраиваются и Lettuce, и Redisson.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.redis")
+public class RedisTopologyProperties {
+
+    /**
+     * Ключи токенов и блокировок обновления получают хеш-тег {@code {principal}} и попадают в один слот кластера.
+     * Меняет формат ключей: токены, сохраненные в старом формате, перестают находиться.
+     * В кластере обязательно для скриптов блокировки lettuce, которые работают с двумя ключами: без него
+     * приложение не стартует. В Sentinel все ключи на одном primary, слоты не используются.
+     */
+    private boolean hashTags;
+
+    private final ReplicaReads replicaReads = new ReplicaReads();
+
+    @Getter
+    @Setter
+    public static class ReplicaReads {
+
+        /**
+         * Читать токены и сессии (в режиме lazy) с реплик. Работает только в кластере и Sentinel;
+         * записи, скрипты и блокировки всегда идут на primary.
+         */
+        private boolean enabled;
+
+        /**
+         * Стратегия выбора узла Lettuce {@code ReadFrom}: replicaPreferred, replica, lowestLatency, any.
+         */
+        private String readFrom = "replicaPreferred";
+
+        /**
+         * Сколько после записи ключ этого узла читается с primary; должно покрывать отставание реплик.
+         */
+        private Duration stalenessWindow = Duration.ofSeconds(2);
+
+        /**
+         * Сколько недавно записанных ключей помнит узел; при переполнении часть ключей раньше вернется на реплики.
+         */
+        private long maxTrackedKeys = 100_000;
+    }
+}
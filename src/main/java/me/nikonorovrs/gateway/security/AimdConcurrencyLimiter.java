@@ -0,0 +1,74 @@
+package me.nikonorovrs.gateway.security;
+
+/**
+ * Адаптивный лимит параллельных обращений по схеме AIMD.
+ * <p>
+ * Пока ответы укладываются в {@code latencyThreshold} и лимит используется хотя бы наполовину,
+ * он растет на единицу; медленный ответ или ошибка уменьшают его в {@code backoffRatio} раз.
+ */
+final class AimdConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private double limit;
+    private int inFlight;
+
+    AimdConcurrencyLimiter(TokenEndpointProperties.Limiter properties) {
+        this.minLimit = Math.max(1, properties.getMinLimit());
+        this.maxLimit = Math.max(minLimit, properties.getMaxLimit());
+        this.latencyThresholdNanos = properties.getLatencyThreshold().toNanos();
+        this.backoffRatio = properties.getBackoffRatio();
+        this.limit = Math.min(maxLimit, Math.max(minLimit, properties.getInitialLimit()));
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Обращение завершилось ответом за {@code latencyNanos}.
+     */
+    synchronized void onSuccess(long latencyNanos) {
+        boolean utilized = inFlight * 2 >= (int) limit;
+        inFlight--;
+        if (latencyNanos > latencyThresholdNanos) {
+            decrease();
+        } else if (utilized) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    /**
+     * Обращение завершилось ошибкой соединения, таймаутом или ответом 5xx.
+     */
+    synchronized void onFailure() {
+        inFlight--;
+        decrease();
+    }
+
+    /**
+     * Обращение отменено, результат не говорит о состоянии Keycloak.
+     */
+    synchronized void onIgnore() {
+        inFlight--;
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+}
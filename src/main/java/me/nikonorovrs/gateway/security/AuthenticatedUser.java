@@ -0,0 +1,24 @@
+package me.nikonorovrs.gateway.security;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import reactor.core.publisher.Mono;
+
+public final class AuthenticatedUser {
+
+    private AuthenticatedUser() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Аутентификация текущего запроса; пусто для анонимного пользователя.
+     */
+    public static Mono<Authentication> current() {
+        return ReactiveSecurityContextHolder.getContext()
+                .mapNotNull(SecurityContext::getAuthentication)
+                .filter(Authentication::isAuthenticated)
+                .filter(auth -> !(auth instanceof AnonymousAuthenticationToken));
+    }
+}
@@ -0,0 +1,57 @@
+package me.nikonorovrs.gateway.security;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.core.AbstractOAuth2Token;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Время жизни записи авторизованного клиента в Redis.
+ * <p>
+ * Запись нужна, пока клиента можно обновить: до истечения refresh-токена, а без него - до истечения access-токена,
+ * плюс запас {@code grace}. Провайдер обычно не сообщает срок действия refresh-токена в поле, которое попадает
+ * в {@link OAuth2RefreshToken}, поэтому тогда срок считается от момента выдачи как {@code refreshTokenLifetime}.
+ */
+public class AuthorizedClientTtlPolicy {
+
+    private static final Duration MIN_TTL = Duration.ofSeconds(1);
+
+    private final Duration grace;
+    private final Duration refreshTokenLifetime;
+
+    public AuthorizedClientTtlPolicy(Duration grace, Duration refreshTokenLifetime) {
+        this.grace = grace;
+        this.refreshTokenLifetime = refreshTokenLifetime;
+    }
+
+    /**
+     * @return момент, после которого запись клиента больше не нужна
+     */
+    public Instant evictAt(OAuth2AuthorizedClient client) {
+        OAuth2RefreshToken refreshToken = client.getRefreshToken();
+        AbstractOAuth2Token token = refreshToken != null ? refreshToken : client.getAccessToken();
+        Instant expiresAt = token.getExpiresAt();
+        if (expiresAt == null) {
+            Instant issuedAt = token.getIssuedAt() != null ? token.getIssuedAt() : Instant.now();
+            expiresAt = issuedAt.plus(refreshTokenLifetime);
+        }
+        return expiresAt.plus(grace);
+    }
+
+    /**
+     * @return TTL для записи, содержимое которой не удалось прочитать
+     */
+    public Duration fallbackTtl() {
+        return refreshTokenLifetime.plus(grace);
+    }
+
+    /**
+     * @return TTL для записи клиента, не меньше одной секунды
+     */
+    public Duration ttl(OAuth2AuthorizedClient client) {
+        Duration ttl = Duration.between(Instant.now(), evictAt(client));
+        return ttl.compareTo(MIN_TTL) < 0 ? MIN_TTL : ttl;
+    }
+}
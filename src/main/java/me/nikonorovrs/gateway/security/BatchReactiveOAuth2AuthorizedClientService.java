@@ -0,0 +1,53 @@
+package me.nikonorovrs.gateway.security;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Хранилище авторизованных клиентов с пакетными операциями для массовой загрузки, сохранения и отзыва.
+ */
+public interface BatchReactiveOAuth2AuthorizedClientService extends ReactiveOAuth2AuthorizedClientService {
+
+    /**
+     * Загружает клиента с primary в обход near-кэша и реплик.
+     * Нужна под блокировкой обновления: локальная копия может хранить refresh token,
+     * который другой узел уже обменял.
+     *
+     * @param clientRegistrationId идентификатор регистрации клиента
+     * @param principalName        имя пользователя
+     * @return сохраненный клиент или пустой Mono
+     */
+    default <T extends OAuth2AuthorizedClient> Mono<T> loadLatestAuthorizedClient(String clientRegistrationId,
+                                                                                   String principalName) {
+        return loadAuthorizedClient(clientRegistrationId, principalName);
+    }
+
+    /**
+     * Загружает клиентов нескольких пользователей одной регистрации.
+     *
+     * @param clientRegistrationId идентификатор регистрации клиента
+     * @param principalNames       имена пользователей
+     * @return найденные клиенты; пользователи без сохраненного клиента пропускаются
+     */
+    Flux<OAuth2AuthorizedClient> loadAuthorizedClients(String clientRegistrationId, Collection<String> principalNames);
+
+    /**
+     * Сохраняет клиентов, владелец каждого берется из {@link OAuth2AuthorizedClient#getPrincipalName()}.
+     *
+     * @param authorizedClients клиенты для сохранения
+     * @return Mono, завершающийся после записи всех клиентов
+     */
+    Mono<Void> saveAuthorizedClients(Collection<OAuth2AuthorizedClient> authorizedClients);
+
+    /**
+     * Удаляет клиентов всех регистраций для указанных пользователей.
+     *
+     * @param principalNames имена пользователей
+     * @return число удаленных записей
+     */
+    Mono<Long> removeAuthorizedClients(Collection<String> principalNames);
+}
@@ -3,30 +3,24 @@ package me.nikonorovrs.gateway.security;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.server.reactive.ServerHttpResponse;
-import org.springframework.security.authentication.AnonymousAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.ReactiveSecurityContextHolder;
-import org.springframework.security.core.context.SecurityContext;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import static me.nikonorovrs.gateway.security.SecurityUtils.getRedirectHttpStatus;
-
 @Component
 public class CustomAuthRedirectFilterFactory extends AbstractGatewayFilterFactory<CustomAuthRedirectFilterFactory.Config> {
 
-    public CustomAuthRedirectFilterFactory() {
+    private final RoutePolicyRegistry routePolicyRegistry;
+
+    public CustomAuthRedirectFilterFactory(RoutePolicyRegistry routePolicyRegistry) {
         super(Config.class);
+        this.routePolicyRegistry = routePolicyRegistry;
     }
 
     @Override
     public GatewayFilter apply(Config config) {
         return (exchange, chain) -> {
-            return ReactiveSecurityContextHolder.getContext()
-                    .map(SecurityContext::getAuthentication)
-                    .filter(Authentication::isAuthenticated)
-                    .filter(auth -> !(auth instanceof AnonymousAuthenticationToken))
+            return AuthenticatedUser.current()
                     .flatMap(auth -> chain.filter(exchange))
                     .switchIfEmpty(handleUnauthorized(exchange));
         };
@@ -35,14 +29,12 @@ public class CustomAuthRedirectFilterFactory extends AbstractGatewayFilterFactor
     private Mono<Void> handleUnauthorized(ServerWebExchange exchange) {
 
         ServerHttpResponse response = exchange.getResponse();
+        RoutePolicy policy = routePolicyRegistry.policyOf(exchange);
 
-        // Определяем URL для редиректа на Keycloak
-        String redirectUrl = "/oauth2/authorization/keycloak";
-
-        // Устанавливаем соответствующий HTTP-код
-        response.setStatusCode(getRedirectHttpStatus(exchange));
+        // Устанавливаем соответствующий HTTP-код и URL для редиректа на Keycloak
+        response.setStatusCode(policy.redirectStatus());
 
-        response.getHeaders().add("Location", redirectUrl);
+        response.getHeaders().setLocation(policy.loginUrl());
         return response.setComplete();
     }
 
@@ -7,28 +7,25 @@ import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.net.URI;
-
-import static me.nikonorovrs.gateway.security.SecurityUtils.getRedirectHttpStatus;
-
 @Slf4j
 public class CustomRedirectServerAuthenticationEntryPoint implements ServerAuthenticationEntryPoint {
 
-    private final URI location;
+    private final RoutePolicyRegistry routePolicyRegistry;
 
-    public CustomRedirectServerAuthenticationEntryPoint(String location) {
-        this.location = URI.create(location);
+    public CustomRedirectServerAuthenticationEntryPoint(RoutePolicyRegistry routePolicyRegistry) {
+        this.routePolicyRegistry = routePolicyRegistry;
     }
 
     @Override
     public Mono<Void> commence(ServerWebExchange exchange, AuthenticationException e) {
 
         ServerHttpResponse response = exchange.getResponse();
+        RoutePolicy policy = routePolicyRegistry.policyOf(exchange);
 
         // Устанавливаем HTTP-код редиректа
-        response.setStatusCode(getRedirectHttpStatus(exchange));
+        response.setStatusCode(policy.redirectStatus());
 
-        response.getHeaders().setLocation(this.location);
+        response.getHeaders().setLocation(policy.loginUrl());
         return response.setComplete();
     }
 }
\ No newline at end of file
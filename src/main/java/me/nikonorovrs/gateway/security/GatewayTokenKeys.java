@@ -0,0 +1,232 @@
+package me.nikonorovrs.gateway.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ключи подписи токенов шлюза (EC P-256), общие для всех узлов через хеш Redis.
+ * <p>
+ * Узел держит ключи в памяти и перечитывает их в фоне, поэтому подпись и проверка токенов к Redis не обращаются.
+ * Идентификатор ключа - номер периода ротации: ключ нового периода выпускает узел, который первым его не нашел,
+ * а {@code HSETNX} оставляет один из одновременно созданных ключей. Новый ключ подписывает токены только после того,
+ * как его успели прочитать остальные узлы, а старые ключи проверяют выданные ими токены до истечения их срока.
+ * <p>
+ * Ключи хранятся вместе с закрытой частью: доступ к Redis должен быть защищен так же, как к refresh-токенам.
+ */
+@Slf4j
+public class GatewayTokenKeys {
+
+    private static final Duration UNKNOWN_KEY_RELOAD_INTERVAL = Duration.ofSeconds(10);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final String redisKey;
+    private final Duration rotationInterval;
+    private final Duration refreshInterval;
+    private final Duration retention;
+
+    private final Counter rotations;
+
+    private volatile KeySet keySet = KeySet.EMPTY;
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private final AtomicLong lastReloadNanos = new AtomicLong(System.nanoTime() - UNKNOWN_KEY_RELOAD_INTERVAL.toNanos());
+
+    private Disposable task;
+
+    public GatewayTokenKeys(ReactiveStringRedisTemplate redisTemplate,
+                            StatelessAuthProperties properties,
+                            MeterRegistry meterRegistry) {
+        StatelessAuthProperties.Keys keys = properties.getKeys();
+        this.redisTemplate = redisTemplate;
+        this.redisKey = keys.getRedisKey();
+        this.rotationInterval = keys.getRotationInterval();
+        this.refreshInterval = keys.getRefreshInterval();
+        // Ключ подписывает не дольше двух периодов ротации, после этого его токены еще живут свой срок
+        this.retention = rotationInterval.multipliedBy(2)
+                .plus(properties.getTokenLifetime())
+                .plus(properties.getClockSkew());
+
+        this.rotations = Counter.builder("gateway.auth.keys.rotations")
+                .description("Ключи подписи токенов шлюза, выпущенные этим узлом")
+                .register(meterRegistry);
+        Gauge.builder("gateway.auth.keys", this, tokenKeys -> tokenKeys.keySet.verifiers().size())
+                .description("Ключи проверки токенов шлюза в памяти узла")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        task = Mono.defer(this::refresh)
+                .onErrorResume(error -> {
+                    log.error("Ошибка обновления ключей подписи токенов: {}", error.getMessage(), error);
+                    return Mono.empty();
+                })
+                .repeatWhen(refreshes -> refreshes.concatMap(refresh -> Mono.delay(refreshInterval)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
+    /**
+     * Ключ для подписи новых токенов; {@code null}, пока ключи еще не загружены.
+     */
+    public SigningKey signingKey() {
+        return keySet.signing();
+    }
+
+    /**
+     * Ключ проверки по идентификатору. Неизвестный идентификатор может означать ключ, выпущенный другим узлом
+     * после последнего чтения, поэтому он запускает внеочередное чтение не чаще раза в 10 секунд.
+     */
+    public JWSVerifier verifier(String keyId) {
+        JWSVerifier verifier = keySet.verifiers().get(keyId);
+        if (verifier == null && keyId != null) {
+            reloadSoon();
+        }
+        return verifier;
+    }
+
+    Mono<Void> refresh() {
+        Instant now = Instant.now();
+        String currentKeyId = keyId(now);
+        return readKeys()
+                .flatMap(stored -> stored.containsKey(currentKeyId) ? Mono.just(stored) : rotate(currentKeyId))
+                .flatMap(stored -> {
+                    List<Object> expired = new ArrayList<>();
+                    keySet = parse(stored, now, expired);
+                    if (expired.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    log.info("Удалены устаревшие ключи подписи токенов: kids={}", expired);
+                    return redisTemplate.opsForHash().remove(redisKey, expired.toArray()).then();
+                });
+    }
+
+    private Mono<Map<String, String>> readKeys() {
+        return redisTemplate.<String, String>opsForHash().entries(redisKey)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    // Выпускает ключ текущего периода; если другой узел успел раньше, используется его ключ
+    private Mono<Map<String, String>> rotate(String keyId) {
+        ECKey key;
+        try {
+            key = new ECKeyGenerator(Curve.P_256)
+                    .keyID(keyId)
+                    .keyUse(KeyUse.SIGNATURE)
+                    .algorithm(JWSAlgorithm.ES256)
+                    .issueTime(new Date())
+                    .generate();
+        } catch (JOSEException e) {
+            return Mono.error(e);
+        }
+        return redisTemplate.<String, String>opsForHash().putIfAbsent(redisKey, keyId, key.toJSONString())
+                .doOnNext(created -> {
+                    if (created) {
+                        rotations.increment();
+                        log.info("Выпущен ключ подписи токенов: kid={}", keyId);
+                    }
+                })
+                .then(readKeys());
+    }
+
+    private KeySet parse(Map<String, String> stored, Instant now, List<Object> expired) {
+        Instant oldest = now.minus(retention);
+        Instant published = now.minus(refreshInterval);
+        Map<String, JWSVerifier> verifiers = new HashMap<>();
+        ECKey newest = null;
+        ECKey newestPublished = null;
+        for (Map.Entry<String, String> entry : stored.entrySet()) {
+            ECKey key;
+            try {
+                key = ECKey.parse(entry.getValue());
+                verifiers.put(entry.getKey(), new ECDSAVerifier(key.toPublicJWK()));
+            } catch (ParseException | JOSEException e) {
+                log.warn("Пропущен ключ подписи токенов, который не удалось прочитать: kid={}, error={}",
+                        entry.getKey(), e.getMessage());
+                continue;
+            }
+            Instant issued = key.getIssueTime() != null ? key.getIssueTime().toInstant() : Instant.EPOCH;
+            if (issued.isBefore(oldest)) {
+                verifiers.remove(entry.getKey());
+                expired.add(entry.getKey());
+                continue;
+            }
+            if (newest == null || issued.isAfter(newest.getIssueTime().toInstant())) {
+                newest = key;
+            }
+            if (!issued.isAfter(published)
+                    && (newestPublished == null || issued.isAfter(newestPublished.getIssueTime().toInstant()))) {
+                newestPublished = key;
+            }
+        }
+        // Пока новый ключ не прочитан остальными узлами, подписывает предыдущий; при первом запуске - единственный
+        ECKey signing = newestPublished != null ? newestPublished : newest;
+        return new KeySet(signing != null ? signingKey(signing) : null, Map.copyOf(verifiers));
+    }
+
+    private SigningKey signingKey(ECKey key) {
+        try {
+            return new SigningKey(key.getKeyID(), new ECDSASigner(key));
+        } catch (JOSEException e) {
+            log.warn("Ключ подписи токенов не подходит для подписи: kid={}, error={}", key.getKeyID(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void reloadSoon() {
+        long now = System.nanoTime();
+        long last = lastReloadNanos.get();
+        if (now - last < UNKNOWN_KEY_RELOAD_INTERVAL.toNanos()
+                || !lastReloadNanos.compareAndSet(last, now)
+                || !reloading.compareAndSet(false, true)) {
+            return;
+        }
+        refresh()
+                .doFinally(signal -> reloading.set(false))
+                .subscribe(null, error -> log.warn("Ошибка чтения ключей подписи токенов: {}", error.getMessage()));
+    }
+
+    private String keyId(Instant now) {
+        return "gw-" + now.toEpochMilli() / rotationInterval.toMillis();
+    }
+
+    public record SigningKey(String keyId, JWSSigner signer) {
+    }
+
+    private record KeySet(SigningKey signing, Map<String, JWSVerifier> verifiers) {
+        static final KeySet EMPTY = new KeySet(null, Map.of());
+    }
+}
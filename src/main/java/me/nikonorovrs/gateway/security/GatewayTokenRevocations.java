@@ -0,0 +1,97 @@
+package me.nikonorovrs.gateway.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Отзыв выданных токенов шлюза по пользователю.
+ * <p>
+ * Отзыв записывает в Redis момент отзыва с TTL, равным сроку токена с допуском расхождения часов: к истечению
+ * отметки все токены, выданные до отзыва, истекают сами. Токен, выданный не позже отметки, считается отозванным.
+ * Узел помнит ответ Redis в течение {@code revocation.check-interval}, поэтому токен, отозванный на другом узле,
+ * принимается не дольше этого интервала, а на узле, выполнившем отзыв, перестает приниматься сразу.
+ */
+@Slf4j
+public class GatewayTokenRevocations {
+
+    private static final long NOT_REVOKED = 0;
+    private static final long MAXIMUM_CACHED_PRINCIPALS = 100_000;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final Duration ttl;
+    // Момент последнего отзыва по пользователю в мс, NOT_REVOKED - отметки нет
+    private final Cache<String, Long> revokedAt;
+
+    public GatewayTokenRevocations(ReactiveStringRedisTemplate redisTemplate, StatelessAuthProperties properties) {
+        StatelessAuthProperties.Revocation revocation = properties.getRevocation();
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = revocation.getKeyPrefix();
+        this.ttl = properties.getTokenLifetime().plus(properties.getClockSkew());
+        this.revokedAt = Caffeine.newBuilder()
+                .expireAfterWrite(revocation.getCheckInterval())
+                .maximumSize(MAXIMUM_CACHED_PRINCIPALS)
+                .build();
+    }
+
+    /**
+     * Отзывает все токены пользователей, выданные до этого момента.
+     */
+    public Mono<Void> revoke(Collection<String> principals) {
+        if (principals.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            long now = System.currentTimeMillis();
+            principals.forEach(principal -> revokedAt.put(principal, now));
+            return Flux.fromIterable(principals)
+                    .flatMap(principal -> redisTemplate.opsForValue().set(key(principal), String.valueOf(now), ttl))
+                    .then();
+        });
+    }
+
+    /**
+     * @return отозван ли токен пользователя, выданный в {@code issuedAt}; при недоступности Redis - {@code true},
+     * чтобы запрос прошел проверку по сессии
+     */
+    public Mono<Boolean> isRevoked(String principal, Instant issuedAt) {
+        Long cached = revokedAt.getIfPresent(principal);
+        if (cached != null) {
+            return Mono.just(revoked(cached, issuedAt));
+        }
+        return redisTemplate.opsForValue().get(key(principal))
+                .map(GatewayTokenRevocations::parse)
+                .defaultIfEmpty(NOT_REVOKED)
+                .doOnNext(value -> revokedAt.put(principal, value))
+                .map(value -> revoked(value, issuedAt))
+                .onErrorResume(error -> {
+                    log.warn("Не удалось проверить отзыв токена шлюза: principal={}, error={}", principal, error.getMessage());
+                    return Mono.just(true);
+                });
+    }
+
+    private static boolean revoked(long revokedAtMillis, Instant issuedAt) {
+        return revokedAtMillis != NOT_REVOKED && !issuedAt.isAfter(Instant.ofEpochMilli(revokedAtMillis));
+    }
+
+    // Нечитаемая отметка считается отзывом в момент проверки: токены, выданные позже, снова принимаются
+    private static long parse(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    private String key(String principal) {
+        return keyPrefix + principal;
+    }
+}
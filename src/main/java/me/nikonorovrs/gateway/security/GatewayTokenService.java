@@ -0,0 +1,181 @@
+package me.nikonorovrs.gateway.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Выдача и локальная проверка токенов шлюза (JWT, ES256).
+ * <p>
+ * Токен переносит имя пользователя, регистрацию OAuth2-клиента и полномочия, достаточные для авторизации
+ * и {@code TokenRelay}; токены доступа Keycloak в него не попадают и по-прежнему берутся из хранилища клиентов.
+ * Подпись и срок проверяются локально, отзыв при выходе и через actuator - по {@link GatewayTokenRevocations}.
+ */
+@Slf4j
+public class GatewayTokenService {
+
+    private static final String REGISTRATION_CLAIM = "reg";
+    private static final String AUTHORITIES_CLAIM = "auth";
+    private static final String NAME_ATTRIBUTE = "sub";
+
+    private final GatewayTokenKeys keys;
+    private final GatewayTokenRevocations revocations;
+    private final String issuer;
+    private final Duration lifetime;
+    private final Duration clockSkew;
+
+    private final Counter issuedCounter;
+    private final Counter expiredCounter;
+    private final Counter rejectedCounter;
+    private final Counter revokedCounter;
+
+    public GatewayTokenService(GatewayTokenKeys keys,
+                               GatewayTokenRevocations revocations,
+                               StatelessAuthProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.keys = keys;
+        this.revocations = revocations;
+        this.issuer = properties.getIssuer();
+        this.lifetime = properties.getTokenLifetime();
+        this.clockSkew = properties.getClockSkew();
+        this.issuedCounter = tokenCounter(meterRegistry, "issued");
+        this.expiredCounter = tokenCounter(meterRegistry, "expired");
+        this.rejectedCounter = tokenCounter(meterRegistry, "rejected");
+        this.revokedCounter = tokenCounter(meterRegistry, "revoked");
+    }
+
+    public Duration lifetime() {
+        return lifetime;
+    }
+
+    /**
+     * @return токен для аутентификации или {@code null}, если ключи подписи еще не загружены
+     */
+    public String issue(OAuth2AuthenticationToken authentication) {
+        GatewayTokenKeys.SigningKey signingKey = keys.signingKey();
+        if (signingKey == null) {
+            return null;
+        }
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .subject(authentication.getName())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(lifetime)))
+                .claim(REGISTRATION_CLAIM, authentication.getAuthorizedClientRegistrationId())
+                .claim(AUTHORITIES_CLAIM, AuthorityUtils.authorityListToSet(authentication.getAuthorities()).stream().toList())
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256)
+                .type(JOSEObjectType.JWT)
+                .keyID(signingKey.keyId())
+                .build(), claims);
+        try {
+            jwt.sign(signingKey.signer());
+        } catch (JOSEException e) {
+            log.warn("Не удалось подписать токен шлюза: kid={}, error={}", signingKey.keyId(), e.getMessage());
+            return null;
+        }
+        issuedCounter.increment();
+        return jwt.serialize();
+    }
+
+    /**
+     * Проверка подписи, издателя и срока без обращения к Redis; отзыв проверяется отдельно {@link #isRevoked}.
+     *
+     * @return проверенный токен или {@code null}, если токен поддельный, чужой или истек
+     */
+    public VerifiedToken verify(String token) {
+        try {
+            SignedJWT jwt = SignedJWT.parse(token);
+            if (!JWSAlgorithm.ES256.equals(jwt.getHeader().getAlgorithm())) {
+                return rejected("алгоритм " + jwt.getHeader().getAlgorithm());
+            }
+            JWSVerifier verifier = keys.verifier(jwt.getHeader().getKeyID());
+            if (verifier == null) {
+                return rejected("неизвестный ключ " + jwt.getHeader().getKeyID());
+            }
+            if (!jwt.verify(verifier)) {
+                return rejected("неверная подпись");
+            }
+            JWTClaimsSet claims = jwt.getJWTClaimsSet();
+            if (!issuer.equals(claims.getIssuer())) {
+                return rejected("издатель " + claims.getIssuer());
+            }
+            Date expiresAt = claims.getExpirationTime();
+            if (expiresAt == null || expiresAt.toInstant().plus(clockSkew).isBefore(Instant.now())) {
+                expiredCounter.increment();
+                return null;
+            }
+            String name = claims.getSubject();
+            String registrationId = claims.getStringClaim(REGISTRATION_CLAIM);
+            Date issuedAt = claims.getIssueTime();
+            if (name == null || registrationId == null || issuedAt == null) {
+                return rejected("нет sub, reg или iat");
+            }
+            List<String> authorityNames = claims.getStringListClaim(AUTHORITIES_CLAIM);
+            Collection<GrantedAuthority> authorities = authorityNames != null
+                    ? AuthorityUtils.createAuthorityList(authorityNames)
+                    : AuthorityUtils.NO_AUTHORITIES;
+            DefaultOAuth2User user = new DefaultOAuth2User(authorities, Map.of(NAME_ATTRIBUTE, name), NAME_ATTRIBUTE);
+            return new VerifiedToken(new OAuth2AuthenticationToken(user, authorities, registrationId),
+                    issuedAt.toInstant(), expiresAt.toInstant());
+        } catch (ParseException | JOSEException e) {
+            return rejected(e.getMessage());
+        }
+    }
+
+    /**
+     * @return отозван ли проверенный токен выходом или отзывом токенов пользователя
+     */
+    public Mono<Boolean> isRevoked(VerifiedToken token) {
+        return revocations.isRevoked(token.authentication().getName(), token.issuedAt())
+                .doOnNext(revoked -> {
+                    if (revoked) {
+                        revokedCounter.increment();
+                    }
+                });
+    }
+
+    /**
+     * Отзывает токены пользователей, выданные до этого момента, на всех узлах.
+     */
+    public Mono<Void> revoke(Collection<String> principals) {
+        return revocations.revoke(principals);
+    }
+
+    private VerifiedToken rejected(String reason) {
+        log.debug("Токен шлюза отклонен: {}", reason);
+        rejectedCounter.increment();
+        return null;
+    }
+
+    private static Counter tokenCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gateway.auth.tokens")
+                .description("Токены шлюза по результату выдачи и проверки")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public record VerifiedToken(OAuth2AuthenticationToken authentication, Instant issuedAt, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,150 @@
+package me.nikonorovrs.gateway.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Блокировка обновления токена на Lua-скриптах поверх общего {@code ReactiveRedisConnectionFactory}.
+ * <p>
+ * Скрипт захвата атомарно проверяет сохраненный срок действия последнего обновленного токена и, если он еще
+ * актуален, не захватывает блокировку вовсе. Иначе блокировка ставится через {@code SET NX PX} с уникальным
+ * владельцем. Скрипт освобождения снимает блокировку только своего владельца, сохраняет срок действия нового
+ * токена и публикует событие в канал с именем ключа блокировки, по которому ожидающие узлы повторяют захват.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class LettuceRefreshLock implements RefreshLock {
+
+    private static final long ACQUIRED = 1;
+    private static final long ALREADY_REFRESHED = 2;
+
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = RedisScript.of("""
+            local refreshed = redis.call('get', KEYS[2])
+            if refreshed and tonumber(refreshed) > tonumber(ARGV[3]) then
+                return 2
+            end
+            if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+            if redis.call('get', KEYS[1]) ~= ARGV[1] then
+                return 0
+            end
+            redis.call('del', KEYS[1])
+            if tonumber(ARGV[3]) > 0 then
+                redis.call('set', KEYS[2], ARGV[2], 'PX', ARGV[3])
+            end
+            redis.call('publish', KEYS[1], ARGV[2])
+            return 1
+            """, Long.class);
+
+    private static final Lease REFRESHED_ELSEWHERE = new Lease() {
+
+        @Override
+        public boolean isHeld() {
+            return false;
+        }
+
+        @Override
+        public void refreshed(Instant expiresAt) {
+        }
+
+        @Override
+        public Mono<Void> release() {
+            return Mono.empty();
+        }
+    };
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ReactiveRedisMessageListenerContainer listenerContainer;
+    private final Duration retryInterval;
+
+    @Override
+    public Mono<Lease> tryAcquire(String lockKey, Duration waitTime, Duration leaseTime, Instant freshUntil) {
+        String owner = UUID.randomUUID().toString();
+        List<String> keys = List.of(lockKey, refreshedKey(lockKey));
+        List<String> args = List.of(owner, String.valueOf(leaseTime.toMillis()), String.valueOf(freshUntil.toEpochMilli()));
+
+        Mono<Lease> attempt = redisTemplate.execute(ACQUIRE_SCRIPT, keys, args)
+                .next()
+                .flatMap(result -> {
+                    if (result == ACQUIRED) {
+                        return Mono.just(new ScriptLease(lockKey, owner));
+                    }
+                    if (result == ALREADY_REFRESHED) {
+                        log.debug("Токен уже обновлен другим узлом, блокировка не требуется: lockKey={}", lockKey);
+                        return Mono.just(REFRESHED_ELSEWHERE);
+                    }
+                    return Mono.empty();
+                });
+
+        // Повторный захват по уведомлению об освобождении; периодический повтор страхует от пропущенных уведомлений
+        Flux<Long> wakeups = Flux.merge(
+                        listenerContainer.receive(ChannelTopic.of(lockKey)).map(message -> 0L),
+                        Flux.interval(retryInterval))
+                .onBackpressureDrop();
+
+        return Flux.concat(Mono.just(0L), wakeups)
+                .concatMap(wakeup -> attempt, 1)
+                .next()
+                .timeout(waitTime, Mono.empty());
+    }
+
+    private static String refreshedKey(String lockKey) {
+        return lockKey + ":refreshed";
+    }
+
+    private final class ScriptLease implements Lease {
+
+        private final String lockKey;
+        private final String owner;
+        private final AtomicReference<Instant> refreshedUntil = new AtomicReference<>();
+
+        private ScriptLease(String lockKey, String owner) {
+            this.lockKey = lockKey;
+            this.owner = owner;
+        }
+
+        @Override
+        public boolean isHeld() {
+            return true;
+        }
+
+        @Override
+        public void refreshed(Instant expiresAt) {
+            refreshedUntil.set(expiresAt);
+        }
+
+        @Override
+        public Mono<Void> release() {
+            Instant expiresAt = refreshedUntil.get();
+            long ttl = expiresAt != null ? Duration.between(Instant.now(), expiresAt).toMillis() : 0;
+            String refreshed = expiresAt != null ? String.valueOf(expiresAt.toEpochMilli()) : "";
+            return redisTemplate.execute(RELEASE_SCRIPT,
+                            List.of(lockKey, refreshedKey(lockKey)),
+                            List.of(owner, refreshed, String.valueOf(ttl)))
+                    .next()
+                    .doOnNext(released -> {
+                        if (released == 0) {
+                            log.warn("Блокировка истекла до освобождения: lockKey={}", lockKey);
+                        }
+                    })
+                    .then();
+        }
+    }
+}
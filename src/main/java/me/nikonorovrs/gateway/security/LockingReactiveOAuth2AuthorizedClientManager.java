@@ -1,10 +1,10 @@
 package me.nikonorovrs.gateway.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RFuture;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import me.nikonorovrs.gateway.metrics.RequestTimings;
+import me.nikonorovrs.gateway.redis.RedisKeys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
@@ -19,7 +19,8 @@ import reactor.core.publisher.Mono;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -27,7 +28,8 @@ public class LockingReactiveOAuth2AuthorizedClientManager implements ReactiveOAu
 
     private final ReactiveOAuth2AuthorizedClientService authorizedClientService;
     private final ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> tokenResponseClient;
-    private final RedissonClient redissonClient;
+    private final RefreshLock refreshLock;
+    private final MeterRegistry meterRegistry;
 
     @Value("${spring.refresh-lock.namespace}")
     private String refreshLockNamespace;
@@ -41,58 +43,161 @@ public class LockingReactiveOAuth2AuthorizedClientManager implements ReactiveOAu
     @Value("${spring.refresh-lock.lease:10}")
     private long leaseTime;
 
+    // Блокировка в одном слоте кластера с токеном пользователя
+    @Value("${app.redis.hash-tags:false}")
+    private boolean hashTags;
+
+    private static final String REFRESH_MODE_INLINE = "inline";
+    private static final String REFRESH_MODE_AHEAD = "ahead";
+
+    private static final String AUTHORIZE_OUTCOME_VALID = "valid";
+    private static final String AUTHORIZE_OUTCOME_REFRESH = "refresh";
+
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
 
+    // Обновления, выполняемые на этом узле, по ключу clientId:username
+    private final Map<String, Mono<OAuth2AuthorizedClient>> inFlightRefreshes = new ConcurrentHashMap<>();
+
     @Override
     public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizeRequest request) {
         Authentication principal = request.getPrincipal();
         String clientRegistrationId = request.getClientRegistrationId();
 
-        return authorizedClientService.loadAuthorizedClient(clientRegistrationId, principal.getName())
-                .doOnNext(client -> log.debug("Клиент загружен: clientId={}, principal={}, token={}",
-                        clientRegistrationId, principal.getName(),
-                        client.getAccessToken().getTokenValue().substring(0, 5) + "..."))
-                .flatMap(client -> {
-                    if (tokenNeedsRefresh(client)) {
-                        log.debug("Требуется обновление токена: clientId={}, principal={}, expires={}",
+        return Mono.deferContextual(context -> {
+            RequestTimings timings = RequestTimings.from(context);
+            long start = System.nanoTime();
+            String[] outcome = {AUTHORIZE_OUTCOME_VALID};
+
+            return authorizedClientService.loadAuthorizedClient(clientRegistrationId, principal.getName())
+                    .doOnNext(client -> log.debug("Клиент загружен: clientId={}, principal={}, token={}",
+                            clientRegistrationId, principal.getName(),
+                            client.getAccessToken().getTokenValue().substring(0, 5) + "..."))
+                    .flatMap(client -> {
+                        if (tokenNeedsRefresh(client)) {
+                            log.debug("Требуется обновление токена: clientId={}, principal={}, expires={}",
+                                    clientRegistrationId, principal.getName(), formatInstant(client.getAccessToken().getExpiresAt()));
+                            outcome[0] = AUTHORIZE_OUTCOME_REFRESH;
+                            return refreshToken(client, principal);
+                        }
+                        log.debug("Токен актуален: clientId={}, principal={}, expires={}",
                                 clientRegistrationId, principal.getName(), formatInstant(client.getAccessToken().getExpiresAt()));
-                        return refreshToken(client, principal);
+                        return Mono.<OAuth2AuthorizedClient>just(client);
+                    })
+                    .doOnSuccess(client -> {
+                        if (timings != null) {
+                            timings.authorized(System.nanoTime() - start, outcome[0]);
+                        }
+                    })
+                    .doOnError(error -> log.error("Ошибка при авторизации: clientId={}, principal={}, error={}",
+                            clientRegistrationId, principal.getName(), error.getMessage()));
+        });
+    }
+
+    /**
+     * Обновляет токен заранее, если он истекает в пределах {@code lookahead}.
+     * Используется фоновым планировщиком и проходит через те же объединение и блокировку, что и обновление по запросу.
+     *
+     * @param clientRegistrationId идентификатор регистрации клиента
+     * @param principal            пользователь, которому принадлежит токен
+     * @param lookahead            окно до истечения токена, в котором он обновляется
+     * @return актуальный авторизованный клиент или пустой Mono, если клиент не найден
+     */
+    public Mono<OAuth2AuthorizedClient> refreshAhead(String clientRegistrationId, Authentication principal, Duration lookahead) {
+        return authorizedClientService.<OAuth2AuthorizedClient>loadAuthorizedClient(clientRegistrationId, principal.getName())
+                .flatMap(client -> {
+                    if (!tokenNeedsRefresh(client, lookahead)) {
+                        return Mono.just(client);
                     }
-                    log.debug("Токен актуален: clientId={}, principal={}, expires={}",
+                    log.debug("Заблаговременное обновление токена: clientId={}, principal={}, expires={}",
                             clientRegistrationId, principal.getName(), formatInstant(client.getAccessToken().getExpiresAt()));
-                    return Mono.just(client);
-                })
-                .doOnError(error -> log.error("Ошибка при авторизации: clientId={}, principal={}, error={}",
-                        clientRegistrationId, principal.getName(), error.getMessage()));
+                    return refreshToken(client, principal, lookahead, REFRESH_MODE_AHEAD);
+                });
     }
 
     private boolean tokenNeedsRefresh(OAuth2AuthorizedClient client) {
+        // Подстраховка на refreshBuffer секунд до истечения
+        return tokenNeedsRefresh(client, Duration.ofSeconds(refreshBuffer));
+    }
+
+    private boolean tokenNeedsRefresh(OAuth2AuthorizedClient client, Duration buffer) {
         OAuth2AccessToken accessToken = client.getAccessToken();
         Instant now = Instant.now();
-        // Подстраховка на refreshBuffer секунд до истечения
         return accessToken.getExpiresAt() != null &&
-                accessToken.getExpiresAt().isBefore(now.plus(Duration.ofSeconds(refreshBuffer)));
+                accessToken.getExpiresAt().isBefore(now.plus(buffer));
     }
 
     private Mono<OAuth2AuthorizedClient> refreshToken(OAuth2AuthorizedClient client, Authentication principal) {
+        return refreshToken(client, principal, Duration.ofSeconds(refreshBuffer), REFRESH_MODE_INLINE);
+    }
+
+    private Mono<OAuth2AuthorizedClient> refreshToken(OAuth2AuthorizedClient client, Authentication principal,
+                                                      Duration buffer, String mode) {
+        String refreshKey = client.getClientRegistration().getRegistrationId() + ":" + principal.getName();
+
+        // Пока цепь к Keycloak разомкнута, еще действующий токен отдается сразу, без ожидания блокировки
+        if (tokenEndpointUnavailable() && !tokenExpired(client)) {
+            log.debug("Точка выдачи токенов недоступна, обновление отложено: refreshKey={}, expires={}",
+                    refreshKey, formatInstant(client.getAccessToken().getExpiresAt()));
+            meterRegistry.counter("gateway.token.refresh.deferred", "mode", mode).increment();
+            return Mono.just(client);
+        }
+
+        // Все локальные запросы одного пользователя разделяют одно обновление,
+        // и только оно обращается к распределенной блокировке
+        return Mono.defer(() -> inFlightRefreshes.computeIfAbsent(refreshKey, key -> {
+            log.debug("Обновление токена запущено на узле: refreshKey={}", key);
+            // Запись удаляется до передачи результата подписчикам, иначе запрос, пришедший сразу
+            // после завершения, мог бы получить уже отработавшее обновление
+            return lockedRefreshToken(client, principal, buffer, mode)
+                    .doOnSuccess(refreshed -> inFlightRefreshes.remove(key))
+                    .doOnError(e -> inFlightRefreshes.remove(key))
+                    .cache();
+        })).onErrorResume(error -> error instanceof TokenEndpointUnavailableException && !tokenExpired(client), error -> {
+            log.warn("Обновление токена отложено, используется действующий токен: refreshKey={}, expires={}, error={}",
+                    refreshKey, formatInstant(client.getAccessToken().getExpiresAt()), error.getMessage());
+            meterRegistry.counter("gateway.token.refresh.deferred", "mode", mode).increment();
+            return Mono.just(client);
+        });
+    }
+
+    private boolean tokenExpired(OAuth2AuthorizedClient client) {
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        return expiresAt != null && !expiresAt.isAfter(Instant.now());
+    }
+
+    private boolean tokenEndpointUnavailable() {
+        return tokenResponseClient instanceof ResilientRefreshTokenResponseClient resilientClient
+                && !resilientClient.isCallPermitted();
+    }
+
+    private Mono<OAuth2AuthorizedClient> lockedRefreshToken(OAuth2AuthorizedClient client, Authentication principal,
+                                                            Duration buffer, String mode) {
         String clientId = client.getClientRegistration().getRegistrationId();
         String username = principal.getName();
-        String lockKey = refreshLockNamespace + ":" + clientId + ":" + username;
-        RLock lock = redissonClient.getLock(lockKey);
+        String lockKey = hashTags
+                ? refreshLockNamespace + ":" + RedisKeys.principalPart(username, true) + ":" + clientId
+                : refreshLockNamespace + ":" + clientId + ":" + username;
 
         log.debug("Начало обновления токена: clientId={}, principal={}, lockKey={}",
                 clientId, username, lockKey);
 
-        // Получение блокировки
-        Mono<RLock> acquireLock = monoFromRFuture(lock.tryLockAsync(waitTime, leaseTime, TimeUnit.SECONDS))
-                .doOnNext(locked -> log.debug("Получение блокировки: lockKey={}, locked={}", lockKey, locked))
-                .flatMap(locked -> {
-                    if (!locked) {
-                        log.warn("Не удалось получить блокировку: lockKey={}", lockKey);
-                        return Mono.error(new IllegalStateException("Не удалось получить блокировку для обновления токена"));
-                    }
-                    return Mono.just(lock);
-                });
+        // Получение блокировки; время ожидания попадает в метрики запроса, запустившего обновление
+        Mono<RefreshLock.Lease> acquireLock = Mono.deferContextual(context -> {
+                    RequestTimings timings = RequestTimings.from(context);
+                    long start = System.nanoTime();
+                    return refreshLock.tryAcquire(lockKey,
+                                    Duration.ofSeconds(waitTime), Duration.ofSeconds(leaseTime), Instant.now().plus(buffer))
+                            .doOnNext(lease -> {
+                                if (timings != null) {
+                                    timings.lockAcquired(System.nanoTime() - start);
+                                }
+                            });
+                })
+                .doOnNext(lease -> log.debug("Получение блокировки: lockKey={}, locked={}", lockKey, lease.isHeld()))
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.warn("Не удалось получить блокировку: lockKey={}", lockKey);
+                    return Mono.error(new IllegalStateException("Не удалось получить блокировку для обновления токена"));
+                }));
 
         // Использование паттерна usingWhen для корректного управления ресурсом
         return Mono.usingWhen(
@@ -100,10 +205,9 @@ public class LockingReactiveOAuth2AuthorizedClientManager implements ReactiveOAu
                 acquireLock,
 
                 // Использование ресурса (выполнение обновления токена)
-                acquiredLock -> authorizedClientService
-                        .loadAuthorizedClient(clientId, username)
+                acquiredLock -> loadLatest(clientId, username)
                         .flatMap(currentClient -> {
-                            if (!tokenNeedsRefresh(currentClient)) {
+                            if (!tokenNeedsRefresh(currentClient, buffer) || !acquiredLock.isHeld()) {
                                 log.debug("Токен уже был обновлен другим процессом: clientId={}, principal={}",
                                         clientId, username);
                                 return Mono.just(currentClient);
@@ -130,8 +234,12 @@ public class LockingReactiveOAuth2AuthorizedClientManager implements ReactiveOAu
                                     .flatMap(updatedClient ->
                                             authorizedClientService
                                                     .saveAuthorizedClient(updatedClient, principal)
-                                                    .doOnSuccess(v -> log.debug("Обновленный токен сохранен: clientId={}, principal={}",
-                                                            clientId, username))
+                                                    .doOnSuccess(v -> {
+                                                        log.debug("Обновленный токен сохранен: clientId={}, principal={}",
+                                                                clientId, username);
+                                                        acquiredLock.refreshed(updatedClient.getAccessToken().getExpiresAt());
+                                                        meterRegistry.counter("gateway.token.refresh", "mode", mode).increment();
+                                                    })
                                                     .thenReturn(updatedClient))
                                     .doOnError(error -> log.error("Ошибка при обновлении токена: clientId={}, principal={}, error={}",
                                             clientId, username, error.getMessage(), error));
@@ -148,27 +256,24 @@ public class LockingReactiveOAuth2AuthorizedClientManager implements ReactiveOAu
         );
     }
 
+    // Под блокировкой клиент читается с primary: в near-кэше может остаться refresh token,
+    // уже обмененный другим узлом, и повторный обмен закончился бы invalid_grant
+    private Mono<OAuth2AuthorizedClient> loadLatest(String clientId, String username) {
+        if (authorizedClientService instanceof BatchReactiveOAuth2AuthorizedClientService batchService) {
+            return batchService.loadLatestAuthorizedClient(clientId, username);
+        }
+        return authorizedClientService.loadAuthorizedClient(clientId, username);
+    }
+
     // Отдельный метод для асинхронного освобождения блокировки
-    private Mono<Void> releaseLock(RLock lock, String lockKey) {
-        return monoFromRFuture(lock.unlockAsync())
+    private Mono<Void> releaseLock(RefreshLock.Lease lease, String lockKey) {
+        return lease.release()
                 .doOnSuccess(v -> log.debug("Блокировка освобождена: lockKey={}", lockKey))
                 .doOnError(error -> log.error("Ошибка при освобождении блокировки: lockKey={}", lockKey, error))
                 .onErrorResume(e -> Mono.empty()) // Даже если ошибка, продолжаем выполнение
                 .then();
     }
 
-    private static <T> Mono<T> monoFromRFuture(RFuture<T> rFuture) {
-        return Mono.create(sink -> {
-            rFuture.whenCompleteAsync((res, ex) -> {
-                if (ex != null) {
-                    sink.error(ex);
-                } else {
-                    sink.success(res);
-                }
-            });
-        });
-    }
-
     private String formatInstant(Instant instant) {
         return instant != null ? instant.atZone(java.time.ZoneId.systemDefault()).format(DATE_TIME_FORMATTER) : "null";
     }
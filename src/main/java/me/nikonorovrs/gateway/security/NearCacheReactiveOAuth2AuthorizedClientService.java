@@ -0,0 +1,237 @@
+package me.nikonorovrs.gateway.security;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Локальный (near) кэш авторизованных клиентов поверх хранилища в Redis.
+ * <p>
+ * Запись живет не дольше {@code ttl} и никогда не переживает момент, когда токен попадает
+ * в окно обновления, поэтому токены, требующие обновления, всегда читаются из Redis.
+ * Изменения на любом узле рассылаются через Redis pub/sub и сбрасывают запись на остальных узлах:
+ * ключи пакета передаются одним сообщением через перевод строки, а отзыв по пользователям идет
+ * отдельным каналом, потому что near-кэш не знает, какие регистрации есть у пользователя на других узлах.
+ */
+@Slf4j
+public class NearCacheReactiveOAuth2AuthorizedClientService implements BatchReactiveOAuth2AuthorizedClientService {
+
+    private static final String CACHE_NAME = "oauth2-authorized-clients";
+    private static final char SEPARATOR = '|';
+    private static final String LIST_SEPARATOR = "\n";
+
+    private final BatchReactiveOAuth2AuthorizedClientService delegate;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ReactiveRedisMessageListenerContainer listenerContainer;
+    private final ChannelTopic invalidationTopic;
+    private final ChannelTopic principalInvalidationTopic;
+    private final AsyncCache<String, OAuth2AuthorizedClient> cache;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private Disposable subscription;
+
+    public NearCacheReactiveOAuth2AuthorizedClientService(
+            BatchReactiveOAuth2AuthorizedClientService delegate,
+            ReactiveStringRedisTemplate redisTemplate,
+            ReactiveRedisMessageListenerContainer listenerContainer,
+            String invalidationChannel,
+            long maximumSize,
+            Duration ttl,
+            Duration refreshBuffer,
+            Executor executor,
+            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.invalidationTopic = ChannelTopic.of(invalidationChannel);
+        this.principalInvalidationTopic = ChannelTopic.of(invalidationChannel + ":principals");
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(ttl, refreshBuffer))
+                // Обслуживание кэша и уведомления об удалении - вместо общего ForkJoinPool
+                .executor(executor)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    private static String buildKey(String principalName, String clientRegistrationId) {
+        return principalName + ":" + clientRegistrationId;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId, String principalName) {
+        String key = buildKey(principalName, clientRegistrationId);
+        // Параллельные промахи по одному ключу разделяют одну загрузку из Redis,
+        // а отмена одного подписчика не должна отменять загрузку для остальных
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) -> delegate
+                        .loadAuthorizedClient(clientRegistrationId, principalName)
+                        .toFuture()), true)
+                .map(client -> (T) client);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> Mono<T> loadLatestAuthorizedClient(String clientRegistrationId, String principalName) {
+        String key = buildKey(principalName, clientRegistrationId);
+        // Локальная копия заменяется прочитанной с primary или сбрасывается, если клиента больше нет
+        return delegate.<OAuth2AuthorizedClient>loadLatestAuthorizedClient(clientRegistrationId, principalName)
+                .doOnNext(client -> cache.put(key, CompletableFuture.completedFuture(client)))
+                .switchIfEmpty(Mono.fromRunnable(() -> cache.synchronous().invalidate(key)))
+                .map(client -> (T) client);
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        String key = buildKey(principal.getName(), authorizedClient.getClientRegistration().getRegistrationId());
+        return delegate.saveAuthorizedClient(authorizedClient, principal)
+                .then(Mono.fromRunnable(() -> cache.put(key, CompletableFuture.completedFuture(authorizedClient))))
+                .then(publishInvalidation(key));
+    }
+
+    @Override
+    public Mono<Void> removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        String key = buildKey(principalName, clientRegistrationId);
+        return delegate.removeAuthorizedClient(clientRegistrationId, principalName)
+                .then(Mono.fromRunnable(() -> cache.synchronous().invalidate(key)))
+                .then(publishInvalidation(key));
+    }
+
+    @Override
+    public Flux<OAuth2AuthorizedClient> loadAuthorizedClients(String clientRegistrationId, Collection<String> principalNames) {
+        Map<String, String> principalsByKey = new LinkedHashMap<>(principalNames.size() * 2);
+        for (String principalName : principalNames) {
+            principalsByKey.put(buildKey(principalName, clientRegistrationId), principalName);
+        }
+        // Из Redis одним пакетом загружаются только промахи
+        return Mono.fromFuture(() -> cache.getAll(principalsByKey.keySet(), (missingKeys, executor) -> {
+                    List<String> missingPrincipals = missingKeys.stream().map(principalsByKey::get).toList();
+                    return delegate.loadAuthorizedClients(clientRegistrationId, missingPrincipals)
+                            .collectMap(client -> buildKey(client.getPrincipalName(), clientRegistrationId))
+                            .toFuture();
+                }), true)
+                .flatMapIterable(Map::values);
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizedClients(Collection<OAuth2AuthorizedClient> authorizedClients) {
+        List<String> keys = authorizedClients.stream()
+                .map(client -> buildKey(client.getPrincipalName(), client.getClientRegistration().getRegistrationId()))
+                .toList();
+        // Пакет обычно не относится к горячим пользователям узла, поэтому записи сбрасываются, а не заполняются
+        return delegate.saveAuthorizedClients(authorizedClients)
+                .then(Mono.fromRunnable(() -> cache.synchronous().invalidateAll(keys)))
+                .then(publishInvalidation(invalidationTopic, keys));
+    }
+
+    @Override
+    public Mono<Long> removeAuthorizedClients(Collection<String> principalNames) {
+        Set<String> principals = Set.copyOf(principalNames);
+        return delegate.removeAuthorizedClients(principals)
+                .flatMap(removed -> Mono.fromRunnable(() -> invalidatePrincipals(principals))
+                        .then(publishInvalidation(principalInvalidationTopic, principals))
+                        .thenReturn(removed));
+    }
+
+    private Mono<Void> publishInvalidation(String key) {
+        return publishInvalidation(invalidationTopic, List.of(key));
+    }
+
+    private Mono<Void> publishInvalidation(ChannelTopic topic, Collection<String> values) {
+        if (values.isEmpty()) {
+            return Mono.empty();
+        }
+        return redisTemplate.convertAndSend(topic.getTopic(), nodeId + SEPARATOR + String.join(LIST_SEPARATOR, values))
+                .doOnError(error -> log.warn("Не удалось разослать сброс near-кэша: channel={}, count={}, error={}",
+                        topic.getTopic(), values.size(), error.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        subscription = listenerContainer.receive(invalidationTopic, principalInvalidationTopic)
+                // Пока подписки не было, сообщения могли быть потеряны, поэтому кэш сбрасывается целиком
+                .doOnSubscribe(s -> cache.synchronous().invalidateAll())
+                .doOnError(error -> log.warn("Подписка на сброс near-кэша прервана: {}", error.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::onInvalidation);
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void onInvalidation(ReactiveSubscription.Message<String, String> message) {
+        String payload = message.getMessage();
+        int separator = payload.indexOf(SEPARATOR);
+        if (separator < 0 || nodeId.equals(payload.substring(0, separator))) {
+            return;
+        }
+        List<String> values = List.of(payload.substring(separator + 1).split(LIST_SEPARATOR));
+        if (principalInvalidationTopic.getTopic().equals(message.getChannel())) {
+            log.debug("Сброс near-кэша пользователей по сообщению другого узла: count={}", values.size());
+            invalidatePrincipals(Set.copyOf(values));
+            return;
+        }
+        log.debug("Сброс near-кэша по сообщению другого узла: keys={}", values);
+        cache.synchronous().invalidateAll(values);
+    }
+
+    private void invalidatePrincipals(Set<String> principalNames) {
+        cache.synchronous().asMap().keySet().removeIf(key -> principalNames.contains(key.substring(0, key.lastIndexOf(':'))));
+    }
+
+    private record TokenExpiry(Duration ttl, Duration refreshBuffer) implements Expiry<String, OAuth2AuthorizedClient> {
+
+        @Override
+        public long expireAfterCreate(String key, OAuth2AuthorizedClient client, long currentTime) {
+            Instant expiresAt = client.getAccessToken().getExpiresAt();
+            if (expiresAt == null) {
+                return ttl.toNanos();
+            }
+            long untilRefresh = Duration.between(Instant.now(), expiresAt.minus(refreshBuffer)).toNanos();
+            return Math.max(0, Math.min(ttl.toNanos(), untilRefresh));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, OAuth2AuthorizedClient client, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, client, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, OAuth2AuthorizedClient client, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package me.nikonorovrs.gateway.security;
+
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Компактный сериализатор для {@link OAuth2AuthorizedClient}.
+ * <p>
+ * Хранит только значения токенов, сроки действия, scope и идентификатор регистрации,
+ * а {@link ClientRegistration} восстанавливает из регистраций, прочитанных при создании. Десериализация
+ * выполняется синхронно, поэтому репозиторий должен перечислять регистрации, как
+ * {@link org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository}:
+ * реактивный поиск по идентификатору здесь не дождаться.
+ * Первый байт записи - версия формата. Остальные значения, а также записи в старом формате
+ * (поток Java-сериализации начинается с {@code 0xACED}) обрабатываются {@link JdkSerializationRedisSerializer}.
+ */
+public class OAuth2AuthorizedClientRedisSerializer implements RedisSerializer<Object> {
+
+    static final byte FORMAT_V1 = 1;
+
+    private static final long NO_INSTANT = Long.MIN_VALUE;
+    private static final int NO_STRING = -1;
+
+    private final Map<String, ClientRegistration> registrations;
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    public OAuth2AuthorizedClientRedisSerializer(ReactiveClientRegistrationRepository clientRegistrationRepository) {
+        if (!(clientRegistrationRepository instanceof Iterable<?> iterable)) {
+            throw new IllegalArgumentException("Репозиторий регистраций должен перечислять регистрации: "
+                    + clientRegistrationRepository.getClass().getName());
+        }
+        Map<String, ClientRegistration> byId = new HashMap<>();
+        for (Object registration : iterable) {
+            ClientRegistration clientRegistration = (ClientRegistration) registration;
+            byId.put(clientRegistration.getRegistrationId(), clientRegistration);
+        }
+        this.registrations = Map.copyOf(byId);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (!(value instanceof OAuth2AuthorizedClient client)) {
+            return jdkSerializer.serialize(value);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_V1);
+            writeString(out, client.getClientRegistration().getRegistrationId());
+            writeString(out, client.getPrincipalName());
+
+            OAuth2AccessToken accessToken = client.getAccessToken();
+            writeString(out, accessToken.getTokenType().getValue());
+            writeString(out, accessToken.getTokenValue());
+            writeInstant(out, accessToken.getIssuedAt());
+            writeInstant(out, accessToken.getExpiresAt());
+            out.writeShort(accessToken.getScopes().size());
+            for (String scope : accessToken.getScopes()) {
+                writeString(out, scope);
+            }
+
+            OAuth2RefreshToken refreshToken = client.getRefreshToken();
+            out.writeBoolean(refreshToken != null);
+            if (refreshToken != null) {
+                writeString(out, refreshToken.getTokenValue());
+                writeInstant(out, refreshToken.getIssuedAt());
+                writeInstant(out, refreshToken.getExpiresAt());
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось сериализовать авторизованного клиента", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != FORMAT_V1) {
+            return jdkSerializer.deserialize(bytes);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+            ClientRegistration clientRegistration = resolveRegistration(readString(in));
+            String principalName = readString(in);
+
+            OAuth2AccessToken.TokenType tokenType = resolveTokenType(readString(in));
+            String accessTokenValue = readString(in);
+            Instant accessIssuedAt = readInstant(in);
+            Instant accessExpiresAt = readInstant(in);
+            int scopeCount = in.readUnsignedShort();
+            Set<String> scopes = new LinkedHashSet<>(scopeCount * 2);
+            for (int i = 0; i < scopeCount; i++) {
+                scopes.add(readString(in));
+            }
+            OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                    tokenType, accessTokenValue, accessIssuedAt, accessExpiresAt, scopes);
+
+            OAuth2RefreshToken refreshToken = null;
+            if (in.readBoolean()) {
+                refreshToken = new OAuth2RefreshToken(readString(in), readInstant(in), readInstant(in));
+            }
+            return new OAuth2AuthorizedClient(clientRegistration, principalName, accessToken, refreshToken);
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось десериализовать авторизованного клиента", e);
+        }
+    }
+
+    private ClientRegistration resolveRegistration(String registrationId) {
+        ClientRegistration registration = registrations.get(registrationId);
+        if (registration == null) {
+            throw new SerializationException("Неизвестная регистрация клиента: " + registrationId);
+        }
+        return registration;
+    }
+
+    private static OAuth2AccessToken.TokenType resolveTokenType(String value) {
+        if (OAuth2AccessToken.TokenType.BEARER.getValue().equalsIgnoreCase(value)) {
+            return OAuth2AccessToken.TokenType.BEARER;
+        }
+        throw new SerializationException("Неизвестный тип токена: " + value);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NO_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NO_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeLong(instant != null ? instant.toEpochMilli() : NO_INSTANT);
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        long epochMilli = in.readLong();
+        return epochMilli != NO_INSTANT ? Instant.ofEpochMilli(epochMilli) : null;
+    }
+}
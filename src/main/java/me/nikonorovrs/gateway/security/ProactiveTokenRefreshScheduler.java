@@ -0,0 +1,228 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Фоновое заблаговременное обновление токенов активных пользователей.
+ * <p>
+ * Оборачивает {@link LockingReactiveOAuth2AuthorizedClientManager}: каждый авторизованный запрос отмечает токен
+ * в упорядоченном по времени обновления наборе, а периодическая задача обновляет токены, истекающие в пределах
+ * {@code lookahead} (но не раньше половины срока жизни токена), пачками с ограниченной параллельностью. Обновление идет через те же ключи блокировок,
+ * что и обновление по запросу, поэтому гонок между ними нет. Токены пользователей, не делавших запросов
+ * дольше {@code maxIdle}, перестают отслеживаться.
+ */
+@Slf4j
+public class ProactiveTokenRefreshScheduler implements ReactiveOAuth2AuthorizedClientManager {
+
+    private final LockingReactiveOAuth2AuthorizedClientManager delegate;
+    private final Duration interval;
+    private final Duration lookahead;
+    private final Duration maxIdle;
+    private final int batchSize;
+    private final int concurrency;
+
+    private final Map<String, TrackedToken> tracked = new ConcurrentHashMap<>();
+    private final NavigableSet<TrackedToken> schedule = new ConcurrentSkipListSet<>(
+            Comparator.comparing(TrackedToken::refreshAt).thenComparing(TrackedToken::key));
+
+    private Disposable ticker;
+
+    public ProactiveTokenRefreshScheduler(LockingReactiveOAuth2AuthorizedClientManager delegate,
+                                          Duration interval,
+                                          Duration lookahead,
+                                          Duration maxIdle,
+                                          int batchSize,
+                                          int concurrency,
+                                          MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.interval = interval;
+        this.lookahead = lookahead;
+        this.maxIdle = maxIdle;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        meterRegistry.gaugeMapSize("gateway.token.refresh.tracked", List.of(), tracked);
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizeRequest request) {
+        Authentication principal = request.getPrincipal();
+        return delegate.authorize(request)
+                .doOnNext(client -> track(client, principal, true));
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Flux.interval(interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refreshDue()
+                        .onErrorResume(error -> {
+                            log.error("Ошибка фонового обновления токенов: {}", error.getMessage(), error);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+    }
+
+    Mono<Void> refreshDue() {
+        Instant now = Instant.now();
+        Instant idleSince = now.minus(maxIdle);
+
+        List<TrackedToken> due = new ArrayList<>();
+        for (TrackedToken token : schedule) {
+            if (token.refreshAt().isAfter(now) || due.size() >= batchSize) {
+                break;
+            }
+            if (token.lastSeen().isBefore(idleSince)) {
+                log.debug("Токен больше не отслеживается из-за неактивности: key={}", token.key());
+                untrack(token);
+                continue;
+            }
+            due.add(token);
+        }
+        if (due.isEmpty()) {
+            return Mono.empty();
+        }
+
+        log.debug("Заблаговременное обновление токенов: count={}", due.size());
+        return Flux.fromIterable(due)
+                .flatMap(token -> delegate.refreshAhead(token.clientRegistrationId(), token.principal(), token.lookahead())
+                        .doOnNext(client -> track(client, token.principal(), false))
+                        .switchIfEmpty(Mono.fromRunnable(() -> untrack(token)))
+                        .onErrorResume(error -> {
+                            // Токен обновится по запросу пользователя, который снова поставит его в расписание
+                            log.warn("Не удалось заблаговременно обновить токен: key={}, error={}",
+                                    token.key(), error.getMessage());
+                            untrack(token);
+                            return Mono.empty();
+                        }), concurrency)
+                .then();
+    }
+
+    private void track(OAuth2AuthorizedClient client, Authentication principal, boolean active) {
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        if (expiresAt == null) {
+            return;
+        }
+        String clientRegistrationId = client.getClientRegistration().getRegistrationId();
+        String key = clientRegistrationId + ":" + principal.getName();
+
+        // Быстрый путь для каждого запроса: срок действия не изменился, достаточно отметить активность
+        TrackedToken current = tracked.get(key);
+        if (current != null && current.expiresAt().equals(expiresAt)) {
+            if (active) {
+                current.touch();
+            }
+            return;
+        }
+
+        tracked.compute(key, (k, existing) -> {
+            if (existing != null && existing.expiresAt().equals(expiresAt)) {
+                return existing;
+            }
+            if (existing != null) {
+                schedule.remove(existing);
+            }
+            TrackedToken next = new TrackedToken(k, clientRegistrationId, principal, expiresAt,
+                    effectiveLookahead(client.getAccessToken().getIssuedAt(), expiresAt));
+            if (!active && existing != null) {
+                next.lastSeen = existing.lastSeen();
+            }
+            schedule.add(next);
+            return next;
+        });
+    }
+
+    // Короткоживущие токены не обновляются раньше половины срока жизни, иначе обновление шло бы на каждом такте
+    private Duration effectiveLookahead(Instant issuedAt, Instant expiresAt) {
+        if (issuedAt == null) {
+            return lookahead;
+        }
+        Duration halfLifetime = Duration.between(issuedAt, expiresAt).dividedBy(2);
+        return halfLifetime.compareTo(lookahead) < 0 ? halfLifetime : lookahead;
+    }
+
+    private void untrack(TrackedToken token) {
+        if (tracked.remove(token.key(), token)) {
+            schedule.remove(token);
+        }
+    }
+
+    private static final class TrackedToken {
+
+        private final String key;
+        private final String clientRegistrationId;
+        private final Authentication principal;
+        private final Instant expiresAt;
+        private final Duration lookahead;
+        private final Instant refreshAt;
+        private volatile Instant lastSeen = Instant.now();
+
+        private TrackedToken(String key, String clientRegistrationId, Authentication principal,
+                             Instant expiresAt, Duration lookahead) {
+            this.key = key;
+            this.clientRegistrationId = clientRegistrationId;
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+            this.lookahead = lookahead;
+            this.refreshAt = expiresAt.minus(lookahead);
+        }
+
+        String key() {
+            return key;
+        }
+
+        String clientRegistrationId() {
+            return clientRegistrationId;
+        }
+
+        Authentication principal() {
+            return principal;
+        }
+
+        Instant expiresAt() {
+            return expiresAt;
+        }
+
+        Duration lookahead() {
+            return lookahead;
+        }
+
+        Instant refreshAt() {
+            return refreshAt;
+        }
+
+        Instant lastSeen() {
+            return lastSeen;
+        }
+
+        void touch() {
+            lastSeen = Instant.now();
+        }
+    }
+}
@@ -1,42 +1,227 @@
 package me.nikonorovrs.gateway.security;
 
+import me.nikonorovrs.gateway.redis.RedisKeys;
+import me.nikonorovrs.gateway.redis.RedisReplicaReads;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
-public class RedisReactiveOAuth2AuthorizedClientService implements ReactiveOAuth2AuthorizedClientService {
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Хранение авторизованных клиентов в Redis, ключ - {@code <prefix><principal>:<registration>}.
+ * <p>
+ * При включенном чтении с реплик одиночные загрузки идут через {@link RedisReplicaReads}: клиент с реплики
+ * используется, только если его токен не нужно обновлять, иначе он перечитывается с primary, чтобы решение
+ * об обновлении не принималось по отставшей копии. Пакетные загрузки нужны для упреждающего обновления
+ * и всегда идут на primary.
+ * <p>
+ * Значения читаются байтами: клиенты и пакеты клиентов больше {@code offloadThreshold} десериализуются
+ * на {@code offloadScheduler}, а не в потоке Lettuce.
+ */
+public class RedisReactiveOAuth2AuthorizedClientService implements BatchReactiveOAuth2AuthorizedClientService {
+
+    // Пакетные команды делятся на части, чтобы не держать соединение одной огромной командой;
+    // части отправляются параллельно и конвейеризуются в общем соединении Lettuce
+    private static final int BATCH_SIZE = 500;
+    private static final int BATCH_CONCURRENCY = 4;
+
+    private static final String STORE = "authorized-client";
 
     private final ReactiveRedisTemplate<String, Object> redisTemplate;
+    private final ReactiveRedisTemplate<String, byte[]> rawTemplate;
+    private final ReactiveRedisTemplate<String, byte[]> rawReplicaTemplate;
+    private final RedisSerializationContext.SerializationPair<Object> valueSerializer;
+    private final RedisReplicaReads replicaReads;
     private final String keyPrefix;
+    private final Collection<String> clientRegistrationIds;
+    private final AuthorizedClientTtlPolicy ttlPolicy;
+    private final boolean hashTags;
+    private final Duration refreshBuffer;
+    private final Scheduler offloadScheduler;
+    private final long offloadThreshold;
+
+    public RedisReactiveOAuth2AuthorizedClientService(
+            ReactiveRedisTemplate<String, Object> redisTemplate,
+            String keyPrefix,
+            Collection<String> clientRegistrationIds,
+            AuthorizedClientTtlPolicy ttlPolicy) {
+        this(redisTemplate, null, null, keyPrefix, clientRegistrationIds, ttlPolicy, false, Duration.ZERO, null, 0);
+    }
 
+    /**
+     * @param replicaTemplate  шаблон на фабрике реплик или {@code null}, если чтение с реплик выключено
+     * @param hashTags         заключать имя пользователя в хеш-тег кластера
+     * @param refreshBuffer    за сколько до истечения токен считается требующим обновления
+     * @param offloadScheduler планировщик для десериализации больших значений; {@code null} - всегда в потоке ответа
+     * @param offloadThreshold размер прочитанных значений, начиная с которого они десериализуются на планировщике
+     */
     public RedisReactiveOAuth2AuthorizedClientService(
             ReactiveRedisTemplate<String, Object> redisTemplate,
-            String keyPrefix) {
+            ReactiveRedisTemplate<String, Object> replicaTemplate,
+            RedisReplicaReads replicaReads,
+            String keyPrefix,
+            Collection<String> clientRegistrationIds,
+            AuthorizedClientTtlPolicy ttlPolicy,
+            boolean hashTags,
+            Duration refreshBuffer,
+            Scheduler offloadScheduler,
+            long offloadThreshold) {
         this.redisTemplate = redisTemplate;
+        this.rawTemplate = raw(redisTemplate);
+        this.rawReplicaTemplate = replicaTemplate != null ? raw(replicaTemplate) : null;
+        this.valueSerializer = redisTemplate.getSerializationContext().getValueSerializationPair();
+        this.replicaReads = replicaReads;
         this.keyPrefix = keyPrefix;
+        this.clientRegistrationIds = List.copyOf(clientRegistrationIds);
+        this.ttlPolicy = ttlPolicy;
+        this.hashTags = hashTags;
+        this.refreshBuffer = refreshBuffer;
+        this.offloadScheduler = offloadScheduler;
+        this.offloadThreshold = offloadThreshold;
+    }
+
+    // Шаблон на той же фабрике, но без десериализации значений
+    private static ReactiveRedisTemplate<String, byte[]> raw(ReactiveRedisTemplate<String, Object> template) {
+        return new ReactiveRedisTemplate<>(template.getConnectionFactory(), RedisSerializationContext
+                .<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .build());
     }
 
     private String buildKey(String principalName, String clientRegistrationId) {
-        return keyPrefix + principalName + ":" + clientRegistrationId;
+        return keyPrefix + RedisKeys.principalPart(principalName, hashTags) + ":" + clientRegistrationId;
     }
 
     @Override
     public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId, String principalName) {
         String key = buildKey(principalName, clientRegistrationId);
-        return redisTemplate.opsForValue().get(key).cast(OAuth2AuthorizedClient.class).map(client -> (T) client);
+        Mono<OAuth2AuthorizedClient> primary = load(rawTemplate, key);
+        if (rawReplicaTemplate == null) {
+            return primary.map(client -> (T) client);
+        }
+        Mono<OAuth2AuthorizedClient> replica = load(rawReplicaTemplate, key);
+        return replicaReads.read(STORE, key, replica, primary, this::fresh).map(client -> (T) client);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> Mono<T> loadLatestAuthorizedClient(String clientRegistrationId, String principalName) {
+        return load(rawTemplate, buildKey(principalName, clientRegistrationId))
+                .map(client -> (T) client);
+    }
+
+    private Mono<OAuth2AuthorizedClient> load(ReactiveRedisTemplate<String, byte[]> template, String key) {
+        return template.opsForValue().get(key)
+                .flatMap(value -> decode(List.of(value)))
+                .mapNotNull(clients -> clients.isEmpty() ? null : clients.get(0));
+    }
+
+    private Mono<List<OAuth2AuthorizedClient>> decode(List<byte[]> values) {
+        Mono<List<OAuth2AuthorizedClient>> decoding = Mono.fromCallable(() -> {
+            List<OAuth2AuthorizedClient> clients = new ArrayList<>(values.size());
+            for (byte[] value : values) {
+                if (valueSerializer.read(ByteBuffer.wrap(value)) instanceof OAuth2AuthorizedClient client) {
+                    clients.add(client);
+                }
+            }
+            return clients;
+        });
+        if (offloadScheduler == null || size(values) < offloadThreshold) {
+            return decoding;
+        }
+        // Если исполнитель перегружен, клиенты десериализуются на месте
+        return decoding.subscribeOn(offloadScheduler)
+                .onErrorResume(RejectedExecutionException.class, rejected -> decoding);
+    }
+
+    private static long size(List<byte[]> values) {
+        long size = 0;
+        for (byte[] value : values) {
+            size += value.length;
+        }
+        return size;
+    }
+
+    private boolean fresh(OAuth2AuthorizedClient client) {
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        return expiresAt == null || expiresAt.isAfter(Instant.now().plus(refreshBuffer));
     }
 
     @Override
     public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
         String key = buildKey(principal.getName(), authorizedClient.getClientRegistration().getRegistrationId());
-        return redisTemplate.opsForValue().set(key, authorizedClient).then();
+        return redisTemplate.opsForValue().set(key, authorizedClient, ttlPolicy.ttl(authorizedClient))
+                .doOnSuccess(saved -> written(key))
+                .then();
     }
 
     @Override
     public Mono<Void> removeAuthorizedClient(String clientRegistrationId, String principalName) {
         String key = buildKey(principalName, clientRegistrationId);
-        return redisTemplate.delete(key).then();
+        return redisTemplate.delete(key)
+                .doOnSuccess(deleted -> written(key))
+                .then();
+    }
+
+    // Окно чтения с primary отсчитывается от подтверждения записи
+    private void written(String key) {
+        if (replicaReads != null) {
+            replicaReads.written(key);
+        }
+    }
+
+    @Override
+    public Flux<OAuth2AuthorizedClient> loadAuthorizedClients(String clientRegistrationId, Collection<String> principalNames) {
+        return Flux.fromIterable(principalNames)
+                .distinct()
+                .map(principalName -> buildKey(principalName, clientRegistrationId))
+                .buffer(BATCH_SIZE)
+                .flatMapSequential(keys -> rawTemplate.opsForValue().multiGet(keys)
+                        .flatMap(values -> decode(values.stream().filter(Objects::nonNull).toList())), BATCH_CONCURRENCY)
+                .flatMapIterable(clients -> clients);
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizedClients(Collection<OAuth2AuthorizedClient> authorizedClients) {
+        // MSET не задает TTL, поэтому отдельные SET с TTL отправляются без ожидания ответов
+        // и конвейеризуются соединением так же, как части пакетных команд
+        return Flux.fromIterable(authorizedClients)
+                .flatMap(client -> {
+                    String key = buildKey(client.getPrincipalName(), client.getClientRegistration().getRegistrationId());
+                    return redisTemplate.opsForValue().set(key, client, ttlPolicy.ttl(client))
+                            .doOnSuccess(saved -> written(key));
+                }, BATCH_SIZE)
+                .then();
+    }
+
+    @Override
+    public Mono<Long> removeAuthorizedClients(Collection<String> principalNames) {
+        return Flux.fromIterable(principalNames)
+                .distinct()
+                .flatMapIterable(principalName -> {
+                    List<String> keys = new ArrayList<>(clientRegistrationIds.size());
+                    for (String clientRegistrationId : clientRegistrationIds) {
+                        keys.add(buildKey(principalName, clientRegistrationId));
+                    }
+                    return keys;
+                })
+                .buffer(BATCH_SIZE)
+                // UNLINK освобождает память в фоне и не блокирует Redis на крупных значениях
+                .flatMap(keys -> redisTemplate.unlink(keys.toArray(String[]::new))
+                        .doOnSuccess(unlinked -> keys.forEach(this::written)), BATCH_CONCURRENCY)
+                .reduce(0L, Long::sum);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,38 @@
+package me.nikonorovrs.gateway.security;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Распределенная блокировка, под которой выполняется обновление токена одного пользователя.
+ */
+public interface RefreshLock {
+
+    /**
+     * Пытается получить блокировку в течение {@code waitTime}.
+     *
+     * @param lockKey    ключ блокировки
+     * @param waitTime   максимальное время ожидания блокировки
+     * @param leaseTime  время, через которое блокировка освобождается автоматически
+     * @param freshUntil момент, до которого токен должен оставаться действительным, чтобы обновление не требовалось
+     * @return аренда блокировки или пустой Mono, если блокировку получить не удалось
+     */
+    Mono<Lease> tryAcquire(String lockKey, Duration waitTime, Duration leaseTime, Instant freshUntil);
+
+    interface Lease {
+
+        /**
+         * @return {@code false}, если блокировка не была захвачена, потому что токен уже обновлен другим узлом
+         */
+        boolean isHeld();
+
+        /**
+         * Сообщает срок действия нового токена, чтобы ожидающие узлы могли не обновлять его повторно.
+         */
+        void refreshed(Instant expiresAt);
+
+        Mono<Void> release();
+    }
+}
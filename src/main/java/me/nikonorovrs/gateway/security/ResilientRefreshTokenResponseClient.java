@@ -0,0 +1,158 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.client.endpoint.OAuth2RefreshTokenGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Обращения к точке выдачи токенов через размыкатель цепи и адаптивный лимит параллельности.
+ * <p>
+ * Отказы из-за разомкнутой цепи или исчерпанного лимита, а также ошибки соединения, таймауты и ответы,
+ * которые не удалось разобрать, передаются дальше как {@link TokenEndpointUnavailableException}.
+ * Ошибки протокола OAuth2 (например, отозванный refresh-токен) означают, что Keycloak работает,
+ * и передаются без изменений.
+ */
+@Slf4j
+public class ResilientRefreshTokenResponseClient
+        implements ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> {
+
+    private static final Set<String> PROTOCOL_ERROR_CODES = Set.of(
+            OAuth2ErrorCodes.INVALID_REQUEST,
+            OAuth2ErrorCodes.INVALID_CLIENT,
+            OAuth2ErrorCodes.INVALID_GRANT,
+            OAuth2ErrorCodes.UNAUTHORIZED_CLIENT,
+            OAuth2ErrorCodes.UNSUPPORTED_GRANT_TYPE,
+            OAuth2ErrorCodes.INVALID_SCOPE);
+
+    private final ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> delegate;
+    private final TokenEndpointCircuitBreaker circuitBreaker;
+    private final AimdConcurrencyLimiter limiter;
+
+    private final Counter successCounter;
+    private final Counter protocolErrorCounter;
+    private final Counter failureCounter;
+    private final Counter rejectedCounter;
+    private final Counter shortCircuitedCounter;
+    private final Timer durationTimer;
+
+    public ResilientRefreshTokenResponseClient(
+            ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> delegate,
+            TokenEndpointProperties properties,
+            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.circuitBreaker = new TokenEndpointCircuitBreaker(properties.getBreaker());
+        this.limiter = new AimdConcurrencyLimiter(properties.getLimiter());
+
+        this.successCounter = callCounter(meterRegistry, "success");
+        this.protocolErrorCounter = callCounter(meterRegistry, "protocol_error");
+        this.failureCounter = callCounter(meterRegistry, "failure");
+        this.rejectedCounter = callCounter(meterRegistry, "rejected");
+        this.shortCircuitedCounter = callCounter(meterRegistry, "short_circuited");
+        this.durationTimer = Timer.builder("gateway.token.endpoint.duration")
+                .description("Время ответа точки выдачи токенов при обновлении")
+                .register(meterRegistry);
+
+        for (TokenEndpointCircuitBreaker.State state : TokenEndpointCircuitBreaker.State.values()) {
+            Gauge.builder("gateway.token.endpoint.breaker.state", circuitBreaker, breaker -> breaker.state() == state ? 1 : 0)
+                    .description("Состояние размыкателя цепи точки выдачи токенов")
+                    .tag("state", state.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("gateway.token.endpoint.limit", limiter, AimdConcurrencyLimiter::limit)
+                .description("Текущий лимит параллельных обращений к точке выдачи токенов")
+                .register(meterRegistry);
+        Gauge.builder("gateway.token.endpoint.inflight", limiter, AimdConcurrencyLimiter::inFlight)
+                .description("Обращения к точке выдачи токенов в процессе")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<OAuth2AccessTokenResponse> getTokenResponse(OAuth2RefreshTokenGrantRequest grantRequest) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                shortCircuitedCounter.increment();
+                return Mono.error(new TokenEndpointUnavailableException("Цепь точки выдачи токенов разомкнута"));
+            }
+            if (!limiter.tryAcquire()) {
+                circuitBreaker.releasePermission();
+                rejectedCounter.increment();
+                return Mono.error(new TokenEndpointUnavailableException(
+                        "Превышен лимит параллельных обращений к точке выдачи токенов: " + limiter.limit()));
+            }
+
+            long start = System.nanoTime();
+            // Результат учитывается ровно один раз, даже если отмена пришла одновременно с ответом
+            AtomicBoolean completed = new AtomicBoolean();
+            return delegate.getTokenResponse(grantRequest)
+                    .doOnSuccess(response -> {
+                        if (completed.compareAndSet(false, true)) {
+                            onResponse(System.nanoTime() - start, successCounter);
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (completed.compareAndSet(false, true)) {
+                            if (isProtocolError(error)) {
+                                onResponse(System.nanoTime() - start, protocolErrorCounter);
+                            } else {
+                                onFailure(System.nanoTime() - start, error);
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (completed.compareAndSet(false, true)) {
+                            limiter.onIgnore();
+                            circuitBreaker.releasePermission();
+                        }
+                    })
+                    .onErrorMap(error -> !isProtocolError(error) && !(error instanceof TokenEndpointUnavailableException),
+                            error -> new TokenEndpointUnavailableException(
+                                    "Точка выдачи токенов не ответила: " + error.getMessage(), error));
+        });
+    }
+
+    /**
+     * @return {@code false}, пока цепь разомкнута и обращения к Keycloak заведомо будут отклонены
+     */
+    public boolean isCallPermitted() {
+        return circuitBreaker.isCallPermitted();
+    }
+
+    private void onResponse(long latencyNanos, Counter counter) {
+        limiter.onSuccess(latencyNanos);
+        circuitBreaker.onSuccess();
+        durationTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+        counter.increment();
+    }
+
+    private void onFailure(long latencyNanos, Throwable error) {
+        log.warn("Ошибка обращения к точке выдачи токенов: error={}", error.toString());
+        limiter.onFailure();
+        circuitBreaker.onFailure();
+        durationTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+        failureCounter.increment();
+    }
+
+    private static boolean isProtocolError(Throwable error) {
+        return error instanceof OAuth2AuthorizationException authorizationException
+                && PROTOCOL_ERROR_CODES.contains(authorizationException.getError().getErrorCode());
+    }
+
+    private static Counter callCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gateway.token.endpoint.calls")
+                .description("Обращения к точке выдачи токенов по результату")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,123 @@
+package me.nikonorovrs.gateway.security;
+
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Скомпилированные из метаданных маршрута параметры обработки неаутентифицированных запросов
+ * и передачи токена в upstream.
+ * <p>
+ * Метаданные маршрута:
+ * <ul>
+ *     <li>{@code redirect-code} - HTTP-код ответа вместо 302, например 401 для XHR-маршрутов;</li>
+ *     <li>{@code login-url} - адрес, на который отправляется пользователь для входа;</li>
+ *     <li>{@code token-exchange-audience} - аудитория токена, который фильтр {@code TokenExchange} получает
+ *     обменом вместо токена пользователя;</li>
+ *     <li>{@code token-exchange-scope} - scope обмененного токена через пробел или запятую либо списком.</li>
+ * </ul>
+ *
+ * @param redirectStatus   код ответа неаутентифицированному пользователю
+ * @param loginUrl         значение заголовка Location
+ * @param exchangeAudience аудитория обмена или {@code null}, если upstream получает токен пользователя
+ * @param exchangeScopes   запрашиваемые при обмене scope; пусто - scope выбирает точка выдачи
+ */
+public record RoutePolicy(HttpStatus redirectStatus, URI loginUrl, String exchangeAudience, Set<String> exchangeScopes) {
+
+    public static final String REDIRECT_CODE_METADATA = "redirect-code";
+    public static final String LOGIN_URL_METADATA = "login-url";
+    public static final String TOKEN_EXCHANGE_AUDIENCE_METADATA = "token-exchange-audience";
+    public static final String TOKEN_EXCHANGE_SCOPE_METADATA = "token-exchange-scope";
+
+    public static final RoutePolicy DEFAULT = new RoutePolicy(HttpStatus.FOUND, URI.create("/oauth2/authorization/keycloak"),
+            null, Set.of());
+
+    /**
+     * Проверяет метаданные маршрута и собирает политику.
+     *
+     * @throws IllegalArgumentException если значение метаданных некорректно
+     */
+    public static RoutePolicy compile(Route route) {
+        Map<String, Object> metadata = route.getMetadata();
+        if (!metadata.containsKey(REDIRECT_CODE_METADATA) && !metadata.containsKey(LOGIN_URL_METADATA)
+                && !metadata.containsKey(TOKEN_EXCHANGE_AUDIENCE_METADATA) && !metadata.containsKey(TOKEN_EXCHANGE_SCOPE_METADATA)) {
+            return DEFAULT;
+        }
+        String audience = exchangeAudience(metadata.get(TOKEN_EXCHANGE_AUDIENCE_METADATA));
+        Set<String> scopes = exchangeScopes(metadata.get(TOKEN_EXCHANGE_SCOPE_METADATA));
+        if (audience == null && !scopes.isEmpty()) {
+            throw new IllegalArgumentException("Scope обмена токена задан без аудитории: " + scopes);
+        }
+        return new RoutePolicy(
+                redirectStatus(metadata.get(REDIRECT_CODE_METADATA)),
+                loginUrl(metadata.get(LOGIN_URL_METADATA)),
+                audience,
+                scopes);
+    }
+
+    private static HttpStatus redirectStatus(Object value) {
+        if (value == null) {
+            return DEFAULT.redirectStatus();
+        }
+        HttpStatus status = null;
+        if (value instanceof Number number) {
+            status = HttpStatus.resolve(number.intValue());
+        } else {
+            try {
+                status = HttpStatus.resolve(Integer.parseInt(value.toString().trim()));
+            } catch (NumberFormatException ignored) {
+                // Сообщение об ошибке формируется ниже
+            }
+        }
+        if (status == null) {
+            throw new IllegalArgumentException("Ошибочный код ответа для редиректа: " + value);
+        }
+        return status;
+    }
+
+    private static URI loginUrl(Object value) {
+        if (value == null) {
+            return DEFAULT.loginUrl();
+        }
+        try {
+            return new URI(value.toString().trim());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Ошибочный адрес входа: " + value);
+        }
+    }
+
+    private static String exchangeAudience(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String audience = value.toString().trim();
+        if (audience.isEmpty() || audience.contains(" ")) {
+            throw new IllegalArgumentException("Ошибочная аудитория обмена токена: " + value);
+        }
+        return audience;
+    }
+
+    private static Set<String> exchangeScopes(Object value) {
+        if (value == null) {
+            return Set.of();
+        }
+        // Список в YAML приходит как Map с индексами в ключах
+        Collection<?> items = value instanceof Map<?, ?> map ? map.values()
+                : value instanceof Collection<?> collection ? collection
+                : Arrays.asList(value.toString().split("[,\\s]+"));
+        Set<String> scopes = new LinkedHashSet<>();
+        for (Object item : items) {
+            String scope = item.toString().trim();
+            if (!scope.isEmpty()) {
+                scopes.add(scope);
+            }
+        }
+        return Set.copyOf(scopes);
+    }
+}
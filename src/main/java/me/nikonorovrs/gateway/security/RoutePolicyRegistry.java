@@ -0,0 +1,94 @@
+package me.nikonorovrs.gateway.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Политики маршрутов, скомпилированные при старте и при каждом обновлении маршрутов.
+ * <p>
+ * Ошибочные метаданные на старте останавливают приложение. При обновлении маршрутов они отклоняются
+ * с записью в лог, а маршрут сохраняет предыдущую политику, если она была.
+ */
+@Slf4j
+@Component
+public class RoutePolicyRegistry implements ApplicationListener<RefreshRoutesResultEvent>, SmartInitializingSingleton {
+
+    private final ObjectProvider<RouteLocator> routeLocator;
+
+    private volatile Map<String, RoutePolicy> policies = Map.of();
+
+    public RoutePolicyRegistry(ObjectProvider<RouteLocator> routeLocator) {
+        this.routeLocator = routeLocator;
+    }
+
+    /**
+     * Политика маршрута текущего запроса или {@link RoutePolicy#DEFAULT}, если маршрут еще не определен.
+     */
+    public RoutePolicy policyOf(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return RoutePolicy.DEFAULT;
+        }
+        return policies.getOrDefault(route.getId(), RoutePolicy.DEFAULT);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        RouteLocator locator = routeLocator.getIfAvailable();
+        if (locator == null) {
+            return;
+        }
+        List<String> errors = update(locator.getRoutes().collectList().block());
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Ошибочные метаданные маршрутов: " + String.join("; ", errors));
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesResultEvent event) {
+        if (!event.isSuccess() || !(event.getSource() instanceof RouteLocator locator)) {
+            return;
+        }
+        locator.getRoutes().collectList().subscribe(routes -> {
+            List<String> errors = update(routes);
+            if (!errors.isEmpty()) {
+                log.error("Метаданные маршрутов отклонены при обновлении, используются прежние политики: {}",
+                        String.join("; ", errors));
+            }
+        });
+    }
+
+    // Компилирует политики всех маршрутов; маршруты с ошибками сохраняют прежнюю политику
+    private List<String> update(List<Route> routes) {
+        Map<String, RoutePolicy> previous = policies;
+        Map<String, RoutePolicy> compiled = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        for (Route route : routes) {
+            try {
+                compiled.put(route.getId(), RoutePolicy.compile(route));
+            } catch (IllegalArgumentException e) {
+                errors.add("маршрут " + route.getId() + ": " + e.getMessage());
+                RoutePolicy previousPolicy = previous.get(route.getId());
+                if (previousPolicy != null) {
+                    compiled.put(route.getId(), previousPolicy);
+                }
+            }
+        }
+        policies = Map.copyOf(compiled);
+        return errors;
+    }
+}
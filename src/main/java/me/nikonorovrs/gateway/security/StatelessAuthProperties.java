@@ -0,0 +1,98 @@
+package me.nikonorovrs.gateway.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Аутентификация API-запросов по подписанному токену шлюза без загрузки WebSession.
+ * <p>
+ * Токен выдается после обычной аутентификации по сессии и проверяется локально по ключам,
+ * которые узлы шлюза разделяют через Redis. Срок токена должен быть меньше времени простоя сессии:
+ * сессия продлевается только при выдаче нового токена.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.stateless-auth")
+public class StatelessAuthProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Пути, на которых действительный токен заменяет сессию, шаблоны {@link org.springframework.web.util.pattern.PathPattern}.
+     * На остальных путях токен только выдается и обновляется.
+     */
+    private List<String> paths = new ArrayList<>(List.of("/api/**"));
+
+    private String issuer = "api-gateway";
+
+    private Duration tokenLifetime = Duration.ofMinutes(5);
+
+    /**
+     * Допустимое расхождение часов узлов при проверке срока токена.
+     */
+    private Duration clockSkew = Duration.ofSeconds(30);
+
+    /**
+     * Принимать токен также из заголовка {@code Authorization: Bearer} для клиентов, которые передают его сами.
+     */
+    private boolean acceptBearer = false;
+
+    private final Cookie cookie = new Cookie();
+
+    private final Keys keys = new Keys();
+
+    private final Revocation revocation = new Revocation();
+
+    @Getter
+    @Setter
+    public static class Cookie {
+
+        private String name = "GATEWAY_AUTH";
+
+        private boolean secure = false;
+
+        private String sameSite = "Lax";
+    }
+
+    @Getter
+    @Setter
+    public static class Keys {
+
+        /**
+         * Хеш Redis с ключами подписи в формате JWK, поле - идентификатор ключа.
+         */
+        private String redisKey = "gateway-auth-jwks";
+
+        /**
+         * Как часто выпускается новый ключ подписи.
+         */
+        private Duration rotationInterval = Duration.ofHours(12);
+
+        /**
+         * Период перечитывания ключей из Redis; новый ключ начинает подписывать токены не раньше,
+         * чем его успеют прочитать остальные узлы.
+         */
+        private Duration refreshInterval = Duration.ofMinutes(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Revocation {
+
+        /**
+         * Префикс ключей Redis с моментом отзыва токенов пользователя; ключ живет срок токена с допуском часов.
+         */
+        private String keyPrefix = "gateway-auth-revoked:";
+
+        /**
+         * Сколько узел помнит ответ Redis об отзыве токенов пользователя: токен, отозванный на другом узле,
+         * принимается не дольше этого интервала.
+         */
+        private Duration checkInterval = Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,183 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.web.server.context.ServerSecurityContextRepository;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Контекст безопасности из токена шлюза с откатом на WebSession.
+ * <p>
+ * На путях {@link StatelessAuthProperties#getPaths()} действительный токен из cookie (или заголовка Bearer)
+ * восстанавливает аутентификацию без загрузки сессии. Без токена, с истекшим, чужим или отозванным токеном,
+ * а также на остальных путях контекст загружается из сессии, и браузер получает новый токен,
+ * если прежнего нет, он выдан другому пользователю, отозван или прожил больше половины срока.
+ * Сохранение пустого контекста при выходе удаляет cookie и отзывает токены пользователя, предъявившего токен.
+ */
+@Slf4j
+public class StatelessSecurityContextRepository implements ServerSecurityContextRepository {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final ServerSecurityContextRepository delegate;
+    private final GatewayTokenService tokenService;
+    private final StatelessAuthProperties properties;
+    private final List<PathPattern> paths;
+
+    private final Counter tokenLoads;
+    private final Counter sessionLoads;
+
+    public StatelessSecurityContextRepository(ServerSecurityContextRepository delegate,
+                                              GatewayTokenService tokenService,
+                                              StatelessAuthProperties properties,
+                                              MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.tokenService = tokenService;
+        this.properties = properties;
+        this.paths = properties.getPaths().stream()
+                .map(PathPatternParser.defaultInstance::parse)
+                .toList();
+        this.tokenLoads = loadCounter(meterRegistry, "token");
+        this.sessionLoads = loadCounter(meterRegistry, "session");
+    }
+
+    @Override
+    public Mono<SecurityContext> load(ServerWebExchange exchange) {
+        return Mono.defer(() -> {
+            String token = token(exchange.getRequest());
+            GatewayTokenService.VerifiedToken verified = token != null ? tokenService.verify(token) : null;
+            if (verified != null && statelessPath(exchange.getRequest())) {
+                return tokenService.isRevoked(verified)
+                        .flatMap(revoked -> {
+                            if (revoked) {
+                                return loadSession(exchange, null);
+                            }
+                            tokenLoads.increment();
+                            return Mono.just(new SecurityContextImpl(verified.authentication()));
+                        });
+            }
+            return loadSession(exchange, verified);
+        });
+    }
+
+    private Mono<SecurityContext> loadSession(ServerWebExchange exchange, GatewayTokenService.VerifiedToken verified) {
+        return delegate.load(exchange)
+                .doOnNext(context -> {
+                    sessionLoads.increment();
+                    if (context.getAuthentication() instanceof OAuth2AuthenticationToken authentication
+                            && needsNewToken(authentication, verified)) {
+                        issueCookie(exchange, authentication);
+                    }
+                });
+    }
+
+    @Override
+    public Mono<Void> save(ServerWebExchange exchange, SecurityContext context) {
+        Authentication authentication = context != null ? context.getAuthentication() : null;
+        if (authentication instanceof OAuth2AuthenticationToken oauth2Authentication) {
+            issueCookie(exchange, oauth2Authentication);
+            return delegate.save(exchange, context);
+        }
+        if (authentication != null) {
+            clearToken(exchange);
+            return delegate.save(exchange, context);
+        }
+        // Выход: копия токена, сохраненная клиентом, не должна пережить сессию
+        String token = token(exchange.getRequest());
+        GatewayTokenService.VerifiedToken verified = token != null ? tokenService.verify(token) : null;
+        List<String> principals = verified != null ? List.of(verified.authentication().getName()) : List.of();
+        return revokeTokens(exchange, principals).then(delegate.save(exchange, context));
+    }
+
+    /**
+     * Удаляет cookie с токеном шлюза и отзывает все выданные токены пользователей.
+     * Ошибка отзыва не прерывает выход и только записывается в лог.
+     */
+    public Mono<Void> revokeTokens(ServerWebExchange exchange, Collection<String> principals) {
+        clearToken(exchange);
+        return tokenService.revoke(principals)
+                .onErrorResume(error -> {
+                    log.error("Не удалось отозвать токены шлюза: principals={}, error={}", principals, error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private void clearToken(ServerWebExchange exchange) {
+        if (exchange.getRequest().getCookies().containsKey(properties.getCookie().getName())) {
+            exchange.getResponse().addCookie(cookie("", Duration.ZERO));
+        }
+    }
+
+    private boolean needsNewToken(OAuth2AuthenticationToken authentication, GatewayTokenService.VerifiedToken verified) {
+        if (verified == null || !verified.authentication().getName().equals(authentication.getName())) {
+            return true;
+        }
+        Duration remaining = Duration.between(Instant.now(), verified.expiresAt());
+        return remaining.compareTo(tokenService.lifetime().dividedBy(2)) < 0;
+    }
+
+    private void issueCookie(ServerWebExchange exchange, OAuth2AuthenticationToken authentication) {
+        String token = tokenService.issue(authentication);
+        if (token != null) {
+            exchange.getResponse().addCookie(cookie(token, tokenService.lifetime()));
+        }
+    }
+
+    private ResponseCookie cookie(String value, Duration maxAge) {
+        StatelessAuthProperties.Cookie cookie = properties.getCookie();
+        return ResponseCookie.from(cookie.getName(), value)
+                .path("/")
+                .httpOnly(true)
+                .secure(cookie.isSecure())
+                .sameSite(cookie.getSameSite())
+                .maxAge(maxAge)
+                .build();
+    }
+
+    private String token(ServerHttpRequest request) {
+        HttpCookie cookie = request.getCookies().getFirst(properties.getCookie().getName());
+        if (cookie != null && !cookie.getValue().isEmpty()) {
+            return cookie.getValue();
+        }
+        if (properties.isAcceptBearer()) {
+            String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            if (authorization != null && authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+                return authorization.substring(BEARER_PREFIX.length()).trim();
+            }
+        }
+        return null;
+    }
+
+    private boolean statelessPath(ServerHttpRequest request) {
+        for (PathPattern pattern : paths) {
+            if (pattern.matches(request.getPath().pathWithinApplication())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Counter loadCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("gateway.auth.context.loads")
+                .description("Загрузки контекста безопасности по источнику")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+}
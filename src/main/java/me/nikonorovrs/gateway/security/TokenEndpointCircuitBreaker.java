@@ -0,0 +1,140 @@
+package me.nikonorovrs.gateway.security;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Размыкатель цепи для точки выдачи токенов.
+ * <p>
+ * Доля ошибок считается по окну последних {@code slidingWindowSize} обращений. Разомкнутая цепь
+ * отклоняет обращения {@code openDuration}, затем пропускает {@code halfOpenCalls} пробных:
+ * все успешные замыкают цепь, любая ошибка снова ее размыкает.
+ */
+@Slf4j
+final class TokenEndpointCircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    // Кольцевое окно результатов: true - ошибка
+    private final boolean[] window;
+    private int windowPosition;
+    private int windowCalls;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    TokenEndpointCircuitBreaker(TokenEndpointProperties.Breaker properties) {
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.window = new boolean[Math.max(1, properties.getSlidingWindowSize())];
+        this.minimumCalls = Math.min(window.length, Math.max(1, properties.getMinimumCalls()));
+        this.openDurationNanos = properties.getOpenDuration().toNanos();
+        this.halfOpenCalls = Math.max(1, properties.getHalfOpenCalls());
+    }
+
+    /**
+     * Проверяет, можно ли обратиться к Keycloak, и занимает пробный слот в полуоткрытом состоянии.
+     */
+    synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenPermits++;
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает разрешение, которое не было использовано.
+     */
+    synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * Проверка без занятия слота: разомкнутая цепь, срок которой еще не вышел, обращений не пропустит.
+     */
+    synchronized boolean isCallPermitted() {
+        return state != State.OPEN || System.nanoTime() - openedAt >= openDurationNanos;
+    }
+
+    synchronized void onSuccess() {
+        switch (state) {
+            case CLOSED -> record(false);
+            case HALF_OPEN -> {
+                if (++halfOpenSuccesses >= halfOpenCalls) {
+                    transitionTo(State.CLOSED);
+                }
+            }
+            case OPEN -> {
+                // Ответ на обращение, начатое до размыкания, не влияет на состояние
+            }
+        }
+    }
+
+    synchronized void onFailure() {
+        switch (state) {
+            case CLOSED -> {
+                record(true);
+                if (windowCalls >= minimumCalls && windowFailures >= failureRateThreshold * windowCalls) {
+                    transitionTo(State.OPEN);
+                }
+            }
+            case HALF_OPEN -> transitionTo(State.OPEN);
+            case OPEN -> {
+            }
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCalls == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowPosition] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void transitionTo(State next) {
+        log.warn("Размыкатель точки выдачи токенов: {} -> {}, ошибок в окне {}/{}",
+                state, next, windowFailures, windowCalls);
+        state = next;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (next == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (next == State.CLOSED) {
+            windowPosition = 0;
+            windowCalls = 0;
+            windowFailures = 0;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package me.nikonorovrs.gateway.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки обращений к точке выдачи токенов Keycloak при обновлении refresh-токеном:
+ * отдельный пул соединений, адаптивный лимит параллельных запросов и размыкатель цепи.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.token-endpoint")
+public class TokenEndpointProperties {
+
+    private final Pool pool = new Pool();
+
+    private final Limiter limiter = new Limiter();
+
+    private final Breaker breaker = new Breaker();
+
+    @Getter
+    @Setter
+    public static class Pool {
+
+        private int maxConnections = 32;
+
+        /**
+         * Сколько запросов может ждать свободного соединения, остальные завершаются ошибкой сразу.
+         */
+        private int pendingAcquireMaxCount = 64;
+
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(1);
+
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        private Duration connectTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Ожидание ответа Keycloak; должно быть заметно меньше аренды блокировки обновления.
+         */
+        private Duration responseTimeout = Duration.ofSeconds(3);
+    }
+
+    /**
+     * Лимит параллельных обновлений по схеме AIMD: растет на единицу при быстрых ответах
+     * и умножается на {@code backoffRatio} при медленных ответах и ошибках.
+     */
+    @Getter
+    @Setter
+    public static class Limiter {
+
+        private int initialLimit = 10;
+
+        private int minLimit = 1;
+
+        private int maxLimit = 32;
+
+        /**
+         * Ответ дольше этого времени считается признаком перегрузки Keycloak.
+         */
+        private Duration latencyThreshold = Duration.ofMillis(500);
+
+        private double backoffRatio = 0.7;
+    }
+
+    @Getter
+    @Setter
+    public static class Breaker {
+
+        /**
+         * Доля неудачных обращений в окне, при которой цепь размыкается.
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * Размер окна последних обращений.
+         */
+        private int slidingWindowSize = 20;
+
+        /**
+         * Минимальное число обращений в окне для оценки доли ошибок.
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * Сколько цепь остается разомкнутой до пробных обращений.
+         */
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        /**
+         * Число пробных обращений в полуоткрытом состоянии.
+         */
+        private int halfOpenCalls = 3;
+    }
+}
@@ -0,0 +1,22 @@
+package me.nikonorovrs.gateway.security;
+
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+
+/**
+ * Точка выдачи токенов недоступна: цепь разомкнута, лимит параллельных обращений исчерпан
+ * или Keycloak не ответил. В отличие от ошибок протокола (invalid_grant и т.п.) не говорит
+ * о том, что refresh-токен недействителен.
+ */
+public class TokenEndpointUnavailableException extends OAuth2AuthorizationException {
+
+    public static final String ERROR_CODE = "token_endpoint_unavailable";
+
+    public TokenEndpointUnavailableException(String message) {
+        super(new OAuth2Error(ERROR_CODE, message, null), message);
+    }
+
+    public TokenEndpointUnavailableException(String message, Throwable cause) {
+        super(new OAuth2Error(ERROR_CODE, message, null), message, cause);
+    }
+}
@@ -0,0 +1,78 @@
+package me.nikonorovrs.gateway.security;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Передает в upstream токен, полученный обменом токена пользователя на аудиторию маршрута.
+ * <p>
+ * Аудитория и scope берутся из метаданных маршрута {@code token-exchange-audience} и {@code token-exchange-scope}.
+ * Без них фильтр работает как {@code TokenRelay} и передает токен пользователя.
+ * <pre>
+ * - id: orders
+ *   uri: https://orders.internal
+ *   metadata:
+ *     token-exchange-audience: orders-service
+ *     token-exchange-scope: orders.read
+ *   filters:
+ *     - TokenExchange
+ * </pre>
+ */
+@Component
+public class TokenExchangeGatewayFilterFactory extends AbstractGatewayFilterFactory<TokenExchangeGatewayFilterFactory.Config> {
+
+    private final ReactiveOAuth2AuthorizedClientManager authorizedClientManager;
+    private final TokenExchangeService tokenExchangeService;
+    private final RoutePolicyRegistry routePolicyRegistry;
+
+    public TokenExchangeGatewayFilterFactory(ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
+                                             TokenExchangeService tokenExchangeService,
+                                             RoutePolicyRegistry routePolicyRegistry) {
+        super(Config.class);
+        this.authorizedClientManager = authorizedClientManager;
+        this.tokenExchangeService = tokenExchangeService;
+        this.routePolicyRegistry = routePolicyRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> exchange.getPrincipal()
+                .filter(OAuth2AuthenticationToken.class::isInstance)
+                .cast(OAuth2AuthenticationToken.class)
+                .flatMap(authentication -> authorizedClientManager.authorize(OAuth2AuthorizeRequest
+                                .withClientRegistrationId(authentication.getAuthorizedClientRegistrationId())
+                                .principal(authentication)
+                                .build())
+                        .flatMap(client -> upstreamToken(exchange, client, authentication)))
+                .map(token -> withBearerAuth(exchange, token))
+                .defaultIfEmpty(exchange)
+                .flatMap(chain::filter);
+    }
+
+    private Mono<OAuth2AccessToken> upstreamToken(ServerWebExchange exchange, OAuth2AuthorizedClient client,
+                                                  OAuth2AuthenticationToken authentication) {
+        RoutePolicy policy = routePolicyRegistry.policyOf(exchange);
+        if (policy.exchangeAudience() == null) {
+            return Mono.just(client.getAccessToken());
+        }
+        return tokenExchangeService.exchange(client, authentication, policy.exchangeAudience(), policy.exchangeScopes());
+    }
+
+    private ServerWebExchange withBearerAuth(ServerWebExchange exchange, OAuth2AccessToken accessToken) {
+        return exchange.mutate()
+                .request(request -> request.headers(headers -> headers.setBearerAuth(accessToken.getTokenValue())))
+                .build();
+    }
+
+    public static class Config {
+        // Пустая конфигурация, так как все параметры берутся из метаданных маршрута
+    }
+}
@@ -0,0 +1,41 @@
+package me.nikonorovrs.gateway.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Обмен токена пользователя на токен для конкретного upstream (RFC 8693) в фильтре {@code TokenExchange}.
+ * Аудитория и scope задаются метаданными маршрута, см. {@link RoutePolicy}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.token-exchange")
+public class TokenExchangeProperties {
+
+    /**
+     * Префикс ключей Redis, в которых узлы разделяют полученные токены.
+     */
+    private String keyPrefix = "gateway-token-exchange:";
+
+    /**
+     * За сколько до истечения токен обменивается заново.
+     */
+    private Duration refreshBuffer = Duration.ofSeconds(30);
+
+    /**
+     * Срок токена, если точка выдачи его не сообщила.
+     */
+    private Duration defaultLifetime = Duration.ofMinutes(1);
+
+    /**
+     * Сколько токенов держать в памяти узла.
+     */
+    private long maximumSize = 10_000;
+
+    private Duration lockWait = Duration.ofSeconds(5);
+
+    private Duration lockLease = Duration.ofSeconds(10);
+}
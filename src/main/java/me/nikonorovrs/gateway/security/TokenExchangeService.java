@@ -0,0 +1,292 @@
+package me.nikonorovrs.gateway.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import me.nikonorovrs.gateway.redis.RedisKeys;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.TokenExchangeGrantRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Обмен токена пользователя на токен с ограниченной аудиторией и scope (RFC 8693).
+ * <p>
+ * Полученные токены хранятся по пользователю, регистрации, аудитории и scope в памяти узла и в Redis,
+ * чтобы обмен выполнялся один раз на все узлы. Обмен повторяется за {@code refreshBuffer} до истечения
+ * токена с той же схемой, что и обновление в {@link LockingReactiveOAuth2AuthorizedClientManager}:
+ * запросы узла разделяют одно обращение, узлы - распределенную блокировку, а под блокировкой токен
+ * перечитывается из Redis на случай, если его уже получил другой узел.
+ */
+@Slf4j
+public class TokenExchangeService {
+
+    private static final String AUDIENCE_PARAMETER = "audience";
+
+    private static final String OUTCOME_LOCAL = "local";
+    private static final String OUTCOME_REDIS = "redis";
+    private static final String OUTCOME_EXCHANGED = "exchanged";
+    private static final String OUTCOME_FAILED = "failed";
+
+    private final ReactiveOAuth2AccessTokenResponseClient<TokenExchangeGrantRequest> tokenResponseClient;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RefreshLock refreshLock;
+    private final TokenExchangeProperties properties;
+    private final boolean hashTags;
+
+    private final Cache<String, ExchangedToken> localTokens;
+    // Обмены, выполняемые на этом узле, по ключу токена
+    private final Map<String, Mono<ExchangedToken>> inFlightExchanges = new ConcurrentHashMap<>();
+    // Регистрации клиента с типом гранта token-exchange и запрошенными scope
+    private final Map<String, ClientRegistration> exchangeRegistrations = new ConcurrentHashMap<>();
+
+    private final Counter localCounter;
+    private final Counter redisCounter;
+    private final Counter exchangedCounter;
+    private final Counter failedCounter;
+
+    public TokenExchangeService(ReactiveOAuth2AccessTokenResponseClient<TokenExchangeGrantRequest> tokenResponseClient,
+                                ReactiveStringRedisTemplate redisTemplate,
+                                RefreshLock refreshLock,
+                                TokenExchangeProperties properties,
+                                boolean hashTags,
+                                MeterRegistry meterRegistry) {
+        this.tokenResponseClient = tokenResponseClient;
+        this.redisTemplate = redisTemplate;
+        this.refreshLock = refreshLock;
+        this.properties = properties;
+        this.hashTags = hashTags;
+        this.localTokens = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<String, ExchangedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, ExchangedToken token, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), token.refreshAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, ExchangedToken token, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, token, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, ExchangedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.localCounter = exchangeCounter(meterRegistry, OUTCOME_LOCAL);
+        this.redisCounter = exchangeCounter(meterRegistry, OUTCOME_REDIS);
+        this.exchangedCounter = exchangeCounter(meterRegistry, OUTCOME_EXCHANGED);
+        this.failedCounter = exchangeCounter(meterRegistry, OUTCOME_FAILED);
+    }
+
+    /**
+     * Токен для аудитории, полученный обменом токена доступа пользователя.
+     *
+     * @param subject  авторизованный клиент пользователя с действующим токеном доступа
+     * @param audience аудитория токена
+     * @param scopes   запрашиваемые scope; пусто - scope не передается, и точка выдачи выбирает их сама
+     */
+    public Mono<OAuth2AccessToken> exchange(OAuth2AuthorizedClient subject, Authentication principal,
+                                            String audience, Set<String> scopes) {
+        String key = tokenKey(subject, principal, audience, scopes);
+        ExchangedToken local = localTokens.getIfPresent(key);
+        if (local != null && local.isFresh()) {
+            localCounter.increment();
+            return Mono.just(local.accessToken());
+        }
+        return Mono.defer(() -> inFlightExchanges.computeIfAbsent(key, k -> readShared(k)
+                        .filter(ExchangedToken::isFresh)
+                        .doOnNext(token -> redisCounter.increment())
+                        .switchIfEmpty(Mono.defer(() -> lockedExchange(k, subject, audience, scopes)))
+                        .doOnNext(token -> localTokens.put(k, token))
+                        // Запись удаляется до передачи результата подписчикам, как в менеджере авторизованных клиентов
+                        .doOnSuccess(token -> inFlightExchanges.remove(k))
+                        .doOnError(error -> inFlightExchanges.remove(k))
+                        .cache()))
+                .map(ExchangedToken::accessToken);
+    }
+
+    private Mono<ExchangedToken> lockedExchange(String key, OAuth2AuthorizedClient subject,
+                                                String audience, Set<String> scopes) {
+        String lockKey = key + ":lock";
+        Instant freshUntil = Instant.now().plus(properties.getRefreshBuffer());
+        Mono<RefreshLock.Lease> acquireLock = refreshLock
+                .tryAcquire(lockKey, properties.getLockWait(), properties.getLockLease(), freshUntil)
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.warn("Не удалось получить блокировку обмена токена: lockKey={}", lockKey);
+                    return Mono.error(new IllegalStateException("Не удалось получить блокировку для обмена токена"));
+                }));
+
+        return Mono.usingWhen(
+                acquireLock,
+                lease -> readShared(key)
+                        .filter(token -> token.isFresh() || !lease.isHeld())
+                        .doOnNext(token -> {
+                            log.debug("Токен уже получен другим узлом: key={}", key);
+                            redisCounter.increment();
+                        })
+                        .switchIfEmpty(Mono.defer(() -> requestToken(subject, audience, scopes)
+                                .flatMap(token -> writeShared(key, token)
+                                        .doOnSuccess(v -> lease.refreshed(token.accessToken().getExpiresAt()))
+                                        .thenReturn(token)))),
+                lease -> releaseLock(lease, lockKey),
+                (lease, error) -> releaseLock(lease, lockKey),
+                lease -> releaseLock(lease, lockKey));
+    }
+
+    private Mono<ExchangedToken> requestToken(OAuth2AuthorizedClient subject, String audience, Set<String> scopes) {
+        ClientRegistration registration = exchangeRegistration(subject.getClientRegistration(), scopes);
+        return tokenResponseClient.getTokenResponse(new AudienceGrantRequest(registration, subject.getAccessToken(), audience))
+                .map(response -> {
+                    OAuth2AccessToken accessToken = response.getAccessToken();
+                    log.debug("Токен получен обменом: principal={}, audience={}, expires={}",
+                            subject.getPrincipalName(), audience, accessToken.getExpiresAt());
+                    exchangedCounter.increment();
+                    return token(accessToken);
+                })
+                .doOnError(error -> {
+                    log.error("Ошибка обмена токена: principal={}, audience={}, error={}",
+                            subject.getPrincipalName(), audience, error.getMessage());
+                    failedCounter.increment();
+                });
+    }
+
+    private ClientRegistration exchangeRegistration(ClientRegistration registration, Set<String> scopes) {
+        Set<String> sortedScopes = new TreeSet<>(scopes);
+        return exchangeRegistrations.computeIfAbsent(registration.getRegistrationId() + " " + String.join(" ", sortedScopes),
+                // Регистрация собирается заново: копия сохранила бы scope входа, а пустой набор scope построитель игнорирует
+                key -> ClientRegistration.withRegistrationId(registration.getRegistrationId())
+                        .clientId(registration.getClientId())
+                        .clientSecret(registration.getClientSecret())
+                        .clientAuthenticationMethod(registration.getClientAuthenticationMethod())
+                        .authorizationGrantType(AuthorizationGrantType.TOKEN_EXCHANGE)
+                        .tokenUri(registration.getProviderDetails().getTokenUri())
+                        .scope(sortedScopes)
+                        .build());
+    }
+
+    // Значение в Redis - срок действия в миллисекундах и сам токен через перевод строки. Нечитаемое значение
+    // и токен, истекший по часам этого узла (ключ еще жив из-за расхождения часов узлов), считаются отсутствующими
+    private Mono<ExchangedToken> readShared(String key) {
+        return redisTemplate.opsForValue().get(key)
+                .mapNotNull(value -> {
+                    int separator = value.indexOf('\n');
+                    if (separator < 0) {
+                        log.warn("Пропущен нечитаемый токен обмена в Redis: key={}", key);
+                        return null;
+                    }
+                    Instant expiresAt;
+                    try {
+                        expiresAt = Instant.ofEpochMilli(Long.parseLong(value.substring(0, separator)));
+                    } catch (NumberFormatException e) {
+                        log.warn("Пропущен нечитаемый токен обмена в Redis: key={}", key);
+                        return null;
+                    }
+                    Instant now = Instant.now();
+                    if (!expiresAt.isAfter(now)) {
+                        return null;
+                    }
+                    String tokenValue = value.substring(separator + 1);
+                    return token(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, tokenValue, now, expiresAt));
+                });
+    }
+
+    private Mono<Void> writeShared(String key, ExchangedToken token) {
+        Instant expiresAt = token.accessToken().getExpiresAt();
+        Duration ttl = Duration.between(Instant.now(), expiresAt);
+        if (ttl.isNegative() || ttl.isZero()) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue()
+                .set(key, expiresAt.toEpochMilli() + "\n" + token.accessToken().getTokenValue(), ttl)
+                .then();
+    }
+
+    private ExchangedToken token(OAuth2AccessToken accessToken) {
+        Instant expiresAt = accessToken.getExpiresAt();
+        if (expiresAt == null) {
+            expiresAt = Instant.now().plus(properties.getDefaultLifetime());
+            accessToken = new OAuth2AccessToken(accessToken.getTokenType(), accessToken.getTokenValue(),
+                    accessToken.getIssuedAt(), expiresAt, accessToken.getScopes());
+        }
+        return new ExchangedToken(accessToken, expiresAt.minus(properties.getRefreshBuffer()));
+    }
+
+    private String tokenKey(OAuth2AuthorizedClient subject, Authentication principal, String audience, Set<String> scopes) {
+        return properties.getKeyPrefix()
+                + RedisKeys.principalPart(principal.getName(), hashTags) + ":"
+                + subject.getClientRegistration().getRegistrationId() + ":"
+                + audience
+                + (scopes.isEmpty() ? "" : ":" + String.join(" ", new TreeSet<>(scopes)));
+    }
+
+    private Mono<Void> releaseLock(RefreshLock.Lease lease, String lockKey) {
+        return lease.release()
+                .doOnError(error -> log.error("Ошибка при освобождении блокировки: lockKey={}", lockKey, error))
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /**
+     * Добавляет к параметрам запроса обмена аудиторию; подключается к клиенту точки выдачи токенов.
+     */
+    public static Converter<TokenExchangeGrantRequest, MultiValueMap<String, String>> audienceParametersConverter() {
+        return request -> {
+            MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+            if (request instanceof AudienceGrantRequest audienceRequest) {
+                parameters.set(AUDIENCE_PARAMETER, audienceRequest.getAudience());
+            }
+            return parameters;
+        };
+    }
+
+    private static Counter exchangeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gateway.token.exchange")
+                .description("Токены для upstream по источнику: память узла, Redis или новый обмен")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record ExchangedToken(OAuth2AccessToken accessToken, Instant refreshAt) {
+
+        boolean isFresh() {
+            return Instant.now().isBefore(refreshAt);
+        }
+    }
+
+    /**
+     * Запрос обмена с параметром {@code audience}, который добавляется к стандартным параметрам.
+     */
+    static final class AudienceGrantRequest extends TokenExchangeGrantRequest {
+
+        private final String audience;
+
+        AudienceGrantRequest(ClientRegistration registration, OAuth2AccessToken subjectToken, String audience) {
+            super(registration, subjectToken, null);
+            this.audience = audience;
+        }
+
+        String getAudience() {
+            return audience;
+        }
+    }
+}
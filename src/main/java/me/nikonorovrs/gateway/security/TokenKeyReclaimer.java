@@ -0,0 +1,249 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import io.lettuce.core.cluster.SlotHash;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновая очистка ключей токенов, сохраненных без TTL.
+ * <p>
+ * Нужна один раз после перехода на запись токенов с TTL, поэтому по умолчанию выключена.
+ * Постепенно сканирует пространство ключей токенов пачками по {@code batchSize} с паузой между пачками.
+ * Ключам без TTL назначается срок по {@link AuthorizedClientTtlPolicy}, а ключи с уже ненужными токенами удаляются.
+ * На пачку выполняются два скрипта: первый возвращает значения только ключей без TTL, второй повторно проверяет
+ * отсутствие TTL и меняет ключи, чтобы не перезаписать TTL токена, сохраненного заново между ними.
+ */
+@Slf4j
+public class TokenKeyReclaimer {
+
+    private static final String ACTION_EXPIRE = "expire";
+    private static final String ACTION_DELETE = "delete";
+
+    // Значения ключей без TTL; для ключей с TTL и не строковых значений - пустая строка
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<Object> COLLECT_SCRIPT = RedisScript.of("""
+            local values = {}
+            for i = 1, #KEYS do
+                local value = ''
+                if redis.call('pttl', KEYS[i]) == -1 then
+                    local stored = redis.pcall('get', KEYS[i])
+                    if type(stored) == 'string' then
+                        value = stored
+                    end
+                end
+                values[i] = value
+            end
+            return values
+            """, (Class<Object>) (Class<?>) List.class);
+
+    // TTL проверяется повторно: ключ, сохраненный заново после чтения, сохраняет свой TTL
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<Object> RECLAIM_SCRIPT = RedisScript.of("""
+            local changed = {}
+            for i = 1, #KEYS do
+                local result = 0
+                if redis.call('pttl', KEYS[i]) == -1 then
+                    if ARGV[i] == '0' then
+                        result = redis.call('unlink', KEYS[i])
+                    else
+                        result = redis.call('pexpire', KEYS[i], ARGV[i])
+                    end
+                end
+                changed[i] = result
+            end
+            return changed
+            """, (Class<Object>) (Class<?>) List.class);
+
+    private static final RedisElementWriter<Object> ARGS_WRITER =
+            value -> ByteBuffer.wrap(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+    private static final RedisElementReader<Object> RAW_READER = buffer -> {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    };
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RedisSerializer<Object> valueSerializer;
+    private final AuthorizedClientTtlPolicy ttlPolicy;
+    private final String keyPattern;
+    private final int batchSize;
+    private final Duration pause;
+    private final Duration passInterval;
+    private final boolean clusterAware;
+
+    private final Counter expiredKeys;
+    private final Counter expiredBytes;
+    private final Counter deletedKeys;
+    private final Counter deletedBytes;
+
+    private Disposable task;
+
+    public TokenKeyReclaimer(ReactiveStringRedisTemplate redisTemplate,
+                             RedisSerializer<Object> valueSerializer,
+                             AuthorizedClientTtlPolicy ttlPolicy,
+                             String keyPrefix,
+                             int batchSize,
+                             Duration pause,
+                             Duration passInterval,
+                             boolean clusterAware,
+                             MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.valueSerializer = valueSerializer;
+        this.ttlPolicy = ttlPolicy;
+        this.keyPattern = keyPrefix + "*";
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.passInterval = passInterval;
+        this.clusterAware = clusterAware;
+        this.expiredKeys = meterRegistry.counter("gateway.token.reclaimer.keys", "action", ACTION_EXPIRE);
+        this.expiredBytes = meterRegistry.counter("gateway.token.reclaimer.bytes", "action", ACTION_EXPIRE);
+        this.deletedKeys = meterRegistry.counter("gateway.token.reclaimer.keys", "action", ACTION_DELETE);
+        this.deletedBytes = meterRegistry.counter("gateway.token.reclaimer.bytes", "action", ACTION_DELETE);
+    }
+
+    @PostConstruct
+    public void start() {
+        task = Mono.delay(pause)
+                .then(Mono.defer(this::reclaimPass)
+                        .onErrorResume(error -> {
+                            log.error("Ошибка очистки ключей токенов: {}", error.getMessage(), error);
+                            return Mono.empty();
+                        })
+                        .repeatWhen(passes -> passes.concatMap(pass -> Mono.delay(passInterval)))
+                        .then())
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
+    Mono<Void> reclaimPass() {
+        PassStats stats = new PassStats();
+        ScanOptions options = ScanOptions.scanOptions().match(keyPattern).count(batchSize).build();
+        return redisTemplate.scan(options)
+                .buffer(batchSize)
+                .concatMap(keys -> reclaimBatch(keys, stats).then(Mono.delay(pause)), 1)
+                .then(Mono.fromRunnable(() -> {
+                    if (stats.expired.get() > 0 || stats.deleted.get() > 0) {
+                        log.info("Очистка ключей токенов завершена: scanned={}, expired={}, deleted={}, bytes={}",
+                                stats.scanned.get(), stats.expired.get(), stats.deleted.get(), stats.bytes.get());
+                    }
+                }));
+    }
+
+    private Mono<Void> reclaimBatch(List<String> keys, PassStats stats) {
+        stats.scanned.addAndGet(keys.size());
+        // Скрипты работают со всеми ключами пачки, в кластере они должны быть в одном слоте
+        Collection<List<String>> groups = clusterAware ? groupBySlot(keys) : List.of(keys);
+        return Flux.fromIterable(groups)
+                .concatMap(group -> redisTemplate.execute(COLLECT_SCRIPT, group, List.of(), ARGS_WRITER, RAW_READER)
+                        .flatMapIterable(TokenKeyReclaimer::elements)
+                        .collectList()
+                        .flatMap(values -> reclaimKeys(group, values, stats)))
+                .then();
+    }
+
+    private Mono<Void> reclaimKeys(List<String> keys, List<Object> values, PassStats stats) {
+        List<String> reclaimKeys = new ArrayList<>();
+        List<Object> ttls = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < keys.size() && i < values.size(); i++) {
+            if (values.get(i) instanceof byte[] value && value.length > 0) {
+                reclaimKeys.add(keys.get(i));
+                ttls.add(ttl(keys.get(i), value).toMillis());
+                sizes.add(value.length);
+            }
+        }
+        if (reclaimKeys.isEmpty()) {
+            return Mono.empty();
+        }
+        return redisTemplate.execute(RECLAIM_SCRIPT, reclaimKeys, ttls, ARGS_WRITER, RAW_READER)
+                .flatMapIterable(TokenKeyReclaimer::elements)
+                .collectList()
+                .doOnNext(changed -> {
+                    for (int i = 0; i < changed.size(); i++) {
+                        if (changed.get(i) instanceof Long result && result > 0) {
+                            reclaimed(sizes.get(i), (Long) ttls.get(i) == 0, stats);
+                        }
+                    }
+                })
+                .then();
+    }
+
+    private void reclaimed(int bytes, boolean delete, PassStats stats) {
+        stats.bytes.addAndGet(bytes);
+        if (delete) {
+            stats.deleted.incrementAndGet();
+            deletedKeys.increment();
+            deletedBytes.increment(bytes);
+        } else {
+            stats.expired.incrementAndGet();
+            expiredKeys.increment();
+            expiredBytes.increment(bytes);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> elements(Object result) {
+        return result instanceof List<?> list ? (List<Object>) list : List.of(result);
+    }
+
+    private static Collection<List<String>> groupBySlot(List<String> keys) {
+        Map<Integer, List<String>> bySlot = new HashMap<>();
+        for (String key : keys) {
+            bySlot.computeIfAbsent(SlotHash.getSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        return bySlot.values();
+    }
+
+    // Нулевой TTL означает, что запись больше не нужна и удаляется сразу
+    private Duration ttl(String key, byte[] value) {
+        try {
+            if (valueSerializer.deserialize(value) instanceof OAuth2AuthorizedClient client) {
+                Duration ttl = Duration.between(Instant.now(), ttlPolicy.evictAt(client));
+                return ttl.isNegative() ? Duration.ZERO : ttl.plusMillis(1);
+            }
+        } catch (SerializationException e) {
+            log.debug("Не удалось прочитать запись токена, используется TTL по умолчанию: key={}, error={}",
+                    key, e.getMessage());
+        }
+        return ttlPolicy.fallbackTtl();
+    }
+
+    private static final class PassStats {
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+    }
+}
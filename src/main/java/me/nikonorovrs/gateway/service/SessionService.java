@@ -1,6 +1,7 @@
 package me.nikonorovrs.gateway.service;
 
 import lombok.extern.slf4j.Slf4j;
+import me.nikonorovrs.gateway.security.BatchReactiveOAuth2AuthorizedClientService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -10,6 +11,8 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.WebSession;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 import static org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames.ACCESS_TOKEN;
 
 @Service
@@ -17,37 +20,63 @@ import static org.springframework.security.oauth2.core.endpoint.OAuth2ParameterN
 public class SessionService {
 
     private final WebClient webClient;
+    private final BatchReactiveOAuth2AuthorizedClientService authorizedClientService;
     private final String keycloakLogoutUrl;
     private final String backendUrl;
     private final String gatewayUrl;
 
     public SessionService(WebClient webClient,
+                          BatchReactiveOAuth2AuthorizedClientService authorizedClientService,
                           @Value("${spring.security.oauth2.client.provider.keycloak.issuer-uri}") String keycloakLogoutUrl,
                           @Value("${app.backend.url}") String backendUrl,
                           @Value("${app.frontend.url}") String gatewayUrl) {
         this.webClient = webClient;
+        this.authorizedClientService = authorizedClientService;
         this.keycloakLogoutUrl = keycloakLogoutUrl;
         this.backendUrl = backendUrl;
         this.gatewayUrl = gatewayUrl;
     }
 
     /**
-     * Performs logout by invalidating the session and calling the backend logout endpoint.
+     * Performs logout by invalidating the session, calling the backend logout endpoint
+     * and revoking the stored tokens of every client registration of the principals.
      *
      * @param session      the web session
      * @param fflSessionId the FFL session ID
+     * @param principals   names of the principals whose tokens are revoked
      * @return a Mono that emits the response entity
      */
-    public Mono<ResponseEntity<Object>> performLogout(final WebSession session, final String fflSessionId) {
+    public Mono<ResponseEntity<Object>> performLogout(final WebSession session, final String fflSessionId,
+                                                      final Collection<String> principals) {
         String accessToken = session.getAttribute(ACCESS_TOKEN);
         return callBackendLogout(accessToken, fflSessionId)
                 .then(session.invalidate())
+                .then(revokeTokens(principals))
                 .thenReturn(ResponseEntity
                         .status(HttpStatus.UNAUTHORIZED)
                         .header("Location", keycloakLogoutUrl + "/protocol/openid-connect/logout?redirect_uri=" + gatewayUrl)
                         .build());
     }
 
+    /**
+     * Removes the stored tokens of all client registrations of the principals with one batch call.
+     *
+     * @param principals names of the principals
+     * @return a Mono that completes when the tokens are removed; errors are logged and ignored
+     */
+    public Mono<Void> revokeTokens(final Collection<String> principals) {
+        if (principals.isEmpty()) {
+            return Mono.empty();
+        }
+        return authorizedClientService.removeAuthorizedClients(principals)
+                .doOnNext(removed -> log.debug("Revoked tokens on logout: principals={}, removed={}", principals, removed))
+                .onErrorResume(e -> {
+                    log.error("Error revoking tokens on logout: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
     /**
      * Calls the backend logout endpoint to invalidate the session.
      *
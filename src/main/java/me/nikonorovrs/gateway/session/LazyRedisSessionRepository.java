@@ -0,0 +1,556 @@
+package me.nikonorovrs.gateway.session;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import io.lettuce.core.cluster.SlotHash;
+import lombok.extern.slf4j.Slf4j;
+import me.nikonorovrs.gateway.redis.RedisReplicaReads;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.session.MapSession;
+import org.springframework.session.ReactiveSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.SessionIdGenerator;
+import org.springframework.session.UuidSessionIdGenerator;
+import org.springframework.session.data.redis.RedisSessionMapper;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Репозиторий сессий в Redis с выборочной загрузкой и отложенным продлением.
+ * <p>
+ * Формат хранения совпадает с {@code ReactiveRedisSessionRepository}, поэтому режимы можно переключать
+ * без потери сессий. Отличия:
+ * <ul>
+ *     <li>загрузка - один Lua-скрипт, который возвращает служебные поля и заданные атрибуты
+ *     (по умолчанию только контекст безопасности) и отдает весь хеш, только если в сессии есть другие атрибуты;</li>
+ *     <li>сессия, у которой изменилось только время последнего обращения, не сохраняется - продление
+ *     ставится в очередь и периодически записывается пачками одним скриптом на пачку;</li>
+ *     <li>изменения атрибутов записываются сразу, как и в стандартном репозитории.</li>
+ * </ul>
+ * {@link Session#getAttribute(String)} синхронный, поэтому подгрузка отдельных атрибутов по обращению
+ * заблокировала бы event loop - вместо этого набор загружаемых атрибутов задается заранее.
+ * Сессии больше {@code offloadThreshold} байт десериализуются на {@code offloadScheduler}.
+ * <p>
+ * С репликами сессия читается командами HLEN/HMGET (скрипт выполнялся бы на primary) и принимается,
+ * только если в ней есть все загружаемые атрибуты; иначе, а также в течение окна после записи сессии
+ * этим узлом, чтение идет с primary. В кластере пакетное продление делится по слотам ключей.
+ */
+@Slf4j
+public class LazyRedisSessionRepository implements ReactiveSessionRepository<LazyRedisSessionRepository.LazyRedisSession> {
+
+    private static final String CREATION_TIME_KEY = "creationTime";
+    private static final String LAST_ACCESSED_TIME_KEY = "lastAccessedTime";
+    private static final String MAX_INACTIVE_INTERVAL_KEY = "maxInactiveInterval";
+    private static final String ATTRIBUTE_PREFIX = "sessionAttr:";
+    private static final String STORE = "session";
+
+    // Результат - плоский список поле/значение, элементы читаются как сырые байты
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<Object> LOAD_SCRIPT = RedisScript.of("""
+            local fields = redis.call('hlen', KEYS[1])
+            if fields == 0 then
+                return {}
+            end
+            local values = redis.call('hmget', KEYS[1], unpack(ARGV))
+            local result = {}
+            for i = 1, #ARGV do
+                if values[i] then
+                    result[#result + 1] = ARGV[i]
+                    result[#result + 1] = values[i]
+                end
+            end
+            if #result / 2 == fields then
+                return result
+            end
+            return redis.call('hgetall', KEYS[1])
+            """, (Class<Object>) (Class<?>) List.class);
+
+    private static final RedisScript<Long> TOUCH_SCRIPT = RedisScript.of("""
+            local touched = 0
+            for i = 1, #KEYS do
+                if redis.call('exists', KEYS[i]) == 1 then
+                    redis.call('hset', KEYS[i], 'lastAccessedTime', ARGV[i * 2 - 1])
+                    redis.call('pexpire', KEYS[i], ARGV[i * 2])
+                    touched = touched + 1
+                end
+            end
+            return touched
+            """, Long.class);
+
+    // Аргументы скриптов: имена полей и TTL - строки, значения полей уже сериализованы
+    private static final RedisElementWriter<Object> ARGS_WRITER = value -> value instanceof ByteBuffer buffer
+            ? buffer : ByteBuffer.wrap(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+    private static final RedisElementReader<Object> RAW_READER = buffer -> {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    };
+
+    private static final RedisElementReader<Long> COUNT_READER =
+            RedisElementReader.from(new GenericToStringSerializer<>(Long.class));
+
+    private final ReactiveRedisOperations<String, Object> sessionRedisOperations;
+    private final RedisSerializationContext.SerializationPair<Object> valueSerializer;
+    private final String keyPrefix;
+    private final List<Object> prefetchFields;
+    private final Duration touchFlushInterval;
+    private final int touchBatchSize;
+    private final Scheduler offloadScheduler;
+    private final long offloadThreshold;
+    private final ReactiveRedisOperations<String, byte[]> replicaOperations;
+    private final RedisReplicaReads replicaReads;
+    private final boolean clusterAware;
+    private final Set<String> requiredFields;
+
+    private final RedisSessionMapper sessionMapper = new RedisSessionMapper();
+    private final SessionIdGenerator sessionIdGenerator = UuidSessionIdGenerator.getInstance();
+    private final Duration defaultMaxInactiveInterval = Duration.ofSeconds(MapSession.DEFAULT_MAX_INACTIVE_INTERVAL_SECONDS);
+
+    // Отложенные продления по идентификатору сессии
+    private final Map<String, PendingTouch> pendingTouches = new ConcurrentHashMap<>();
+
+    private Disposable ticker;
+
+    public LazyRedisSessionRepository(ReactiveRedisOperations<String, Object> sessionRedisOperations,
+                                      String namespace,
+                                      Set<String> prefetchAttributes,
+                                      Duration touchFlushInterval,
+                                      int touchBatchSize) {
+        this(sessionRedisOperations, namespace, prefetchAttributes, touchFlushInterval, touchBatchSize,
+                null, Long.MAX_VALUE, null, null, false);
+    }
+
+    /**
+     * @param offloadScheduler  планировщик для десериализации больших сессий; {@code null} - всегда в потоке ответа
+     * @param offloadThreshold  суммарный размер значений, начиная с которого сессия десериализуется на планировщике
+     * @param replicaOperations операции на фабрике реплик со значениями хеша в виде байтов или {@code null}
+     * @param clusterAware      Redis работает в режиме кластера, скрипты не должны затрагивать разные слоты
+     */
+    public LazyRedisSessionRepository(ReactiveRedisOperations<String, Object> sessionRedisOperations,
+                                      String namespace,
+                                      Set<String> prefetchAttributes,
+                                      Duration touchFlushInterval,
+                                      int touchBatchSize,
+                                      Scheduler offloadScheduler,
+                                      long offloadThreshold,
+                                      ReactiveRedisOperations<String, byte[]> replicaOperations,
+                                      RedisReplicaReads replicaReads,
+                                      boolean clusterAware) {
+        Assert.isTrue(touchBatchSize > 0, "touchBatchSize must be positive");
+        this.sessionRedisOperations = sessionRedisOperations;
+        this.valueSerializer = sessionRedisOperations.getSerializationContext().getHashValueSerializationPair();
+        this.keyPrefix = namespace + ":sessions:";
+        this.touchFlushInterval = touchFlushInterval;
+        this.touchBatchSize = touchBatchSize;
+        this.offloadScheduler = offloadScheduler;
+        this.offloadThreshold = offloadThreshold;
+        this.replicaOperations = replicaOperations;
+        this.replicaReads = replicaReads;
+        this.clusterAware = clusterAware;
+        this.requiredFields = prefetchAttributes.stream().map(LazyRedisSessionRepository::getAttributeKey)
+                .collect(Collectors.toUnmodifiableSet());
+
+        Set<Object> fields = new LinkedHashSet<>(List.of(CREATION_TIME_KEY, LAST_ACCESSED_TIME_KEY, MAX_INACTIVE_INTERVAL_KEY));
+        prefetchAttributes.forEach(attribute -> fields.add(ATTRIBUTE_PREFIX + attribute));
+        this.prefetchFields = List.copyOf(fields);
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Flux.interval(touchFlushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flushTouches()
+                        .onErrorResume(error -> {
+                            log.error("Ошибка записи продлений сессий: {}", error.getMessage(), error);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+        // Накопленные продления записываются при остановке, чтобы активные сессии не истекли раньше времени
+        try {
+            flushTouches().block(touchFlushInterval);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось записать продления сессий при остановке: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Mono<LazyRedisSession> createSession() {
+        return Mono.fromSupplier(() -> {
+            MapSession cached = new MapSession(sessionIdGenerator);
+            cached.setMaxInactiveInterval(defaultMaxInactiveInterval);
+            return new LazyRedisSession(cached, true);
+        });
+    }
+
+    @Override
+    public Mono<Void> save(LazyRedisSession session) {
+        // Продление проверяет существование ключа в скрипте, отдельный запрос нужен только перед записью изменений
+        if (session.isNew || !session.hasChanges()) {
+            return session.save();
+        }
+        String sessionKey = getSessionKey(session.hasChangedSessionId() ? session.originalSessionId : session.getId());
+        return sessionRedisOperations.hasKey(sessionKey)
+                .flatMap(exists -> exists ? session.save()
+                        : Mono.error(new IllegalStateException("Session was invalidated")));
+    }
+
+    @Override
+    public Mono<LazyRedisSession> findById(String id) {
+        String sessionKey = getSessionKey(id);
+        Mono<List<Object>> primary = sessionRedisOperations
+                .execute(LOAD_SCRIPT, List.of(sessionKey), prefetchFields, ARGS_WRITER, RAW_READER)
+                .flatMapIterable(result -> result instanceof List<?> list ? list : List.of(result))
+                .collectList()
+                .filter(pairs -> !pairs.isEmpty());
+        Mono<List<Object>> load = replicaOperations == null ? primary
+                : replicaReads.read(STORE, sessionKey, loadFromReplica(sessionKey), primary, this::hasRequiredFields);
+        return load
+                .flatMap(pairs -> decode(id, pairs))
+                .flatMap(loaded -> {
+                    // Продление, еще не записанное в Redis, видно запросам этого узла
+                    PendingTouch touch = pendingTouches.get(id);
+                    if (touch != null && touch.lastAccessedTime().isAfter(loaded.getLastAccessedTime())) {
+                        loaded.setLastAccessedTime(touch.lastAccessedTime());
+                    }
+                    if (loaded.isExpired()) {
+                        return deleteById(id).then(Mono.empty());
+                    }
+                    return Mono.just(new LazyRedisSession(loaded, false));
+                });
+    }
+
+    private Mono<List<Object>> loadFromReplica(String sessionKey) {
+        ReactiveHashOperations<String, String, byte[]> hash = replicaOperations.opsForHash();
+        List<String> fields = prefetchFields.stream().map(String::valueOf).toList();
+        return Mono.zip(hash.size(sessionKey), hash.multiGet(sessionKey, fields))
+                .flatMap(result -> {
+                    long size = result.getT1();
+                    List<byte[]> values = result.getT2();
+                    if (size == 0) {
+                        return Mono.empty();
+                    }
+                    List<Object> pairs = new ArrayList<>(fields.size() * 2);
+                    for (int i = 0; i < fields.size() && i < values.size(); i++) {
+                        if (values.get(i) != null) {
+                            pairs.add(fields.get(i).getBytes(StandardCharsets.UTF_8));
+                            pairs.add(values.get(i));
+                        }
+                    }
+                    if (pairs.size() / 2 == size) {
+                        return Mono.just(pairs);
+                    }
+                    // Как и скрипт: есть другие атрибуты - загружается весь хеш
+                    return hash.entries(sessionKey)
+                            .collectList()
+                            .map(entries -> {
+                                List<Object> all = new ArrayList<>(entries.size() * 2);
+                                for (Map.Entry<String, byte[]> entry : entries) {
+                                    all.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                                    all.add(entry.getValue());
+                                }
+                                return all;
+                            });
+                });
+    }
+
+    private boolean hasRequiredFields(List<Object> pairs) {
+        Set<String> found = new HashSet<>();
+        for (int i = 0; i + 1 < pairs.size(); i += 2) {
+            found.add(new String((byte[]) pairs.get(i), StandardCharsets.UTF_8));
+        }
+        return found.containsAll(requiredFields);
+    }
+
+    private Mono<MapSession> decode(String id, List<Object> pairs) {
+        Mono<MapSession> decoding = Mono.fromCallable(() -> {
+            Map<String, Object> entries = new HashMap<>(pairs.size());
+            for (int i = 0; i + 1 < pairs.size(); i += 2) {
+                String field = new String((byte[]) pairs.get(i), StandardCharsets.UTF_8);
+                entries.put(field, valueSerializer.read(ByteBuffer.wrap((byte[]) pairs.get(i + 1))));
+            }
+            return sessionMapper.apply(id, entries);
+        });
+        if (offloadScheduler == null || payloadSize(pairs) < offloadThreshold) {
+            return decoding;
+        }
+        // Если исполнитель перегружен, сессия десериализуется на месте, а не теряется
+        return decoding.subscribeOn(offloadScheduler)
+                .onErrorResume(RejectedExecutionException.class, rejected -> decoding);
+    }
+
+    private static long payloadSize(List<Object> pairs) {
+        long size = 0;
+        for (int i = 1; i < pairs.size(); i += 2) {
+            size += ((byte[]) pairs.get(i)).length;
+        }
+        return size;
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        pendingTouches.remove(id);
+        String sessionKey = getSessionKey(id);
+        return sessionRedisOperations.delete(sessionKey)
+                .doOnSuccess(deleted -> written(sessionKey))
+                .then();
+    }
+
+    Mono<Void> flushTouches() {
+        if (pendingTouches.isEmpty()) {
+            return Mono.empty();
+        }
+        List<Map.Entry<String, PendingTouch>> drained = new ArrayList<>(pendingTouches.size());
+        for (Map.Entry<String, PendingTouch> entry : pendingTouches.entrySet()) {
+            if (pendingTouches.remove(entry.getKey(), entry.getValue())) {
+                drained.add(entry);
+            }
+        }
+        // Скрипт работает со всеми ключами пачки, в кластере они должны быть в одном слоте
+        Flux<List<Map.Entry<String, PendingTouch>>> batches = clusterAware
+                ? Flux.fromIterable(groupBySlot(drained)).concatMap(group -> Flux.fromIterable(group).buffer(touchBatchSize))
+                : Flux.fromIterable(drained).buffer(touchBatchSize);
+        return batches
+                .concatMap(batch -> {
+                    List<String> keys = new ArrayList<>(batch.size());
+                    List<Object> args = new ArrayList<>(batch.size() * 2);
+                    for (Map.Entry<String, PendingTouch> entry : batch) {
+                        PendingTouch touch = entry.getValue();
+                        keys.add(getSessionKey(entry.getKey()));
+                        args.add(valueSerializer.write(touch.lastAccessedTime().toEpochMilli()));
+                        args.add(touch.maxInactiveInterval().toMillis());
+                    }
+                    return sessionRedisOperations.execute(TOUCH_SCRIPT, keys, args, ARGS_WRITER, COUNT_READER)
+                            .doOnNext(touched -> log.debug("Записаны продления сессий: batch={}, touched={}",
+                                    batch.size(), touched));
+                })
+                .then();
+    }
+
+    private Collection<List<Map.Entry<String, PendingTouch>>> groupBySlot(List<Map.Entry<String, PendingTouch>> entries) {
+        Map<Integer, List<Map.Entry<String, PendingTouch>>> bySlot = new HashMap<>();
+        for (Map.Entry<String, PendingTouch> entry : entries) {
+            bySlot.computeIfAbsent(SlotHash.getSlot(getSessionKey(entry.getKey())), slot -> new ArrayList<>()).add(entry);
+        }
+        return bySlot.values();
+    }
+
+    private void written(String sessionKey) {
+        if (replicaReads != null) {
+            replicaReads.written(sessionKey);
+        }
+    }
+
+    private void queueTouch(String sessionId, Instant lastAccessedTime, Duration maxInactiveInterval) {
+        pendingTouches.merge(sessionId, new PendingTouch(lastAccessedTime, maxInactiveInterval),
+                (current, next) -> next.lastAccessedTime().isAfter(current.lastAccessedTime()) ? next : current);
+    }
+
+    private String getSessionKey(String sessionId) {
+        return keyPrefix + sessionId;
+    }
+
+    private static String getAttributeKey(String attributeName) {
+        return ATTRIBUTE_PREFIX + attributeName;
+    }
+
+    private record PendingTouch(Instant lastAccessedTime, Duration maxInactiveInterval) {
+    }
+
+    /**
+     * Сессия, которая отслеживает изменения атрибутов отдельно от продления.
+     */
+    public final class LazyRedisSession implements Session {
+
+        private final MapSession cached;
+        private final Map<String, Object> delta = new HashMap<>();
+        private boolean isNew;
+        private boolean touched;
+        private String originalSessionId;
+
+        private LazyRedisSession(MapSession cached, boolean isNew) {
+            this.cached = cached;
+            this.isNew = isNew;
+            this.originalSessionId = cached.getId();
+            if (isNew) {
+                delta.put(CREATION_TIME_KEY, cached.getCreationTime().toEpochMilli());
+                delta.put(MAX_INACTIVE_INTERVAL_KEY, (int) cached.getMaxInactiveInterval().getSeconds());
+                delta.put(LAST_ACCESSED_TIME_KEY, cached.getLastAccessedTime().toEpochMilli());
+                cached.getAttributeNames().forEach(name -> delta.put(getAttributeKey(name), cached.getAttribute(name)));
+            }
+        }
+
+        @Override
+        public String getId() {
+            return cached.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            String newSessionId = sessionIdGenerator.generate();
+            cached.setId(newSessionId);
+            return newSessionId;
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return cached.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return cached.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            cached.setAttribute(attributeName, attributeValue);
+            delta.put(getAttributeKey(attributeName), attributeValue);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            cached.removeAttribute(attributeName);
+            delta.put(getAttributeKey(attributeName), null);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return cached.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            cached.setLastAccessedTime(lastAccessedTime);
+            touched = true;
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return cached.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            cached.setMaxInactiveInterval(interval);
+            delta.put(MAX_INACTIVE_INTERVAL_KEY, (int) interval.getSeconds());
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return cached.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return cached.isExpired();
+        }
+
+        private boolean hasChanges() {
+            return !delta.isEmpty() || hasChangedSessionId();
+        }
+
+        private boolean hasChangedSessionId() {
+            return !getId().equals(originalSessionId);
+        }
+
+        private Mono<Void> save() {
+            return saveChangeSessionId()
+                    .then(Mono.defer(this::saveDelta))
+                    .doOnSuccess(v -> isNew = false);
+        }
+
+        private Mono<Void> saveDelta() {
+            if (delta.isEmpty()) {
+                // Изменилось только время обращения - продление запишется пачкой
+                if (touched) {
+                    touched = false;
+                    queueTouch(getId(), getLastAccessedTime(), getMaxInactiveInterval());
+                }
+                return Mono.empty();
+            }
+
+            String sessionKey = getSessionKey(getId());
+            Map<String, Object> changes = new HashMap<>(delta);
+            changes.put(LAST_ACCESSED_TIME_KEY, getLastAccessedTime().toEpochMilli());
+            List<Object> removed = new ArrayList<>();
+            changes.entrySet().removeIf(entry -> {
+                if (entry.getValue() == null) {
+                    removed.add(entry.getKey());
+                    return true;
+                }
+                return false;
+            });
+            delta.clear();
+            touched = false;
+            pendingTouches.remove(getId());
+
+            Mono<Long> remove = removed.isEmpty() ? Mono.empty()
+                    : sessionRedisOperations.opsForHash().remove(sessionKey, removed.toArray());
+            return sessionRedisOperations.opsForHash().putAll(sessionKey, changes)
+                    .then(remove)
+                    .then(sessionRedisOperations.expire(sessionKey, getMaxInactiveInterval()))
+                    .doOnSuccess(expired -> written(sessionKey))
+                    .then();
+        }
+
+        private Mono<Void> saveChangeSessionId() {
+            if (!hasChangedSessionId()) {
+                return Mono.empty();
+            }
+            String sessionId = getId();
+            if (isNew) {
+                originalSessionId = sessionId;
+                return Mono.empty();
+            }
+
+            // Новый ключ получает отложенное продление старого, чтобы оно не потерялось
+            PendingTouch touch = pendingTouches.remove(originalSessionId);
+            if (touch != null) {
+                touched = true;
+            }
+            String originalSessionKey = getSessionKey(originalSessionId);
+            String sessionKey = getSessionKey(sessionId);
+            return sessionRedisOperations.rename(originalSessionKey, sessionKey)
+                    .doOnSuccess(renamed -> {
+                        originalSessionId = sessionId;
+                        written(sessionKey);
+                    })
+                    .onErrorResume(error -> error.getMessage() != null && error.getMessage().contains("no such key"),
+                            error -> Mono.empty())
+                    .then();
+        }
+    }
+}
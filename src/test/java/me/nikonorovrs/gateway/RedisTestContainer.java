@@ -3,24 +3,51 @@ package me.nikonorovrs.gateway;
 import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.utility.DockerImageName;
 
+/**
+ * Redis для тестов: контейнер Testcontainers или внешний экземпляр из {@code -Dtest.redis.host}/{@code -Dtest.redis.port}.
+ */
 public class RedisTestContainer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
 
-    private static final GenericContainer<?> redisContainer = new GenericContainer<>(DockerImageName.parse("redis:latest"))
-            .withExposedPorts(6379);
+    private static final String externalHost = System.getProperty("test.redis.host");
+
+    private static final GenericContainer<?> redisContainer = externalHost != null ? null
+            : new GenericContainer<>(DockerImageName.parse("redis:latest")).withExposedPorts(6379);
 
     static {
-        redisContainer.start();
+        if (redisContainer != null) {
+            redisContainer.start();
+        }
+    }
+
+    public static String host() {
+        return redisContainer != null ? redisContainer.getHost() : externalHost;
+    }
+
+    public static int port() {
+        return redisContainer != null ? redisContainer.getMappedPort(6379) : Integer.getInteger("test.redis.port", 6379);
+    }
+
+    /**
+     * Запущенная фабрика соединений для тестов без контекста Spring; закрывается вызовом {@code destroy()}.
+     */
+    public static LettuceConnectionFactory connectionFactory() {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host(), port()));
+        factory.afterPropertiesSet();
+        factory.start();
+        return factory;
     }
 
     @Override
     public void initialize(ConfigurableApplicationContext applicationContext) {
         TestPropertyValues values = TestPropertyValues.of(
-                "spring.data.redis.host=" + redisContainer.getHost(),
-                "spring.data.redis.port=" + redisContainer.getMappedPort(6379)
+                "spring.data.redis.host=" + host(),
+                "spring.data.redis.port=" + port()
         );
         values.applyTo(applicationContext);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,299 @@
+package me.nikonorovrs.gateway.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link RequestCoalescingGatewayFilterFactory} с телом upstream в буферах Netty со счетчиком ссылок.
+ * После каждого теста все буферы upstream должны быть освобождены: копии, розданные ожидающим запросам,
+ * удерживают исходный буфер, пока их не запишут или не отбросят.
+ */
+class RequestCoalescingGatewayFilterFactoryTest {
+
+    private static final List<String> CHUNKS = List.of("hello", " ", "world");
+    private static final String BODY = "hello world";
+
+    // Без пула: освобожденный буфер не переиспользуется, и его счетчик ссылок остается нулевым
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(new UnpooledByteBufAllocator(false));
+    private final List<NettyDataBuffer> upstreamBuffers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RequestCoalescingProperties properties;
+    private GatewayFilter filter;
+
+    private HttpStatus status = HttpStatus.OK;
+    private Consumer<HttpHeaders> responseHeaders = headers -> headers.setContentLength(BODY.length());
+    private Duration headersDelay = Duration.ofMillis(100);
+    private Duration chunkDelay = Duration.ZERO;
+    private RuntimeException upstreamError;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RequestCoalescingProperties();
+        filter = new RequestCoalescingGatewayFilterFactory(properties, meterRegistry)
+                .apply(new RequestCoalescingGatewayFilterFactory.Config());
+    }
+
+    @AfterEach
+    void assertNoLeaks() {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (upstreamBuffers.stream().anyMatch(buffer -> buffer.getNativeBuffer().refCnt() > 0)
+                && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(upstreamBuffers)
+                .as("буферы upstream освобождены")
+                .allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+    }
+
+    @Test
+    void shouldShareOneUpstreamResponseWithIdenticalRequests() {
+        chunkDelay = Duration.ofMillis(20);
+        List<MockServerWebExchange> same = exchanges(5, "/api/items?page=1");
+        MockServerWebExchange other = get("/api/items?page=2");
+
+        run(concat(same, other));
+
+        assertThat(upstreamCalls).hasValue(2);
+        for (MockServerWebExchange exchange : concat(same, other)) {
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(exchange.getResponse().getHeaders().getContentLength()).isEqualTo(BODY.length());
+            assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+        }
+        assertThat(count("leader")).isEqualTo(2);
+        assertThat(count("follower")).isEqualTo(4);
+    }
+
+    @Test
+    void shouldBypassConditionalAndRangeRequests() {
+        List<MockServerWebExchange> exchanges = List.of(
+                get("/api/items", HttpHeaders.IF_NONE_MATCH, "\"v1\""),
+                get("/api/items", HttpHeaders.IF_NONE_MATCH, "\"v2\""),
+                get("/api/items", HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2026 07:28:00 GMT"),
+                get("/api/items", HttpHeaders.RANGE, "bytes=0-4"));
+
+        run(exchanges);
+
+        assertThat(upstreamCalls).hasValue(4);
+        assertThat(count("bypass")).isEqualTo(4);
+        assertThat(count("leader")).isZero();
+        readAll(exchanges);
+    }
+
+    @Test
+    void shouldNotShareNotModifiedResponse() {
+        status = HttpStatus.NOT_MODIFIED;
+        responseHeaders = headers -> headers.setETag("\"v1\"");
+        List<MockServerWebExchange> exchanges = exchanges(3, "/api/items");
+
+        run(exchanges);
+
+        assertThat(upstreamCalls).hasValue(3);
+        assertThat(count("fallback")).isEqualTo(2);
+        exchanges.forEach(exchange -> assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED));
+    }
+
+    @Test
+    void shouldFallBackWhenResponseIsNotShareable() {
+        responseHeaders = headers -> {
+            headers.setContentLength(BODY.length());
+            headers.add(HttpHeaders.SET_COOKIE, ResponseCookie.from("SESSION", "secret").build().toString());
+        };
+        List<MockServerWebExchange> cookies = exchanges(3, "/api/cookies");
+
+        run(cookies);
+
+        assertThat(upstreamCalls).hasValue(3);
+        assertThat(count("fallback")).isEqualTo(2);
+        readAll(cookies);
+
+        // Без Content-Length размер ответа заранее неизвестен
+        responseHeaders = headers -> { };
+        List<MockServerWebExchange> chunked = exchanges(3, "/api/chunked");
+
+        run(chunked);
+
+        assertThat(upstreamCalls).hasValue(6);
+        assertThat(count("fallback")).isEqualTo(4);
+        readAll(chunked);
+    }
+
+    @Test
+    void shouldFallBackWhenFirstResponseIsTooSlow() {
+        properties.setWaitTimeout(Duration.ofMillis(50));
+        headersDelay = Duration.ofMillis(300);
+        List<MockServerWebExchange> exchanges = exchanges(4, "/api/slow");
+
+        run(exchanges);
+
+        // Ожидание истекло раньше заголовков: ответ первого запроса уже некому раздавать
+        assertThat(upstreamCalls).hasValue(4);
+        assertThat(count("fallback")).isEqualTo(3);
+        assertThat(count("follower")).isZero();
+        readAll(exchanges);
+    }
+
+    @Test
+    void shouldPassUpstreamErrorToWaitingRequests() {
+        upstreamError = new IllegalStateException("upstream недоступен");
+        List<MockServerWebExchange> exchanges = exchanges(3, "/api/broken");
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        Flux.fromIterable(exchanges)
+                .flatMap(exchange -> filter.filter(exchange, chain()).onErrorResume(error -> {
+                    errors.add(error);
+                    return Mono.empty();
+                }))
+                .blockLast();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(errors).hasSize(3).allMatch(error -> error.getMessage().equals("upstream недоступен"));
+    }
+
+    @Test
+    void shouldReleaseSharedBuffersOfCancelledFollower() throws InterruptedException {
+        chunkDelay = Duration.ofMillis(100);
+        MockServerWebExchange leader = get("/api/stream");
+        MockServerWebExchange follower = get("/api/stream");
+        // Клиент записал первый буфер и перестал читать: остальные копятся в очереди ожидающего запроса
+        follower.getResponse().setWriteHandler(body -> Mono.create(sink -> {
+            BaseSubscriber<DataBuffer> stalled = new BaseSubscriber<>() {
+                @Override
+                protected void hookOnSubscribe(Subscription subscription) {
+                    request(1);
+                }
+
+                @Override
+                protected void hookOnNext(DataBuffer buffer) {
+                    DataBufferUtils.release(buffer);
+                }
+            };
+            sink.onCancel(stalled);
+            body.doOnDiscard(DataBuffer.class, DataBufferUtils::release).subscribe(stalled);
+        }));
+
+        Mono<Void> leaderDone = filter.filter(leader, chain()).cache();
+        leaderDone.subscribe();
+        Thread.sleep(20);
+        Disposable followerDone = filter.filter(follower, chain()).subscribe();
+        Thread.sleep(350);
+        followerDone.dispose();
+        leaderDone.block(Duration.ofSeconds(5));
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(count("follower")).isEqualTo(1);
+        assertThat(leader.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+    }
+
+    @Test
+    void shouldFailStartedFollowersWhenLeaderIsCancelled() throws InterruptedException {
+        chunkDelay = Duration.ofMillis(100);
+        MockServerWebExchange leader = get("/api/stream");
+        MockServerWebExchange follower = get("/api/stream");
+        // Клиент первого запроса отменяет запись, как при разрыве соединения
+        leader.getResponse().setWriteHandler(body -> body.take(1).doOnNext(DataBufferUtils::release).then());
+
+        Mono<Void> leaderDone = filter.filter(leader, chain()).cache();
+        leaderDone.subscribe();
+        Thread.sleep(20);
+
+        assertThatThrownBy(() -> filter.filter(follower, chain()).block(Duration.ofSeconds(5)))
+                .hasMessageContaining("отменен до конца тела");
+        leaderDone.block(Duration.ofSeconds(5));
+        assertThat(upstreamCalls).hasValue(1);
+        // Принятые до отмены копии остались в ответе ожидающего запроса и освобождаются при чтении
+        follower.getResponse().getBody().subscribe(DataBufferUtils::release, error -> { });
+    }
+
+    private GatewayFilterChain chain() {
+        return exchange -> Mono.delay(headersDelay).then(Mono.defer(() -> {
+            upstreamCalls.incrementAndGet();
+            if (upstreamError != null) {
+                return Mono.error(upstreamError);
+            }
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(status);
+            responseHeaders.accept(response.getHeaders());
+            if (status == HttpStatus.NOT_MODIFIED) {
+                return response.setComplete();
+            }
+            Flux<DataBuffer> body = Flux.fromIterable(CHUNKS)
+                    .delayElements(chunkDelay.isZero() ? Duration.ofNanos(1) : chunkDelay)
+                    .map(this::upstreamBuffer);
+            return response.writeWith(body);
+        }));
+    }
+
+    private DataBuffer upstreamBuffer(String chunk) {
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        NettyDataBuffer buffer = bufferFactory.allocateBuffer(bytes.length);
+        buffer.write(bytes);
+        upstreamBuffers.add(buffer);
+        return buffer;
+    }
+
+    private void run(List<MockServerWebExchange> exchanges) {
+        Flux.fromIterable(exchanges)
+                .flatMap(exchange -> filter.filter(exchange, chain()))
+                .blockLast(Duration.ofSeconds(10));
+    }
+
+    private static void readAll(List<MockServerWebExchange> exchanges) {
+        exchanges.forEach(exchange -> exchange.getResponse().getBodyAsString().block());
+    }
+
+    private static MockServerWebExchange get(String uri) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(uri));
+    }
+
+    private static MockServerWebExchange get(String uri, String header, String value) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(uri).header(header, value));
+    }
+
+    private static List<MockServerWebExchange> exchanges(int count, String uri) {
+        return IntStream.range(0, count).mapToObj(i -> get(uri)).toList();
+    }
+
+    private static List<MockServerWebExchange> concat(List<MockServerWebExchange> exchanges, MockServerWebExchange last) {
+        return Stream.concat(exchanges.stream(), Stream.of(last)).toList();
+    }
+
+    private double count(String result) {
+        Counter counter = meterRegistry.find("gateway.request.coalescing").tag("result", result).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
@@ -0,0 +1,221 @@
+package me.nikonorovrs.gateway.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.cache.ResponseCacheGatewayFilterFactory.Partition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static me.nikonorovrs.gateway.cache.ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheGatewayFilterFactoryTest {
+
+    private final List<HttpHeaders> upstreamRequests = new CopyOnWriteArrayList<>();
+
+    private ResponseCacheGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        ResponseCacheProperties properties = new ResponseCacheProperties();
+        factory = new ResponseCacheGatewayFilterFactory(new ResponseCache(properties, null), properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldServeSharedResponseToAnonymousRequests() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> ok(exchange, "max-age=60", "body"));
+
+        assertThat(call(filter, upstream, get(), null).getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("MISS");
+        MockServerHttpResponse second = call(filter, upstream, get(), null);
+
+        assertThat(second.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("HIT");
+        assertThat(second.getBodyAsString().block()).isEqualTo("body");
+        assertThat(upstreamRequests).hasSize(1);
+    }
+
+    @Test
+    void shouldNotShareUserResponseWithoutExplicitPermission() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> ok(exchange, "max-age=60", "alice-data"));
+
+        call(filter, upstream, get(), "alice");
+        MockServerHttpResponse other = call(filter, upstream, get(), "bob");
+
+        assertThat(other.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("MISS");
+        assertThat(call(filter, upstream, get(), null).getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("MISS");
+        assertThat(upstreamRequests).hasSize(3);
+    }
+
+    @Test
+    void shouldNotShareResponseToRequestWithAuthorization() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> ok(exchange, "max-age=60", "body"));
+
+        call(filter, upstream, get().header(HttpHeaders.AUTHORIZATION, "Bearer token"), null);
+        call(filter, upstream, get(), null);
+
+        assertThat(upstreamRequests).hasSize(2);
+    }
+
+    @Test
+    void shouldShareUserResponseMarkedPublicOrSharedMaxAge() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> ok(exchange,
+                exchange.getRequest().getPath().value().equals("/public") ? "public, max-age=60" : "max-age=0, s-maxage=60",
+                "dictionary"));
+
+        call(filter, upstream, MockServerHttpRequest.get("/public"), "alice");
+        call(filter, upstream, MockServerHttpRequest.get("/shared"), "alice");
+        MockServerHttpResponse publicHit = call(filter, upstream, MockServerHttpRequest.get("/public"), "bob");
+        MockServerHttpResponse sharedHit = call(filter, upstream, MockServerHttpRequest.get("/shared"), "bob");
+
+        assertThat(publicHit.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("HIT");
+        assertThat(sharedHit.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("HIT");
+        assertThat(upstreamRequests).hasSize(2);
+    }
+
+    @Test
+    void shouldKeepPrivateResponsesPerPrincipal() {
+        GatewayFilter filter = filter(Partition.PRINCIPAL);
+        GatewayFilterChain upstream = upstream(exchange -> exchange.getPrincipal()
+                .flatMap(principal -> ok(exchange, "private, max-age=60", principal.getName())));
+
+        call(filter, upstream, get(), "alice");
+        MockServerHttpResponse bob = call(filter, upstream, get(), "bob");
+        MockServerHttpResponse alice = call(filter, upstream, get(), "alice");
+
+        assertThat(bob.getBodyAsString().block()).isEqualTo("bob");
+        assertThat(alice.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("HIT");
+        assertThat(alice.getBodyAsString().block()).isEqualTo("alice");
+        assertThat(call(filter, upstream, get(), null).getHeaders().getFirst(CACHE_STATUS_HEADER)).isNull();
+        assertThat(upstreamRequests).hasSize(3);
+    }
+
+    @Test
+    void shouldRevalidateStaleResponseWithValidators() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> {
+            ServerHttpResponse response = exchange.getResponse();
+            response.getHeaders().setETag("\"v1\"");
+            if (exchange.getRequest().getHeaders().getIfNoneMatch().contains("\"v1\"")) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                response.getHeaders().setCacheControl("max-age=60");
+                return response.writeWith(Flux.empty());
+            }
+            return ok(exchange, "max-age=0", "versioned");
+        });
+
+        call(filter, upstream, get(), null);
+        MockServerHttpResponse revalidated = call(filter, upstream, get(), null);
+        MockServerHttpResponse fresh = call(filter, upstream, get(), null);
+        MockServerHttpResponse notModified = call(filter, upstream, get().ifNoneMatch("\"v1\""), null);
+
+        assertThat(upstreamRequests).hasSize(2);
+        assertThat(upstreamRequests.get(1).getIfNoneMatch()).containsExactly("\"v1\"");
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(revalidated.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("REVALIDATED");
+        assertThat(revalidated.getBodyAsString().block()).isEqualTo("versioned");
+        assertThat(fresh.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("HIT");
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void shouldSelectResponseByVaryHeaders() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> {
+            exchange.getResponse().getHeaders().setVary(List.of(HttpHeaders.ACCEPT_LANGUAGE));
+            return ok(exchange, "max-age=60", exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_LANGUAGE));
+        });
+
+        call(filter, upstream, get().header(HttpHeaders.ACCEPT_LANGUAGE, "ru"), null);
+        MockServerHttpResponse russian = call(filter, upstream, get().header(HttpHeaders.ACCEPT_LANGUAGE, "ru"), null);
+        MockServerHttpResponse english = call(filter, upstream, get().header(HttpHeaders.ACCEPT_LANGUAGE, "en"), null);
+
+        assertThat(russian.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("HIT");
+        assertThat(russian.getBodyAsString().block()).isEqualTo("ru");
+        assertThat(english.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("MISS");
+        assertThat(english.getBodyAsString().block()).isEqualTo("en");
+        assertThat(upstreamRequests).hasSize(2);
+    }
+
+    @Test
+    void shouldNotStoreResponseVaryingOnEverything() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> {
+            exchange.getResponse().getHeaders().setVary(List.of("*"));
+            return ok(exchange, "max-age=60", "any");
+        });
+
+        call(filter, upstream, get(), null);
+        MockServerHttpResponse second = call(filter, upstream, get(), null);
+
+        assertThat(second.getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("MISS");
+        assertThat(upstreamRequests).hasSize(2);
+    }
+
+    @Test
+    void shouldCollapseConcurrentMissesIntoOneUpstreamRequest() {
+        GatewayFilter filter = filter(Partition.NONE);
+        GatewayFilterChain upstream = upstream(exchange -> Mono.delay(Duration.ofMillis(200))
+                .then(ok(exchange, "max-age=60", "slow")));
+        MockServerWebExchange first = MockServerWebExchange.from(get());
+        MockServerWebExchange second = MockServerWebExchange.from(get());
+
+        Mono.when(filter.filter(first, upstream), filter.filter(second, upstream)).block(Duration.ofSeconds(5));
+
+        assertThat(upstreamRequests).hasSize(1);
+        assertThat(second.getResponse().getHeaders().getFirst(CACHE_STATUS_HEADER)).isEqualTo("COLLAPSED");
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("slow");
+    }
+
+    private GatewayFilter filter(Partition partition) {
+        ResponseCacheGatewayFilterFactory.Config config = new ResponseCacheGatewayFilterFactory.Config();
+        config.setPartition(partition);
+        return factory.apply(config);
+    }
+
+    private GatewayFilterChain upstream(Function<ServerWebExchange, Mono<Void>> handler) {
+        return exchange -> {
+            upstreamRequests.add(HttpHeaders.readOnlyHttpHeaders(exchange.getRequest().getHeaders()));
+            return handler.apply(exchange);
+        };
+    }
+
+    private static MockServerHttpResponse call(GatewayFilter filter, GatewayFilterChain upstream,
+                                               MockServerHttpRequest.BaseBuilder<?> request, String principal) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        ServerWebExchange authenticated = principal == null ? exchange
+                : exchange.mutate().principal(Mono.just((Principal) () -> principal)).build();
+        filter.filter(authenticated, upstream).block(Duration.ofSeconds(5));
+        return exchange.getResponse();
+    }
+
+    private static MockServerHttpRequest.BaseBuilder<?> get() {
+        return MockServerHttpRequest.get("/dictionary");
+    }
+
+    private static Mono<Void> ok(ServerWebExchange exchange, String cacheControl, String body) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setCacheControl(cacheControl);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body.getBytes(StandardCharsets.UTF_8))));
+    }
+}
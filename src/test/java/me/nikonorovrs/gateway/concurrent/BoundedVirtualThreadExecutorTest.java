@@ -0,0 +1,182 @@
+package me.nikonorovrs.gateway.concurrent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedVirtualThreadExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldQueueBeyondConcurrencyAndRejectBeyondQueueCapacity() throws InterruptedException {
+        BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("test", 2, 3, meterRegistry);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        Runnable blocking = () -> {
+            started.countDown();
+            awaitQuietly(release);
+            ran.incrementAndGet();
+        };
+
+        executor.execute(blocking);
+        executor.execute(blocking);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 3; i++) {
+            executor.execute(ran::incrementAndGet);
+        }
+
+        assertThat(executor.active()).isEqualTo(2);
+        assertThat(executor.queued()).isEqualTo(3);
+        assertThatThrownBy(() -> executor.execute(ran::incrementAndGet))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.queued()).isEqualTo(3);
+        assertThat(tasks("rejected")).isEqualTo(1);
+
+        // Освободившиеся потоки забирают задачи из очереди
+        release.countDown();
+        await(() -> tasks("completed") == 5);
+        assertThat(ran).hasValue(5);
+        await(() -> executor.active() == 0);
+        assertThat(executor.queued()).isZero();
+        assertThat(meterRegistry.get("gateway.executor.queue").tag("executor", "test").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldRunEveryAcceptedTaskUnderContention() throws InterruptedException {
+        int maxConcurrency = 4;
+        int queueCapacity = 8;
+        int submitters = 16;
+        int tasksPerSubmitter = 2000;
+        BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("test", maxConcurrency,
+                queueCapacity, meterRegistry);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger ran = new AtomicInteger();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Runnable task = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.onSpinWait();
+            running.decrementAndGet();
+            ran.incrementAndGet();
+        };
+
+        // Счетчики исполнителя проверяются, пока задачи ставятся и выполняются
+        AtomicBoolean submitting = new AtomicBoolean(true);
+        List<String> violations = new ArrayList<>();
+        Thread monitor = Thread.ofPlatform().start(() -> {
+            while (submitting.get()) {
+                int active = executor.active();
+                int queued = executor.queued();
+                if (active < 0 || active > maxConcurrency || queued < 0 || queued > queueCapacity) {
+                    violations.add("active=" + active + ", queued=" + queued);
+                }
+            }
+        });
+        CyclicBarrier barrier = new CyclicBarrier(submitters);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < submitters; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                awaitQuietly(barrier);
+                for (int j = 0; j < tasksPerSubmitter; j++) {
+                    try {
+                        executor.execute(task);
+                        accepted.incrementAndGet();
+                    } catch (RejectedExecutionException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        await(() -> ran.get() == accepted.get());
+        submitting.set(false);
+        monitor.join();
+
+        assertThat(accepted.get() + rejected.get()).isEqualTo(submitters * tasksPerSubmitter);
+        assertThat(rejected.get()).isPositive();
+        assertThat(tasks("completed")).isEqualTo(accepted.get());
+        assertThat(tasks("rejected")).isEqualTo(rejected.get());
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(maxConcurrency);
+        assertThat(violations).isEmpty();
+        await(() -> executor.active() == 0);
+        assertThat(executor.queued()).isZero();
+    }
+
+    @Test
+    void shouldContinueWithQueuedTasksAfterFailure() throws InterruptedException {
+        BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("test", 1, 2, meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+
+        executor.execute(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            throw new IllegalStateException("сбой задачи");
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        executor.execute(ran::incrementAndGet);
+        executor.shutdown();
+
+        // Остановленный исполнитель не принимает новые задачи, но выполняет поставленные
+        assertThatThrownBy(() -> executor.execute(ran::incrementAndGet))
+                .isInstanceOf(RejectedExecutionException.class);
+        release.countDown();
+        await(() -> tasks("completed") == 1);
+        assertThat(tasks("failed")).isEqualTo(1);
+        assertThat(ran).hasValue(1);
+        await(() -> executor.active() == 0);
+    }
+
+    private double tasks(String outcome) {
+        return meterRegistry.get("gateway.executor.tasks").tag("executor", "test").tag("outcome", outcome)
+                .counter().count();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("условие выполнилось за 10 секунд").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
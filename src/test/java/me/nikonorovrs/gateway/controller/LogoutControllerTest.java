@@ -0,0 +1,76 @@
+package me.nikonorovrs.gateway.controller;
+
+import me.nikonorovrs.gateway.security.StatelessSecurityContextRepository;
+import me.nikonorovrs.gateway.service.SessionService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.mock.web.server.MockWebSession;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LogoutControllerTest {
+
+    @Mock
+    private SessionService sessionService;
+
+    @Mock
+    private ObjectProvider<StatelessSecurityContextRepository> statelessRepositoryProvider;
+
+    @Mock
+    private StatelessSecurityContextRepository statelessRepository;
+
+    @Test
+    void shouldRevokeGatewayTokensAndStoredTokensOfCurrentPrincipal() {
+        when(statelessRepositoryProvider.getIfAvailable()).thenReturn(statelessRepository);
+        when(statelessRepository.revokeTokens(any(), eq(List.of("user")))).thenReturn(Mono.empty());
+        when(sessionService.performLogout(any(), eq("ffl-session"), eq(List.of("user"))))
+                .thenReturn(Mono.just(ResponseEntity.status(401).build()));
+        LogoutController controller = new LogoutController(sessionService, statelessRepositoryProvider);
+
+        ServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/api/v1/logout").cookie(new HttpCookie("SESSION", "ffl-session")))
+                .mutate()
+                .principal(Mono.just(new TestingAuthenticationToken("user", "password")))
+                .build();
+        MockWebSession session = new MockWebSession();
+
+        StepVerifier.create(controller.logout(exchange, exchange.getRequest(), session))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(statelessRepository).revokeTokens(exchange, List.of("user"));
+        verify(sessionService).performLogout(session, "ffl-session", List.of("user"));
+    }
+
+    @Test
+    void shouldLogoutAnonymousSessionWithoutRevocation() {
+        when(sessionService.performLogout(any(), eq("ffl-session"), eq(List.of())))
+                .thenReturn(Mono.just(ResponseEntity.status(401).build()));
+        LogoutController controller = new LogoutController(sessionService, statelessRepositoryProvider);
+
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/api/v1/logout").cookie(new HttpCookie("SESSION", "ffl-session")));
+
+        StepVerifier.create(controller.logout(exchange, exchange.getRequest(), new MockWebSession()))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(sessionService).performLogout(any(), eq("ffl-session"), eq(List.of()));
+    }
+}
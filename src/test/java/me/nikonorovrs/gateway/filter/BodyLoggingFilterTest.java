@@ -0,0 +1,221 @@
+package me.nikonorovrs.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import me.nikonorovrs.gateway.logging.AsyncLogbookWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.Logbook;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.core.DefaultHttpLogFormatter;
+import org.zalando.logbook.core.DefaultSink;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link BodyLoggingFilter} с телами в буферах Netty со счетчиком ссылок: в журнал копируется только начало тел,
+ * сами буферы доходят до upstream и клиента без изменений и после каждого теста должны быть освобождены.
+ */
+class BodyLoggingFilterTest {
+
+    private static final String REQUEST_BODY = "{\"order\":\"" + "r".repeat(64) + "\"}";
+    private static final String RESPONSE_BODY = "{\"status\":\"" + "s".repeat(64) + "\"}";
+    private static final int MAX_BODY_SIZE = 16;
+
+    // Без пула: освобожденный буфер не переиспользуется, и его счетчик ссылок остается нулевым
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(new UnpooledByteBufAllocator(false));
+    private final List<NettyDataBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final List<String> logged = new CopyOnWriteArrayList<>();
+    private final List<String> upstreamBodies = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BodyLoggingProperties properties = new BodyLoggingProperties();
+
+    private Logbook logbook;
+
+    @BeforeEach
+    void setUp() {
+        properties.setMaxBodySize(DataSize.ofBytes(MAX_BODY_SIZE));
+        HttpLogWriter logWriter = new HttpLogWriter() {
+            @Override
+            public void write(Precorrelation precorrelation, String request) {
+                logged.add(request);
+            }
+
+            @Override
+            public void write(Correlation correlation, String response) {
+                logged.add(response);
+            }
+        };
+        logbook = Logbook.builder().sink(new DefaultSink(new DefaultHttpLogFormatter(), logWriter)).build();
+    }
+
+    @AfterEach
+    void assertNoLeaks() {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (buffers.stream().anyMatch(buffer -> buffer.getNativeBuffer().refCnt() > 0)
+                && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(buffers)
+                .isNotEmpty()
+                .allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+    }
+
+    @Test
+    void shouldLogBodyPrefixesAndPassFullBodiesThrough() throws InterruptedException {
+        AsyncLogbookWriter writer = startedWriter(10);
+        MockServerWebExchange exchange = post("/api/orders", MediaType.APPLICATION_JSON);
+
+        new BodyLoggingFilter(logbook, writer, properties)
+                .filter(exchange, respond(MediaType.APPLICATION_JSON, null))
+                .block();
+        writer.stop();
+
+        assertThat(upstreamBodies).containsExactly(REQUEST_BODY);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(RESPONSE_BODY);
+        assertThat(logged).hasSize(2);
+        assertThat(logged.get(0))
+                .contains(REQUEST_BODY.substring(0, MAX_BODY_SIZE) + "...")
+                .doesNotContain(REQUEST_BODY.substring(0, MAX_BODY_SIZE + 1));
+        assertThat(logged.get(1))
+                .contains(RESPONSE_BODY.substring(0, MAX_BODY_SIZE) + "...")
+                .doesNotContain(RESPONSE_BODY.substring(0, MAX_BODY_SIZE + 1));
+    }
+
+    @Test
+    void shouldSkipBinaryAndCompressedBodies() throws InterruptedException {
+        AsyncLogbookWriter writer = startedWriter(10);
+        BodyLoggingFilter filter = new BodyLoggingFilter(logbook, writer, properties);
+        MockServerWebExchange binary = post("/api/files", MediaType.APPLICATION_OCTET_STREAM);
+        MockServerWebExchange compressed = MockServerWebExchange.from(MockServerHttpRequest.post("/api/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(chunks(REQUEST_BODY)));
+
+        filter.filter(binary, respond(MediaType.IMAGE_PNG, null)).block();
+        filter.filter(compressed, respond(MediaType.APPLICATION_JSON, "gzip")).block();
+        writer.stop();
+
+        assertThat(upstreamBodies).containsExactly(REQUEST_BODY, REQUEST_BODY);
+        assertThat(binary.getResponse().getBodyAsString().block()).isEqualTo(RESPONSE_BODY);
+        assertThat(compressed.getResponse().getBodyAsString().block()).isEqualTo(RESPONSE_BODY);
+        assertThat(logged).hasSize(4)
+                .allSatisfy(line -> assertThat(line).doesNotContain("{\"order\"", "{\"status\""));
+    }
+
+    @Test
+    void shouldNotLogExcludedPaths() throws InterruptedException {
+        properties.setExcludedPaths(List.of("/actuator/**", "/internal/*"));
+        AsyncLogbookWriter writer = startedWriter(10);
+        BodyLoggingFilter filter = new BodyLoggingFilter(logbook, writer, properties);
+        MockServerWebExchange actuator = post("/actuator/prometheus", MediaType.TEXT_PLAIN);
+        MockServerWebExchange internal = post("/internal/jobs", MediaType.APPLICATION_JSON);
+
+        filter.filter(actuator, respond(MediaType.TEXT_PLAIN, null)).block();
+        filter.filter(internal, respond(MediaType.APPLICATION_JSON, null)).block();
+        writer.stop();
+
+        assertThat(upstreamBodies).containsExactly(REQUEST_BODY, REQUEST_BODY);
+        assertThat(actuator.getResponse().getBodyAsString().block()).isEqualTo(RESPONSE_BODY);
+        assertThat(internal.getResponse().getBodyAsString().block()).isEqualTo(RESPONSE_BODY);
+        assertThat(logged).isEmpty();
+    }
+
+    @Test
+    void shouldDropExchangesWhenWriterQueueIsFull() throws InterruptedException {
+        // Поток записи еще не запущен: очередь заполняется, а фильтр не должен ждать места в ней
+        AsyncLogbookWriter writer = new AsyncLogbookWriter(2, meterRegistry);
+        BodyLoggingFilter filter = new BodyLoggingFilter(logbook, writer, properties);
+        List<MockServerWebExchange> exchanges = List.of(
+                post("/api/orders/1", MediaType.APPLICATION_JSON),
+                post("/api/orders/2", MediaType.APPLICATION_JSON),
+                post("/api/orders/3", MediaType.APPLICATION_JSON),
+                post("/api/orders/4", MediaType.APPLICATION_JSON),
+                post("/api/orders/5", MediaType.APPLICATION_JSON));
+
+        Flux.fromIterable(exchanges)
+                .concatMap(exchange -> filter.filter(exchange, respond(MediaType.APPLICATION_JSON, null)))
+                .blockLast(Duration.ofSeconds(5));
+
+        assertThat(meterRegistry.get("gateway.body.log.queue").gauge().value()).isEqualTo(2);
+        assertThat(entries("dropped")).isEqualTo(3);
+        exchanges.forEach(exchange ->
+                assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(RESPONSE_BODY));
+
+        writer.start();
+        writer.stop();
+        assertThat(entries("written")).isEqualTo(2);
+        assertThat(logged).hasSize(4);
+        assertThat(logged.get(0)).contains("/api/orders/1");
+        assertThat(logged.get(2)).contains("/api/orders/2");
+    }
+
+    private AsyncLogbookWriter startedWriter(int capacity) {
+        AsyncLogbookWriter writer = new AsyncLogbookWriter(capacity, meterRegistry);
+        writer.start();
+        return writer;
+    }
+
+    private double entries(String outcome) {
+        return meterRegistry.get("gateway.body.log.entries").tag("outcome", outcome).counter().count();
+    }
+
+    /**
+     * Upstream читает тело запроса целиком и отвечает телом из нескольких буферов.
+     */
+    private GatewayFilterChain respond(MediaType contentType, String contentEncoding) {
+        return exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+                .doOnNext(body -> {
+                    upstreamBodies.add(body.toString(StandardCharsets.UTF_8));
+                    DataBufferUtils.release(body);
+                })
+                .then(Mono.defer(() -> {
+                    HttpHeaders headers = exchange.getResponse().getHeaders();
+                    headers.setContentType(contentType);
+                    if (contentEncoding != null) {
+                        headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+                    }
+                    return exchange.getResponse().writeWith(chunks(RESPONSE_BODY));
+                }));
+    }
+
+    private MockServerWebExchange post(String path, MediaType contentType) {
+        return MockServerWebExchange.from(MockServerHttpRequest.post(path)
+                .contentType(contentType)
+                .body(chunks(REQUEST_BODY)));
+    }
+
+    private Flux<DataBuffer> chunks(String body) {
+        int half = body.length() / 2;
+        return Flux.just(body.substring(0, 5), body.substring(5, half), body.substring(half))
+                .map(this::buffer);
+    }
+
+    private DataBuffer buffer(String chunk) {
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        NettyDataBuffer buffer = bufferFactory.allocateBuffer(bytes.length);
+        buffer.write(bytes);
+        buffers.add(buffer);
+        return buffer;
+    }
+}
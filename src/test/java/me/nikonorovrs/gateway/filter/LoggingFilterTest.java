@@ -0,0 +1,117 @@
+package me.nikonorovrs.gateway.filter;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Режим access-log {@link LoggingFilter}: строки перехватываются списком на логгере фильтра.
+ */
+class LoggingFilterTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(LoggingFilter.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private final AccessLogProperties properties = new AccessLogProperties();
+    private final LoggingFilter filter = new LoggingFilter(properties);
+
+    private Level previousLevel;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        previousLevel = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+        logger.setLevel(previousLevel);
+    }
+
+    @Test
+    void shouldWriteOneLineWithRequestFields() {
+        MockServerWebExchange exchange = exchange("default", MockServerHttpRequest.get("/api/orders")
+                .header("trace-id", "trace-1"));
+
+        filter.filter(exchange, respond(HttpStatus.OK, Duration.ZERO)).block();
+
+        assertThat(lines()).singleElement().asString()
+                .matches("method=GET path=/api/orders status=200 latency_ms=\\d+ route=default trace_id=trace-1");
+    }
+
+    @Test
+    void shouldApplyRouteSampleRates() {
+        properties.setRouteSampleRates(Map.of("actuator", 0.0));
+
+        filter.filter(exchange("actuator", MockServerHttpRequest.get("/actuator/health")),
+                respond(HttpStatus.OK, Duration.ZERO)).block();
+        filter.filter(exchange("default", MockServerHttpRequest.get("/api/orders")),
+                respond(HttpStatus.OK, Duration.ZERO)).block();
+
+        assertThat(lines()).singleElement().asString()
+                .startsWith("method=GET path=/api/orders status=200 ")
+                .endsWith(" route=default trace_id=-");
+    }
+
+    @Test
+    void shouldForceErrorAndSlowExchangesWhenSamplingIsOff() {
+        properties.setSampleRate(0.0);
+        properties.setSlowThreshold(Duration.ofMillis(50));
+
+        filter.filter(exchange("default", MockServerHttpRequest.get("/fast")),
+                respond(HttpStatus.OK, Duration.ZERO)).block();
+        filter.filter(exchange("default", MockServerHttpRequest.get("/unavailable")),
+                respond(HttpStatus.SERVICE_UNAVAILABLE, Duration.ZERO)).block();
+        filter.filter(exchange("default", MockServerHttpRequest.get("/slow")),
+                respond(HttpStatus.OK, Duration.ofMillis(80))).block();
+        assertThatThrownBy(() -> filter.filter(exchange("default", MockServerHttpRequest.get("/broken")),
+                e -> Mono.error(new IllegalStateException("upstream недоступен"))).block())
+                .hasMessage("upstream недоступен");
+
+        assertThat(lines()).hasSize(3);
+        assertThat(lines().get(0)).startsWith("method=GET path=/unavailable status=503 ");
+        assertThat(lines().get(1)).startsWith("method=GET path=/slow status=200 ");
+        assertThat(lines().get(2)).startsWith("method=GET path=/broken status=error ");
+    }
+
+    private List<String> lines() {
+        return appender.list.stream().map(ILoggingEvent::getFormattedMessage).toList();
+    }
+
+    private static MockServerWebExchange exchange(String routeId, MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id(routeId)
+                .uri("http://localhost")
+                .predicate(e -> true)
+                .build());
+        return exchange;
+    }
+
+    private static GatewayFilterChain respond(HttpStatus status, Duration latency) {
+        return exchange -> Mono.delay(latency)
+                .then(Mono.fromRunnable(() -> exchange.getResponse().setStatusCode(status)));
+    }
+}
@@ -0,0 +1,127 @@
+package me.nikonorovrs.gateway.filter;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.metrics.RequestTimings;
+import me.nikonorovrs.gateway.metrics.RouteTimingProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Таймеры {@link RouteTimingWebFilter}: этапы отмечаются цепочкой через {@link RequestTimings} из Reactor-контекста.
+ */
+class RouteTimingWebFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RouteTimingProperties properties;
+    private RouteTimingWebFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RouteTimingProperties();
+        filter = new RouteTimingWebFilter(meterRegistry, properties);
+    }
+
+    @Test
+    void shouldRecordRequestAndRecordedPhasesByRoute() {
+        WebFilterChain chain = exchange -> Mono.deferContextual(context -> {
+            RequestTimings timings = RequestTimings.from(context);
+            timings.sessionLoaded(TimeUnit.MILLISECONDS.toNanos(3));
+            timings.authorized(TimeUnit.MILLISECONDS.toNanos(40), "refresh");
+            timings.lockAcquired(TimeUnit.MILLISECONDS.toNanos(15));
+            exchange.getResponse().setStatusCode(HttpStatus.BAD_GATEWAY);
+            return Mono.empty();
+        });
+
+        filter.filter(exchange("orders"), chain).block();
+
+        assertThat(meterRegistry.get("gateway.route.requests").tag("route", "orders").tag("status", "5xx").timer().count())
+                .isEqualTo(1);
+        assertThat(phase("orders", "session", "none").totalTime(TimeUnit.MILLISECONDS)).isEqualTo(3);
+        assertThat(phase("orders", "authorize", "refresh").totalTime(TimeUnit.MILLISECONDS)).isEqualTo(40);
+        assertThat(phase("orders", "lock-wait", "none").totalTime(TimeUnit.MILLISECONDS)).isEqualTo(15);
+        // Этапы, до которых запрос не дошел, не записываются
+        assertThat(meterRegistry.find("gateway.route.phase").tag("phase", "upstream-connect").timer()).isNull();
+        assertThat(meterRegistry.find("gateway.route.phase").tag("phase", "upstream-ttfb").timer()).isNull();
+    }
+
+    @Test
+    void shouldTagRequestsWithoutRouteAsNone() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/login")), exchange -> Mono.empty()).block();
+
+        assertThat(meterRegistry.get("gateway.route.requests").tag("route", "none").tag("status", "none").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void shouldPutRoutesBeyondLimitIntoOther() {
+        properties.setMaxRoutes(2);
+
+        for (String routeId : new String[]{"orders", "users", "billing", "orders", "reports"}) {
+            filter.filter(exchange(routeId), exchange -> Mono.empty()).block();
+        }
+
+        assertThat(routeTags()).containsExactlyInAnyOrder("orders", "users", "other");
+        assertThat(meterRegistry.get("gateway.route.requests").tag("route", "orders").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("gateway.route.requests").tag("route", "other").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldKeepRouteLimitUnderConcurrentFirstRequests() {
+        properties.setMaxRoutes(10);
+
+        Flux.range(0, 2000)
+                .parallel(16)
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> filter.filter(exchange("route-" + i % 200), exchange -> Mono.empty()))
+                .sequential()
+                .blockLast(Duration.ofSeconds(30));
+
+        Set<String> routeTags = routeTags();
+        assertThat(routeTags).hasSize(11).contains("other");
+        assertThat(meterRegistry.get("gateway.route.requests").timers().stream().mapToLong(Timer::count).sum())
+                .isEqualTo(2000);
+    }
+
+    private Set<String> routeTags() {
+        return meterRegistry.get("gateway.route.requests").meters().stream()
+                .map(Meter::getId)
+                .map(id -> id.getTag("route"))
+                .collect(Collectors.toSet());
+    }
+
+    private Timer phase(String route, String phase, String outcome) {
+        return meterRegistry.get("gateway.route.phase")
+                .tag("route", route)
+                .tag("phase", phase)
+                .tag("outcome", outcome)
+                .timer();
+    }
+
+    private static MockServerWebExchange exchange(String routeId) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/" + routeId));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id(routeId)
+                .uri("http://localhost")
+                .predicate(e -> true)
+                .build());
+        return exchange;
+    }
+}
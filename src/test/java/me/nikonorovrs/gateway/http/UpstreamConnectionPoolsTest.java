@@ -0,0 +1,168 @@
+package me.nikonorovrs.gateway.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.internal.shaded.reactor.pool.PoolAcquireTimeoutException;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Пулы {@link UpstreamConnectionPools}: лимиты провайдера, собранного {@link UpstreamHttpClientFactory},
+ * и выбор пула по хосту запроса на настоящем HTTP-сервере.
+ */
+class UpstreamConnectionPoolsTest {
+
+    private final HttpClientProperties properties = new HttpClientProperties();
+    private final ServerProperties serverProperties = new ServerProperties();
+    private final HttpClientPoolProperties poolProperties = new HttpClientPoolProperties();
+    private final Http2Properties http2Properties = new Http2Properties();
+
+    private ConnectionProvider provider;
+    private DisposableServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (provider != null) {
+            provider.disposeLater().block(Duration.ofSeconds(5));
+        }
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void shouldGiveBackendItsOwnLimitsAndLeaveOtherHostsOnSharedPool() {
+        sharedPool(50);
+        HttpClientPoolProperties.Upstream backend = upstream("http://backend.internal:8080");
+        backend.setMaxConnections(7);
+
+        provider = factory().buildConnectionProvider(properties);
+
+        assertThat(provider.maxConnections()).isEqualTo(50);
+        assertThat(provider.maxConnectionsPerHost())
+                .containsExactly(Map.entry(address("backend.internal", 8080), 7));
+    }
+
+    @Test
+    void shouldResolveDefaultPortsOfUpstreamUri() {
+        assertThat(UpstreamConnectionPools.remoteAddress(URI.create("http://backend.internal/api")))
+                .isEqualTo(address("backend.internal", 80));
+        assertThat(UpstreamConnectionPools.remoteAddress(URI.create("https://backend.internal")))
+                .isEqualTo(address("backend.internal", 443));
+        assertThat(UpstreamConnectionPools.remoteAddress(URI.create("http://backend.internal:8080")))
+                .isEqualTo(address("backend.internal", 8080));
+    }
+
+    @Test
+    void shouldLimitOnlyRequestsToBackendHost() {
+        server = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> response.sendString(
+                        Mono.delay(Duration.ofMillis(300)).thenReturn("ok")))
+                .bindNow();
+        sharedPool(10);
+        // Один и тот же сервер: по имени localhost - через пул backend, по 127.0.0.1 - через общий пул
+        HttpClientPoolProperties.Upstream backend = upstream("http://localhost:" + server.port());
+        backend.setMaxConnections(1);
+        backend.setPendingAcquireTimeout(Duration.ofMillis(50));
+        provider = factory().buildConnectionProvider(properties);
+        HttpClient client = HttpClient.create(provider);
+
+        assertThat(concurrentRequests(client, "http://localhost:" + server.port(), 3))
+                .containsExactlyInAnyOrder("ok", "acquire-timeout", "acquire-timeout");
+        assertThat(concurrentRequests(client, "http://127.0.0.1:" + server.port(), 3))
+                .containsExactly("ok", "ok", "ok");
+    }
+
+    @Test
+    void shouldApplyLeasingPerUpstreamOverSharedDefault() {
+        properties.getPool().setLeasingStrategy(HttpClientProperties.Pool.LeasingStrategy.FIFO);
+        upstream("http://backend.internal").setLeasing(HttpClientPoolProperties.Leasing.LIFO);
+        upstream("http://reports.internal");
+
+        ConnectionProvider.Builder builder = configure(false);
+
+        assertThat(spec(builder, "backend.internal", 80, "leasingStrategy")).isEqualTo("lifo");
+        assertThat(spec(builder, "reports.internal", 80, "leasingStrategy")).isEqualTo("fifo");
+    }
+
+    @Test
+    void shouldCountHttp2StreamsOnlyWhenUpstreamSpeaksHttp2() {
+        HttpClientPoolProperties.Upstream backend = upstream("http://backend.internal");
+        backend.setMaxConnections(7);
+        backend.getHttp2().setMaxConcurrentStreams(100L);
+        backend.getHttp2().setMinConnections(1);
+
+        assertThat(spec(configure(false), "backend.internal", 80, "allocationStrategy")).isNull();
+
+        Object strategy = spec(configure(true), "backend.internal", 80, "allocationStrategy");
+        assertThat(strategy).isInstanceOfSatisfying(Http2AllocationStrategy.class, http2 -> {
+            assertThat(http2.maxConcurrentStreams()).isEqualTo(100);
+            assertThat(http2.permitMinimum()).isEqualTo(1);
+            assertThat(http2.permitMaximum()).isEqualTo(7);
+        });
+    }
+
+    private void sharedPool(int maxConnections) {
+        properties.getPool().setType(HttpClientProperties.Pool.PoolType.FIXED);
+        properties.getPool().setMaxConnections(maxConnections);
+        properties.getPool().setAcquireTimeout(5000L);
+    }
+
+    private HttpClientPoolProperties.Upstream upstream(String uri) {
+        HttpClientPoolProperties.Upstream upstream = new HttpClientPoolProperties.Upstream();
+        upstream.setUri(URI.create(uri));
+        poolProperties.getUpstreams().put(upstream.getUri().getHost(), upstream);
+        return upstream;
+    }
+
+    private UpstreamHttpClientFactory factory() {
+        return new UpstreamHttpClientFactory(properties, serverProperties, null, List.of(),
+                poolProperties, http2Properties);
+    }
+
+    private ConnectionProvider.Builder configure(boolean http2Enabled) {
+        return UpstreamConnectionPools.configure(ConnectionProvider.builder("test"), poolProperties,
+                properties.getPool(), http2Enabled);
+    }
+
+    private static List<String> concurrentRequests(HttpClient client, String uri, int count) {
+        return Flux.range(0, count)
+                .flatMap(i -> client.get()
+                        .uri(uri)
+                        .responseContent()
+                        .aggregate()
+                        .asString()
+                        .onErrorReturn(PoolAcquireTimeoutException.class, "acquire-timeout"))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+    }
+
+    private static Object spec(ConnectionProvider.Builder builder, String host, int port, String field) {
+        Map<?, ?> specs = (Map<?, ?>) ReflectionTestUtils.getField(builder, "confPerRemoteHost");
+        Object spec = specs.get(address(host, port));
+        assertThat(spec).as("пул %s:%d", host, port).isNotNull();
+        return ReflectionTestUtils.getField(spec, field);
+    }
+
+    private static SocketAddress address(String host, int port) {
+        return InetSocketAddress.createUnresolved(host, port);
+    }
+}
@@ -0,0 +1,217 @@
+package me.nikonorovrs.gateway.load;
+
+import com.nimbusds.jose.JOSEException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный прогон шлюза: вход пользователей через заглушку OIDC, затем пачки параллельных XHR-запросов
+ * к маршруту default с TokenRelay. Короткий срок жизни токенов и одновременный вход всех пользователей
+ * дают волны одновременного обновления токенов.
+ * <p>
+ * Запуск: {@code mvn -Pload-test test -Dload.users=500 -Dload.duration=2m}, параметры см. {@link LoadTestSettings}.
+ * Для сравнения HTTP/1.1 и HTTP/2 тот же сценарий запускается с {@code -Dload.protocol=h2c}.
+ * Отчет с пропускной способностью, перцентилями латентности и числом команд Redis на запрос
+ * пишется в лог и в {@code target/load-test-report.txt}.
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = LoadTestRedisInitializer.class)
+class GatewayLoadTest {
+
+    private static final LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+
+    private static final int BROWSER_CONNECTIONS_PER_HOST = 6;
+
+    private static StubOidcProvider oidcProvider;
+    private static StubUpstream upstream;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ReactiveRedisConnectionFactory redisConnectionFactory;
+
+    @DynamicPropertySource
+    static void stubProperties(DynamicPropertyRegistry registry) throws JOSEException {
+        oidcProvider = new StubOidcProvider(settings.tokenLifetime(), settings.oidcLatency());
+        upstream = new StubUpstream(settings.upstreamLatency());
+
+        registry.add("spring.security.oauth2.client.provider.keycloak.issuer-uri", oidcProvider::issuer);
+        registry.add("spring.security.oauth2.client.registration.keycloak.client-id", () -> "load-test");
+        registry.add("spring.security.oauth2.client.registration.keycloak.client-secret", () -> "load-test-secret");
+        registry.add("spring.security.oauth2.client.registration.keycloak.scope", () -> "openid,profile,email");
+        registry.add("spring.security.oauth2.client.registration.keycloak.redirect-uri",
+                () -> "{baseUrl}/login/oauth2/code/{registrationId}");
+
+        registry.add("spring.cloud.gateway.routes[0].id", () -> "default");
+        registry.add("spring.cloud.gateway.routes[0].uri", upstream::url);
+        registry.add("spring.cloud.gateway.routes[0].predicates[0]", () -> "Path=/**");
+        registry.add("spring.cloud.gateway.routes[0].filters[0]", () -> "TokenRelay");
+
+        // h2c на входе (TLS нет) и HTTP/2 по предварительному знанию к upstream
+        registry.add("server.http2.enabled", settings::http2);
+        if (settings.http2()) {
+            registry.add("app.http2.upstream.protocols", () -> "H2C");
+        }
+
+        registry.add("spring.refresh-lock.namespace", () -> "refresh-lock-load");
+        registry.add("spring.oauth2.redis.namespace", () -> "gateway-token-load");
+        registry.add("spring.session.redis.namespace", () -> "gateway-session-load");
+        // Построчный лог каждого обмена в консоль измерял бы скорость консоли, а не шлюза
+        registry.add("logging.level.me.nikonorovrs.gateway.filter.LoggingFilter", () -> "WARN");
+    }
+
+    @AfterAll
+    static void stopStubs() {
+        upstream.close();
+        oidcProvider.close();
+    }
+
+    @Test
+    void gatewayUnderLoad() throws IOException {
+        String gatewayUrl = "http://localhost:" + port;
+        AtomicLong clientConnections = new AtomicLong();
+
+        // У каждого пользователя свой пул, как у вкладки браузера: шесть соединений HTTP/1.1 или одно HTTP/2
+        List<ConnectionProvider> connectionProviders = new ArrayList<>(settings.users());
+        List<VirtualUser> users = new ArrayList<>(settings.users());
+        for (int i = 0; i < settings.users(); i++) {
+            ConnectionProvider connectionProvider = ConnectionProvider.builder("load-test-" + i)
+                    .maxConnections(settings.http2() ? 1 : BROWSER_CONNECTIONS_PER_HOST)
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            connectionProviders.add(connectionProvider);
+            HttpClient httpClient = HttpClient.create(connectionProvider)
+                    .protocol(settings.protocol())
+                    .doOnChannelInit((observer, channel, address) -> clientConnections.incrementAndGet());
+            users.add(new VirtualUser("user-" + i, gatewayUrl, httpClient));
+        }
+
+        try {
+            long loginStart = System.nanoTime();
+            Flux.fromIterable(users)
+                    .flatMap(VirtualUser::login, settings.loginConcurrency())
+                    .blockLast(Duration.ofMinutes(5));
+            Duration loginTime = Duration.ofNanos(System.nanoTime() - loginStart);
+
+            Map<String, Long> redisCallsBefore = redisCommandCalls();
+            long refreshGrantsBefore = oidcProvider.refreshGrants();
+            LoadStatistics statistics = new LoadStatistics();
+
+            long start = System.nanoTime();
+            Flux.fromIterable(users)
+                    .flatMap(user -> user.run(settings, statistics), settings.users())
+                    .take(settings.duration())
+                    .blockLast(settings.duration().plusMinutes(1));
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            Map<String, Long> redisCalls = difference(redisCommandCalls(), redisCallsBefore);
+            String report = report(statistics, elapsed, loginTime, redisCalls,
+                    oidcProvider.refreshGrants() - refreshGrantsBefore,
+                    clientConnections.get(), upstream.connections());
+            log.info("Результаты нагрузочного теста:\n{}", report);
+            Path reportFile = Path.of("target", "load-test-report.txt");
+            Files.createDirectories(reportFile.getParent());
+            Files.writeString(reportFile, report);
+
+            double errorRate = statistics.requests() == 0 ? 1.0 : (double) statistics.errors() / statistics.requests();
+            assertTrue(errorRate <= settings.maxErrorRate(),
+                    "Доля ошибок " + errorRate + " превышает " + settings.maxErrorRate());
+        } finally {
+            Flux.fromIterable(connectionProviders)
+                    .flatMap(ConnectionProvider::disposeLater)
+                    .blockLast(Duration.ofSeconds(30));
+        }
+    }
+
+    private String report(LoadStatistics statistics, Duration elapsed, Duration loginTime,
+                          Map<String, Long> redisCalls, long refreshGrants,
+                          long clientConnections, long upstreamConnections) {
+        long requests = statistics.requests();
+        long redisTotal = redisCalls.values().stream().mapToLong(Long::longValue).sum();
+        StringBuilder report = new StringBuilder()
+                .append(String.format(Locale.ROOT, "Пользователей: %d, пачка: %d, пауза: %s, длительность: %s, срок токена: %s%n",
+                        settings.users(), settings.burst(), settings.thinkTime(), settings.duration(), settings.tokenLifetime()))
+                .append(String.format(Locale.ROOT, "Протокол: %s%n", settings.protocol()))
+                .append(String.format(Locale.ROOT, "Вход всех пользователей: %.1f с%n", loginTime.toMillis() / 1000.0))
+                .append(String.format(Locale.ROOT, "Запросов: %d, ошибок: %d, пропускная способность: %.1f запр/с%n",
+                        requests, statistics.errors(), requests * 1000.0 / Math.max(elapsed.toMillis(), 1)))
+                .append(String.format(Locale.ROOT, "Латентность, мс: p50=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                        statistics.percentileMillis(50), statistics.percentileMillis(99),
+                        statistics.percentileMillis(99.9), statistics.maxMillis()))
+                .append(String.format(Locale.ROOT, "Обновлений токенов: %d, запросов к upstream: %d%n",
+                        refreshGrants, upstream.requests()))
+                .append(String.format(Locale.ROOT, "Открыто соединений: пользователи -> шлюз %d, шлюз -> upstream %d%n",
+                        clientConnections, upstreamConnections))
+                .append(String.format(Locale.ROOT, "Команд Redis на запрос: %.2f (всего %d)%n",
+                        requests == 0 ? 0.0 : (double) redisTotal / requests, redisTotal));
+        redisCalls.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .forEach(command -> report.append(String.format(Locale.ROOT, "  %-12s %.3f%n",
+                        command.getKey(), requests == 0 ? 0.0 : (double) command.getValue() / requests)));
+        return report.toString();
+    }
+
+    // Счетчики вызовов по командам из INFO commandstats, без самой команды INFO
+    private Map<String, Long> redisCommandCalls() {
+        ReactiveRedisConnection connection = redisConnectionFactory.getReactiveConnection();
+        try {
+            Properties info = connection.serverCommands().info("commandstats").block();
+            Map<String, Long> calls = new TreeMap<>();
+            if (info != null) {
+                info.forEach((key, value) -> {
+                    String name = key.toString();
+                    if (name.startsWith("cmdstat_") && !name.equals("cmdstat_info")) {
+                        String stats = value.toString();
+                        calls.put(name.substring("cmdstat_".length()),
+                                Long.parseLong(stats.substring("calls=".length(), stats.indexOf(','))));
+                    }
+                });
+            }
+            return calls;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static Map<String, Long> difference(Map<String, Long> after, Map<String, Long> before) {
+        Map<String, Long> difference = new TreeMap<>();
+        after.forEach((command, calls) -> {
+            long delta = calls - before.getOrDefault(command, 0L);
+            if (delta > 0) {
+                difference.put(command, delta);
+            }
+        });
+        return difference;
+    }
+}
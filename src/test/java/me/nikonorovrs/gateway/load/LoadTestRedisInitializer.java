@@ -0,0 +1,26 @@
+package me.nikonorovrs.gateway.load;
+
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Redis для нагрузочного теста: внешний экземпляр из {@code -Dload.redis.host}/{@code -Dload.redis.port}
+ * или контейнер {@link RedisTestContainer}.
+ */
+public class LoadTestRedisInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    @Override
+    public void initialize(ConfigurableApplicationContext applicationContext) {
+        String host = System.getProperty("load.redis.host");
+        if (host == null) {
+            new RedisTestContainer().initialize(applicationContext);
+            return;
+        }
+        TestPropertyValues.of(
+                "spring.data.redis.host=" + host,
+                "spring.data.redis.port=" + Integer.getInteger("load.redis.port", 6379)
+        ).applyTo(applicationContext);
+    }
+}
@@ -0,0 +1,66 @@
+package me.nikonorovrs.gateway.load;
+
+import org.springframework.boot.convert.DurationStyle;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Параметры нагрузочного сценария, задаются системными свойствами {@code -Dload.*}.
+ *
+ * @param users            число виртуальных пользователей
+ * @param loginConcurrency сколько пользователей входят одновременно
+ * @param burst            число параллельных XHR-запросов в одной пачке пользователя
+ * @param thinkTime        пауза пользователя между пачками, фактическая пауза случайна в пределах [0.5, 1.5] от нее
+ * @param duration         длительность основной фазы
+ * @param tokenLifetime    срок жизни access-токена заглушки; при spring.refresh-lock.buffer=60 значение 75s
+ *                         отправляет токен на обновление через 15 секунд после выдачи
+ * @param oidcLatency      задержка ответов token endpoint заглушки
+ * @param upstreamLatency  задержка ответов заглушки upstream
+ * @param maxErrorRate     допустимая доля ошибочных запросов
+ * @param protocol         протокол пользователей и шлюза: HTTP11 - до шести соединений на пользователя, как у браузера;
+ *                         H2C - одно мультиплексированное соединение на пользователя и HTTP/2 без TLS к upstream
+ */
+record LoadTestSettings(
+        int users,
+        int loginConcurrency,
+        int burst,
+        Duration thinkTime,
+        Duration duration,
+        Duration tokenLifetime,
+        Duration oidcLatency,
+        Duration upstreamLatency,
+        double maxErrorRate,
+        HttpProtocol protocol) {
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("load.users", 200),
+                Integer.getInteger("load.login-concurrency", 50),
+                Integer.getInteger("load.burst", 6),
+                duration("load.think-time", "500ms"),
+                duration("load.duration", "60s"),
+                duration("load.token-lifetime", "75s"),
+                duration("load.oidc-latency", "50ms"),
+                duration("load.upstream-latency", "20ms"),
+                Double.parseDouble(System.getProperty("load.max-error-rate", "0.01")),
+                protocol(System.getProperty("load.protocol", "http11")));
+    }
+
+    boolean http2() {
+        return protocol == HttpProtocol.H2C;
+    }
+
+    private static HttpProtocol protocol(String value) {
+        HttpProtocol protocol = HttpProtocol.valueOf(value.toUpperCase(Locale.ROOT));
+        if (protocol != HttpProtocol.HTTP11 && protocol != HttpProtocol.H2C) {
+            throw new IllegalArgumentException("load.protocol: поддерживаются http11 и h2c, указано " + value);
+        }
+        return protocol;
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+}
@@ -0,0 +1,209 @@
+package me.nikonorovrs.gateway.load;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Заглушка Keycloak: discovery, JWKS, authorization endpoint без формы входа и token endpoint
+ * с настраиваемой задержкой и коротким сроком жизни токенов.
+ * <p>
+ * Пользователь передается в authorization endpoint параметром {@code user}, endpoint сразу
+ * возвращает редирект на redirect_uri с кодом.
+ */
+@Slf4j
+class StubOidcProvider implements AutoCloseable {
+
+    private static final String REFRESH_TOKEN_PREFIX = "refresh.";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, PendingLogin> pendingLogins = new ConcurrentHashMap<>();
+    private final AtomicLong codeGrants = new AtomicLong();
+    private final AtomicLong refreshGrants = new AtomicLong();
+    private final Duration tokenLifetime;
+    private final Duration latency;
+    private final RSAKey signingKey;
+    private final RSASSASigner signer;
+    private final DisposableServer server;
+
+    StubOidcProvider(Duration tokenLifetime, Duration latency) throws JOSEException {
+        this.tokenLifetime = tokenLifetime;
+        this.latency = latency;
+        this.signingKey = new RSAKeyGenerator(2048).keyID("load-test").generate();
+        this.signer = new RSASSASigner(signingKey);
+        this.server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .route(routes -> routes
+                        .get("/.well-known/openid-configuration", (request, response) -> json(response, discovery()))
+                        .get("/protocol/openid-connect/certs", (request, response) -> json(response,
+                                new JWKSet(signingKey.toPublicJWK()).toJSONObject()))
+                        .get("/protocol/openid-connect/auth", this::authorize)
+                        .post("/protocol/openid-connect/token", this::token))
+                .bindNow();
+    }
+
+    String issuer() {
+        return "http://localhost:" + server.port();
+    }
+
+    long codeGrants() {
+        return codeGrants.get();
+    }
+
+    long refreshGrants() {
+        return refreshGrants.get();
+    }
+
+    private Map<String, Object> discovery() {
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("issuer", issuer());
+        configuration.put("authorization_endpoint", issuer() + "/protocol/openid-connect/auth");
+        configuration.put("token_endpoint", issuer() + "/protocol/openid-connect/token");
+        configuration.put("jwks_uri", issuer() + "/protocol/openid-connect/certs");
+        configuration.put("response_types_supported", List.of("code"));
+        configuration.put("subject_types_supported", List.of("public"));
+        configuration.put("id_token_signing_alg_values_supported", List.of("RS256"));
+        configuration.put("grant_types_supported", List.of("authorization_code", "refresh_token"));
+        return configuration;
+    }
+
+    private Mono<Void> authorize(HttpServerRequest request, HttpServerResponse response) {
+        Map<String, List<String>> parameters = new QueryStringDecoder(request.uri()).parameters();
+        String code = UUID.randomUUID().toString();
+        pendingLogins.put(code, new PendingLogin(first(parameters, "user"), first(parameters, "client_id"),
+                first(parameters, "nonce")));
+
+        String location = UriComponentsBuilder.fromUriString(first(parameters, "redirect_uri"))
+                .queryParam("code", code)
+                .queryParam("state", first(parameters, "state"))
+                .build()
+                .toUriString();
+        return response.status(HttpResponseStatus.FOUND)
+                .header(HttpHeaderNames.LOCATION, location)
+                .send();
+    }
+
+    private Mono<Void> token(HttpServerRequest request, HttpServerResponse response) {
+        return request.receive().aggregate().asString()
+                .map(body -> new QueryStringDecoder(body, false).parameters())
+                .delayElement(latency)
+                .flatMap(parameters -> {
+                    String grantType = first(parameters, "grant_type");
+                    if ("authorization_code".equals(grantType)) {
+                        PendingLogin login = pendingLogins.remove(first(parameters, "code"));
+                        if (login == null) {
+                            return error(response, "invalid_grant");
+                        }
+                        codeGrants.incrementAndGet();
+                        return json(response, tokenResponse(login.user(), login.clientId(), login.nonce()));
+                    }
+                    if ("refresh_token".equals(grantType)) {
+                        String refreshToken = first(parameters, "refresh_token");
+                        if (refreshToken == null || !refreshToken.startsWith(REFRESH_TOKEN_PREFIX)) {
+                            return error(response, "invalid_grant");
+                        }
+                        refreshGrants.incrementAndGet();
+                        String user = refreshToken.substring(REFRESH_TOKEN_PREFIX.length(), refreshToken.lastIndexOf('.'));
+                        return json(response, tokenResponse(user, null, null));
+                    }
+                    return error(response, "unsupported_grant_type");
+                });
+    }
+
+    private Map<String, Object> tokenResponse(String user, String clientId, String nonce) {
+        Instant now = Instant.now();
+        Map<String, Object> tokens = new LinkedHashMap<>();
+        tokens.put("access_token", sign(user, clientId, null, now));
+        tokens.put("token_type", "Bearer");
+        tokens.put("expires_in", tokenLifetime.toSeconds());
+        tokens.put("refresh_token", REFRESH_TOKEN_PREFIX + user + "." + UUID.randomUUID());
+        tokens.put("scope", "openid profile email");
+        // id_token выдается только при входе, как и в Keycloak без scope=openid в refresh-запросе
+        if (clientId != null) {
+            tokens.put("id_token", sign(user, clientId, nonce, now));
+        }
+        return tokens;
+    }
+
+    private String sign(String user, String audience, String nonce, Instant issuedAt) {
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+                .issuer(issuer())
+                .subject(user)
+                .issueTime(Date.from(issuedAt))
+                .expirationTime(Date.from(issuedAt.plus(tokenLifetime)))
+                .claim("preferred_username", user);
+        if (audience != null) {
+            claims.audience(audience);
+        }
+        if (nonce != null) {
+            claims.claim("nonce", nonce);
+        }
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(),
+                claims.build());
+        try {
+            jwt.sign(signer);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Не удалось подписать токен", e);
+        }
+        return jwt.serialize();
+    }
+
+    private Mono<Void> json(HttpServerResponse response, Object body) {
+        try {
+            return response.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                    .sendString(Mono.just(objectMapper.writeValueAsString(body)))
+                    .then();
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+    }
+
+    private Mono<Void> error(HttpServerResponse response, String error) {
+        log.warn("Заглушка OIDC отклонила запрос токена: {}", error);
+        return json(response.status(HttpResponseStatus.BAD_REQUEST), Map.of("error", error));
+    }
+
+    private static String first(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private record PendingLogin(String user, String clientId, String nonce) {
+    }
+}
@@ -0,0 +1,62 @@
+package me.nikonorovrs.gateway.load;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Заглушка backend-сервиса маршрута default: отвечает небольшим JSON с задержкой и отклоняет запросы
+ * без Bearer-токена, чтобы ошибки TokenRelay попадали в отчет.
+ */
+class StubUpstream implements AutoCloseable {
+
+    private static final String BODY = "{\"items\":[{\"id\":1,\"name\":\"first\"},{\"id\":2,\"name\":\"second\"}]}";
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final DisposableServer server;
+
+    StubUpstream(Duration latency) {
+        this.server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                // HTTP/1.1 и h2c принимаются одновременно, протокол выбирает клиент
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .doOnChannelInit((observer, channel, address) -> connections.incrementAndGet())
+                .handle((request, response) -> {
+                    requests.incrementAndGet();
+                    String authorization = request.requestHeaders().get(HttpHeaderNames.AUTHORIZATION);
+                    if (authorization == null || !authorization.startsWith("Bearer ")) {
+                        return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+                    }
+                    return Mono.delay(latency)
+                            .then(response.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                    .sendString(Mono.just(BODY))
+                                    .then());
+                })
+                .bindNow();
+    }
+
+    String url() {
+        return "http://localhost:" + server.port();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    long connections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
@@ -0,0 +1,120 @@
+package me.nikonorovrs.gateway.load;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.cookie.Cookie;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Пользователь браузера: проходит вход через шлюз и заглушку OIDC, хранит cookie сессии
+ * и отправляет пачки параллельных XHR-запросов к маршруту default.
+ */
+class VirtualUser {
+
+    private final String name;
+    private final String gatewayUrl;
+    private final HttpClient httpClient;
+    private final Map<String, String> cookies = new ConcurrentHashMap<>();
+
+    VirtualUser(String name, String gatewayUrl, HttpClient httpClient) {
+        this.name = name;
+        this.gatewayUrl = gatewayUrl;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Вход по authorization code: шлюз -> authorization endpoint заглушки -> callback шлюза.
+     */
+    Mono<Void> login() {
+        return send(gatewayUrl + "/oauth2/authorization/keycloak")
+                .map(response -> location(response, "authorization endpoint"))
+                .flatMap(authorizeUrl -> send(authorizeUrl + "&user=" + name))
+                .map(response -> location(response, "callback"))
+                .flatMap(this::send)
+                .doOnNext(response -> {
+                    String location = response.headers().get(HttpHeaderNames.LOCATION);
+                    if (response.status() != 302 || location == null || location.contains("error")) {
+                        throw new IllegalStateException("Вход пользователя " + name + " не выполнен: "
+                                + response.status() + " " + location);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * Повторяет пачки запросов с паузами, пока подписка не будет отменена.
+     */
+    Flux<Void> run(LoadTestSettings settings, LoadStatistics statistics) {
+        return Flux.range(0, settings.burst())
+                .flatMap(index -> call("/api/items/" + index, statistics), settings.burst())
+                .then(Mono.defer(() -> Mono.delay(jitter(settings.thinkTime()))))
+                .then()
+                .repeat();
+    }
+
+    private Mono<Void> call(String path, LoadStatistics statistics) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return send(gatewayUrl + path)
+                    .doOnNext(response -> statistics.record(System.nanoTime() - start, response.status() == 200))
+                    .onErrorResume(e -> {
+                        statistics.record(System.nanoTime() - start, false);
+                        return Mono.empty();
+                    })
+                    .then();
+        });
+    }
+
+    private Mono<Response> send(String url) {
+        return httpClient
+                .headers(headers -> {
+                    if (!cookies.isEmpty()) {
+                        headers.set(HttpHeaderNames.COOKIE, cookies.entrySet().stream()
+                                .map(cookie -> cookie.getKey() + "=" + cookie.getValue())
+                                .collect(Collectors.joining("; ")));
+                    }
+                })
+                .get()
+                .uri(url)
+                .responseSingle((response, body) -> body.asByteArray()
+                        .then(Mono.fromSupplier(() -> toResponse(response))));
+    }
+
+    private Response toResponse(HttpClientResponse response) {
+        for (Set<Cookie> values : response.cookies().values()) {
+            for (Cookie cookie : values) {
+                if (cookie.maxAge() == 0) {
+                    cookies.remove(cookie.name());
+                } else {
+                    cookies.put(cookie.name(), cookie.value());
+                }
+            }
+        }
+        return new Response(response.status().code(), response.responseHeaders());
+    }
+
+    private static String location(Response response, String step) {
+        String location = response.headers().get(HttpHeaderNames.LOCATION);
+        if (location == null) {
+            throw new IllegalStateException("Нет редиректа на " + step + ", статус " + response.status());
+        }
+        return location;
+    }
+
+    private static Duration jitter(Duration thinkTime) {
+        return Duration.ofNanos((long) (thinkTime.toNanos() * ThreadLocalRandom.current().nextDouble(0.5, 1.5)));
+    }
+
+    private record Response(int status, HttpHeaders headers) {
+    }
+}
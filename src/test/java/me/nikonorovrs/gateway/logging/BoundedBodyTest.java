@@ -0,0 +1,56 @@
+package me.nikonorovrs.gateway.logging;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedBodyTest {
+
+    @Test
+    void shouldKeepPrefixUpToLimitAcrossBuffers() {
+        BoundedBody body = new BoundedBody(8);
+
+        body.append(buffer("abc"));
+        body.append(buffer("defgh"));
+        body.append(buffer("ijk"));
+
+        assertThat(new String(body.bytes(), StandardCharsets.UTF_8)).isEqualTo("abcdefgh");
+        assertThat(body.totalSize()).isEqualTo(11);
+        assertThat(body.truncated()).isTrue();
+        assertThat(CapturedBodies.bytes(body)).asString(StandardCharsets.UTF_8).isEqualTo("abcdefgh...");
+    }
+
+    @Test
+    void shouldNotMarkBodyWithinLimitAsTruncated() {
+        BoundedBody body = new BoundedBody(8);
+
+        body.append(buffer("abc"));
+        body.append(buffer("de"));
+
+        assertThat(new String(body.bytes(), StandardCharsets.UTF_8)).isEqualTo("abcde");
+        assertThat(body.truncated()).isFalse();
+        assertThat(CapturedBodies.bytes(body)).asString(StandardCharsets.UTF_8).isEqualTo("abcde");
+        assertThat(CapturedBodies.bytes(null)).isEmpty();
+    }
+
+    @Test
+    void shouldNotConsumeAppendedBuffers() {
+        BoundedBody body = new BoundedBody(4);
+        DataBuffer buffer = buffer("abcdef");
+        buffer.readPosition(2);
+
+        body.append(buffer);
+
+        assertThat(new String(body.bytes(), StandardCharsets.UTF_8)).isEqualTo("cdef");
+        assertThat(buffer.readPosition()).isEqualTo(2);
+        assertThat(buffer.readableByteCount()).isEqualTo(4);
+    }
+
+    private static DataBuffer buffer(String content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
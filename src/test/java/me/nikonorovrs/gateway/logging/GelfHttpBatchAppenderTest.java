@@ -0,0 +1,152 @@
+package me.nikonorovrs.gateway.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import com.sun.net.httpserver.HttpServer;
+import de.siegmar.logbackgelf.GelfEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link GelfHttpBatchAppender} с HTTP-входом Graylog, имитированным встроенным HTTP-сервером JDK.
+ */
+class GelfHttpBatchAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("gelf-test");
+    private final List<ReceivedBatch> batches = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+    private volatile int status = 202;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/gelf", exchange -> {
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            try (InputStream body = "gzip".equals(encoding)
+                    ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+                batches.add(new ReceivedBatch(encoding, new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void shouldSendBatchAsOneCompressedRequest() {
+        GelfHttpBatchAppender appender = appender(true);
+
+        appender.appendBatch(List.of(event("первое"), event("второе"), event("третье")));
+        appender.stop();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0).encoding()).isEqualTo("gzip");
+        assertThat(batches.get(0).messages())
+                .hasSize(3)
+                .allMatch(message -> message.startsWith("{") && message.contains("\"short_message\""));
+        assertThat(batches.get(0).messages().get(1)).contains("второе");
+        assertThat(appender.sentCount()).isEqualTo(3);
+        assertThat(appender.failedCount()).isZero();
+    }
+
+    @Test
+    void shouldSendUncompressedBatch() {
+        GelfHttpBatchAppender appender = appender(false);
+
+        appender.appendBatch(List.of(event("первое"), event("второе")));
+        appender.stop();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0).encoding()).isNull();
+        assertThat(batches.get(0).messages()).hasSize(2);
+    }
+
+    @Test
+    void shouldCountRejectedBatchAsFailed() {
+        status = 500;
+        GelfHttpBatchAppender appender = appender(true);
+
+        appender.appendBatch(List.of(event("первое"), event("второе")));
+        appender.stop();
+
+        assertThat(appender.sentCount()).isZero();
+        assertThat(appender.failedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldFlushRingBufferInBatches() {
+        GelfHttpBatchAppender gelf = appender(true);
+        RingBufferAppender ring = new RingBufferAppender();
+        ring.setContext(context);
+        ring.setName("ring");
+        ring.setBufferSize(2048);
+        ring.setBatchSize(100);
+        ring.setMaxFlushTime(10_000);
+        ring.addAppender(gelf);
+        ring.start();
+
+        for (int i = 0; i < 1000; i++) {
+            ring.doAppend(event("сообщение " + i));
+        }
+        // Остановка дожидается отправки всех событий из буфера
+        ring.stop();
+
+        assertThat(batches).allMatch(batch -> batch.messages().size() <= 100);
+        List<String> messages = new ArrayList<>();
+        batches.forEach(batch -> messages.addAll(batch.messages()));
+        assertThat(messages).hasSize(1000);
+        assertThat(messages.get(999)).contains("сообщение 999");
+        assertThat(gelf.sentCount()).isEqualTo(1000);
+        assertThat(ring.dispatchedCount()).isEqualTo(1000);
+    }
+
+    private GelfHttpBatchAppender appender(boolean compressed) {
+        GelfEncoder encoder = new GelfEncoder();
+        encoder.setContext(context);
+        encoder.setIncludeLevelName(true);
+        encoder.start();
+        GelfHttpBatchAppender appender = new GelfHttpBatchAppender();
+        appender.setContext(context);
+        appender.setName("gelf");
+        appender.setUrl("http://localhost:" + server.getAddress().getPort() + "/gelf");
+        appender.setCompressed(compressed);
+        appender.setEncoder(encoder);
+        appender.start();
+        return appender;
+    }
+
+    private ILoggingEvent event(String message) {
+        return new LoggingEvent(Logger.FQCN, logger, Level.INFO, message, null, null);
+    }
+
+    private record ReceivedBatch(String encoding, String body) {
+
+        List<String> messages() {
+            return body.lines().toList();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package me.nikonorovrs.gateway.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RingBufferAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("ring-buffer-test");
+
+    private RecordingAppender downstream;
+    private RingBufferAppender appender;
+
+    @BeforeEach
+    void setUp() {
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        downstream = new RecordingAppender();
+        downstream.setContext(context);
+        downstream.start();
+        appender = new RingBufferAppender();
+        appender.setContext(context);
+        appender.setName("test");
+        appender.setMaxFlushTime(5_000);
+        appender.addAppender(downstream);
+    }
+
+    @AfterEach
+    void tearDown() {
+        downstream.release.countDown();
+        appender.stop();
+    }
+
+    @Test
+    void shouldKeepOrderOfEachProducer() throws Exception {
+        int producers = 8;
+        int perProducer = 5_000;
+        appender.setBufferSize(65_536);
+        appender.setBatchSize(256);
+        appender.start();
+        downstream.release.countDown();
+
+        produce(producers, perProducer, Level.WARN);
+        appender.stop();
+
+        assertThat(downstream.events).hasSize(producers * perProducer);
+        assertThat(appender.dispatchedCount()).isEqualTo(producers * perProducer);
+        assertThat(appender.droppedCount(Level.WARN)).isZero();
+        assertThat(downstream.batchSizes).allMatch(size -> size <= 256);
+        Map<Object, Integer> lastSequence = new HashMap<>();
+        for (ILoggingEvent event : downstream.events) {
+            Object producer = event.getArgumentArray()[0];
+            int sequence = (Integer) event.getArgumentArray()[1];
+            assertThat(sequence).isEqualTo(lastSequence.getOrDefault(producer, -1) + 1);
+            lastSequence.put(producer, sequence);
+        }
+    }
+
+    @Test
+    void shouldDropWithoutBlockingWhenBufferIsFull() throws Exception {
+        appender.setBufferSize(16);
+        appender.start();
+        stallConsumer();
+
+        produce(4, 100, Level.WARN);
+
+        assertThat(appender.size()).isEqualTo(16);
+        assertThat(appender.droppedCount(Level.WARN)).isEqualTo(400 - 16);
+        downstream.release.countDown();
+        appender.stop();
+        assertThat(downstream.events).hasSize(1 + 16);
+    }
+
+    @Test
+    void shouldShedLowerLevelsFirst() throws Exception {
+        appender.setBufferSize(16);
+        appender.setDebugDropThreshold(0.5);
+        appender.setInfoSampleThreshold(0.75);
+        appender.setInfoSampleRate(0);
+        appender.start();
+        stallConsumer();
+
+        produce(1, 20, Level.DEBUG);
+        produce(1, 20, Level.INFO);
+        produce(1, 20, Level.ERROR);
+
+        assertThat(appender.droppedCount(Level.DEBUG)).isEqualTo(20 - 8);
+        assertThat(appender.droppedCount(Level.INFO)).isEqualTo(20 - 4);
+        assertThat(appender.droppedCount(Level.ERROR)).isEqualTo(20 - 4);
+        downstream.release.countDown();
+        appender.stop();
+        assertThat(downstream.events).extracting(ILoggingEvent::getLevel)
+                .containsOnly(Level.WARN, Level.DEBUG, Level.INFO, Level.ERROR)
+                .hasSize(1 + 16);
+    }
+
+    @Test
+    void shouldNotStartWithInvalidBufferOrWithoutAppenders() {
+        appender.setBufferSize(1000);
+        appender.start();
+        assertThat(appender.isStarted()).isFalse();
+
+        RingBufferAppender empty = new RingBufferAppender();
+        empty.setContext(context);
+        empty.start();
+        assertThat(empty.isStarted()).isFalse();
+    }
+
+    // Потребитель забирает первое событие и останавливается во вложенном appender до release
+    private void stallConsumer() throws InterruptedException {
+        appender.doAppend(event(Level.WARN, "blocker", 0));
+        assertThat(downstream.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(appender.size()).isZero();
+    }
+
+    private void produce(int producers, int perProducer, Level level) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(producers);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String producer = "producer-" + p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    appender.doAppend(event(level, producer, i));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private ILoggingEvent event(Level level, String producer, int sequence) {
+        return new LoggingEvent(Logger.FQCN, logger, level, "{} {}", null, new Object[]{producer, sequence});
+    }
+
+    private static class RecordingAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+            implements BatchAppender<ILoggingEvent> {
+
+        final List<ILoggingEvent> events = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            appendBatch(List.of(event));
+        }
+
+        @Override
+        public void appendBatch(List<ILoggingEvent> batch) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Вызывается только потоком-потребителем, чтение - после его остановки
+            events.addAll(batch);
+            batchSizes.add(batch.size());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package me.nikonorovrs.gateway.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static me.nikonorovrs.gateway.ratelimit.BatchedRedisRateLimiter.REMAINING_HEADER;
+import static me.nikonorovrs.gateway.ratelimit.BatchedRedisRateLimiter.RETRY_AFTER_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link BatchedRedisRateLimiter} на настоящем Redis: несколько экземпляров с общим префиксом играют роль узлов.
+ */
+class BatchedRedisRateLimiterTest {
+
+    private static final String ROUTE = "route";
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private RateLimitProperties properties;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimitProperties();
+        properties.setKeyPrefix("rate-limit-test:" + UUID.randomUUID() + ":");
+    }
+
+    @Test
+    void shouldDecideLocallyUntilSync() {
+        BatchedRedisRateLimiter limiter = limiter(redisTemplate, 3);
+
+        assertThat(remaining(limiter)).isEqualTo("2");
+        assertThat(remaining(limiter)).isEqualTo("1");
+        assertThat(remaining(limiter)).isEqualTo("0");
+        RateLimiter.Response denied = limiter.isAllowed(ROUTE, "user").block();
+
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getHeaders()).containsEntry(REMAINING_HEADER, "0").containsKey(RETRY_AFTER_HEADER);
+        assertThat(redisTemplate.hasKey(bucketKey()).block()).isFalse();
+    }
+
+    @Test
+    void shouldMergeConsumptionOfAllNodesOnSync() {
+        BatchedRedisRateLimiter first = limiter(redisTemplate, 10);
+        BatchedRedisRateLimiter second = limiter(redisTemplate, 10);
+        consume(first, 4);
+        consume(second, 3);
+
+        first.sync().block();
+        assertThat(globalTokens()).isEqualTo(6);
+        second.sync().block();
+        assertThat(globalTokens()).isEqualTo(3);
+
+        // Второй узел получил остаток общей корзины, первый узнает о расходе второго на следующей синхронизации
+        assertThat(remaining(second)).isEqualTo("2");
+        assertThat(remaining(first)).isEqualTo("5");
+        first.sync().block();
+        assertThat(globalTokens()).isEqualTo(2);
+        assertThat(remaining(first)).isEqualTo("1");
+    }
+
+    @Test
+    void shouldDenyOnAllNodesAfterGlobalLimitIsSpent() {
+        BatchedRedisRateLimiter first = limiter(redisTemplate, 5);
+        BatchedRedisRateLimiter second = limiter(redisTemplate, 5);
+        consume(first, 5);
+        first.sync().block();
+
+        second.isAllowed(ROUTE, "user").block();
+        second.sync().block();
+
+        assertThat(second.isAllowed(ROUTE, "user").block().isAllowed()).isFalse();
+        assertThat(globalTokens()).isEqualTo(-1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldResendConsumptionAfterFailedSync() {
+        ReactiveStringRedisTemplate failing = mock(ReactiveStringRedisTemplate.class);
+        when(failing.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.error(new IllegalStateException("Redis недоступен")), Flux.just("10"));
+        BatchedRedisRateLimiter limiter = limiter(failing, 20);
+        consume(limiter, 3);
+
+        limiter.sync().block();
+        consume(limiter, 2);
+        limiter.sync().block();
+
+        verify(failing, times(2)).execute(any(RedisScript.class), anyList(), anyList());
+        verify(failing).execute(any(RedisScript.class), anyList(), eq(List.of("20", "1", "3")));
+        verify(failing).execute(any(RedisScript.class), anyList(), eq(List.of("20", "1", "5")));
+    }
+
+    @Test
+    void shouldSyncConsumptionOfBucketsEvictedWhileInUse() throws InterruptedException {
+        // Корзина простаивает сразу после синхронизации, поэтому каждый такт удаляет ее из-под запросов
+        properties.setIdleTimeout(Duration.ZERO);
+        int capacity = 1_000_000;
+        BatchedRedisRateLimiter limiter = limiter(redisTemplate, capacity);
+        AtomicLong allowed = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        long start = System.nanoTime();
+
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            consumers.add(Thread.ofPlatform().start(() -> {
+                while (running.get()) {
+                    if (limiter.isAllowed(ROUTE, "user").block().isAllowed()) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < 200; i++) {
+            limiter.sync().block();
+        }
+        running.set(false);
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        limiter.sync().block();
+
+        // Весь расход дошел до Redis; общая корзина за время теста пополнилась не больше чем на секунды теста
+        long refill = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + 1;
+        assertThat(globalTokens()).isBetween(capacity - allowed.get(), capacity - allowed.get() + refill);
+    }
+
+    private BatchedRedisRateLimiter limiter(ReactiveStringRedisTemplate template, int capacity) {
+        BatchedRedisRateLimiter limiter = new BatchedRedisRateLimiter(template, properties,
+                new ConfigurationService(null, DefaultConversionService::new, () -> null), new SimpleMeterRegistry());
+        // Пополнение в 1 токен в секунду не успевает изменить целые остатки за время теста
+        limiter.getConfig().put(ROUTE, new BatchedRedisRateLimiter.Config().setReplenishRate(1).setBurstCapacity(capacity));
+        return limiter;
+    }
+
+    private static String remaining(BatchedRedisRateLimiter limiter) {
+        RateLimiter.Response response = limiter.isAllowed(ROUTE, "user").block();
+        assertThat(response.isAllowed()).isTrue();
+        return response.getHeaders().get(REMAINING_HEADER);
+    }
+
+    private static void consume(BatchedRedisRateLimiter limiter, int requests) {
+        for (int i = 0; i < requests; i++) {
+            assertThat(limiter.isAllowed(ROUTE, "user").block().isAllowed()).isTrue();
+        }
+    }
+
+    private String bucketKey() {
+        return properties.getKeyPrefix() + ROUTE + ":user";
+    }
+
+    private long globalTokens() {
+        String tokens = redisTemplate.<String, String>opsForHash().get(bucketKey(), "tokens").block();
+        return (long) Math.floor(Double.parseDouble(tokens));
+    }
+}
@@ -0,0 +1,90 @@
+package me.nikonorovrs.gateway.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final TokenBucket bucket = new TokenBucket("route");
+
+    @Test
+    void shouldAllowBurstUpToCapacity() {
+        assertThat(bucket.tryConsume(1, 3, 1, 0)).isEqualTo(2);
+        assertThat(bucket.tryConsume(1, 3, 1, 0)).isEqualTo(1);
+        assertThat(bucket.tryConsume(1, 3, 1, 0)).isEqualTo(0);
+        assertThat(bucket.tryConsume(1, 3, 1, 0)).isNegative();
+        assertThat(bucket.tryConsume(5, 10, 1, 0)).isNegative();
+
+        assertThat(bucket.drainPending()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldRefillByElapsedTimeUpToCapacity() {
+        bucket.tryConsume(4, 4, 2, 0);
+
+        assertThat(bucket.tokens(4, 2, SECOND / 2)).isCloseTo(1, within(1e-9));
+        assertThat(bucket.tryConsume(2, 4, 2, SECOND / 2)).isNegative();
+        assertThat(bucket.tryConsume(2, 4, 2, SECOND)).isCloseTo(0, within(1e-9));
+        assertThat(bucket.tokens(4, 2, 10 * SECOND)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldKeepConsumptionMadeDuringSync() {
+        bucket.tryConsume(3, 10, 1, 0);
+        long sent = bucket.drainPending();
+        bucket.tryConsume(2, 10, 1, 0);
+
+        // Общая корзина учла отправленный расход узла и расход других узлов, но не расход во время синхронизации
+        bucket.synced(10 - sent - 4, 10, 0);
+
+        assertThat(bucket.tokens(10, 1, 0)).isEqualTo(1);
+        assertThat(bucket.drainPending()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCapSyncedTokensByCapacity() {
+        bucket.synced(50, 10, 0);
+
+        assertThat(bucket.tokens(10, 1, 0)).isEqualTo(10);
+    }
+
+    @Test
+    void shouldReturnUnsentConsumption() {
+        bucket.tryConsume(3, 10, 1, 0);
+        long sent = bucket.drainPending();
+        bucket.tryConsume(1, 10, 1, 0);
+
+        bucket.restorePending(sent);
+
+        assertThat(bucket.hasPending()).isTrue();
+        assertThat(bucket.drainPending()).isEqualTo(4);
+        assertThat(bucket.hasPending()).isFalse();
+    }
+
+    @Test
+    void shouldBeIdleOnlyWithoutPendingConsumption() {
+        bucket.tryConsume(1, 10, 1, 0);
+
+        assertThat(bucket.isIdle(10 * SECOND, SECOND)).isFalse();
+        bucket.drainPending();
+        assertThat(bucket.isIdle(SECOND / 2, SECOND)).isFalse();
+        assertThat(bucket.isIdle(10 * SECOND, SECOND)).isTrue();
+    }
+
+    @Test
+    void shouldStopConsumingOnceRetired() {
+        bucket.tryConsume(1, 10, 1, 0);
+
+        assertThat(bucket.retireIfIdle(10 * SECOND, SECOND)).isFalse();
+        bucket.drainPending();
+        assertThat(bucket.retireIfIdle(10 * SECOND, SECOND)).isTrue();
+
+        assertThat(bucket.tryConsume(1, 10, 1, 10 * SECOND)).isNegative();
+        assertThat(bucket.isRetired()).isTrue();
+        assertThat(bucket.hasPending()).isFalse();
+    }
+}
@@ -0,0 +1,128 @@
+package me.nikonorovrs.gateway.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Выбор узла для чтения в {@link RedisReplicaReads}. Фабрика реплик создается для Sentinel, но не запускается:
+ * чтения подменены готовыми {@link Mono}, соединения не нужны.
+ */
+class RedisReplicaReadsTest {
+
+    private static final String STORE = "tokens";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RedisReplicaReads reads;
+
+    @AfterEach
+    void tearDown() {
+        if (reads != null) {
+            reads.stop();
+        }
+    }
+
+    @Test
+    void shouldReadFromPrimaryWhenDisabled() {
+        reads = new RedisReplicaReads(properties(false, Duration.ofSeconds(2)), sentinelFactory(), meterRegistry);
+
+        assertThat(reads.isEnabled()).isFalse();
+        assertThat(reads.connectionFactory()).isNull();
+        assertThat(read("key", Mono.just("replica"), Mono.just("primary"))).isEqualTo("primary");
+    }
+
+    @Test
+    void shouldStayOnPrimaryWithoutClusterOrSentinel() {
+        LettuceConnectionFactory standalone = new LettuceConnectionFactory(new RedisStandaloneConfiguration());
+        reads = new RedisReplicaReads(properties(true, Duration.ofSeconds(2)), standalone, meterRegistry);
+
+        assertThat(reads.isEnabled()).isFalse();
+        assertThat(read("key", Mono.just("replica"), Mono.just("primary"))).isEqualTo("primary");
+    }
+
+    @Test
+    void shouldReadUsableValueFromReplica() {
+        reads = new RedisReplicaReads(properties(true, Duration.ofSeconds(2)), sentinelFactory(), meterRegistry);
+
+        assertThat(reads.isEnabled()).isTrue();
+        assertThat(read("key", Mono.just("replica"), Mono.just("primary"))).isEqualTo("replica");
+        assertThat(count("replica")).isEqualTo(1);
+        assertThat(count("fallback")).isZero();
+    }
+
+    @Test
+    void shouldReadOwnWritesFromPrimaryUntilStalenessWindowPasses() throws InterruptedException {
+        reads = new RedisReplicaReads(properties(true, Duration.ofMillis(200)), sentinelFactory(), meterRegistry);
+
+        reads.written("key");
+
+        assertThat(read("key", Mono.just("replica"), Mono.just("primary"))).isEqualTo("primary");
+        // Запись другого ключа не влияет
+        assertThat(read("other", Mono.just("replica"), Mono.just("primary"))).isEqualTo("replica");
+        assertThat(count("primary")).isEqualTo(1);
+
+        Thread.sleep(400);
+        assertThat(read("key", Mono.just("replica"), Mono.just("primary"))).isEqualTo("replica");
+    }
+
+    @Test
+    void shouldFallBackToPrimaryWhenReplicaHasNoValue() {
+        reads = new RedisReplicaReads(properties(true, Duration.ofSeconds(2)), sentinelFactory(), meterRegistry);
+
+        assertThat(read("key", Mono.empty(), Mono.just("primary"))).isEqualTo("primary");
+        assertThat(count("fallback")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFallBackToPrimaryWhenReplicaValueIsUnusable() {
+        reads = new RedisReplicaReads(properties(true, Duration.ofSeconds(2)), sentinelFactory(), meterRegistry);
+
+        String value = reads.read(STORE, "key", Mono.just("stale"), Mono.just("fresh"), "fresh"::equals).block();
+
+        assertThat(value).isEqualTo("fresh");
+        assertThat(count("replica")).isZero();
+        assertThat(count("fallback")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFallBackToPrimaryOnReplicaError() {
+        reads = new RedisReplicaReads(properties(true, Duration.ofSeconds(2)), sentinelFactory(), meterRegistry);
+
+        Mono<String> failing = Mono.error(new IllegalStateException("реплика недоступна"));
+
+        assertThat(read("key", failing, Mono.just("primary"))).isEqualTo("primary");
+        assertThat(count("fallback")).isEqualTo(1);
+    }
+
+    private String read(String key, Mono<String> replica, Mono<String> primary) {
+        return reads.read(STORE, key, replica, primary, value -> true).block();
+    }
+
+    private double count(String outcome) {
+        Counter counter = meterRegistry.find("gateway.redis.replica.reads")
+                .tag("store", STORE)
+                .tag("outcome", outcome)
+                .counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static RedisTopologyProperties properties(boolean enabled, Duration stalenessWindow) {
+        RedisTopologyProperties properties = new RedisTopologyProperties();
+        properties.getReplicaReads().setEnabled(enabled);
+        properties.getReplicaReads().setStalenessWindow(stalenessWindow);
+        return properties;
+    }
+
+    private static LettuceConnectionFactory sentinelFactory() {
+        return new LettuceConnectionFactory(new RedisSentinelConfiguration().master("mymaster").sentinel("localhost", 26379));
+    }
+}
@@ -0,0 +1,107 @@
+package me.nikonorovrs.gateway.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AimdConcurrencyLimiterTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void shouldRejectCallsOverLimit() {
+        AimdConcurrencyLimiter limiter = limiter(2, 1, 10);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.inFlight()).isEqualTo(2);
+
+        limiter.onIgnore();
+        assertThat(limiter.limit()).isEqualTo(2);
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldIncreaseAdditivelyOnFastResponsesUnderLoad() {
+        AimdConcurrencyLimiter limiter = limiter(4, 1, 6);
+        acquire(limiter, 4);
+
+        limiter.onSuccess(FAST);
+        assertThat(limiter.limit()).isEqualTo(5);
+        limiter.onSuccess(FAST);
+        assertThat(limiter.limit()).isEqualTo(6);
+
+        // Лимит не растет, пока используется меньше половины, и не превышает максимум
+        limiter.onSuccess(FAST);
+        assertThat(limiter.limit()).isEqualTo(6);
+        acquire(limiter, 5);
+        limiter.onSuccess(FAST);
+        assertThat(limiter.limit()).isEqualTo(6);
+    }
+
+    @Test
+    void shouldDecreaseMultiplicativelyOnSlowResponse() {
+        AimdConcurrencyLimiter limiter = limiter(10, 1, 32);
+        acquire(limiter, 2);
+
+        limiter.onSuccess(SLOW);
+        assertThat(limiter.limit()).isEqualTo(7);
+        limiter.onSuccess(SLOW);
+        assertThat(limiter.limit()).isEqualTo(4);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldDecreaseOnFailureDownToMinimum() {
+        AimdConcurrencyLimiter limiter = limiter(4, 2, 32);
+        acquire(limiter, 3);
+
+        limiter.onFailure();
+        assertThat(limiter.limit()).isEqualTo(2);
+        limiter.onFailure();
+        limiter.onFailure();
+        assertThat(limiter.limit()).isEqualTo(2);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldRecoverAfterDecrease() {
+        AimdConcurrencyLimiter limiter = limiter(5, 1, 32);
+        acquire(limiter, 1);
+        limiter.onFailure();
+        assertThat(limiter.limit()).isEqualTo(3);
+
+        acquire(limiter, 3);
+        limiter.onSuccess(FAST);
+        // Дробная часть после уменьшения сохраняется: 3.5 + 1
+        assertThat(limiter.limit()).isEqualTo(4);
+        limiter.onSuccess(FAST);
+        assertThat(limiter.limit()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldClampInitialLimit() {
+        assertThat(limiter(100, 1, 32).limit()).isEqualTo(32);
+        assertThat(limiter(0, 3, 32).limit()).isEqualTo(3);
+    }
+
+    private static AimdConcurrencyLimiter limiter(int initial, int min, int max) {
+        TokenEndpointProperties.Limiter properties = new TokenEndpointProperties.Limiter();
+        properties.setInitialLimit(initial);
+        properties.setMinLimit(min);
+        properties.setMaxLimit(max);
+        properties.setLatencyThreshold(Duration.ofMillis(500));
+        properties.setBackoffRatio(0.7);
+        return new AimdConcurrencyLimiter(properties);
+    }
+
+    private static void acquire(AimdConcurrencyLimiter limiter, int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+    }
+}
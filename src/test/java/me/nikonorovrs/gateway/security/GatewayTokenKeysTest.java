@@ -0,0 +1,133 @@
+package me.nikonorovrs.gateway.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ротация ключей {@link GatewayTokenKeys} на настоящем Redis: несколько экземпляров с общим хешем играют роль узлов.
+ */
+class GatewayTokenKeysTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StatelessAuthProperties properties;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties = new StatelessAuthProperties();
+        properties.getKeys().setRedisKey("gateway-auth-jwks-test:" + UUID.randomUUID());
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisTemplate.delete(properties.getKeys().getRedisKey()).block();
+    }
+
+    @Test
+    void shouldKeepOneKeyWhenNodesRotateConcurrently() {
+        List<GatewayTokenKeys> nodes = List.of(keys(), keys(), keys(), keys());
+
+        Flux.fromIterable(nodes)
+                .flatMap(node -> node.refresh().subscribeOn(Schedulers.parallel()))
+                .blockLast();
+
+        assertThat(redisTemplate.opsForHash().size(properties.getKeys().getRedisKey()).block()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.auth.keys.rotations").counter().count()).isEqualTo(1);
+        String keyId = nodes.get(0).signingKey().keyId();
+        assertThat(nodes).allSatisfy(node -> {
+            assertThat(node.signingKey().keyId()).isEqualTo(keyId);
+            assertThat(node.verifier(keyId)).isNotNull();
+        });
+    }
+
+    @Test
+    void shouldSignWithPreviousKeyUntilNewKeyIsPublished() throws JOSEException {
+        Instant now = Instant.now();
+        String currentKeyId = "gw-" + now.toEpochMilli() / properties.getKeys().getRotationInterval().toMillis();
+        store("gw-previous", now.minus(Duration.ofMinutes(10)));
+        store(currentKeyId, now);
+        GatewayTokenKeys keys = keys();
+
+        keys.refresh().block();
+
+        // Ключ текущего периода выпущен меньше refresh-interval назад: другие узлы могли его еще не прочитать
+        assertThat(keys.signingKey().keyId()).isEqualTo("gw-previous");
+        assertThat(keys.verifier(currentKeyId)).isNotNull();
+        assertThat(meterRegistry.get("gateway.auth.keys.rotations").counter().count()).isZero();
+    }
+
+    @Test
+    void shouldRemoveKeysOlderThanRetention() throws JOSEException {
+        Instant now = Instant.now();
+        store("gw-expired", now.minus(properties.getKeys().getRotationInterval().multipliedBy(3)));
+        GatewayTokenKeys keys = keys();
+
+        keys.refresh().block();
+
+        assertThat(keys.verifier("gw-expired")).isNull();
+        assertThat(redisTemplate.opsForHash().hasKey(properties.getKeys().getRedisKey(), "gw-expired").block()).isFalse();
+        // Без действующих ключей узел выпустил ключ текущего периода и подписывает им
+        assertThat(keys.signingKey()).isNotNull();
+        assertThat(keys.signingKey().keyId()).isNotEqualTo("gw-expired");
+    }
+
+    @Test
+    void shouldHaveNoSigningKeyBeforeFirstLoad() {
+        GatewayTokenKeys keys = keys();
+
+        assertThat(keys.signingKey()).isNull();
+    }
+
+    private GatewayTokenKeys keys() {
+        return new GatewayTokenKeys(redisTemplate, properties, meterRegistry);
+    }
+
+    private void store(String keyId, Instant issuedAt) throws JOSEException {
+        ECKey key = new ECKeyGenerator(Curve.P_256)
+                .keyID(keyId)
+                .keyUse(KeyUse.SIGNATURE)
+                .algorithm(JWSAlgorithm.ES256)
+                .issueTime(Date.from(issuedAt))
+                .generate();
+        Mono<Boolean> stored = redisTemplate.<String, String>opsForHash()
+                .put(properties.getKeys().getRedisKey(), keyId, key.toJSONString());
+        assertThat(stored.block()).isTrue();
+    }
+}
@@ -0,0 +1,221 @@
+package me.nikonorovrs.gateway.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Выдача, проверка и отзыв токенов {@link GatewayTokenService} с ключами и отметками отзыва на настоящем Redis.
+ */
+class GatewayTokenServiceTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StatelessAuthProperties properties;
+    private GatewayTokenKeys keys;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        String prefix = "gateway-auth-test:" + UUID.randomUUID();
+        properties = new StatelessAuthProperties();
+        properties.getKeys().setRedisKey(prefix + ":jwks");
+        properties.getRevocation().setKeyPrefix(prefix + ":revoked:");
+        properties.getRevocation().setCheckInterval(Duration.ofMillis(300));
+        keys = new GatewayTokenKeys(redisTemplate, properties, meterRegistry);
+        keys.refresh().block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisTemplate.delete(properties.getKeys().getRedisKey()).block();
+    }
+
+    @Test
+    void shouldIssueAndVerifyEs256Token() throws ParseException {
+        GatewayTokenService service = service(properties);
+
+        String token = service.issue(authentication("alice"));
+        GatewayTokenService.VerifiedToken verified = service.verify(token);
+
+        assertThat(SignedJWT.parse(token).getHeader().getAlgorithm()).isEqualTo(JWSAlgorithm.ES256);
+        assertThat(verified).isNotNull();
+        assertThat(verified.authentication().getName()).isEqualTo("alice");
+        assertThat(verified.authentication().getAuthorizedClientRegistrationId()).isEqualTo("keycloak");
+        assertThat(AuthorityUtils.authorityListToSet(verified.authentication().getAuthorities()))
+                .containsExactlyInAnyOrder("OIDC_USER", "SCOPE_openid");
+        assertThat(Duration.between(verified.issuedAt(), verified.expiresAt())).isEqualTo(properties.getTokenLifetime());
+        assertThat(meterRegistry.get("gateway.auth.tokens").tag("outcome", "issued").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectTamperedToken() {
+        GatewayTokenService service = service(properties);
+        String token = service.issue(authentication("alice"));
+        String[] parts = token.split("\\.");
+        String forged = service.issue(authentication("mallory")).split("\\.")[1];
+
+        assertThat(service.verify(parts[0] + "." + forged + "." + parts[2])).isNull();
+        assertThat(service.verify(token.substring(0, token.length() - 4) + "AAAA")).isNull();
+        assertThat(service.verify("не токен")).isNull();
+        assertThat(rejected()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldRejectOtherAlgorithmAndUnknownKey() throws JOSEException {
+        GatewayTokenService service = service(properties);
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(properties.getIssuer())
+                .subject("alice")
+                .issueTime(new Date())
+                .expirationTime(Date.from(Instant.now().plusSeconds(60)))
+                .claim("reg", "keycloak")
+                .build();
+        SignedJWT hmac = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.HS256)
+                .keyID(keys.signingKey().keyId())
+                .build(), claims);
+        hmac.sign(new MACSigner(new byte[32]));
+
+        assertThat(service.verify(hmac.serialize())).isNull();
+
+        // Ключ с известным идентификатором, но другой парой, и ключ, которого нет в Redis
+        ECKey foreignKey = new ECKeyGenerator(Curve.P_256).generate();
+        assertThat(service.verify(es256(claims, keys.signingKey().keyId(), foreignKey))).isNull();
+        assertThat(service.verify(es256(claims, "gw-unknown", foreignKey))).isNull();
+        assertThat(rejected()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldRejectTokenOfOtherIssuer() {
+        StatelessAuthProperties otherIssuer = new StatelessAuthProperties();
+        otherIssuer.setIssuer("other-gateway");
+        otherIssuer.getKeys().setRedisKey(properties.getKeys().getRedisKey());
+        String token = service(otherIssuer).issue(authentication("alice"));
+
+        assertThat(service(properties).verify(token)).isNull();
+        assertThat(rejected()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectExpiredTokenBeyondClockSkew() {
+        StatelessAuthProperties expired = new StatelessAuthProperties();
+        expired.getKeys().setRedisKey(properties.getKeys().getRedisKey());
+        expired.setTokenLifetime(Duration.ofSeconds(-60));
+        StatelessAuthProperties skewed = new StatelessAuthProperties();
+        skewed.getKeys().setRedisKey(properties.getKeys().getRedisKey());
+        skewed.setTokenLifetime(Duration.ofSeconds(-10));
+        GatewayTokenService service = service(properties);
+
+        assertThat(service.verify(service(expired).issue(authentication("alice")))).isNull();
+        // Истек раньше, чем допускает расхождение часов в 30 секунд
+        assertThat(service.verify(service(skewed).issue(authentication("alice")))).isNotNull();
+        assertThat(meterRegistry.get("gateway.auth.tokens").tag("outcome", "expired").counter().count()).isEqualTo(1);
+        assertThat(rejected()).isZero();
+    }
+
+    @Test
+    void shouldRevokeTokensIssuedBeforeRevocation() throws InterruptedException {
+        GatewayTokenService service = service(properties);
+        GatewayTokenService.VerifiedToken alice = service.verify(service.issue(authentication("alice")));
+        GatewayTokenService.VerifiedToken bob = service.verify(service.issue(authentication("bob")));
+        assertThat(service.isRevoked(alice).block()).isFalse();
+
+        service.revoke(List.of("alice")).block();
+
+        assertThat(service.isRevoked(alice).block()).isTrue();
+        assertThat(service.isRevoked(bob).block()).isFalse();
+        assertThat(meterRegistry.get("gateway.auth.tokens").tag("outcome", "revoked").counter().count()).isEqualTo(1);
+        assertThat(redisTemplate.getExpire(properties.getRevocation().getKeyPrefix() + "alice").block())
+                .isPositive()
+                .isLessThanOrEqualTo(properties.getTokenLifetime().plus(properties.getClockSkew()));
+
+        // iat хранится в секундах: токен, выданный в следующей секунде после отзыва, снова принимается
+        Thread.sleep(1100);
+        GatewayTokenService.VerifiedToken renewed = service.verify(service.issue(authentication("alice")));
+        assertThat(service.isRevoked(renewed).block()).isFalse();
+    }
+
+    @Test
+    void shouldSeeRevocationOfOtherNodeAfterCheckInterval() throws InterruptedException {
+        GatewayTokenService node = service(properties);
+        GatewayTokenService otherNode = service(properties);
+        GatewayTokenService.VerifiedToken token = node.verify(node.issue(authentication("alice")));
+        assertThat(node.isRevoked(token).block()).isFalse();
+
+        otherNode.revoke(List.of("alice")).block();
+
+        // Ответ Redis без отметки запомнен узлом на check-interval
+        assertThat(node.isRevoked(token).block()).isFalse();
+        assertThat(otherNode.isRevoked(token).block()).isTrue();
+        Thread.sleep(500);
+        assertThat(node.isRevoked(token).block()).isTrue();
+    }
+
+    private GatewayTokenService service(StatelessAuthProperties serviceProperties) {
+        return new GatewayTokenService(keys, revocations(serviceProperties), serviceProperties, meterRegistry);
+    }
+
+    private GatewayTokenRevocations revocations(StatelessAuthProperties serviceProperties) {
+        serviceProperties.getRevocation().setKeyPrefix(properties.getRevocation().getKeyPrefix());
+        serviceProperties.getRevocation().setCheckInterval(properties.getRevocation().getCheckInterval());
+        return new GatewayTokenRevocations(redisTemplate, serviceProperties);
+    }
+
+    private static String es256(JWTClaimsSet claims, String keyId, ECKey key) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(keyId).build(), claims);
+        jwt.sign(new ECDSASigner(key));
+        return jwt.serialize();
+    }
+
+    private double rejected() {
+        return meterRegistry.get("gateway.auth.tokens").tag("outcome", "rejected").counter().count();
+    }
+
+    private static OAuth2AuthenticationToken authentication(String name) {
+        List<String> authorities = List.of("OIDC_USER", "SCOPE_openid");
+        DefaultOAuth2User user = new DefaultOAuth2User(AuthorityUtils.createAuthorityList(authorities),
+                Map.of("sub", name), "sub");
+        return new OAuth2AuthenticationToken(user, user.getAuthorities(), "keycloak");
+    }
+}
@@ -0,0 +1,132 @@
+package me.nikonorovrs.gateway.security;
+
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Скрипты {@link LettuceRefreshLock} на настоящем Redis.
+ */
+class LettuceRefreshLockTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(3);
+    private static final Duration LEASE = Duration.ofSeconds(10);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+    private static ReactiveRedisMessageListenerContainer listenerContainer;
+
+    private LettuceRefreshLock lock;
+    private String lockKey;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        listenerContainer = new ReactiveRedisMessageListenerContainer(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        listenerContainer.destroy();
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Периодический повтор длиннее ожидания: захват после освобождения возможен только по уведомлению
+        lock = new LettuceRefreshLock(redisTemplate, listenerContainer, Duration.ofSeconds(30));
+        lockKey = "refresh-lock-test:" + UUID.randomUUID();
+    }
+
+    @Test
+    void shouldAcquireLeaseWithOwnerAndExpiry() {
+        RefreshLock.Lease lease = lock.tryAcquire(lockKey, WAIT, LEASE, Instant.now()).block();
+
+        assertThat(lease).isNotNull();
+        assertThat(lease.isHeld()).isTrue();
+        assertThat(redisTemplate.opsForValue().get(lockKey).block()).isNotBlank();
+        assertThat(redisTemplate.getExpire(lockKey).block())
+                .isPositive()
+                .isLessThanOrEqualTo(LEASE);
+
+        lease.release().block();
+        assertThat(redisTemplate.hasKey(lockKey).block()).isFalse();
+    }
+
+    @Test
+    void shouldWaitForReleaseNotification() {
+        RefreshLock.Lease holder = lock.tryAcquire(lockKey, WAIT, LEASE, Instant.now()).block();
+        assertThat(holder).isNotNull();
+
+        // Пока блокировка занята, короткое ожидание заканчивается пустым результатом
+        StepVerifier.create(lock.tryAcquire(lockKey, Duration.ofMillis(200), LEASE, Instant.now()))
+                .verifyComplete();
+
+        Mono<RefreshLock.Lease> waiter = lock.tryAcquire(lockKey, WAIT, LEASE, Instant.now()).cache();
+        waiter.subscribe();
+        Mono.delay(Duration.ofMillis(300)).then(holder.release()).block();
+
+        StepVerifier.create(waiter)
+                .assertNext(lease -> assertThat(lease.isHeld()).isTrue())
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldReacquireAfterLeaseExpiryAndKeepNewOwnerOnStaleRelease() {
+        LettuceRefreshLock pollingLock = new LettuceRefreshLock(redisTemplate, listenerContainer, Duration.ofMillis(100));
+        RefreshLock.Lease expired = pollingLock.tryAcquire(lockKey, WAIT, Duration.ofMillis(300), Instant.now()).block();
+        assertThat(expired).isNotNull();
+
+        RefreshLock.Lease next = pollingLock.tryAcquire(lockKey, WAIT, LEASE, Instant.now()).block();
+        assertThat(next).isNotNull();
+        assertThat(next.isHeld()).isTrue();
+        String nextOwner = redisTemplate.opsForValue().get(lockKey).block();
+
+        // Освобождение истекшей аренды не снимает чужую блокировку
+        expired.release().block();
+        assertThat(redisTemplate.opsForValue().get(lockKey).block()).isEqualTo(nextOwner);
+
+        next.release().block();
+        assertThat(redisTemplate.hasKey(lockKey).block()).isFalse();
+    }
+
+    @Test
+    void shouldSkipLockWhileRefreshedMarkerIsFresh() {
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(5));
+        RefreshLock.Lease holder = lock.tryAcquire(lockKey, WAIT, LEASE, Instant.now()).block();
+        assertThat(holder).isNotNull();
+        holder.refreshed(expiresAt);
+        holder.release().block();
+
+        String refreshedKey = lockKey + ":refreshed";
+        assertThat(redisTemplate.opsForValue().get(refreshedKey).block()).isEqualTo(String.valueOf(expiresAt.toEpochMilli()));
+        assertThat(redisTemplate.getExpire(refreshedKey).block())
+                .isPositive()
+                .isLessThanOrEqualTo(Duration.ofMinutes(5));
+
+        // Токен, обновленный другим узлом, покрывает запрошенное окно: блокировка не захватывается
+        StepVerifier.create(lock.tryAcquire(lockKey, WAIT, LEASE, Instant.now().plus(Duration.ofMinutes(1))))
+                .assertNext(lease -> assertThat(lease.isHeld()).isFalse())
+                .verifyComplete();
+        assertThat(redisTemplate.hasKey(lockKey).block()).isFalse();
+
+        // Окно дальше срока обновленного токена требует нового обновления
+        StepVerifier.create(lock.tryAcquire(lockKey, WAIT, LEASE, Instant.now().plus(Duration.ofMinutes(10))))
+                .assertNext(lease -> assertThat(lease.isHeld()).isTrue())
+                .verifyComplete();
+    }
+}
@@ -1,5 +1,6 @@
 package me.nikonorovrs.gateway.security;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import me.nikonorovrs.gateway.RedisTestContainer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,9 +24,11 @@ import org.springframework.security.oauth2.core.OAuth2RefreshToken;
 import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -68,7 +71,8 @@ public class LockingReactiveOAuth2AuthorizedClientManagerTest {
     @BeforeEach
     public void setUp() {
         manager = new LockingReactiveOAuth2AuthorizedClientManager(
-                authorizedClientService, tokenResponseClient, redissonClient);
+                authorizedClientService, tokenResponseClient, new RedissonRefreshLock(redissonClient),
+                new SimpleMeterRegistry());
 
         // Установка значений полей через рефлексию
         ReflectionTestUtils.setField(manager, "refreshLockNamespace", "test-refresh-lock");
@@ -129,14 +133,14 @@ public class LockingReactiveOAuth2AuthorizedClientManagerTest {
                 .thenReturn(Mono.just(expiredClient));
         when(redissonClient.getLock(anyString())).thenReturn(rLock);
         when(rLock.tryLockAsync(anyLong(), anyLong(), any(TimeUnit.class))).thenReturn(lockFuture);
-        when(lockFuture.whenCompleteAsync(any())).thenAnswer(invocation -> {
+        when(lockFuture.whenComplete(any())).thenAnswer(invocation -> {
             ((java.util.function.BiConsumer<Boolean, Throwable>) invocation.getArgument(0)).accept(true, null);
             return lockFuture;
         });
         when(tokenResponseClient.getTokenResponse(any())).thenReturn(Mono.just(tokenResponse));
         when(authorizedClientService.saveAuthorizedClient(any(), any())).thenReturn(Mono.empty());
         when(rLock.unlockAsync()).thenReturn(unlockFuture);
-        when(unlockFuture.whenCompleteAsync(any())).thenAnswer(invocation -> {
+        when(unlockFuture.whenComplete(any())).thenAnswer(invocation -> {
             ((java.util.function.BiConsumer<Void, Throwable>) invocation.getArgument(0)).accept(null, null);
             return unlockFuture;
         });
@@ -174,7 +178,7 @@ public class LockingReactiveOAuth2AuthorizedClientManagerTest {
         when(rLock.tryLockAsync(anyLong(), anyLong(), any(TimeUnit.class)))
                 .thenReturn(lockFuture);
 
-        when(lockFuture.whenCompleteAsync(any())).thenAnswer(invocation -> {
+        when(lockFuture.whenComplete(any())).thenAnswer(invocation -> {
             BiConsumer<Boolean, Throwable> action = invocation.getArgument(0);
             // Только первый вызов получает true, остальные false
             boolean success = firstThread.getAndSet(false);
@@ -194,7 +198,7 @@ public class LockingReactiveOAuth2AuthorizedClientManagerTest {
 
         when(authorizedClientService.saveAuthorizedClient(any(), any())).thenReturn(Mono.empty());
         when(rLock.unlockAsync()).thenReturn(unlockFuture);
-        when(unlockFuture.whenCompleteAsync(any())).thenAnswer(invocation -> {
+        when(unlockFuture.whenComplete(any())).thenAnswer(invocation -> {
             BiConsumer<Void, Throwable> action = invocation.getArgument(0);
             action.accept(null, null);
             return unlockFuture;
@@ -238,4 +242,146 @@ public class LockingReactiveOAuth2AuthorizedClientManagerTest {
         verify(tokenResponseClient, times(1)).getTokenResponse(any());
         verify(authorizedClientService, times(1)).saveAuthorizedClient(any(), any());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldCoalesceConcurrentRefreshesIntoSingleLockAcquisition() {
+        int parallelRequests = 30;
+
+        when(authorizedClientService.loadAuthorizedClient("test-client", "test-user"))
+                .thenReturn(Mono.just(expiredClient));
+        when(redissonClient.getLock(anyString())).thenReturn(rLock);
+        when(rLock.tryLockAsync(anyLong(), anyLong(), any(TimeUnit.class))).thenReturn(lockFuture);
+        when(lockFuture.whenComplete(any())).thenAnswer(invocation -> {
+            ((BiConsumer<Boolean, Throwable>) invocation.getArgument(0)).accept(true, null);
+            return lockFuture;
+        });
+        // Медленный ответ Keycloak, чтобы все запросы застали обновление в процессе
+        when(tokenResponseClient.getTokenResponse(any())).thenReturn(
+                Mono.just(OAuth2AccessTokenResponse.withToken("new-token")
+                                .tokenType(OAuth2AccessToken.TokenType.BEARER)
+                                .expiresIn(3600)
+                                .scopes(Set.of("read", "write"))
+                                .refreshToken("refresh-token")
+                                .build())
+                        .delayElement(Duration.ofMillis(200)));
+        when(authorizedClientService.saveAuthorizedClient(any(), any())).thenReturn(Mono.empty());
+        when(rLock.unlockAsync()).thenReturn(unlockFuture);
+        when(unlockFuture.whenComplete(any())).thenAnswer(invocation -> {
+            ((BiConsumer<Void, Throwable>) invocation.getArgument(0)).accept(null, null);
+            return unlockFuture;
+        });
+
+        OAuth2AuthorizeRequest request = OAuth2AuthorizeRequest.withClientRegistrationId("test-client")
+                .principal(authentication)
+                .build();
+
+        StepVerifier.create(Flux.range(0, parallelRequests)
+                        .flatMap(i -> manager.authorize(request), parallelRequests))
+                .expectNextCount(parallelRequests)
+                .verifyComplete();
+
+        // Без объединения каждый из 30 запросов обращался бы к блокировке в Redis
+        verify(redissonClient, times(1)).getLock(anyString());
+        verify(rLock, times(1)).tryLockAsync(anyLong(), anyLong(), any(TimeUnit.class));
+        verify(rLock, times(1)).unlockAsync();
+        verify(tokenResponseClient, times(1)).getTokenResponse(any());
+
+        // После завершения запись удалена, и следующее обновление снова идет через блокировку
+        StepVerifier.create(manager.authorize(request))
+                .expectNextCount(1)
+                .verifyComplete();
+        verify(rLock, times(2)).tryLockAsync(anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void shouldServeStillValidTokenWhenTokenEndpointIsUnavailable() {
+        // Токен внутри буфера обновления, но еще действует
+        OAuth2AccessToken expiringAccessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER,
+                "expiring-token",
+                Instant.now().minusSeconds(300),
+                Instant.now().plusSeconds(30),
+                Set.of("read", "write")
+        );
+        OAuth2AuthorizedClient expiringClient = new OAuth2AuthorizedClient(
+                expiredClient.getClientRegistration(), "test-user", expiringAccessToken, expiredClient.getRefreshToken());
+
+        when(authorizedClientService.loadAuthorizedClient("test-client", "test-user"))
+                .thenReturn(Mono.just(expiringClient));
+        when(redissonClient.getLock(anyString())).thenReturn(rLock);
+        when(rLock.tryLockAsync(anyLong(), anyLong(), any(TimeUnit.class))).thenReturn(lockFuture);
+        when(lockFuture.whenComplete(any())).thenAnswer(invocation -> {
+            ((BiConsumer<Boolean, Throwable>) invocation.getArgument(0)).accept(true, null);
+            return lockFuture;
+        });
+        when(tokenResponseClient.getTokenResponse(any())).thenReturn(
+                Mono.error(new TokenEndpointUnavailableException("Цепь точки выдачи токенов разомкнута")));
+        when(rLock.unlockAsync()).thenReturn(unlockFuture);
+        when(unlockFuture.whenComplete(any())).thenAnswer(invocation -> {
+            ((BiConsumer<Void, Throwable>) invocation.getArgument(0)).accept(null, null);
+            return unlockFuture;
+        });
+
+        OAuth2AuthorizeRequest request = OAuth2AuthorizeRequest.withClientRegistrationId("test-client")
+                .principal(authentication)
+                .build();
+
+        StepVerifier.create(manager.authorize(request))
+                .expectNextMatches(client -> client.getAccessToken().getTokenValue().equals("expiring-token"))
+                .verifyComplete();
+        verify(authorizedClientService, never()).saveAuthorizedClient(any(), any());
+
+        // Истекший токен при недоступном Keycloak не выдается
+        when(authorizedClientService.loadAuthorizedClient("test-client", "test-user"))
+                .thenReturn(Mono.just(expiredClient));
+        StepVerifier.create(manager.authorize(request))
+                .expectError(TokenEndpointUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    public void shouldRefreshWithRefreshTokenReadFromPrimaryUnderLock() {
+        BatchReactiveOAuth2AuthorizedClientService batchService = mock(BatchReactiveOAuth2AuthorizedClientService.class);
+        manager = new LockingReactiveOAuth2AuthorizedClientManager(
+                batchService, tokenResponseClient, new RedissonRefreshLock(redissonClient), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(manager, "refreshLockNamespace", "test-refresh-lock");
+        ReflectionTestUtils.setField(manager, "refreshBuffer", 60L);
+        ReflectionTestUtils.setField(manager, "waitTime", 5L);
+        ReflectionTestUtils.setField(manager, "leaseTime", 10L);
+
+        // В near-кэше осталась копия со старым refresh token, на primary он уже заменен другим узлом
+        OAuth2AuthorizedClient rotatedClient = new OAuth2AuthorizedClient(
+                expiredClient.getClientRegistration(), "test-user", expiredClient.getAccessToken(),
+                new OAuth2RefreshToken("rotated-refresh-token", Instant.now()));
+        when(batchService.loadAuthorizedClient("test-client", "test-user")).thenReturn(Mono.just(expiredClient));
+        when(batchService.loadLatestAuthorizedClient("test-client", "test-user")).thenReturn(Mono.just(rotatedClient));
+        when(redissonClient.getLock(anyString())).thenReturn(rLock);
+        when(rLock.tryLockAsync(anyLong(), anyLong(), any(TimeUnit.class))).thenReturn(lockFuture);
+        when(lockFuture.whenComplete(any())).thenAnswer(invocation -> {
+            ((BiConsumer<Boolean, Throwable>) invocation.getArgument(0)).accept(true, null);
+            return lockFuture;
+        });
+        when(tokenResponseClient.getTokenResponse(any())).thenReturn(
+                Mono.just(OAuth2AccessTokenResponse.withToken("new-token")
+                        .tokenType(OAuth2AccessToken.TokenType.BEARER)
+                        .expiresIn(3600)
+                        .refreshToken("next-refresh-token")
+                        .build()));
+        when(batchService.saveAuthorizedClient(any(), any())).thenReturn(Mono.empty());
+        when(rLock.unlockAsync()).thenReturn(unlockFuture);
+        when(unlockFuture.whenComplete(any())).thenAnswer(invocation -> {
+            ((BiConsumer<Void, Throwable>) invocation.getArgument(0)).accept(null, null);
+            return unlockFuture;
+        });
+
+        OAuth2AuthorizeRequest request = OAuth2AuthorizeRequest.withClientRegistrationId("test-client")
+                .principal(authentication)
+                .build();
+
+        StepVerifier.create(manager.authorize(request))
+                .expectNextMatches(client -> client.getAccessToken().getTokenValue().equals("new-token"))
+                .verifyComplete();
+        verify(tokenResponseClient).getTokenResponse(argThat(grant ->
+                grant.getRefreshToken().getTokenValue().equals("rotated-refresh-token")));
+    }
+}
@@ -0,0 +1,263 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link NearCacheReactiveOAuth2AuthorizedClientService} на настоящем Redis: два экземпляра с общим каналом сброса
+ * играют роль узлов. Запись мимо near-кэша меняет значение только в Redis, поэтому старое значение в ответе
+ * означает, что узел отдал его из памяти.
+ */
+class NearCacheReactiveOAuth2AuthorizedClientServiceTest {
+
+    private static final ClientRegistration KEYCLOAK = registration("keycloak");
+    private static final ClientRegistration PARTNER = registration("partner");
+    private static final Duration REFRESH_BUFFER = Duration.ofSeconds(2);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveRedisTemplate<String, Object> tokenTemplate;
+    private static ReactiveStringRedisTemplate stringTemplate;
+
+    private final List<ReactiveRedisMessageListenerContainer> listenerContainers = new ArrayList<>();
+    private final List<NearCacheReactiveOAuth2AuthorizedClientService> nodes = new ArrayList<>();
+
+    private String channel;
+    private RedisReactiveOAuth2AuthorizedClientService redis;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        OAuth2AuthorizedClientRedisSerializer serializer = new OAuth2AuthorizedClientRedisSerializer(
+                new InMemoryReactiveClientRegistrationRepository(KEYCLOAK, PARTNER));
+        tokenTemplate = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(serializer)
+                .build());
+        stringTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        String prefix = "token-near-cache-test:" + UUID.randomUUID();
+        channel = prefix + ":invalidations";
+        redis = new RedisReactiveOAuth2AuthorizedClientService(tokenTemplate, prefix + ":",
+                List.of(KEYCLOAK.getRegistrationId(), PARTNER.getRegistrationId()),
+                new AuthorizedClientTtlPolicy(Duration.ofMinutes(5), Duration.ofHours(10)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(NearCacheReactiveOAuth2AuthorizedClientService::unsubscribe);
+        listenerContainers.forEach(ReactiveRedisMessageListenerContainer::destroy);
+    }
+
+    @Test
+    void shouldServeRepeatedLoadsFromMemory() {
+        NearCacheReactiveOAuth2AuthorizedClientService node = node();
+        saveDirectly(client(KEYCLOAK, "alice", "v1"));
+
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v1");
+        saveDirectly(client(KEYCLOAK, "alice", "v2"));
+
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v1");
+    }
+
+    @Test
+    void shouldInvalidateOtherNodeOnSaveAndRemove() {
+        NearCacheReactiveOAuth2AuthorizedClientService node = node();
+        NearCacheReactiveOAuth2AuthorizedClientService otherNode = node();
+        awaitSubscribers();
+        saveDirectly(client(KEYCLOAK, "alice", "v1"));
+        assertThat(token(otherNode, KEYCLOAK, "alice")).isEqualTo("v1");
+
+        node.saveAuthorizedClient(client(KEYCLOAK, "alice", "v2"), principal("alice")).block();
+
+        await(() -> "v2".equals(token(otherNode, KEYCLOAK, "alice")));
+
+        node.removeAuthorizedClient(KEYCLOAK.getRegistrationId(), "alice").block();
+
+        await(() -> token(otherNode, KEYCLOAK, "alice") == null);
+        assertThat(token(node, KEYCLOAK, "alice")).isNull();
+    }
+
+    @Test
+    void shouldIgnoreOwnInvalidationMessages() throws InterruptedException {
+        NearCacheReactiveOAuth2AuthorizedClientService node = node();
+        NearCacheReactiveOAuth2AuthorizedClientService otherNode = node();
+        awaitSubscribers();
+        saveDirectly(client(KEYCLOAK, "alice", "v1"));
+        assertThat(token(otherNode, KEYCLOAK, "alice")).isEqualTo("v1");
+
+        // Узел кладет сохраненное значение в память и рассылает сброс; значение в Redis меняется мимо near-кэша
+        node.saveAuthorizedClient(client(KEYCLOAK, "alice", "v2"), principal("alice")).block();
+        saveDirectly(client(KEYCLOAK, "alice", "v3"));
+
+        // Другой узел получил сообщение и перечитал Redis, а свое сообщение узел пропустил
+        await(() -> "v3".equals(token(otherNode, KEYCLOAK, "alice")));
+        Thread.sleep(200);
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v2");
+    }
+
+    @Test
+    void shouldRemoveEveryRegistrationOfRevokedPrincipalsOnAllNodes() {
+        NearCacheReactiveOAuth2AuthorizedClientService node = node();
+        NearCacheReactiveOAuth2AuthorizedClientService otherNode = node();
+        awaitSubscribers();
+        // Имя пользователя с двоеточием: регистрация отделяется по последнему двоеточию ключа
+        List<String> principals = List.of("alice", "corp:carol", "bob");
+        for (String principal : principals) {
+            saveDirectly(client(KEYCLOAK, principal, "v1"));
+            saveDirectly(client(PARTNER, principal, "v1"));
+        }
+        for (NearCacheReactiveOAuth2AuthorizedClientService cached : List.of(node, otherNode)) {
+            for (String principal : principals) {
+                assertThat(token(cached, KEYCLOAK, principal)).isEqualTo("v1");
+                assertThat(token(cached, PARTNER, principal)).isEqualTo("v1");
+            }
+        }
+        saveDirectly(client(KEYCLOAK, "bob", "v2"));
+
+        assertThat(node.removeAuthorizedClients(List.of("alice", "corp:carol")).block()).isEqualTo(4);
+
+        await(() -> token(otherNode, PARTNER, "corp:carol") == null);
+        for (NearCacheReactiveOAuth2AuthorizedClientService cached : List.of(node, otherNode)) {
+            assertThat(token(cached, KEYCLOAK, "alice")).isNull();
+            assertThat(token(cached, PARTNER, "alice")).isNull();
+            assertThat(token(cached, KEYCLOAK, "corp:carol")).isNull();
+            assertThat(token(cached, PARTNER, "corp:carol")).isNull();
+            // Клиенты других пользователей остаются в памяти
+            assertThat(token(cached, KEYCLOAK, "bob")).isEqualTo("v1");
+        }
+    }
+
+    @Test
+    void shouldExpireEntryWhenTokenEntersRefreshBuffer() throws InterruptedException {
+        NearCacheReactiveOAuth2AuthorizedClientService node = node();
+        saveDirectly(client(KEYCLOAK, "alice", "v1", REFRESH_BUFFER.plusSeconds(1)));
+        // Токен уже в окне обновления: в память не попадает
+        saveDirectly(client(KEYCLOAK, "bob", "v1", REFRESH_BUFFER.minusSeconds(1)));
+
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v1");
+        assertThat(token(node, KEYCLOAK, "bob")).isEqualTo("v1");
+        saveDirectly(client(KEYCLOAK, "alice", "v2"));
+        saveDirectly(client(KEYCLOAK, "bob", "v2"));
+
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v1");
+        assertThat(token(node, KEYCLOAK, "bob")).isEqualTo("v2");
+        Thread.sleep(1200);
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v2");
+    }
+
+    @Test
+    void shouldDropAllEntriesOnResubscribe() {
+        NearCacheReactiveOAuth2AuthorizedClientService node = node();
+        saveDirectly(client(KEYCLOAK, "alice", "v1"));
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v1");
+        saveDirectly(client(KEYCLOAK, "alice", "v2"));
+
+        // Сообщения, отправленные без подписки, потеряны: узел не может доверять памяти
+        node.unsubscribe();
+        node.subscribe();
+
+        assertThat(token(node, KEYCLOAK, "alice")).isEqualTo("v2");
+    }
+
+    private NearCacheReactiveOAuth2AuthorizedClientService node() {
+        ReactiveRedisMessageListenerContainer listenerContainer = new ReactiveRedisMessageListenerContainer(connectionFactory);
+        listenerContainers.add(listenerContainer);
+        NearCacheReactiveOAuth2AuthorizedClientService node = new NearCacheReactiveOAuth2AuthorizedClientService(redis,
+                stringTemplate, listenerContainer, channel, 1000, Duration.ofMinutes(5), REFRESH_BUFFER,
+                Runnable::run, new SimpleMeterRegistry());
+        node.subscribe();
+        nodes.add(node);
+        return node;
+    }
+
+    // Подписка устанавливается асинхронно: сообщение без разделителя узлы пропускают
+    private void awaitSubscribers() {
+        await(() -> List.of(channel, channel + ":principals").stream()
+                .allMatch(topic -> stringTemplate.convertAndSend(topic, "probe").block() >= nodes.size()));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("условие выполнилось за 5 секунд").isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private void saveDirectly(OAuth2AuthorizedClient client) {
+        redis.saveAuthorizedClient(client, principal(client.getPrincipalName())).block();
+    }
+
+    private static String token(NearCacheReactiveOAuth2AuthorizedClientService node,
+                                ClientRegistration registration, String principal) {
+        OAuth2AuthorizedClient client = node.loadAuthorizedClient(registration.getRegistrationId(), principal).block();
+        return client != null ? client.getAccessToken().getTokenValue() : null;
+    }
+
+    private static TestingAuthenticationToken principal(String name) {
+        return new TestingAuthenticationToken(name, "n/a");
+    }
+
+    private static OAuth2AuthorizedClient client(ClientRegistration registration, String principal, String token) {
+        return client(registration, principal, token, Duration.ofMinutes(5));
+    }
+
+    private static OAuth2AuthorizedClient client(ClientRegistration registration, String principal, String token,
+                                                 Duration lifetime) {
+        Instant now = Instant.now();
+        return new OAuth2AuthorizedClient(registration, principal,
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, token, now, now.plus(lifetime)),
+                new OAuth2RefreshToken("refresh-" + principal, now, now.plus(Duration.ofHours(1))));
+    }
+
+    private static ClientRegistration registration(String registrationId) {
+        return ClientRegistration.withRegistrationId(registrationId)
+                .clientId(registrationId + "-client")
+                .clientSecret("secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("http://localhost/callback")
+                .authorizationUri("http://localhost/auth")
+                .tokenUri("http://localhost/token")
+                .build();
+    }
+}
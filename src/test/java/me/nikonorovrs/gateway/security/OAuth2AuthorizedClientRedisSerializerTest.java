@@ -0,0 +1,104 @@
+package me.nikonorovrs.gateway.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OAuth2AuthorizedClientRedisSerializerTest {
+
+    private ClientRegistration clientRegistration;
+    private OAuth2AuthorizedClientRedisSerializer serializer;
+    private OAuth2AuthorizedClient client;
+
+    @BeforeEach
+    public void setUp() {
+        clientRegistration = ClientRegistration.withRegistrationId("test-client")
+                .clientId("test-client-id")
+                .clientSecret("test-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("http://localhost/callback")
+                .scope("read", "write")
+                .authorizationUri("http://localhost/auth")
+                .tokenUri("http://localhost/token")
+                .build();
+        serializer = new OAuth2AuthorizedClientRedisSerializer(
+                new InMemoryReactiveClientRegistrationRepository(clientRegistration));
+
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "access-token", now, now.plusSeconds(300), Set.of("read", "write"));
+        OAuth2RefreshToken refreshToken = new OAuth2RefreshToken("refresh-token", now, null);
+        client = new OAuth2AuthorizedClient(clientRegistration, "test-user", accessToken, refreshToken);
+    }
+
+    @Test
+    public void shouldRoundTripAuthorizedClient() {
+        byte[] bytes = serializer.serialize(client);
+
+        assertEquals(OAuth2AuthorizedClientRedisSerializer.FORMAT_V1, bytes[0]);
+        OAuth2AuthorizedClient restored = (OAuth2AuthorizedClient) serializer.deserialize(bytes);
+
+        assertSame(clientRegistration, restored.getClientRegistration());
+        assertEquals("test-user", restored.getPrincipalName());
+        assertEquals(client.getAccessToken().getTokenValue(), restored.getAccessToken().getTokenValue());
+        assertEquals(client.getAccessToken().getTokenType(), restored.getAccessToken().getTokenType());
+        assertEquals(client.getAccessToken().getIssuedAt(), restored.getAccessToken().getIssuedAt());
+        assertEquals(client.getAccessToken().getExpiresAt(), restored.getAccessToken().getExpiresAt());
+        assertEquals(client.getAccessToken().getScopes(), restored.getAccessToken().getScopes());
+        assertEquals("refresh-token", restored.getRefreshToken().getTokenValue());
+        assertNull(restored.getRefreshToken().getExpiresAt());
+    }
+
+    @Test
+    public void shouldReadLegacyJdkFormat() {
+        byte[] legacy = new JdkSerializationRedisSerializer().serialize(client);
+
+        OAuth2AuthorizedClient restored = (OAuth2AuthorizedClient) serializer.deserialize(legacy);
+
+        assertEquals(client.getAccessToken().getTokenValue(), restored.getAccessToken().getTokenValue());
+        assertTrue(serializer.serialize(client).length * 3 < legacy.length);
+    }
+
+    @Test
+    public void shouldFallBackToJdkForOtherValues() {
+        Map<String, String> value = Map.of("key", "value");
+
+        assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+    }
+
+    @Test
+    public void shouldRejectUnknownRegistration() {
+        OAuth2AuthorizedClientRedisSerializer otherSerializer = new OAuth2AuthorizedClientRedisSerializer(
+                new InMemoryReactiveClientRegistrationRepository(ClientRegistration.withClientRegistration(clientRegistration)
+                        .registrationId("other-client")
+                        .build()));
+
+        byte[] bytes = serializer.serialize(client);
+
+        assertThrows(SerializationException.class, () -> otherSerializer.deserialize(bytes));
+    }
+
+    @Test
+    public void shouldRequireRepositoryListingRegistrations() {
+        // Реактивный поиск по идентификатору нельзя дождаться внутри синхронной десериализации
+        ReactiveClientRegistrationRepository lookupOnly = registrationId -> Mono.just(clientRegistration);
+
+        assertThrows(IllegalArgumentException.class, () -> new OAuth2AuthorizedClientRedisSerializer(lookupOnly));
+    }
+}
@@ -0,0 +1,205 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.InMemoryReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2RefreshTokenGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link ProactiveTokenRefreshScheduler} поверх настоящего {@link LockingReactiveOAuth2AuthorizedClientManager}:
+ * клиенты хранятся в памяти, блокировка записывает ключи, точка выдачи токенов заменена счетчиком.
+ * Такты планировщика вызываются напрямую через {@code refreshDue()}.
+ */
+class ProactiveTokenRefreshSchedulerTest {
+
+    private static final Duration LOOKAHEAD = Duration.ofMinutes(2);
+
+    private final ClientRegistration registration = ClientRegistration.withRegistrationId("keycloak")
+            .clientId("gateway")
+            .clientSecret("secret")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://localhost/callback")
+            .authorizationUri("http://localhost/auth")
+            .tokenUri("http://localhost/token")
+            .build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> lockKeys = new CopyOnWriteArrayList<>();
+    private final List<String> refreshedTokens = new CopyOnWriteArrayList<>();
+    private final AtomicInteger issued = new AtomicInteger();
+
+    private InMemoryReactiveOAuth2AuthorizedClientService clientService;
+    private LockingReactiveOAuth2AuthorizedClientManager manager;
+
+    @BeforeEach
+    void setUp() {
+        clientService = new InMemoryReactiveOAuth2AuthorizedClientService(
+                new InMemoryReactiveClientRegistrationRepository(registration));
+        ReactiveOAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> tokenClient = request -> {
+            refreshedTokens.add(request.getAccessToken().getTokenValue());
+            return Mono.just(OAuth2AccessTokenResponse.withToken("refreshed-" + issued.incrementAndGet())
+                    .tokenType(OAuth2AccessToken.TokenType.BEARER)
+                    .expiresIn(3600)
+                    .refreshToken("refresh-token")
+                    .build());
+        };
+        RefreshLock recordingLock = (lockKey, waitTime, leaseTime, freshUntil) -> {
+            lockKeys.add(lockKey);
+            return Mono.just(new RefreshLock.Lease() {
+                @Override
+                public boolean isHeld() {
+                    return true;
+                }
+
+                @Override
+                public void refreshed(Instant expiresAt) {
+                }
+
+                @Override
+                public Mono<Void> release() {
+                    return Mono.empty();
+                }
+            });
+        };
+        manager = new LockingReactiveOAuth2AuthorizedClientManager(clientService, tokenClient, recordingLock, meterRegistry);
+        ReflectionTestUtils.setField(manager, "refreshLockNamespace", "test-refresh-lock");
+        ReflectionTestUtils.setField(manager, "refreshBuffer", 60L);
+        ReflectionTestUtils.setField(manager, "waitTime", 5L);
+        ReflectionTestUtils.setField(manager, "leaseTime", 10L);
+    }
+
+    @Test
+    void shouldRefreshOnlyTokensExpiringWithinLookahead() {
+        ProactiveTokenRefreshScheduler scheduler = scheduler(Duration.ofMinutes(30));
+        store("alice", Instant.now().minus(Duration.ofHours(1)), Duration.ofSeconds(90));
+        store("bob", Instant.now().minus(Duration.ofHours(1)), Duration.ofMinutes(10));
+        // Истекает через 100 секунд, но живет всего 160: раньше половины срока жизни не обновляется
+        store("carol", Instant.now().minusSeconds(60), Duration.ofSeconds(100));
+        authorize(scheduler, "alice");
+        authorize(scheduler, "bob");
+        authorize(scheduler, "carol");
+
+        scheduler.refreshDue().block();
+
+        assertThat(refreshedTokens).containsExactly("access-alice");
+        assertThat(token("alice")).isEqualTo("refreshed-1");
+        assertThat(token("bob")).isEqualTo("access-bob");
+        assertThat(token("carol")).isEqualTo("access-carol");
+        assertThat(tracked()).isEqualTo(3);
+
+        // Обновленный токен снова в расписании, но уже не в окне обновления
+        scheduler.refreshDue().block();
+        assertThat(refreshedTokens).hasSize(1);
+    }
+
+    @Test
+    void shouldRefreshAheadThroughSameLockKeyAsInlineRefresh() {
+        ProactiveTokenRefreshScheduler scheduler = scheduler(Duration.ofMinutes(30));
+        store("alice", Instant.now().minus(Duration.ofHours(1)), Duration.ofSeconds(-10));
+
+        // Истекший токен обновляется в запросе
+        assertThat(authorize(scheduler, "alice")).isEqualTo("refreshed-1");
+
+        store("alice", Instant.now().minus(Duration.ofHours(1)), Duration.ofSeconds(90));
+        authorize(scheduler, "alice");
+        scheduler.refreshDue().block();
+
+        assertThat(token("alice")).isEqualTo("refreshed-2");
+        assertThat(lockKeys).containsExactly("test-refresh-lock:keycloak:alice", "test-refresh-lock:keycloak:alice");
+        assertThat(refreshes("inline")).isEqualTo(1);
+        assertThat(refreshes("ahead")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStopTrackingIdleUsers() throws InterruptedException {
+        ProactiveTokenRefreshScheduler scheduler = scheduler(Duration.ofMillis(50));
+        store("alice", Instant.now().minus(Duration.ofHours(1)), Duration.ofSeconds(90));
+        authorize(scheduler, "alice");
+        assertThat(tracked()).isEqualTo(1);
+
+        Thread.sleep(100);
+        scheduler.refreshDue().block();
+
+        assertThat(refreshedTokens).isEmpty();
+        assertThat(tracked()).isZero();
+    }
+
+    @Test
+    void shouldStopTrackingRemovedClient() {
+        ProactiveTokenRefreshScheduler scheduler = scheduler(Duration.ofMinutes(30));
+        store("alice", Instant.now().minus(Duration.ofHours(1)), Duration.ofSeconds(90));
+        authorize(scheduler, "alice");
+
+        clientService.removeAuthorizedClient(registration.getRegistrationId(), "alice").block();
+        scheduler.refreshDue().block();
+
+        assertThat(refreshedTokens).isEmpty();
+        assertThat(tracked()).isZero();
+        assertThat(lockKeys).isEmpty();
+    }
+
+    private ProactiveTokenRefreshScheduler scheduler(Duration maxIdle) {
+        return new ProactiveTokenRefreshScheduler(manager, Duration.ofSeconds(5), LOOKAHEAD, maxIdle,
+                100, 4, meterRegistry);
+    }
+
+    private void store(String principal, Instant issuedAt, Duration remaining) {
+        OAuth2AuthorizedClient client = new OAuth2AuthorizedClient(registration, principal,
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-" + principal,
+                        issuedAt, Instant.now().plus(remaining)),
+                new OAuth2RefreshToken("refresh-" + principal, issuedAt));
+        clientService.saveAuthorizedClient(client, user(principal)).block();
+    }
+
+    private String authorize(ProactiveTokenRefreshScheduler scheduler, String principal) {
+        return scheduler.authorize(OAuth2AuthorizeRequest.withClientRegistrationId(registration.getRegistrationId())
+                        .principal(user(principal))
+                        .build())
+                .block()
+                .getAccessToken()
+                .getTokenValue();
+    }
+
+    private String token(String principal) {
+        return clientService.<OAuth2AuthorizedClient>loadAuthorizedClient(registration.getRegistrationId(), principal)
+                .block()
+                .getAccessToken()
+                .getTokenValue();
+    }
+
+    private double tracked() {
+        return meterRegistry.get("gateway.token.refresh.tracked").gauge().value();
+    }
+
+    private double refreshes(String mode) {
+        Counter counter = meterRegistry.find("gateway.token.refresh").tag("mode", mode).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static Authentication user(String name) {
+        return new TestingAuthenticationToken(name, "n/a");
+    }
+}
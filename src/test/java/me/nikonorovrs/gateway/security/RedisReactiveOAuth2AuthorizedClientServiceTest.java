@@ -0,0 +1,178 @@
+package me.nikonorovrs.gateway.security;
+
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link RedisReactiveOAuth2AuthorizedClientService} на настоящем Redis: пакетные операции и десериализация вне потока ответа.
+ */
+class RedisReactiveOAuth2AuthorizedClientServiceTest {
+
+    private static final ClientRegistration KEYCLOAK = registration("keycloak");
+    private static final ClientRegistration PARTNER = registration("partner");
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveRedisTemplate<String, Object> redisTemplate;
+
+    private String keyPrefix;
+    private RedisReactiveOAuth2AuthorizedClientService service;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        OAuth2AuthorizedClientRedisSerializer serializer = new OAuth2AuthorizedClientRedisSerializer(
+                new InMemoryReactiveClientRegistrationRepository(KEYCLOAK, PARTNER));
+        redisTemplate = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(serializer)
+                .build());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        keyPrefix = "token-batch-test:" + UUID.randomUUID() + ":";
+        service = new RedisReactiveOAuth2AuthorizedClientService(redisTemplate, keyPrefix,
+                List.of(KEYCLOAK.getRegistrationId(), PARTNER.getRegistrationId()),
+                new AuthorizedClientTtlPolicy(Duration.ofMinutes(5), Duration.ofHours(10)));
+    }
+
+    @Test
+    void shouldSaveLoadAndRevokeInBatches() {
+        List<OAuth2AuthorizedClient> clients = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            clients.add(client(KEYCLOAK, "user-" + i));
+            clients.add(client(PARTNER, "user-" + i));
+        }
+        service.saveAuthorizedClients(clients).block();
+
+        // Ключи пишутся с TTL до истечения refresh-токена плюс запас
+        assertThat(redisTemplate.getExpire(keyPrefix + "user-0:keycloak").block())
+                .isGreaterThan(Duration.ofMinutes(60))
+                .isLessThanOrEqualTo(Duration.ofMinutes(65));
+
+        // Загрузка больше одного пакета, повторы и отсутствующие пользователи пропускаются
+        List<String> principals = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            principals.add("user-" + i);
+        }
+        principals.add("user-0");
+        principals.add("missing");
+        StepVerifier.create(service.loadAuthorizedClients(KEYCLOAK.getRegistrationId(), principals).collectList())
+                .assertNext(loaded -> {
+                    assertThat(loaded).hasSize(1000);
+                    assertThat(loaded).allMatch(client -> client.getClientRegistration() == KEYCLOAK);
+                    assertThat(loaded.get(0).getPrincipalName()).isEqualTo("user-0");
+                    assertThat(loaded.get(0).getAccessToken().getTokenValue()).isEqualTo("access-user-0");
+                })
+                .verifyComplete();
+
+        // Отзыв удаляет клиентов всех регистраций перечисленных пользователей
+        StepVerifier.create(service.removeAuthorizedClients(principals))
+                .expectNext(2000L)
+                .verifyComplete();
+        StepVerifier.create(service.loadAuthorizedClient(PARTNER.getRegistrationId(), "user-999")).verifyComplete();
+        StepVerifier.create(service.<OAuth2AuthorizedClient>loadAuthorizedClient(PARTNER.getRegistrationId(), "user-1000"))
+                .assertNext(client -> assertThat(client.getPrincipalName()).isEqualTo("user-1000"))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldDecodeLargeValuesOnOffloadScheduler() {
+        AtomicInteger offloaded = new AtomicInteger();
+        Scheduler offloadScheduler = Schedulers.fromExecutor(task -> {
+            offloaded.incrementAndGet();
+            Thread.ofVirtual().start(task);
+        });
+        RedisReactiveOAuth2AuthorizedClientService offloading = service(offloadScheduler, 1024);
+        Instant now = Instant.now();
+        String largeToken = "x".repeat(4096);
+        offloading.saveAuthorizedClient(client(KEYCLOAK, "small"), new TestingAuthenticationToken("small", "n/a")).block();
+        offloading.saveAuthorizedClient(new OAuth2AuthorizedClient(KEYCLOAK, "large",
+                        new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, largeToken, now, now.plusSeconds(300))),
+                new TestingAuthenticationToken("large", "n/a")).block();
+
+        StepVerifier.create(offloading.loadAuthorizedClient(KEYCLOAK.getRegistrationId(), "small")).expectNextCount(1).verifyComplete();
+        assertThat(offloaded).hasValue(0);
+
+        StepVerifier.create(offloading.<OAuth2AuthorizedClient>loadAuthorizedClient(KEYCLOAK.getRegistrationId(), "large"))
+                .assertNext(client -> assertThat(client.getAccessToken().getTokenValue()).isEqualTo(largeToken))
+                .verifyComplete();
+        assertThat(offloaded).hasValue(1);
+
+        // Пакет считается по суммарному размеру значений
+        StepVerifier.create(offloading.loadAuthorizedClients(KEYCLOAK.getRegistrationId(), List.of("small", "large")))
+                .expectNextCount(2)
+                .verifyComplete();
+        assertThat(offloaded).hasValue(2);
+    }
+
+    @Test
+    void shouldDecodeInPlaceWhenOffloadIsRejected() {
+        Scheduler rejecting = Schedulers.fromExecutor(task -> {
+            throw new RejectedExecutionException("очередь заполнена");
+        });
+        RedisReactiveOAuth2AuthorizedClientService offloading = service(rejecting, 1);
+        offloading.saveAuthorizedClient(client(KEYCLOAK, "alice"), new TestingAuthenticationToken("alice", "n/a")).block();
+
+        StepVerifier.create(offloading.<OAuth2AuthorizedClient>loadLatestAuthorizedClient(KEYCLOAK.getRegistrationId(), "alice"))
+                .assertNext(client -> assertThat(client.getAccessToken().getTokenValue()).isEqualTo("access-alice"))
+                .verifyComplete();
+    }
+
+    private RedisReactiveOAuth2AuthorizedClientService service(Scheduler offloadScheduler, long offloadThreshold) {
+        return new RedisReactiveOAuth2AuthorizedClientService(redisTemplate, null, null, keyPrefix,
+                List.of(KEYCLOAK.getRegistrationId(), PARTNER.getRegistrationId()),
+                new AuthorizedClientTtlPolicy(Duration.ofMinutes(5), Duration.ofHours(10)),
+                false, Duration.ZERO, offloadScheduler, offloadThreshold);
+    }
+
+    private static OAuth2AuthorizedClient client(ClientRegistration registration, String principal) {
+        Instant now = Instant.now();
+        return new OAuth2AuthorizedClient(registration, principal,
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-" + principal, now, now.plusSeconds(300)),
+                new OAuth2RefreshToken("refresh-" + principal, now, now.plus(Duration.ofHours(1))));
+    }
+
+    private static ClientRegistration registration(String registrationId) {
+        return ClientRegistration.withRegistrationId(registrationId)
+                .clientId(registrationId + "-client")
+                .clientSecret("secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("http://localhost/callback")
+                .authorizationUri("http://localhost/auth")
+                .tokenUri("http://localhost/token")
+                .build();
+    }
+}
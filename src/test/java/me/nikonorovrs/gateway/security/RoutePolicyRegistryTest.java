@@ -0,0 +1,89 @@
+package me.nikonorovrs.gateway.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static me.nikonorovrs.gateway.security.RoutePolicyTest.route;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class RoutePolicyRegistryTest {
+
+    private final AtomicReference<List<Route>> routes = new AtomicReference<>(List.of());
+    private final RouteLocator routeLocator = () -> Flux.defer(() -> Flux.fromIterable(routes.get()));
+
+    @Test
+    void shouldFailStartupOnInvalidMetadata() {
+        routes.set(List.of(
+                route("valid", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 401)),
+                route("broken", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, "abc"))));
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> registry().afterSingletonsInstantiated());
+        assertTrue(error.getMessage().contains("broken"));
+    }
+
+    @Test
+    void shouldKeepPreviousPolicyWhenRefreshIsRejected() {
+        Route xhr = route("xhr", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 401));
+        Route removed = route("removed", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 403));
+        routes.set(List.of(xhr, removed));
+        RoutePolicyRegistry registry = registry();
+        registry.afterSingletonsInstantiated();
+        assertEquals(HttpStatus.UNAUTHORIZED, registry.policyOf(exchange(xhr)).redirectStatus());
+
+        // Ошибочное значение при обновлении отклоняется, удаленный маршрут теряет политику, новый ее получает
+        Route brokenXhr = route("xhr", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, "abc"));
+        Route added = route("added", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 401));
+        routes.set(List.of(brokenXhr, added));
+        registry.onApplicationEvent(new RefreshRoutesResultEvent(routeLocator));
+
+        assertEquals(HttpStatus.UNAUTHORIZED, registry.policyOf(exchange(brokenXhr)).redirectStatus());
+        assertEquals(HttpStatus.UNAUTHORIZED, registry.policyOf(exchange(added)).redirectStatus());
+        assertSame(RoutePolicy.DEFAULT, registry.policyOf(exchange(removed)));
+
+        // Исправленные метаданные применяются при следующем обновлении
+        routes.set(List.of(route("xhr", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 403))));
+        registry.onApplicationEvent(new RefreshRoutesResultEvent(routeLocator));
+        assertEquals(HttpStatus.FORBIDDEN, registry.policyOf(exchange(xhr)).redirectStatus());
+    }
+
+    @Test
+    void shouldIgnoreFailedRefreshAndServeDefaultWithoutRoute() {
+        Route xhr = route("xhr", Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 401));
+        routes.set(List.of(xhr));
+        RoutePolicyRegistry registry = registry();
+        registry.afterSingletonsInstantiated();
+
+        routes.set(List.of());
+        registry.onApplicationEvent(new RefreshRoutesResultEvent(routeLocator, new IllegalStateException("refresh failed")));
+        assertEquals(HttpStatus.UNAUTHORIZED, registry.policyOf(exchange(xhr)).redirectStatus());
+
+        assertSame(RoutePolicy.DEFAULT, registry.policyOf(MockServerWebExchange.from(MockServerHttpRequest.get("/"))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private RoutePolicyRegistry registry() {
+        ObjectProvider<RouteLocator> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(routeLocator);
+        return new RoutePolicyRegistry(provider);
+    }
+
+    private static MockServerWebExchange exchange(Route route) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+}
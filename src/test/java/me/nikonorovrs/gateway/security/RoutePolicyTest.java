@@ -0,0 +1,95 @@
+package me.nikonorovrs.gateway.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePolicyTest {
+
+    @Test
+    void shouldUseDefaultPolicyWithoutMetadata() {
+        assertSame(RoutePolicy.DEFAULT, RoutePolicy.compile(route(Map.of("other", "value"))));
+    }
+
+    @Test
+    void shouldCompileRedirectMetadata() {
+        RoutePolicy policy = RoutePolicy.compile(route(Map.of(
+                RoutePolicy.REDIRECT_CODE_METADATA, " 401 ",
+                RoutePolicy.LOGIN_URL_METADATA, "/login-here")));
+
+        assertEquals(HttpStatus.UNAUTHORIZED, policy.redirectStatus());
+        assertEquals(URI.create("/login-here"), policy.loginUrl());
+        assertNull(policy.exchangeAudience());
+        assertEquals(Set.of(), policy.exchangeScopes());
+
+        // Числовое значение из YAML и отсутствующий адрес входа
+        RoutePolicy numeric = RoutePolicy.compile(route(Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 403)));
+        assertEquals(HttpStatus.FORBIDDEN, numeric.redirectStatus());
+        assertEquals(RoutePolicy.DEFAULT.loginUrl(), numeric.loginUrl());
+    }
+
+    @Test
+    void shouldRejectInvalidRedirectMetadata() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RoutePolicy.compile(route(Map.of(RoutePolicy.REDIRECT_CODE_METADATA, "abc"))));
+        assertThrows(IllegalArgumentException.class,
+                () -> RoutePolicy.compile(route(Map.of(RoutePolicy.REDIRECT_CODE_METADATA, 999))));
+        assertThrows(IllegalArgumentException.class,
+                () -> RoutePolicy.compile(route(Map.of(RoutePolicy.LOGIN_URL_METADATA, "http://bad host/login"))));
+    }
+
+    @Test
+    void shouldCompileTokenExchangeMetadata() {
+        RoutePolicy fromString = RoutePolicy.compile(route(Map.of(
+                RoutePolicy.TOKEN_EXCHANGE_AUDIENCE_METADATA, " orders-service ",
+                RoutePolicy.TOKEN_EXCHANGE_SCOPE_METADATA, "orders.read, orders.write  orders.read")));
+        assertEquals("orders-service", fromString.exchangeAudience());
+        assertEquals(Set.of("orders.read", "orders.write"), fromString.exchangeScopes());
+        assertEquals(RoutePolicy.DEFAULT.redirectStatus(), fromString.redirectStatus());
+
+        // Список в YAML приходит как Map с индексами в ключах
+        RoutePolicy fromYamlList = RoutePolicy.compile(route(Map.of(
+                RoutePolicy.TOKEN_EXCHANGE_AUDIENCE_METADATA, "orders-service",
+                RoutePolicy.TOKEN_EXCHANGE_SCOPE_METADATA, Map.of("0", "orders.read", "1", " "))));
+        assertEquals(Set.of("orders.read"), fromYamlList.exchangeScopes());
+
+        RoutePolicy fromList = RoutePolicy.compile(route(Map.of(
+                RoutePolicy.TOKEN_EXCHANGE_AUDIENCE_METADATA, "orders-service",
+                RoutePolicy.TOKEN_EXCHANGE_SCOPE_METADATA, List.of("orders.read", "orders.write"))));
+        assertEquals(Set.of("orders.read", "orders.write"), fromList.exchangeScopes());
+
+        RoutePolicy audienceOnly = RoutePolicy.compile(route(Map.of(
+                RoutePolicy.TOKEN_EXCHANGE_AUDIENCE_METADATA, "orders-service")));
+        assertEquals(Set.of(), audienceOnly.exchangeScopes());
+    }
+
+    @Test
+    void shouldRejectInvalidTokenExchangeMetadata() {
+        assertThrows(IllegalArgumentException.class, () -> RoutePolicy.compile(route(Map.of(
+                RoutePolicy.TOKEN_EXCHANGE_SCOPE_METADATA, "orders.read"))));
+        assertThrows(IllegalArgumentException.class, () -> RoutePolicy.compile(route(Map.of(
+                RoutePolicy.TOKEN_EXCHANGE_AUDIENCE_METADATA, "orders service"))));
+        assertThrows(IllegalArgumentException.class, () -> RoutePolicy.compile(route(Map.of(
+                RoutePolicy.TOKEN_EXCHANGE_AUDIENCE_METADATA, " "))));
+    }
+
+    static Route route(Map<String, Object> metadata) {
+        return route("route", metadata);
+    }
+
+    static Route route(String id, Map<String, Object> metadata) {
+        return Route.async()
+                .id(id)
+                .uri("http://localhost")
+                .predicate(exchange -> true)
+                .metadata(metadata)
+                .build();
+    }
+}
@@ -0,0 +1,136 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.web.server.context.ServerSecurityContextRepository;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link StatelessSecurityContextRepository} с настоящими ключами и отметками отзыва в Redis и сессией-заглушкой.
+ */
+class StatelessSecurityContextRepositoryTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private final OAuth2AuthenticationToken alice = authentication("alice");
+
+    private StatelessAuthProperties properties;
+    private GatewayTokenService tokenService;
+    private ServerSecurityContextRepository session;
+    private StatelessSecurityContextRepository repository;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        String prefix = "gateway-auth-test:" + UUID.randomUUID();
+        properties = new StatelessAuthProperties();
+        properties.getKeys().setRedisKey(prefix + ":jwks");
+        properties.getRevocation().setKeyPrefix(prefix + ":revoked:");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        GatewayTokenKeys keys = new GatewayTokenKeys(redisTemplate, properties, meterRegistry);
+        keys.refresh().block();
+        tokenService = new GatewayTokenService(keys, new GatewayTokenRevocations(redisTemplate, properties),
+                properties, meterRegistry);
+        session = mock(ServerSecurityContextRepository.class);
+        when(session.save(any(), any())).thenReturn(Mono.empty());
+        repository = new StatelessSecurityContextRepository(session, tokenService, properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisTemplate.delete(properties.getKeys().getRedisKey()).block();
+    }
+
+    @Test
+    void shouldLoadContextFromTokenWithoutSession() {
+        MockServerWebExchange exchange = exchange("/api/orders", tokenService.issue(alice));
+
+        SecurityContext context = repository.load(exchange).block();
+
+        assertThat(context.getAuthentication().getName()).isEqualTo("alice");
+        assertThat(exchange.getResponse().getCookies()).isEmpty();
+        verify(session, never()).load(any());
+    }
+
+    @Test
+    void shouldFallBackToSessionAndReissueRevokedToken() {
+        when(session.load(any())).thenReturn(Mono.just(new SecurityContextImpl(alice)));
+        String token = tokenService.issue(alice);
+        tokenService.revoke(List.of("alice")).block();
+        MockServerWebExchange exchange = exchange("/api/orders", token);
+
+        SecurityContext context = repository.load(exchange).block();
+
+        assertThat(context.getAuthentication().getName()).isEqualTo("alice");
+        verify(session).load(exchange);
+        ResponseCookie reissued = exchange.getResponse().getCookies().getFirst(properties.getCookie().getName());
+        assertThat(reissued).isNotNull();
+        assertThat(reissued.getMaxAge()).isEqualTo(properties.getTokenLifetime());
+    }
+
+    @Test
+    void shouldRejectRevokedTokenAfterSessionIsGone() {
+        when(session.load(any())).thenReturn(Mono.empty());
+        String token = tokenService.issue(alice);
+        MockServerWebExchange logout = exchange("/logout", token);
+
+        repository.save(logout, null).block();
+
+        ResponseCookie cleared = logout.getResponse().getCookies().getFirst(properties.getCookie().getName());
+        assertThat(cleared.getValue()).isEmpty();
+        assertThat(cleared.getMaxAge()).isEqualTo(Duration.ZERO);
+        // Копия токена, сохраненная клиентом до выхода, больше не аутентифицирует
+        assertThat(repository.load(exchange("/api/orders", token)).block()).isNull();
+        assertThat(tokenService.isRevoked(tokenService.verify(token)).block()).isTrue();
+    }
+
+    private MockServerWebExchange exchange(String path, String token) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path)
+                .cookie(new HttpCookie(properties.getCookie().getName(), token)));
+    }
+
+    private static OAuth2AuthenticationToken authentication(String name) {
+        DefaultOAuth2User user = new DefaultOAuth2User(AuthorityUtils.createAuthorityList("OIDC_USER"),
+                Map.of("sub", name), "sub");
+        return new OAuth2AuthenticationToken(user, user.getAuthorities(), "keycloak");
+    }
+}
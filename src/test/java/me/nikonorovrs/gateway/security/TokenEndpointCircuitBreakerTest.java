@@ -0,0 +1,125 @@
+package me.nikonorovrs.gateway.security;
+
+import me.nikonorovrs.gateway.security.TokenEndpointCircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenEndpointCircuitBreakerTest {
+
+    @Test
+    void shouldStayClosedUntilMinimumCalls() {
+        TokenEndpointCircuitBreaker breaker = breaker(10, 4, Duration.ofMinutes(1));
+
+        failures(breaker, 3);
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    void shouldEvaluateFailureRateOverSlidingWindow() {
+        TokenEndpointCircuitBreaker breaker = breaker(4, 4, Duration.ofMinutes(1));
+
+        breaker.onFailure();
+        successes(breaker, 4);
+        // Первая ошибка вытеснена из окна, в нем одна ошибка из четырех
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    void shouldRejectCallsWhileOpen() {
+        TokenEndpointCircuitBreaker breaker = breaker(2, 2, Duration.ofMinutes(1));
+        failures(breaker, 2);
+
+        assertThat(breaker.isCallPermitted()).isFalse();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        // Ответ на обращение, начатое до размыкания, цепь не замыкает
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    void shouldLimitTrialCallsWhenHalfOpen() {
+        TokenEndpointCircuitBreaker breaker = breaker(2, 2, Duration.ZERO);
+        failures(breaker, 2);
+
+        assertThat(breaker.isCallPermitted()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+
+        breaker.releasePermission();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    void shouldCloseAfterSuccessfulTrialCalls() {
+        TokenEndpointCircuitBreaker breaker = breaker(2, 2, Duration.ZERO);
+        failures(breaker, 2);
+        breaker.tryAcquirePermission();
+        breaker.tryAcquirePermission();
+
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        // Окно очищено при замыкании: одной ошибки мало для оценки
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    void shouldReopenOnTrialFailure() {
+        TokenEndpointCircuitBreaker breaker = breaker(2, 2, Duration.ofMillis(50));
+        failures(breaker, 2);
+        await(breaker);
+        breaker.tryAcquirePermission();
+        breaker.onSuccess();
+
+        breaker.onFailure();
+
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    private static TokenEndpointCircuitBreaker breaker(int window, int minimumCalls, Duration openDuration) {
+        TokenEndpointProperties.Breaker properties = new TokenEndpointProperties.Breaker();
+        properties.setSlidingWindowSize(window);
+        properties.setMinimumCalls(minimumCalls);
+        properties.setFailureRateThreshold(0.5);
+        properties.setOpenDuration(openDuration);
+        properties.setHalfOpenCalls(2);
+        return new TokenEndpointCircuitBreaker(properties);
+    }
+
+    private static void failures(TokenEndpointCircuitBreaker breaker, int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.onFailure();
+        }
+    }
+
+    private static void successes(TokenEndpointCircuitBreaker breaker, int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.onSuccess();
+        }
+    }
+
+    private static void await(TokenEndpointCircuitBreaker breaker) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!breaker.isCallPermitted()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.TokenExchangeGrantRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Кэш и блокировка {@link TokenExchangeService} на настоящем Redis: несколько экземпляров с общим префиксом
+ * играют роль узлов, точка выдачи токенов заменена счетчиком обращений.
+ */
+class TokenExchangeServiceTest {
+
+    private static final String AUDIENCE = "orders-service";
+    private static final Set<String> SCOPES = Set.of("orders.write", "orders.read");
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+    private static ReactiveRedisMessageListenerContainer listenerContainer;
+
+    private final ClientRegistration registration = ClientRegistration.withRegistrationId("keycloak")
+            .clientId("gateway")
+            .clientSecret("secret")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://localhost/login/oauth2/code/keycloak")
+            .authorizationUri("http://localhost/auth")
+            .tokenUri("http://localhost/token")
+            .scope("openid", "profile")
+            .build();
+    private final OAuth2AuthorizedClient subject = new OAuth2AuthorizedClient(registration, "alice",
+            new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "subject-token",
+                    Instant.now(), Instant.now().plusSeconds(300)));
+    private final Authentication principal = new TestingAuthenticationToken("alice", "password");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<TokenExchangeGrantRequest> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger issued = new AtomicInteger();
+
+    private TokenExchangeProperties properties;
+    private Duration tokenLifetime = Duration.ofMinutes(5);
+    private Duration responseDelay = Duration.ZERO;
+    private RuntimeException endpointError;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        listenerContainer = new ReactiveRedisMessageListenerContainer(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        listenerContainer.destroy();
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties = new TokenExchangeProperties();
+        properties.setKeyPrefix("token-exchange-test:" + UUID.randomUUID() + ":");
+    }
+
+    @Test
+    void shouldExchangeOnceAndServeRepeatedRequestsFromNodeMemory() {
+        TokenExchangeService service = service();
+
+        assertThat(exchange(service)).isEqualTo("exchanged-1");
+        assertThat(exchange(service)).isEqualTo("exchanged-1");
+
+        assertThat(requests).hasSize(1);
+        assertThat(count("exchanged")).isEqualTo(1);
+        assertThat(count("local")).isEqualTo(1);
+        assertThat(redisTemplate.opsForValue().get(sharedKey()).block()).endsWith("\nexchanged-1");
+    }
+
+    @Test
+    void shouldSendAudienceAndSortedScopesWithTokenExchangeGrant() {
+        exchange(service());
+
+        TokenExchangeGrantRequest request = requests.get(0);
+        assertThat(request.getGrantType()).isEqualTo(AuthorizationGrantType.TOKEN_EXCHANGE);
+        assertThat(request.getSubjectToken().getTokenValue()).isEqualTo("subject-token");
+        assertThat(request.getClientRegistration().getScopes()).containsExactly("orders.read", "orders.write");
+        assertThat(TokenExchangeService.audienceParametersConverter().convert(request).getFirst("audience"))
+                .isEqualTo(AUDIENCE);
+    }
+
+    @Test
+    void shouldShareOneExchangeBetweenConcurrentRequestsAndNodes() {
+        responseDelay = Duration.ofMillis(200);
+        List<TokenExchangeService> nodes = List.of(service(), service());
+
+        List<String> tokens = Flux.range(0, 20)
+                .flatMap(i -> nodes.get(i % 2).exchange(subject, principal, AUDIENCE, SCOPES))
+                .map(OAuth2AccessToken::getTokenValue)
+                .collectList()
+                .block();
+
+        assertThat(tokens).hasSize(20).containsOnly("exchanged-1");
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    void shouldReuseTokenExchangedByOtherNode() {
+        exchange(service());
+        TokenExchangeService otherNode = service();
+
+        assertThat(exchange(otherNode)).isEqualTo("exchanged-1");
+        assertThat(requests).hasSize(1);
+        assertThat(count("redis")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldExchangeAgainWithinRefreshBuffer() {
+        tokenLifetime = Duration.ofSeconds(20);
+        TokenExchangeService service = service();
+
+        // Токен живет меньше refresh-buffer в 30 секунд: ни память узла, ни Redis его не отдают
+        assertThat(exchange(service)).isEqualTo("exchanged-1");
+        assertThat(exchange(service)).isEqualTo("exchanged-2");
+        assertThat(exchange(service())).isEqualTo("exchanged-3");
+    }
+
+    @Test
+    void shouldTreatSharedTokenExpiredByLocalClockAsMissing() {
+        // Ключ еще жив в Redis, но по часам этого узла токен уже истек
+        long expiredAt = Instant.now().minusSeconds(5).toEpochMilli();
+        redisTemplate.opsForValue().set(sharedKey(), expiredAt + "\nstale", Duration.ofMinutes(1)).block();
+
+        assertThat(exchange(service())).isEqualTo("exchanged-1");
+        assertThat(count("redis")).isZero();
+    }
+
+    @Test
+    void shouldTreatUnreadableSharedTokenAsMissing() {
+        TokenExchangeService service = service();
+
+        redisTemplate.opsForValue().set(sharedKey(), "not-a-number\ngarbage", Duration.ofMinutes(1)).block();
+        assertThat(exchange(service)).isEqualTo("exchanged-1");
+
+        TokenExchangeService otherNode = service();
+        redisTemplate.opsForValue().set(sharedKey(), "no-separator", Duration.ofMinutes(1)).block();
+        assertThat(exchange(otherNode)).isEqualTo("exchanged-2");
+    }
+
+    @Test
+    void shouldRetryAfterFailedExchange() {
+        endpointError = new IllegalStateException("точка выдачи недоступна");
+        TokenExchangeService service = service();
+
+        assertThatThrownBy(() -> exchange(service)).hasMessageContaining("точка выдачи недоступна");
+        assertThat(count("failed")).isEqualTo(1);
+        assertThat(redisTemplate.hasKey(sharedKey()).block()).isFalse();
+
+        endpointError = null;
+        assertThat(exchange(service)).isEqualTo("exchanged-1");
+    }
+
+    private TokenExchangeService service() {
+        ReactiveOAuth2AccessTokenResponseClient<TokenExchangeGrantRequest> client = request -> Mono.defer(() -> {
+            requests.add(request);
+            if (endpointError != null) {
+                return Mono.error(endpointError);
+            }
+            return Mono.just(OAuth2AccessTokenResponse.withToken("exchanged-" + issued.incrementAndGet())
+                    .tokenType(OAuth2AccessToken.TokenType.BEARER)
+                    .expiresIn(tokenLifetime.toSeconds())
+                    .build());
+        }).delayElement(responseDelay);
+        return new TokenExchangeService(client, redisTemplate,
+                new LettuceRefreshLock(redisTemplate, listenerContainer, Duration.ofMillis(50)),
+                properties, false, meterRegistry);
+    }
+
+    private String exchange(TokenExchangeService service) {
+        return service.exchange(subject, principal, AUDIENCE, SCOPES).block().getTokenValue();
+    }
+
+    private String sharedKey() {
+        return properties.getKeyPrefix() + "alice:keycloak:" + AUDIENCE + ":orders.read orders.write";
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("gateway.token.exchange").tag("outcome", outcome).counter().count();
+    }
+}
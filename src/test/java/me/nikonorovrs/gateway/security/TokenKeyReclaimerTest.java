@@ -0,0 +1,122 @@
+package me.nikonorovrs.gateway.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link TokenKeyReclaimer} на настоящем Redis.
+ */
+class TokenKeyReclaimerTest {
+
+    private static final ClientRegistration REGISTRATION = ClientRegistration.withRegistrationId("keycloak")
+            .clientId("client")
+            .clientSecret("secret")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://localhost/callback")
+            .authorizationUri("http://localhost/auth")
+            .tokenUri("http://localhost/token")
+            .build();
+
+    private static final AuthorizedClientTtlPolicy TTL_POLICY =
+            new AuthorizedClientTtlPolicy(Duration.ofMinutes(5), Duration.ofHours(10));
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate stringRedisTemplate;
+    private static ReactiveRedisTemplate<String, Object> tokenRedisTemplate;
+    private static OAuth2AuthorizedClientRedisSerializer serializer;
+
+    private String keyPrefix;
+    private SimpleMeterRegistry meterRegistry;
+    private TokenKeyReclaimer reclaimer;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        stringRedisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        serializer = new OAuth2AuthorizedClientRedisSerializer(new InMemoryReactiveClientRegistrationRepository(REGISTRATION));
+        tokenRedisTemplate = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(serializer)
+                .build());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        keyPrefix = "token-reclaimer-test:" + UUID.randomUUID() + ":";
+        meterRegistry = new SimpleMeterRegistry();
+        reclaimer = new TokenKeyReclaimer(stringRedisTemplate, serializer, TTL_POLICY, keyPrefix,
+                3, Duration.ofMillis(1), Duration.ofHours(1), false, meterRegistry);
+    }
+
+    @Test
+    void shouldExpireOrDeleteOnlyKeysWithoutTtl() {
+        Instant now = Instant.now();
+        String live = keyPrefix + "live:keycloak";
+        String stale = keyPrefix + "stale:keycloak";
+        String managed = keyPrefix + "managed:keycloak";
+        String unreadable = keyPrefix + "unreadable:keycloak";
+        String hash = keyPrefix + "hash";
+        tokenRedisTemplate.opsForValue().set(live, client("live", now.plus(Duration.ofHours(1)))).block();
+        tokenRedisTemplate.opsForValue().set(stale, client("stale", now.minus(Duration.ofHours(1)))).block();
+        tokenRedisTemplate.opsForValue().set(managed, client("managed", now.plus(Duration.ofHours(1))), Duration.ofMinutes(1)).block();
+        stringRedisTemplate.opsForValue().set(unreadable, "not a token").block();
+        stringRedisTemplate.opsForHash().put(hash, "field", "value").block();
+
+        reclaimer.reclaimPass().block();
+
+        // Срок записи - истечение refresh-токена плюс запас
+        assertThat(stringRedisTemplate.getExpire(live).block())
+                .isGreaterThan(Duration.ofMinutes(60))
+                .isLessThanOrEqualTo(Duration.ofMinutes(65));
+        assertThat(stringRedisTemplate.hasKey(stale).block()).isFalse();
+        assertThat(stringRedisTemplate.getExpire(managed).block()).isLessThanOrEqualTo(Duration.ofMinutes(1));
+        assertThat(stringRedisTemplate.getExpire(unreadable).block())
+                .isGreaterThan(Duration.ofHours(10))
+                .isLessThanOrEqualTo(TTL_POLICY.fallbackTtl());
+        // Не строковые значения пропускаются без ошибки, TTL у них не появляется
+        assertThat(stringRedisTemplate.hasKey(hash).block()).isTrue();
+        assertThat(stringRedisTemplate.getExpire(hash).block()).isEqualTo(Duration.ZERO);
+
+        assertThat(meterRegistry.counter("gateway.token.reclaimer.keys", "action", "expire").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("gateway.token.reclaimer.keys", "action", "delete").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("gateway.token.reclaimer.bytes", "action", "expire").count())
+                .isEqualTo(serializer.serialize(client("live", now.plus(Duration.ofHours(1)))).length + "not a token".length());
+
+        // Повторный проход ничего не меняет
+        reclaimer.reclaimPass().block();
+        assertThat(meterRegistry.counter("gateway.token.reclaimer.keys", "action", "expire").count()).isEqualTo(2);
+    }
+
+    private static OAuth2AuthorizedClient client(String principal, Instant refreshExpiresAt) {
+        Instant issuedAt = refreshExpiresAt.minus(Duration.ofHours(2));
+        return new OAuth2AuthorizedClient(REGISTRATION, principal,
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access", issuedAt, issuedAt.plusSeconds(300)),
+                new OAuth2RefreshToken("refresh", issuedAt, refreshExpiresAt));
+    }
+}
@@ -0,0 +1,97 @@
+package me.nikonorovrs.gateway.service;
+
+import me.nikonorovrs.gateway.security.BatchReactiveOAuth2AuthorizedClientService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.server.MockWebSession;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames.ACCESS_TOKEN;
+
+@ExtendWith(MockitoExtension.class)
+class SessionServiceTest {
+
+    @Mock
+    private BatchReactiveOAuth2AuthorizedClientService authorizedClientService;
+
+    private final List<ClientRequest> backendRequests = new ArrayList<>();
+    private SessionService sessionService;
+
+    @BeforeEach
+    void setUp() {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    backendRequests.add(request);
+                    return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+                })
+                .build();
+        sessionService = new SessionService(webClient, authorizedClientService,
+                "http://keycloak/realms/test", "http://backend", "http://frontend");
+    }
+
+    @Test
+    void shouldRevokeAllTokensOfPrincipalWithOneBatchCall() {
+        when(authorizedClientService.removeAuthorizedClients(List.of("user"))).thenReturn(Mono.just(2L));
+        MockWebSession session = new MockWebSession();
+        session.getAttributes().put(ACCESS_TOKEN, "access-token");
+        session.start();
+
+        StepVerifier.create(sessionService.performLogout(session, "ffl-session", List.of("user")))
+                .assertNext(response -> {
+                    assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+                    assertEquals("http://keycloak/realms/test/protocol/openid-connect/logout?redirect_uri=http://frontend",
+                            response.getHeaders().getFirst(HttpHeaders.LOCATION));
+                })
+                .verifyComplete();
+
+        verify(authorizedClientService, times(1)).removeAuthorizedClients(List.of("user"));
+        verify(authorizedClientService, never()).removeAuthorizedClient(any(), any());
+        assertFalse(session.isStarted());
+        assertEquals(1, backendRequests.size());
+        assertEquals("http://backend/api/v1/logout", backendRequests.get(0).url().toString());
+        assertEquals("Bearer access-token", backendRequests.get(0).headers().getFirst(HttpHeaders.AUTHORIZATION));
+        assertEquals("ffl-session", backendRequests.get(0).cookies().getFirst("SESSION"));
+    }
+
+    @Test
+    void shouldSkipRevocationAndBackendWithoutPrincipalAndToken() {
+        MockWebSession session = new MockWebSession();
+        session.start();
+
+        StepVerifier.create(sessionService.performLogout(session, "ffl-session", List.of()))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verifyNoInteractions(authorizedClientService);
+        assertTrue(backendRequests.isEmpty());
+        assertFalse(session.isStarted());
+    }
+
+    @Test
+    void shouldCompleteLogoutWhenRevocationFails() {
+        when(authorizedClientService.removeAuthorizedClients(List.of("user")))
+                .thenReturn(Mono.error(new IllegalStateException("Redis недоступен")));
+        MockWebSession session = new MockWebSession();
+        session.start();
+
+        StepVerifier.create(sessionService.performLogout(session, "ffl-session", List.of("user")))
+                .assertNext(response -> assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode()))
+                .verifyComplete();
+        assertFalse(session.isStarted());
+    }
+}
@@ -0,0 +1,265 @@
+package me.nikonorovrs.gateway.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.nikonorovrs.gateway.RedisTestContainer;
+import me.nikonorovrs.gateway.concurrent.BoundedVirtualThreadExecutor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.session.Session;
+import org.springframework.session.data.redis.ReactiveRedisSessionRepository;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link LazyRedisSessionRepository} на настоящем Redis, совместимость проверяется стандартным репозиторием.
+ */
+class LazyRedisSessionRepositoryTest {
+
+    private static final String SECURITY_CONTEXT = "SPRING_SECURITY_CONTEXT";
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveRedisTemplate<String, Object> redisTemplate;
+
+    private String namespace;
+    private LazyRedisSessionRepository repository;
+    private ReactiveRedisSessionRepository standardRepository;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestContainer.connectionFactory();
+        StringRedisSerializer keySerializer = new StringRedisSerializer();
+        redisTemplate = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext
+                .<String, Object>newSerializationContext(new JdkSerializationRedisSerializer())
+                .key(keySerializer)
+                .hashKey(keySerializer)
+                .build());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        namespace = "lazy-session-test:" + UUID.randomUUID();
+        repository = new LazyRedisSessionRepository(redisTemplate, namespace, Set.of(SECURITY_CONTEXT),
+                Duration.ofHours(1), 2);
+        standardRepository = new ReactiveRedisSessionRepository(redisTemplate);
+        standardRepository.setRedisKeyNamespace(namespace);
+    }
+
+    @Test
+    void shouldLoadPrefetchedAttributesAndFullHashWhenOthersExist() {
+        LazyRedisSessionRepository.LazyRedisSession session = repository.createSession().block();
+        session.setAttribute(SECURITY_CONTEXT, "context");
+        repository.save(session).block();
+
+        // Формат хранения читается стандартным репозиторием
+        Session standard = standardRepository.findById(session.getId()).block();
+        assertThat(standard).isNotNull();
+        assertThat((String) standard.getAttribute(SECURITY_CONTEXT)).isEqualTo("context");
+        assertThat(standard.getMaxInactiveInterval()).isEqualTo(session.getMaxInactiveInterval());
+
+        LazyRedisSessionRepository.LazyRedisSession loaded = repository.findById(session.getId()).block();
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getAttributeNames()).containsExactly(SECURITY_CONTEXT);
+        assertThat(loaded.getCreationTime()).isEqualTo(session.getCreationTime().truncatedTo(ChronoUnit.MILLIS));
+
+        // Атрибут вне списка загрузки приводит к чтению всего хеша
+        loaded.setAttribute("cart", 42);
+        repository.save(loaded).block();
+        LazyRedisSessionRepository.LazyRedisSession full = repository.findById(session.getId()).block();
+        assertThat(full.getAttributeNames()).containsExactlyInAnyOrder(SECURITY_CONTEXT, "cart");
+        assertThat((Integer) full.getAttribute("cart")).isEqualTo(42);
+
+        StepVerifier.create(repository.findById("missing")).verifyComplete();
+    }
+
+    @Test
+    void shouldWriteOnlyChangedAttributes() {
+        LazyRedisSessionRepository.LazyRedisSession session = repository.createSession().block();
+        session.setAttribute(SECURITY_CONTEXT, "context");
+        session.setAttribute("cart", 1);
+        repository.save(session).block();
+        String sessionKey = sessionKey(session.getId());
+
+        LazyRedisSessionRepository.LazyRedisSession loaded = repository.findById(session.getId()).block();
+        // Другой узел тем временем меняет контекст; сохранение этой сессии пишет только свою дельту
+        redisTemplate.opsForHash().put(sessionKey, "sessionAttr:" + SECURITY_CONTEXT, "concurrent").block();
+        loaded.setAttribute("cart", 2);
+        loaded.removeAttribute("obsolete");
+        repository.save(loaded).block();
+
+        assertThat(redisTemplate.opsForHash().get(sessionKey, "sessionAttr:" + SECURITY_CONTEXT).block())
+                .isEqualTo("concurrent");
+        assertThat(redisTemplate.opsForHash().get(sessionKey, "sessionAttr:cart").block()).isEqualTo(2);
+
+        loaded.removeAttribute("cart");
+        repository.save(loaded).block();
+        assertThat(redisTemplate.opsForHash().hasKey(sessionKey, "sessionAttr:cart").block()).isFalse();
+
+        // Сессия без изменений не записывается вовсе
+        redisTemplate.opsForHash().put(sessionKey, "sessionAttr:" + SECURITY_CONTEXT, "untouched").block();
+        repository.save(repository.findById(session.getId()).block()).block();
+        assertThat(redisTemplate.opsForHash().get(sessionKey, "sessionAttr:" + SECURITY_CONTEXT).block())
+                .isEqualTo("untouched");
+    }
+
+    @Test
+    void shouldExpireSessions() {
+        LazyRedisSessionRepository.LazyRedisSession session = repository.createSession().block();
+        session.setMaxInactiveInterval(Duration.ofMinutes(10));
+        session.setAttribute(SECURITY_CONTEXT, "context");
+        repository.save(session).block();
+        String sessionKey = sessionKey(session.getId());
+
+        assertThat(redisTemplate.getExpire(sessionKey).block())
+                .isPositive()
+                .isLessThanOrEqualTo(Duration.ofMinutes(10));
+
+        // Сессия с истекшим временем неактивности удаляется при загрузке
+        long lastAccessed = Instant.now().minus(Duration.ofMinutes(11)).toEpochMilli();
+        redisTemplate.opsForHash().put(sessionKey, "lastAccessedTime", lastAccessed).block();
+        StepVerifier.create(repository.findById(session.getId())).verifyComplete();
+        assertThat(redisTemplate.hasKey(sessionKey).block()).isFalse();
+
+        // Изменения удаленной сессии не воскрешают ее
+        session.setAttribute("cart", 1);
+        StepVerifier.create(repository.save(session))
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertThat(redisTemplate.hasKey(sessionKey).block()).isFalse();
+    }
+
+    @Test
+    void shouldFlushTouchesInBatches() {
+        String[] ids = new String[3];
+        for (int i = 0; i < ids.length; i++) {
+            LazyRedisSessionRepository.LazyRedisSession session = repository.createSession().block();
+            session.setAttribute(SECURITY_CONTEXT, "context-" + i);
+            repository.save(session).block();
+            ids[i] = session.getId();
+            redisTemplate.expire(sessionKey(ids[i]), Duration.ofMinutes(1)).block();
+        }
+
+        // Сессии только продлеваются: в Redis ничего не пишется, но продление видно запросам этого узла
+        Instant accessed = Instant.now().plusSeconds(30).truncatedTo(ChronoUnit.MILLIS);
+        for (String id : ids) {
+            LazyRedisSessionRepository.LazyRedisSession session = repository.findById(id).block();
+            session.setLastAccessedTime(accessed);
+            repository.save(session).block();
+        }
+        assertThat(storedLastAccessedTime(ids[0])).isBefore(accessed);
+        assertThat(repository.findById(ids[0]).block().getLastAccessedTime()).isEqualTo(accessed);
+
+        // Удаленная до записи сессия не создается заново
+        redisTemplate.delete(sessionKey(ids[1])).block();
+
+        // Три продления при размере пачки 2 - два вызова скрипта
+        repository.flushTouches().block();
+
+        for (String id : List.of(ids[0], ids[2])) {
+            assertThat(storedLastAccessedTime(id)).isEqualTo(accessed);
+            assertThat(redisTemplate.getExpire(sessionKey(id)).block()).isGreaterThan(Duration.ofMinutes(1));
+        }
+        assertThat(redisTemplate.hasKey(sessionKey(ids[1])).block()).isFalse();
+
+        // Очередь опустела, повторная запись ничего не делает
+        redisTemplate.opsForHash().put(sessionKey(ids[0]), "lastAccessedTime", 0L).block();
+        repository.flushTouches().block();
+        assertThat(redisTemplate.opsForHash().get(sessionKey(ids[0]), "lastAccessedTime").block()).isEqualTo(0L);
+    }
+
+    @Test
+    void shouldCarryPendingTouchAcrossSessionIdChange() {
+        LazyRedisSessionRepository.LazyRedisSession session = repository.createSession().block();
+        session.setAttribute(SECURITY_CONTEXT, "context");
+        repository.save(session).block();
+        String originalId = session.getId();
+
+        LazyRedisSessionRepository.LazyRedisSession touched = repository.findById(originalId).block();
+        Instant accessed = Instant.now().plusSeconds(30).truncatedTo(ChronoUnit.MILLIS);
+        touched.setLastAccessedTime(accessed);
+        repository.save(touched).block();
+
+        LazyRedisSessionRepository.LazyRedisSession renamed = repository.findById(originalId).block();
+        String newId = renamed.changeSessionId();
+        repository.save(renamed).block();
+        repository.flushTouches().block();
+
+        StepVerifier.create(repository.findById(originalId)).verifyComplete();
+        Session standard = standardRepository.findById(newId).block();
+        assertThat((String) standard.getAttribute(SECURITY_CONTEXT)).isEqualTo("context");
+        assertThat(standard.getLastAccessedTime()).isEqualTo(accessed);
+    }
+
+    @Test
+    void shouldDecodeInlineWhenOffloadExecutorRejects() throws InterruptedException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("decode", 1, 0, meterRegistry);
+        Scheduler offloadScheduler = Schedulers.fromExecutor(executor);
+        LazyRedisSessionRepository offloading = new LazyRedisSessionRepository(redisTemplate, namespace,
+                Set.of(SECURITY_CONTEXT), Duration.ofHours(1), 2, offloadScheduler, 0, null, null, false);
+        LazyRedisSessionRepository.LazyRedisSession session = offloading.createSession().block();
+        session.setAttribute(SECURITY_CONTEXT, "context");
+        offloading.save(session).block();
+
+        assertThat((String) offloading.findById(session.getId()).block().getAttribute(SECURITY_CONTEXT))
+                .isEqualTo("context");
+        assertThat(executorTasks(meterRegistry, "completed")).isEqualTo(1);
+
+        // Единственный поток занят, очереди нет: десериализация выполняется на месте
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        try {
+            assertThat((String) offloading.findById(session.getId()).block(Duration.ofSeconds(5))
+                    .getAttribute(SECURITY_CONTEXT)).isEqualTo("context");
+            assertThat(executorTasks(meterRegistry, "rejected")).isEqualTo(1);
+        } finally {
+            release.countDown();
+            offloadScheduler.dispose();
+        }
+    }
+
+    private Instant storedLastAccessedTime(String sessionId) {
+        Session session = standardRepository.findById(sessionId).block();
+        return session.getLastAccessedTime();
+    }
+
+    private static double executorTasks(SimpleMeterRegistry meterRegistry, String outcome) {
+        return meterRegistry.get("gateway.executor.tasks").tag("outcome", outcome).counter().count();
+    }
+
+    private String sessionKey(String sessionId) {
+        return namespace + ":sessions:" + sessionId;
+    }
+}